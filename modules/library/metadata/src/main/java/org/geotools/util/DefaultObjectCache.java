@@ -16,20 +16,22 @@
  */
 package org.geotools.util;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-//import java.util.concurrent.locks.ReentrantWriterPreferenceReadWriteLock;
 
 
 /**
  * Caching implementation for {@link ObjectCache}. This instance is used when
  * actual caching is desired.
+ * <p>
+ * Reading a value already in the cache does not acquire any lock, neither on the cache nor
+ * on the entry. Only the readers of an entry without value wait, in case a writer is in the
+ * process of creating it.
  * 
  * @since 2.5
  * @version $Id$
@@ -40,7 +42,7 @@ final class DefaultObjectCache implements ObjectCache {
     /**
      * The cached values for each key.
      */
-    private final Map/*<Object,ObjectCacheEntry>*/ cache;
+    private final ConcurrentMap<Object,ObjectCacheEntry> cache;
 
     /**
      * An entry in the {@link DefaultObjectCache}.
@@ -60,16 +62,11 @@ final class DefaultObjectCache implements ObjectCache {
      * }
      * </pre></blockquote>
      * Tip: The use of try/finally is more than just a good idea - it is the law.
-     *
-     * @todo change from edu.oswego to java.concurrent
      */
     static final class ObjectCacheEntry {
         /**
-         * Value of this cache entry, managed by the {@linkplain #lock}.
-         *
-         * @todo According {@link java.util.concurrent.locks.ReentrantReadWriteLock} documentation,
-         *       we don't need to declare this field as volatile. Revisit when we will be allowed to
-         *       compile for J2SE 1.5.
+         * Value of this cache entry, managed by the {@linkplain #lock}. Volatile so that
+         * the readers can get a non null value without locking.
          */
         private volatile Object value;
 
@@ -77,7 +74,6 @@ final class DefaultObjectCache implements ObjectCache {
          * The lock used to manage the {@linkplain #value}.
          */
         private final ReadWriteLock lock = new ReentrantReadWriteLock();
-        // formally ReentrantReadWriteLock
         
         /**
          * Creates an entry with no initial value.
@@ -111,29 +107,27 @@ final class DefaultObjectCache implements ObjectCache {
                 lock.writeLock().lock();
                 return value;
             }
-//            catch (RuntimeException e) {
-//                return null;
-//            }
             finally {
                 lock.writeLock().unlock();
             }
         }
 
         /**
-         * Acquires a read lock, obtains the value, unlocks, and returns the value.
-         * If another thread already has the write lock, this method will block.
+         * Returns the value. If the entry has a value it is returned right away, otherwise a
+         * read lock is acquired, so that this method blocks if another thread has the write
+         * lock, as it may be in the process of creating the value.
          * 
          * @return cached value or null if empty
          */
         public Object getValue() {
+            final Object value = this.value;
+            if (value != null) {
+                return value;
+            }
             try {
                 lock.readLock().lock();
-                return value;
+                return this.value;
             }
-//            catch (InterruptedException e) {
-//                //TODO: add logger, or is this too performance constrained?
-//                return null;
-//            }
             finally {
                 lock.readLock().unlock();
             }
@@ -151,18 +145,16 @@ final class DefaultObjectCache implements ObjectCache {
                lock.writeLock().lock();
                this.value = value;
             }
-//            catch (InterruptedException e) {
-//            }
             finally {
                 lock.writeLock().unlock();
             }
         }
 
         /**
-         * Acquires a write lock. This will block other readers and writers (on this
-         * entry only), and other readers and writers will need to be cleared before
-         * the write lock can be acquired, unless it is the same thread attempting
-         * to read or write.
+         * Acquires a write lock. This will block other writers (on this entry only), and the
+         * readers of an entry without value, and other readers and writers will need to be
+         * cleared before the write lock can be acquired, unless it is the same thread
+         * attempting to read or write.
          */
         public boolean writeLock() {
             lock.writeLock().lock();
@@ -181,23 +173,21 @@ final class DefaultObjectCache implements ObjectCache {
      * Creates a new cache.
      */
     public DefaultObjectCache() {
-        cache = new HashMap();
+        cache = new ConcurrentHashMap<Object,ObjectCacheEntry>();
     }
     
     /**
      * Creates a new cache using the indicated initialSize.
      */
     public DefaultObjectCache(final int initialSize) {
-        cache = new HashMap(initialSize);
+        cache = new ConcurrentHashMap<Object,ObjectCacheEntry>(Math.max(initialSize, 16));
     }
 
     /**
      * Removes all entries from this map.
      */
     public void clear() {
-        synchronized (cache) {
-            cache.clear();
-        }
+        cache.clear();
     }
 
     /**
@@ -213,7 +203,7 @@ final class DefaultObjectCache implements ObjectCache {
     /**
      * Returns the object from the cache.
      * <p>
-     * Please note that a read lock is maintained on the cache contents; you 
+     * Please note that if the entry has no value yet, a read lock is acquired on it; you 
      * may be stuck waiting for a writer to produce the result over the
      * course of calling this method.
      * </p>
@@ -229,13 +219,12 @@ final class DefaultObjectCache implements ObjectCache {
     }
 
     public Object peek(final Object key) {
-        synchronized (cache) {
-            if (!cache.containsKey(key)) {
-                // no entry for this key - so no value
-                return null;
-            }
-            return getEntry(key).peek();
+        final ObjectCacheEntry entry = cache.get(key);
+        if (entry == null) {
+            // no entry for this key - so no value
+            return null;
         }
+        return entry.peek();
     }
 
     public void writeLock(final Object key) {
@@ -243,12 +232,11 @@ final class DefaultObjectCache implements ObjectCache {
     }
 
     public void writeUnLock(final Object key) {
-        synchronized (cache) {
-            if (!cache.containsKey(key)) {
-                throw new IllegalStateException("Cannot unlock prior to locking");
-            }
-            getEntry(key).writeUnLock();
+        final ObjectCacheEntry entry = cache.get(key);
+        if (entry == null) {
+            throw new IllegalStateException("Cannot unlock prior to locking");
         }
+        entry.writeUnLock();
     }
 
     /**
@@ -265,14 +253,15 @@ final class DefaultObjectCache implements ObjectCache {
      * @return ObjectCacheEntry
      */
     private ObjectCacheEntry getEntry(Object key) {
-        synchronized (cache) {
-            ObjectCacheEntry entry = (ObjectCacheEntry) cache.get(key);
+        ObjectCacheEntry entry = cache.get(key);
+        if (entry == null) {
+            final ObjectCacheEntry created = new ObjectCacheEntry();
+            entry = cache.putIfAbsent(key, created);
             if (entry == null) {
-                entry = new ObjectCacheEntry();
-                cache.put(key, entry);
+                entry = created;
             }
-            return entry;
         }
+        return entry;
     }
     
     /**
@@ -281,19 +270,13 @@ final class DefaultObjectCache implements ObjectCache {
      * @return Set of keys
      */
     public Set<Object> getKeys(){
-    	Set<Object> ret = null;
-    	synchronized (cache) {
-    		ret = new HashSet<Object>( cache.keySet() );
-		}
-    	return ret;
+        return new HashSet<Object>(cache.keySet());
     }
 
-	/**
-	 * Removes this item from the object cache.
-	 */
-	public void remove(Object key) {
-		synchronized (cache) {
-			cache.remove(key);
-		}
-	}
+    /**
+     * Removes this item from the object cache.
+     */
+    public void remove(Object key) {
+        cache.remove(key);
+    }
 }
@@ -162,7 +162,7 @@ public final class ObjectCaches {
             }
 
             public void writeUnLock( Object key ) {
-                level1.writeLock(key);
+                level1.writeUnLock(key);
             }
             
             public Set<Object> getKeys(){
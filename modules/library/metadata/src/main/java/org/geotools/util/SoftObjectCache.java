@@ -2,11 +2,12 @@ package org.geotools.util;
 
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -31,7 +32,7 @@ final class SoftObjectCache implements ObjectCache {
     /**
      * The cached values for each key.
      */
-    private final Map/*<Object,SoftReference<Object>>*/ cache;
+    private final ConcurrentMap/*<Object,SoftReference<Object>>*/ cache;
 
     /**
      * The locks for keys under construction.
@@ -50,7 +51,7 @@ final class SoftObjectCache implements ObjectCache {
 	 * Creates a new cache using the indicated initialSize.
 	 */
     public SoftObjectCache(final int initialSize){
-        cache = Collections.synchronizedMap(new HashMap<Object, SoftReference<Object>>(initialSize));
+        cache = new ConcurrentHashMap<Object, SoftReference<Object>>(Math.max(initialSize, 16));
         locks = new HashMap<Object, ReentrantLock>();
     }
     
@@ -77,7 +78,7 @@ final class SoftObjectCache implements ObjectCache {
             Reference reference = (Reference) stored;
             Object value = reference.get();
             if (value == null) {
-                cache.remove(key);
+                cache.remove(key, stored);
             }
             return value;
         }
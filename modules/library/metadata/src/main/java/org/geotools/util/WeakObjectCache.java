@@ -18,12 +18,13 @@ package org.geotools.util;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -47,7 +48,7 @@ final class WeakObjectCache implements ObjectCache {
 	/**
 	 * The cached values for each key.
 	 */
-	private final Map/* <Object,WeakReference> */cache;
+	private final ConcurrentMap/* <Object,WeakReference> */cache;
 
 	/**
 	 * The locks for keys under construction.
@@ -65,7 +66,7 @@ final class WeakObjectCache implements ObjectCache {
 	 * Creates a new cache using the indicated initialSize.
 	 */
 	public WeakObjectCache(final int initialSize) {
-		cache = Collections.synchronizedMap(new HashMap(initialSize));
+		cache = new ConcurrentHashMap(Math.max(initialSize, 16));
 		locks = new HashMap();
 	}
 
@@ -109,7 +110,7 @@ final class WeakObjectCache implements ObjectCache {
 			Reference reference = (Reference) stored;
 			Object value = reference.get();
 			if (value == null) {
-				cache.remove(key);
+				cache.remove(key, stored);
 			}
 			return value;
 		}
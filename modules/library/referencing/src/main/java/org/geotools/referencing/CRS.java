@@ -18,6 +18,7 @@ package org.geotools.referencing;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -92,6 +93,7 @@ import org.opengis.referencing.operation.CoordinateOperation;
 import org.opengis.referencing.operation.CoordinateOperationFactory;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.MathTransform2D;
+import org.opengis.referencing.operation.Matrix;
 import org.opengis.referencing.operation.NoninvertibleTransformException;
 import org.opengis.referencing.operation.TransformException;
 
@@ -176,23 +178,28 @@ public final class CRS {
      * A factory for CRS creation with (<var>latitude</var>, <var>longitude</var>) axis order
      * (unless otherwise specified in system property). Will be created only when first needed.
      */
-    private static CRSAuthorityFactory defaultFactory;
+    private static volatile CRSAuthorityFactory defaultFactory;
 
     /**
      * A factory for CRS creation with (<var>longitude</var>, <var>latitude</var>) axis order.
      * Will be created only when first needed.
      */
-    private static CRSAuthorityFactory xyFactory;
+    private static volatile CRSAuthorityFactory xyFactory;
 
     /**
      * A factory for default (non-lenient) operations.
      */
-    private static CoordinateOperationFactory strictFactory;
+    private static volatile CoordinateOperationFactory strictFactory;
 
     /**
      * A factory for default lenient operations.
      */
-    private static CoordinateOperationFactory lenientFactory;
+    private static volatile CoordinateOperationFactory lenientFactory;
+
+    /**
+     * The transforms returned by {@link #findMathTransform}, keyed by CRS structure.
+     */
+    private static final MathTransformCache TRANSFORMS = new MathTransformCache();
 
     /**
      * Registers a listener automatically invoked when the system-wide configuration changed.
@@ -206,6 +213,7 @@ public final class CRS {
                     strictFactory  = null;
                     lenientFactory = null;
                 }
+                TRANSFORMS.clear();
             }
         });
     }
@@ -243,20 +251,26 @@ public final class CRS {
      *
      * @since 2.3
      */
-    public static synchronized CRSAuthorityFactory getAuthorityFactory(final boolean longitudeFirst)
+    public static CRSAuthorityFactory getAuthorityFactory(final boolean longitudeFirst)
             throws FactoryRegistryException
     {
         CRSAuthorityFactory factory = (longitudeFirst) ? xyFactory : defaultFactory;
-        if (factory == null) try {
-            factory = new DefaultAuthorityFactory(longitudeFirst);
-            if (longitudeFirst) {
-                xyFactory = factory;
-            } else {
-                defaultFactory = factory;
+        if (factory == null) {
+            // Lock only for the initialization, the CRS.decode calls must not contend here.
+            synchronized (CRS.class) {
+                factory = (longitudeFirst) ? xyFactory : defaultFactory;
+                if (factory == null) try {
+                    factory = new DefaultAuthorityFactory(longitudeFirst);
+                    if (longitudeFirst) {
+                        xyFactory = factory;
+                    } else {
+                        defaultFactory = factory;
+                    }
+                } catch (NoSuchElementException exception) {
+                    // No factory registered in FactoryFinder.
+                    throw new FactoryNotFoundException(null, exception);
+                }
             }
-        } catch (NoSuchElementException exception) {
-            // No factory registered in FactoryFinder.
-            throw new FactoryNotFoundException(null, exception);
         }
         return factory;
     }
@@ -271,18 +285,23 @@ public final class CRS {
      *
      * @since 2.4
      */
-    public static synchronized CoordinateOperationFactory getCoordinateOperationFactory(final boolean lenient) {
+    public static CoordinateOperationFactory getCoordinateOperationFactory(final boolean lenient) {
         CoordinateOperationFactory factory = (lenient) ? lenientFactory : strictFactory;
         if (factory == null) {
-            final Hints hints = GeoTools.getDefaultHints();
-            if (lenient) {
-                hints.put(Hints.LENIENT_DATUM_SHIFT, Boolean.TRUE);
-            }
-            factory = ReferencingFactoryFinder.getCoordinateOperationFactory(hints);
-            if (lenient) {
-                lenientFactory = factory;
-            } else {
-                strictFactory = factory;
+            synchronized (CRS.class) {
+                factory = (lenient) ? lenientFactory : strictFactory;
+                if (factory == null) {
+                    final Hints hints = GeoTools.getDefaultHints();
+                    if (lenient) {
+                        hints.put(Hints.LENIENT_DATUM_SHIFT, Boolean.TRUE);
+                    }
+                    factory = ReferencingFactoryFinder.getCoordinateOperationFactory(hints);
+                    if (lenient) {
+                        lenientFactory = factory;
+                    } else {
+                        strictFactory = factory;
+                    }
+                }
             }
         }
         return factory;
@@ -1146,8 +1165,20 @@ search:             if (DefaultCoordinateSystemAxis.isCompassDirection(axis.getD
             // Slight optimization in order to avoid the overhead of loading the full referencing engine.
             return IdentityTransform.create(sourceCRS.getCoordinateSystem().getDimension());
         }
-        CoordinateOperationFactory operationFactory = getCoordinateOperationFactory(lenient);
-        return operationFactory.createOperation(sourceCRS, targetCRS).getMathTransform();
+        return TRANSFORMS.get(sourceCRS, targetCRS, lenient);
+    }
+
+    /**
+     * Returns the cache of the transforms returned by the {@code findMathTransform} methods.
+     * The cache is cleared when the {@linkplain #reset referencing system is reset} or when
+     * the system-wide configuration changed.
+     *
+     * @return The math transform cache.
+     *
+     * @since 8.0
+     */
+    public static MathTransformCache getMathTransformCache() {
+        return TRANSFORMS;
     }
 
     /**
@@ -1345,9 +1376,28 @@ search:             if (DefaultCoordinateSystemAxis.isCompassDirection(axis.getD
                         Errors.format(ErrorKeys.MISMATCHED_COORDINATE_REFERENCE_SYSTEM));
             }
         }
-        MathTransform mt = operation.getMathTransform();
+        final MathTransform mt = operation.getMathTransform();
         final GeneralDirectPosition centerPt = new GeneralDirectPosition(mt.getTargetDimensions());
         final GeneralEnvelope transformed = transform(mt, envelope, centerPt);
+        return expand(operation, envelope, transformed, centerPt);
+    }
+
+    /**
+     * Completes the transformation of an envelope by {@link #transform(CoordinateOperation,
+     * Envelope)}: adds the bounds of the source axes ranges crossed by the envelope, and the
+     * singularity points of the target CRS, then sets the target CRS.
+     *
+     * @param operation   The operation used to transform the envelope.
+     * @param envelope    The source envelope.
+     * @param transformed The envelope of the transformed sample points, to be expanded.
+     * @param centerPt    The source envelope center, transformed.
+     */
+    private static GeneralEnvelope expand(final CoordinateOperation operation,
+            final Envelope envelope, final GeneralEnvelope transformed,
+            final DirectPosition centerPt) throws TransformException
+    {
+        final CoordinateReferenceSystem sourceCRS = operation.getSourceCRS();
+        MathTransform mt = operation.getMathTransform();
         /*
          * If the source envelope crosses the expected range of valid coordinates, also projects
          * the range bounds as a safety. Example: if the source envelope goes from 150 to 200°E,
@@ -1513,6 +1563,187 @@ search:             if (DefaultCoordinateSystemAxis.isCompassDirection(axis.getD
         return transformed;
     }
 
+    /**
+     * Transforms many envelopes using the given {@linkplain CoordinateOperation coordinate
+     * operation}. This method gives the same guarantees than {@link #transform(CoordinateOperation,
+     * Envelope)} for each envelope, but the boundaries of all envelopes are sampled and sent
+     * to the math transform in a single array, which is much faster for long transform chains.
+     * <p>
+     * Each edge of the envelopes is divided in {@code densification} intervals. When a boundary
+     * sample is a local extremum of a target ordinate, the transform derivative at that sample is
+     * used to estimate how far the boundary goes between the sample and its neighbours, so that
+     * curved boundaries are not cut. The derivative is computed once per sample and used for
+     * every target dimension. Transforms which can't compute derivatives, like most map
+     * projections, use a parabola through the sample and its two neighbours instead.
+     * <p>
+     * Envelopes having a dimension other than 2 are transformed one by one.
+     *
+     * @param  operation The operation to use.
+     * @param  envelopes The envelopes to transform. Null elements are allowed.
+     * @param  densification The number of intervals each edge is divided into. A value of 2
+     *         samples the corners and the middle of the edges, like the single envelope methods.
+     * @return The transformed envelopes, with null elements for the null source envelopes.
+     * @throws TransformException if a transform failed.
+     *
+     * @since 8.0
+     *
+     * @see #transform(CoordinateOperation, Envelope)
+     */
+    public static GeneralEnvelope[] transform(final CoordinateOperation operation,
+            final Envelope[] envelopes, final int densification) throws TransformException
+    {
+        if (densification < 1) {
+            throw new IllegalArgumentException(Errors.format(
+                    ErrorKeys.ILLEGAL_ARGUMENT_$2, "densification", densification));
+        }
+        final GeneralEnvelope[] transformed = new GeneralEnvelope[envelopes.length];
+        final MathTransform mt = operation.getMathTransform();
+        final CoordinateReferenceSystem sourceCRS = operation.getSourceCRS();
+        int count = 0;
+        for (int i=0; i<envelopes.length; i++) {
+            final Envelope envelope = envelopes[i];
+            if (envelope == null) {
+                continue;
+            }
+            if (envelope.getDimension() != 2 || mt.getSourceDimensions() != 2 || mt.isIdentity()) {
+                transformed[i] = transform(operation, envelope);
+                continue;
+            }
+            if (sourceCRS != null) {
+                final CoordinateReferenceSystem crs = envelope.getCoordinateReferenceSystem();
+                if (crs != null && !equalsIgnoreMetadata(crs, sourceCRS)) {
+                    throw new MismatchedReferenceSystemException(
+                            Errors.format(ErrorKeys.MISMATCHED_COORDINATE_REFERENCE_SYSTEM));
+                }
+            }
+            count++;
+        }
+        if (count == 0) {
+            return transformed;
+        }
+        /*
+         * Samples the boundary of each envelope counterclockwise starting from the lower left
+         * corner, followed by the envelope center, and transforms all of them at once.
+         */
+        final int ring = 4 * densification;
+        final int perEnvelope = ring + 1;
+        final int targetDim = mt.getTargetDimensions();
+        final double[] source = new double[count * perEnvelope * 2];
+        int k = 0;
+        for (int i=0; i<envelopes.length; i++) {
+            final Envelope envelope = envelopes[i];
+            if (envelope == null || transformed[i] != null) {
+                continue;
+            }
+            final double xmin = envelope.getMinimum(0), xmax = envelope.getMaximum(0);
+            final double ymin = envelope.getMinimum(1), ymax = envelope.getMaximum(1);
+            for (int side=0; side<4; side++) {
+                for (int j=0; j<densification; j++) {
+                    final double f = (double) j / densification;
+                    switch (side) {
+                        case 0: source[k++] = xmin + f*(xmax-xmin); source[k++] = ymin; break;
+                        case 1: source[k++] = xmax; source[k++] = ymin + f*(ymax-ymin); break;
+                        case 2: source[k++] = xmax - f*(xmax-xmin); source[k++] = ymax; break;
+                        case 3: source[k++] = xmin; source[k++] = ymax - f*(ymax-ymin); break;
+                    }
+                }
+            }
+            source[k++] = envelope.getMedian(0);
+            source[k++] = envelope.getMedian(1);
+        }
+        final double[] target = new double[count * perEnvelope * targetDim];
+        mt.transform(source, 0, target, 0, count * perEnvelope);
+        /*
+         * Builds the envelope of the transformed samples, refines the local extremums
+         * along the boundary, then applies the same expansions than the single envelope
+         * method for the poles and the axis ranges.
+         */
+        final Matrix[] derivatives = new Matrix[ring];
+        boolean hasDerivative = true;
+        final GeneralDirectPosition center = new GeneralDirectPosition(targetDim);
+        int base = 0;
+        for (int i=0; i<envelopes.length; i++) {
+            final Envelope envelope = envelopes[i];
+            if (envelope == null || transformed[i] != null) {
+                continue;
+            }
+            final int t0 = base * perEnvelope * targetDim;
+            for (int d=0; d<targetDim; d++) {
+                center.setOrdinate(d, target[t0 + ring * targetDim + d]);
+            }
+            final GeneralEnvelope result = new GeneralEnvelope(center, center);
+            final GeneralDirectPosition point = new GeneralDirectPosition(targetDim);
+            for (int n=0; n<ring; n++) {
+                for (int d=0; d<targetDim; d++) {
+                    point.setOrdinate(d, target[t0 + n * targetDim + d]);
+                }
+                result.add(point);
+            }
+            Arrays.fill(derivatives, null);
+            final double[] steps = {
+                (envelope.getMaximum(0) - envelope.getMinimum(0)) / densification,
+                (envelope.getMaximum(1) - envelope.getMinimum(1)) / densification
+            };
+            final int s0 = base * perEnvelope * 2;
+            for (int n=0; n<ring; n++) {
+                if (n % densification == 0) {
+                    continue; // Corners are sampled, the extremums are reached there.
+                }
+                for (int d=0; d<targetDim; d++) {
+                    final double v    = target[t0 + n * targetDim + d];
+                    final double prev = target[t0 + ((n + ring - 1) % ring) * targetDim + d];
+                    final double next = target[t0 + ((n + 1) % ring) * targetDim + d];
+                    final boolean max = (v >= prev && v >= next);
+                    if (!max && !(v <= prev && v <= next)) {
+                        continue;
+                    }
+                    Matrix derivative = derivatives[n];
+                    if (derivative == null && hasDerivative) try {
+                        derivative = mt.derivative(new GeneralDirectPosition(
+                                source[s0 + 2*n], source[s0 + 2*n + 1]));
+                        derivatives[n] = derivative;
+                    } catch (TransformException e) {
+                        hasDerivative = false; // Map projections don't provide derivatives.
+                    } catch (UnsupportedOperationException e) {
+                        hasDerivative = false;
+                    }
+                    /*
+                     * Slope along the edge, in target units per sampling interval. A parabola
+                     * through the sample with that slope and through the uphill neighbour
+                     * gives an estimate of the extremum between them. Without derivative,
+                     * the central difference makes it the parabola through the 3 samples.
+                     */
+                    final double slope;
+                    if (derivative != null) {
+                        final int side = n / densification;
+                        final int axis = side & 1;
+                        final double sign = (side < 2) ? 1 : -1;
+                        slope = derivative.getElement(d, axis) * sign * steps[axis];
+                    } else {
+                        slope = (next - prev) / 2;
+                    }
+                    final double dt = (slope > 0) == max ? 1 : -1;
+                    final double neighbour = (dt > 0) ? next : prev;
+                    final double c = neighbour - v - slope * dt;
+                    if (c == 0 || (c < 0) != max) {
+                        continue;
+                    }
+                    final double tv = -slope / (2 * c);
+                    if (tv * dt >= 0 && Math.abs(tv) <= 1) {
+                        final double extremum = v - slope * slope / (4 * c);
+                        if (!Double.isNaN(extremum) && !Double.isInfinite(extremum)) {
+                            result.setRange(d, Math.min(result.getMinimum(d), extremum),
+                                               Math.max(result.getMaximum(d), extremum));
+                        }
+                    }
+                }
+            }
+            transformed[i] = expand(operation, envelope, result, center);
+            base++;
+        }
+        return transformed;
+    }
+
     /**
      * Transforms a rectangular envelope using the given {@linkplain MathTransform math transform}.
      * The transformation is only approximative. Invoking this method is equivalent to invoking the
@@ -1784,6 +2015,7 @@ search:             if (DefaultCoordinateSystemAxis.isCompassDirection(axis.getD
         xyFactory = null;
         strictFactory = null;
         lenientFactory = null;
+        TRANSFORMS.clear();
     }
     
     /**
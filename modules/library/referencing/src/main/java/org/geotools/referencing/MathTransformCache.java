@@ -0,0 +1,272 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import org.geotools.util.Utilities;
+
+
+/**
+ * A bounded cache of the math transforms returned by {@link CRS#findMathTransform
+ * CRS.findMathTransform}, keyed by the structure of the source and target CRS rather than by
+ * their identity. Applications which parse or decode their own CRS instances on each request
+ * get the transform created for the first equivalent instances without going again through
+ * the search of an operation path.
+ * <p>
+ * Two CRS are considered equivalent if they have the same <cite>Well Known Text</cite>, which
+ * includes the names, authority codes and Bursa-Wolf parameters used by the operation factory
+ * to select a transformation. The WKT of the requested CRS is formatted before taking the
+ * cache lock, and compared only when the metadata-insensitive {@linkplain Object#hashCode
+ * hash codes} match and the instances are not the same. CRS which can't be formatted as WKT
+ * are compared with {@link Object#equals equals}.
+ * <p>
+ * The least recently used entries are evicted when the cache is full. Instances are thread
+ * safe, and the WKT and the transforms are created outside of the cache lock.
+ *
+ * @since 8.0
+ * @source $URL$
+ * @version $Id$
+ */
+public final class MathTransformCache {
+    /**
+     * The default maximum number of cached transforms.
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * A (source, target, lenient) key.
+     */
+    private static final class Key {
+        /**
+         * The source and target CRS.
+         */
+        private final CoordinateReferenceSystem sourceCRS, targetCRS;
+
+        /**
+         * {@code true} for lenient datum shifts.
+         */
+        private final boolean lenient;
+
+        /**
+         * The hash code value, computed once for ever at construction time.
+         */
+        private final int hash;
+
+        /**
+         * The WKT of the source and target CRS, computed at construction time so that the
+         * comparisons under the cache lock do not format anything. The empty string stands
+         * for a CRS which can't be formatted.
+         */
+        private final String sourceWKT, targetWKT;
+
+        Key(final CoordinateReferenceSystem sourceCRS, final CoordinateReferenceSystem targetCRS,
+            final boolean lenient)
+        {
+            this.sourceCRS = sourceCRS;
+            this.targetCRS = targetCRS;
+            this.lenient   = lenient;
+            this.hash = (37 * sourceCRS.hashCode() + targetCRS.hashCode()) ^ (lenient ? 1 : 0);
+            this.sourceWKT = toWKT(sourceCRS);
+            this.targetWKT = toWKT(targetCRS);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (object == this) {
+                return true;
+            }
+            if (object instanceof Key) {
+                final Key that = (Key) object;
+                if (hash != that.hash || lenient != that.lenient) {
+                    return false;
+                }
+                if (sourceCRS != that.sourceCRS) {
+                    if (!sameWKT(sourceWKT, that.sourceWKT, sourceCRS, that.sourceCRS)) {
+                        return false;
+                    }
+                }
+                if (targetCRS != that.targetCRS) {
+                    if (!sameWKT(targetWKT, that.targetWKT, targetCRS, that.targetCRS)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean sameWKT(final String wkt1, final String wkt2,
+                final CoordinateReferenceSystem crs1, final CoordinateReferenceSystem crs2)
+        {
+            if (wkt1.length() == 0 || wkt2.length() == 0) {
+                return Utilities.equals(crs1, crs2);
+            }
+            return wkt1.equals(wkt2);
+        }
+
+        private static String toWKT(final CoordinateReferenceSystem crs) {
+            try {
+                return crs.toWKT();
+            } catch (UnsupportedOperationException e) {
+                return "";
+            }
+        }
+    }
+
+    /**
+     * The maximum number of cached transforms.
+     */
+    private final int maxSize;
+
+    /**
+     * The cached transforms, in access order. Every access is synchronized on this map.
+     */
+    private final Map<Key,MathTransform> transforms;
+
+    /**
+     * The statistics.
+     */
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    /**
+     * Creates a cache with the {@linkplain #DEFAULT_MAX_SIZE default maximum size}.
+     */
+    public MathTransformCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a cache holding at most the specified number of transforms.
+     *
+     * @param maxSize The maximum number of cached transforms.
+     */
+    public MathTransformCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive");
+        }
+        this.maxSize = maxSize;
+        transforms = new LinkedHashMap<Key,MathTransform>(16, 0.75f, true) {
+            private static final long serialVersionUID = -4587230193858620442L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key,MathTransform> eldest) {
+                return size() > MathTransformCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the transform from the source to the target CRS, creating it with the
+     * {@linkplain CRS#getCoordinateOperationFactory coordinate operation factory}
+     * if no transform between equivalent CRS is cached.
+     *
+     * @param  sourceCRS The source CRS.
+     * @param  targetCRS The target CRS.
+     * @param  lenient {@code true} if the math transform should be created even when there is
+     *         no information available for a datum shift.
+     * @return The math transform from {@code sourceCRS} to {@code targetCRS}.
+     * @throws FactoryException If no math transform can be created.
+     */
+    public MathTransform get(final CoordinateReferenceSystem sourceCRS,
+                             final CoordinateReferenceSystem targetCRS,
+                             final boolean lenient) throws FactoryException
+    {
+        // Formats the WKT outside of the lock.
+        final Key key = new Key(sourceCRS, targetCRS, lenient);
+        MathTransform transform;
+        synchronized (transforms) {
+            transform = transforms.get(key);
+        }
+        if (transform != null) {
+            hits.incrementAndGet();
+            return transform;
+        }
+        misses.incrementAndGet();
+        transform = CRS.getCoordinateOperationFactory(lenient)
+                .createOperation(sourceCRS, targetCRS).getMathTransform();
+        synchronized (transforms) {
+            // An other thread may have created an equivalent transform in the meantime,
+            // keep the first one so that callers share the same instance.
+            final MathTransform previous = transforms.get(key);
+            if (previous != null) {
+                return previous;
+            }
+            transforms.put(key, transform);
+        }
+        return transform;
+    }
+
+    /**
+     * Removes all the cached transforms. The statistics are not reset.
+     */
+    public void clear() {
+        synchronized (transforms) {
+            transforms.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached transforms.
+     */
+    public int size() {
+        synchronized (transforms) {
+            return transforms.size();
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached transforms.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups which required the creation of a transform.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns a string representation of the cache statistics.
+     */
+    @Override
+    public String toString() {
+        return "MathTransformCache[size=" + size() + ", maxSize=" + maxSize +
+                ", hits=" + getHits() + ", misses=" + getMisses() + ']';
+    }
+}
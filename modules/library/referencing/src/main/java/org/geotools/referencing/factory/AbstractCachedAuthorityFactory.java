@@ -75,8 +75,8 @@ import org.opengis.util.InternationalString;
  * </p>
  * The behavior of the {@code createFoo(String)} methods first looks if a
  * previously created object exists for the given code. If such an object
- * exists, it is returned directly. The testing of the cache is synchronized and
- * may block if the referencing object is under construction.
+ * exists, it is returned directly. The testing of the cache does not lock when the
+ * object is there, and may block only if the referencing object is under construction.
  * <p>
  * If the object is not yet created, the definition is delegated to the
  * appropriate the {@code generateFoo} method and the result is cached for
@@ -654,7 +654,7 @@ public abstract class AbstractCachedAuthorityFactory extends AbstractAuthorityFa
 
 	protected abstract CoordinateOperation generateCoordinateOperation(String code)  throws FactoryException;
 
-	public synchronized Set/*<CoordinateOperation>*/ createFromCoordinateReferenceSystemCodes(
+	public Set/*<CoordinateOperation>*/ createFromCoordinateReferenceSystemCodes(
 			final String sourceCode, final String targetCode)
 			throws FactoryException {
 
@@ -696,7 +696,7 @@ public abstract class AbstractCachedAuthorityFactory extends AbstractAuthorityFa
      * @since 2.4
      */
     @Override
-    public synchronized IdentifiedObjectFinder getIdentifiedObjectFinder(
+    public IdentifiedObjectFinder getIdentifiedObjectFinder(
             final Class/*<? extends IdentifiedObject>*/ type) throws FactoryException
     {
         return new CachedFinder( type );
@@ -28,6 +28,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.WeakHashMap;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.LogRecord;
 import java.util.logging.Level;
 import javax.measure.unit.Unit;
@@ -67,6 +71,10 @@ import org.geotools.resources.i18n.LoggingKeys;
  * one. This means that this buffered factory will continue to returns them as long as
  * they are in use somewhere else in the Java virtual machine, but will be discarted
  * (and recreated on the fly if needed) otherwise.
+ * <p>
+ * Getting an object already in the cache does not acquire any lock, so that many threads
+ * can decode the same codes concurrently. When many threads ask for the same code which
+ * is not in the cache yet, only one of them creates it and the others wait for the result.
  *
  * @since 2.1
  *
@@ -93,10 +101,35 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
     volatile AbstractAuthorityFactory backingStore;
 
     /**
-     * The pool of cached objects.
+     * The pool of cached objects. Values are the objects, or {@linkplain Reference weak
+     * references} to them for the ones that are not among the most recently used.
+     */
+    private final ConcurrentMap<Object,Object> pool = new ConcurrentHashMap<Object,Object>(32);
+
+    /**
+     * The keys of the objects kept by strong references, from the least recently used
+     * to the most recently used one. Every access must be synchronized on this map.
      */
-    private final LinkedHashMap<Object,Object> pool =
-            new LinkedHashMap<Object,Object>(32, 0.75f, true);
+    private final LinkedHashMap<Object,Object> strongKeys = new LinkedHashMap<Object,Object>();
+
+    /**
+     * The objects in process of being created, by key.
+     */
+    private final ConcurrentMap<Object,Creation> pending =
+            new ConcurrentHashMap<Object,Creation>();
+
+    /**
+     * Set to {@code TRUE} while the current thread is creating an object in any buffered
+     * factory. Such a thread may be holding a backing store lock, so it does not wait for
+     * the objects created by other threads, it creates them on its own instead.
+     */
+    private static final ThreadLocal<Boolean> CREATING = new ThreadLocal<Boolean>();
+
+    /**
+     * The number of objects currently being created with the backing store. Used by
+     * {@link DeferredAuthorityFactory} in order to not dispose a backing store in use.
+     */
+    final AtomicInteger creations = new AtomicInteger();
 
     /**
      * The maximum number of objects to keep by strong reference. If a greater amount of
@@ -351,19 +384,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized IdentifiedObject createObject(final String code)
+    public IdentifiedObject createObject(final String code)
             throws FactoryException
     {
-        final IdentifiedObject object;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof IdentifiedObject) {
-            object = (IdentifiedObject) cached;
-        } else {
-            object = getBackingStore().createObject(code);
-        }
-        put(key, object);
-        return object;
+        return create(IdentifiedObject.class, trimAuthority(code), new Creator<IdentifiedObject>() {
+            IdentifiedObject create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createObject(code);
+            }
+        });
     }
 
     /**
@@ -372,19 +400,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized Datum createDatum(final String code)
+    public Datum createDatum(final String code)
             throws FactoryException
     {
-        final Datum datum;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof Datum) {
-            datum = (Datum) cached;
-        } else {
-            datum = getBackingStore().createDatum(code);
-        }
-        put(key, datum);
-        return datum;
+        return create(Datum.class, trimAuthority(code), new Creator<Datum>() {
+            Datum create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createDatum(code);
+            }
+        });
     }
 
     /**
@@ -393,19 +416,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized EngineeringDatum createEngineeringDatum(final String code)
+    public EngineeringDatum createEngineeringDatum(final String code)
             throws FactoryException
     {
-        final EngineeringDatum datum;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof EngineeringDatum) {
-            datum = (EngineeringDatum) cached;
-        } else {
-            datum = getBackingStore().createEngineeringDatum(code);
-        }
-        put(key, datum);
-        return datum;
+        return create(EngineeringDatum.class, trimAuthority(code), new Creator<EngineeringDatum>() {
+            EngineeringDatum create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createEngineeringDatum(code);
+            }
+        });
     }
 
     /**
@@ -414,19 +432,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized ImageDatum createImageDatum(final String code)
+    public ImageDatum createImageDatum(final String code)
             throws FactoryException
     {
-        final ImageDatum datum;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof ImageDatum) {
-            datum = (ImageDatum) cached;
-        } else {
-            datum = getBackingStore().createImageDatum(code);
-        }
-        put(key, datum);
-        return datum;
+        return create(ImageDatum.class, trimAuthority(code), new Creator<ImageDatum>() {
+            ImageDatum create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createImageDatum(code);
+            }
+        });
     }
 
     /**
@@ -435,19 +448,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized VerticalDatum createVerticalDatum(final String code)
+    public VerticalDatum createVerticalDatum(final String code)
             throws FactoryException
     {
-        final VerticalDatum datum;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof VerticalDatum) {
-            datum = (VerticalDatum) cached;
-        } else {
-            datum = getBackingStore().createVerticalDatum(code);
-        }
-        put(key, datum);
-        return datum;
+        return create(VerticalDatum.class, trimAuthority(code), new Creator<VerticalDatum>() {
+            VerticalDatum create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createVerticalDatum(code);
+            }
+        });
     }
 
     /**
@@ -456,19 +464,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized TemporalDatum createTemporalDatum(final String code)
+    public TemporalDatum createTemporalDatum(final String code)
             throws FactoryException
     {
-        final TemporalDatum datum;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof TemporalDatum) {
-            datum = (TemporalDatum) cached;
-        } else {
-            datum = getBackingStore().createTemporalDatum(code);
-        }
-        put(key, datum);
-        return datum;
+        return create(TemporalDatum.class, trimAuthority(code), new Creator<TemporalDatum>() {
+            TemporalDatum create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createTemporalDatum(code);
+            }
+        });
     }
 
     /**
@@ -477,19 +480,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized GeodeticDatum createGeodeticDatum(final String code)
+    public GeodeticDatum createGeodeticDatum(final String code)
             throws FactoryException
     {
-        final GeodeticDatum datum;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof GeodeticDatum) {
-            datum = (GeodeticDatum) cached;
-        } else {
-            datum = getBackingStore().createGeodeticDatum(code);
-        }
-        put(key, datum);
-        return datum;
+        return create(GeodeticDatum.class, trimAuthority(code), new Creator<GeodeticDatum>() {
+            GeodeticDatum create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createGeodeticDatum(code);
+            }
+        });
     }
 
     /**
@@ -498,19 +496,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized Ellipsoid createEllipsoid(final String code)
+    public Ellipsoid createEllipsoid(final String code)
             throws FactoryException
     {
-        final Ellipsoid ellipsoid;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof Ellipsoid) {
-            ellipsoid = (Ellipsoid) cached;
-        } else {
-            ellipsoid = getBackingStore().createEllipsoid(code);
-        }
-        put(key, ellipsoid);
-        return ellipsoid;
+        return create(Ellipsoid.class, trimAuthority(code), new Creator<Ellipsoid>() {
+            Ellipsoid create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createEllipsoid(code);
+            }
+        });
     }
 
     /**
@@ -519,19 +512,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized PrimeMeridian createPrimeMeridian(final String code)
+    public PrimeMeridian createPrimeMeridian(final String code)
             throws FactoryException
     {
-        final PrimeMeridian meridian;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof PrimeMeridian) {
-            meridian = (PrimeMeridian) cached;
-        } else {
-            meridian = getBackingStore().createPrimeMeridian(code);
-        }
-        put(key, meridian);
-        return meridian;
+        return create(PrimeMeridian.class, trimAuthority(code), new Creator<PrimeMeridian>() {
+            PrimeMeridian create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createPrimeMeridian(code);
+            }
+        });
     }
 
     /**
@@ -540,19 +528,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized Extent createExtent(final String code)
+    public Extent createExtent(final String code)
             throws FactoryException
     {
-        final Extent extent;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof Extent) {
-            extent = (Extent) cached;
-        } else {
-            extent = getBackingStore().createExtent(code);
-        }
-        put(key, extent);
-        return extent;
+        return create(Extent.class, trimAuthority(code), new Creator<Extent>() {
+            Extent create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createExtent(code);
+            }
+        });
     }
 
     /**
@@ -561,19 +544,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized CoordinateSystem createCoordinateSystem(final String code)
+    public CoordinateSystem createCoordinateSystem(final String code)
             throws FactoryException
     {
-        final CoordinateSystem cs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof CoordinateSystem) {
-            cs = (CoordinateSystem) cached;
-        } else {
-            cs = getBackingStore().createCoordinateSystem(code);
-        }
-        put(key, cs);
-        return cs;
+        return create(CoordinateSystem.class, trimAuthority(code), new Creator<CoordinateSystem>() {
+            CoordinateSystem create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createCoordinateSystem(code);
+            }
+        });
     }
 
     /**
@@ -582,19 +560,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized CartesianCS createCartesianCS(final String code)
+    public CartesianCS createCartesianCS(final String code)
             throws FactoryException
     {
-        final CartesianCS cs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof CartesianCS) {
-            cs = (CartesianCS) cached;
-        } else {
-            cs = getBackingStore().createCartesianCS(code);
-        }
-        put(key, cs);
-        return cs;
+        return create(CartesianCS.class, trimAuthority(code), new Creator<CartesianCS>() {
+            CartesianCS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createCartesianCS(code);
+            }
+        });
     }
 
     /**
@@ -603,19 +576,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized PolarCS createPolarCS(final String code)
+    public PolarCS createPolarCS(final String code)
             throws FactoryException
     {
-        final PolarCS cs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof PolarCS) {
-            cs = (PolarCS) cached;
-        } else {
-            cs = getBackingStore().createPolarCS(code);
-        }
-        put(key, cs);
-        return cs;
+        return create(PolarCS.class, trimAuthority(code), new Creator<PolarCS>() {
+            PolarCS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createPolarCS(code);
+            }
+        });
     }
 
     /**
@@ -624,19 +592,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized CylindricalCS createCylindricalCS(final String code)
+    public CylindricalCS createCylindricalCS(final String code)
             throws FactoryException
     {
-        final CylindricalCS cs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof CylindricalCS) {
-            cs = (CylindricalCS) cached;
-        } else {
-            cs = getBackingStore().createCylindricalCS(code);
-        }
-        put(key, cs);
-        return cs;
+        return create(CylindricalCS.class, trimAuthority(code), new Creator<CylindricalCS>() {
+            CylindricalCS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createCylindricalCS(code);
+            }
+        });
     }
 
     /**
@@ -645,19 +608,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized SphericalCS createSphericalCS(final String code)
+    public SphericalCS createSphericalCS(final String code)
             throws FactoryException
     {
-        final SphericalCS cs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof SphericalCS) {
-            cs = (SphericalCS) cached;
-        } else {
-            cs = getBackingStore().createSphericalCS(code);
-        }
-        put(key, cs);
-        return cs;
+        return create(SphericalCS.class, trimAuthority(code), new Creator<SphericalCS>() {
+            SphericalCS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createSphericalCS(code);
+            }
+        });
     }
 
     /**
@@ -666,19 +624,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized EllipsoidalCS createEllipsoidalCS(final String code)
+    public EllipsoidalCS createEllipsoidalCS(final String code)
             throws FactoryException
     {
-        final EllipsoidalCS cs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof EllipsoidalCS) {
-            cs = (EllipsoidalCS) cached;
-        } else {
-            cs = getBackingStore().createEllipsoidalCS(code);
-        }
-        put(key, cs);
-        return cs;
+        return create(EllipsoidalCS.class, trimAuthority(code), new Creator<EllipsoidalCS>() {
+            EllipsoidalCS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createEllipsoidalCS(code);
+            }
+        });
     }
 
     /**
@@ -687,19 +640,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized VerticalCS createVerticalCS(final String code)
+    public VerticalCS createVerticalCS(final String code)
             throws FactoryException
     {
-        final VerticalCS cs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof VerticalCS) {
-            cs = (VerticalCS) cached;
-        } else {
-            cs = getBackingStore().createVerticalCS(code);
-        }
-        put(key, cs);
-        return cs;
+        return create(VerticalCS.class, trimAuthority(code), new Creator<VerticalCS>() {
+            VerticalCS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createVerticalCS(code);
+            }
+        });
     }
 
     /**
@@ -708,19 +656,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized TimeCS createTimeCS(final String code)
+    public TimeCS createTimeCS(final String code)
             throws FactoryException
     {
-        final TimeCS cs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof TimeCS) {
-            cs = (TimeCS) cached;
-        } else {
-            cs = getBackingStore().createTimeCS(code);
-        }
-        put(key, cs);
-        return cs;
+        return create(TimeCS.class, trimAuthority(code), new Creator<TimeCS>() {
+            TimeCS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createTimeCS(code);
+            }
+        });
     }
 
     /**
@@ -729,19 +672,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized CoordinateSystemAxis createCoordinateSystemAxis(final String code)
+    public CoordinateSystemAxis createCoordinateSystemAxis(final String code)
             throws FactoryException
     {
-        final CoordinateSystemAxis axis;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof CoordinateSystemAxis) {
-            axis = (CoordinateSystemAxis) cached;
-        } else {
-            axis = getBackingStore().createCoordinateSystemAxis(code);
-        }
-        put(key, axis);
-        return axis;
+        return create(CoordinateSystemAxis.class, trimAuthority(code), new Creator<CoordinateSystemAxis>() {
+            CoordinateSystemAxis create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createCoordinateSystemAxis(code);
+            }
+        });
     }
 
     /**
@@ -750,19 +688,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized Unit<?> createUnit(final String code)
+    public Unit<?> createUnit(final String code)
             throws FactoryException
     {
-        final Unit<?> unit;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof Unit) {
-            unit = (Unit) cached;
-        } else {
-            unit = getBackingStore().createUnit(code);
-        }
-        put(key, unit);
-        return unit;
+        return create(Unit.class, trimAuthority(code), new Creator<Unit>() {
+            Unit create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createUnit(code);
+            }
+        });
     }
 
     /**
@@ -771,19 +704,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized CoordinateReferenceSystem createCoordinateReferenceSystem(final String code)
+    public CoordinateReferenceSystem createCoordinateReferenceSystem(final String code)
             throws FactoryException
     {
-        final CoordinateReferenceSystem crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof CoordinateReferenceSystem) {
-            crs = (CoordinateReferenceSystem) cached;
-        } else {
-            crs = getBackingStore().createCoordinateReferenceSystem(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(CoordinateReferenceSystem.class, trimAuthority(code), new Creator<CoordinateReferenceSystem>() {
+            CoordinateReferenceSystem create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createCoordinateReferenceSystem(code);
+            }
+        });
     }
 
     /**
@@ -792,19 +720,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized CompoundCRS createCompoundCRS(final String code)
+    public CompoundCRS createCompoundCRS(final String code)
             throws FactoryException
     {
-        final CompoundCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof CompoundCRS) {
-            crs = (CompoundCRS) cached;
-        } else {
-            crs = getBackingStore().createCompoundCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(CompoundCRS.class, trimAuthority(code), new Creator<CompoundCRS>() {
+            CompoundCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createCompoundCRS(code);
+            }
+        });
     }
 
     /**
@@ -813,19 +736,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized DerivedCRS createDerivedCRS(final String code)
+    public DerivedCRS createDerivedCRS(final String code)
             throws FactoryException
     {
-        final DerivedCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof DerivedCRS) {
-            crs = (DerivedCRS) cached;
-        } else {
-            crs = getBackingStore().createDerivedCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(DerivedCRS.class, trimAuthority(code), new Creator<DerivedCRS>() {
+            DerivedCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createDerivedCRS(code);
+            }
+        });
     }
 
     /**
@@ -834,19 +752,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized EngineeringCRS createEngineeringCRS(final String code)
+    public EngineeringCRS createEngineeringCRS(final String code)
             throws FactoryException
     {
-        final EngineeringCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof EngineeringCRS) {
-            crs = (EngineeringCRS) cached;
-        } else {
-            crs = getBackingStore().createEngineeringCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(EngineeringCRS.class, trimAuthority(code), new Creator<EngineeringCRS>() {
+            EngineeringCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createEngineeringCRS(code);
+            }
+        });
     }
 
     /**
@@ -855,19 +768,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized GeographicCRS createGeographicCRS(final String code)
+    public GeographicCRS createGeographicCRS(final String code)
             throws FactoryException
     {
-        final GeographicCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof GeographicCRS) {
-            crs = (GeographicCRS) cached;
-        } else {
-            crs = getBackingStore().createGeographicCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(GeographicCRS.class, trimAuthority(code), new Creator<GeographicCRS>() {
+            GeographicCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createGeographicCRS(code);
+            }
+        });
     }
 
     /**
@@ -876,19 +784,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized GeocentricCRS createGeocentricCRS(final String code)
+    public GeocentricCRS createGeocentricCRS(final String code)
             throws FactoryException
     {
-        final GeocentricCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof GeocentricCRS) {
-            crs = (GeocentricCRS) cached;
-        } else {
-            crs = getBackingStore().createGeocentricCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(GeocentricCRS.class, trimAuthority(code), new Creator<GeocentricCRS>() {
+            GeocentricCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createGeocentricCRS(code);
+            }
+        });
     }
 
     /**
@@ -897,19 +800,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized ImageCRS createImageCRS(final String code)
+    public ImageCRS createImageCRS(final String code)
             throws FactoryException
     {
-        final ImageCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof ImageCRS) {
-            crs = (ImageCRS) cached;
-        } else {
-            crs = getBackingStore().createImageCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(ImageCRS.class, trimAuthority(code), new Creator<ImageCRS>() {
+            ImageCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createImageCRS(code);
+            }
+        });
     }
 
     /**
@@ -918,19 +816,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized ProjectedCRS createProjectedCRS(final String code)
+    public ProjectedCRS createProjectedCRS(final String code)
             throws FactoryException
     {
-        final ProjectedCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof ProjectedCRS) {
-            crs = (ProjectedCRS) cached;
-        } else {
-            crs = getBackingStore().createProjectedCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(ProjectedCRS.class, trimAuthority(code), new Creator<ProjectedCRS>() {
+            ProjectedCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createProjectedCRS(code);
+            }
+        });
     }
 
     /**
@@ -939,19 +832,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized TemporalCRS createTemporalCRS(final String code)
+    public TemporalCRS createTemporalCRS(final String code)
             throws FactoryException
     {
-        final TemporalCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof TemporalCRS) {
-            crs = (TemporalCRS) cached;
-        } else {
-            crs = getBackingStore().createTemporalCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(TemporalCRS.class, trimAuthority(code), new Creator<TemporalCRS>() {
+            TemporalCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createTemporalCRS(code);
+            }
+        });
     }
 
     /**
@@ -960,19 +848,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @throws FactoryException if the object creation failed.
      */
     @Override
-    public synchronized VerticalCRS createVerticalCRS(final String code)
+    public VerticalCRS createVerticalCRS(final String code)
             throws FactoryException
     {
-        final VerticalCRS crs;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof VerticalCRS) {
-            crs = (VerticalCRS) cached;
-        } else {
-            crs = getBackingStore().createVerticalCRS(code);
-        }
-        put(key, crs);
-        return crs;
+        return create(VerticalCRS.class, trimAuthority(code), new Creator<VerticalCRS>() {
+            VerticalCRS create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createVerticalCRS(code);
+            }
+        });
     }
 
     /**
@@ -983,19 +866,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @since 2.2
      */
     @Override
-    public synchronized ParameterDescriptor createParameterDescriptor(final String code)
+    public ParameterDescriptor createParameterDescriptor(final String code)
             throws FactoryException
     {
-        final ParameterDescriptor parameter;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof ParameterDescriptor) {
-            parameter = (ParameterDescriptor) cached;
-        } else {
-            parameter = getBackingStore().createParameterDescriptor(code);
-        }
-        put(key, parameter);
-        return parameter;
+        return create(ParameterDescriptor.class, trimAuthority(code), new Creator<ParameterDescriptor>() {
+            ParameterDescriptor create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createParameterDescriptor(code);
+            }
+        });
     }
 
     /**
@@ -1006,19 +884,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @since 2.2
      */
     @Override
-    public synchronized OperationMethod createOperationMethod(final String code)
+    public OperationMethod createOperationMethod(final String code)
             throws FactoryException
     {
-        final OperationMethod method;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof OperationMethod) {
-            method = (OperationMethod) cached;
-        } else {
-            method = getBackingStore().createOperationMethod(code);
-        }
-        put(key, method);
-        return method;
+        return create(OperationMethod.class, trimAuthority(code), new Creator<OperationMethod>() {
+            OperationMethod create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createOperationMethod(code);
+            }
+        });
     }
 
     /**
@@ -1029,19 +902,14 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @since 2.2
      */
     @Override
-    public synchronized CoordinateOperation createCoordinateOperation(final String code)
+    public CoordinateOperation createCoordinateOperation(final String code)
             throws FactoryException
     {
-        final CoordinateOperation operation;
-        final String key = trimAuthority(code);
-        final Object cached = get(key);
-        if (cached instanceof CoordinateOperation) {
-            operation = (CoordinateOperation) cached;
-        } else {
-            operation = getBackingStore().createCoordinateOperation(code);
-        }
-        put(key, operation);
-        return operation;
+        return create(CoordinateOperation.class, trimAuthority(code), new Creator<CoordinateOperation>() {
+            CoordinateOperation create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return backingStore.createCoordinateOperation(code);
+            }
+        });
     }
 
     /**
@@ -1052,21 +920,18 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @since 2.2
      */
     @Override
-    public synchronized Set<CoordinateOperation> createFromCoordinateReferenceSystemCodes(
+    @SuppressWarnings("unchecked")
+    public Set<CoordinateOperation> createFromCoordinateReferenceSystemCodes(
                         final String sourceCRS, final String targetCRS)
             throws FactoryException
     {
-        final Set<CoordinateOperation> operations;
         final CodePair key = new CodePair(trimAuthority(sourceCRS), trimAuthority(targetCRS));
-        final Object cached = get(key);
-        if (cached instanceof Set) {
-            operations = (Set<CoordinateOperation>) cached;
-        } else {
-            operations = Collections.unmodifiableSet(getBackingStore()
-                         .createFromCoordinateReferenceSystemCodes(sourceCRS, targetCRS));
-        }
-        put(key, operations);
-        return operations;
+        return create(Set.class, key, new Creator<Set>() {
+            Set create(final AbstractAuthorityFactory backingStore) throws FactoryException {
+                return Collections.unmodifiableSet(backingStore
+                       .createFromCoordinateReferenceSystemCodes(sourceCRS, targetCRS));
+            }
+        });
     }
 
     /**
@@ -1115,7 +980,7 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
      * @since 2.4
      */
     @Override
-    public synchronized IdentifiedObjectFinder getIdentifiedObjectFinder(
+    public IdentifiedObjectFinder getIdentifiedObjectFinder(
             final Class<? extends IdentifiedObject> type) throws FactoryException
     {
         return new Finder(getBackingStore().getIdentifiedObjectFinder(type));
@@ -1147,8 +1012,9 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
         public IdentifiedObject find(final IdentifiedObject object) throws FactoryException {
             /*
              * Do not synchronize on 'BufferedAuthorityFactory.this'. This method may take a
-             * while to execute and we don't want to block other threads. The synchronizations
-             * in the 'create' methods and in the 'findPool' map should be suffisient.
+             * while to execute and we don't want to block other threads. The concurrent pool
+             * used by the 'create' methods and the synchronizations on the 'findPool' map
+             * should be suffisient.
              *
              * TODO: avoid to search for the same object twice. For now we consider that this
              *       is not a big deal if the same object is searched twice; it is "just" a
@@ -1201,49 +1067,139 @@ public class BufferedAuthorityFactory extends AbstractAuthorityFactory implement
             backingStore = null;
         }
         pool.clear();
+        synchronized (strongKeys) {
+            strongKeys.clear();
+        }
         findPool.clear();
         super.dispose();
     }
 
     /**
-     * Returns an object from the pool for the specified code. If the object was retained as a
-     * {@linkplain Reference weak reference}, the {@link Reference#get referent} is returned.
+     * Creates an object with the backing store. Instances are created as anonymous classes
+     * by the {@code createFoo(...)} methods.
+     */
+    private static abstract class Creator<T> {
+        /**
+         * Creates the object using the specified backing store.
+         */
+        abstract T create(AbstractAuthorityFactory backingStore) throws FactoryException;
+    }
+
+    /**
+     * An object in process of being created by a thread. The other threads asking
+     * for the same key wait for it.
+     */
+    private static final class Creation extends CountDownLatch {
+        Creation() {
+            super(1);
+        }
+    }
+
+    /**
+     * Returns the object of the given type cached for the given key, or creates it. Only one
+     * thread at a time creates the object for a given key, the other ones asking for the same
+     * key wait for it to be completed and reuse its result.
      *
-     * @todo Consider logging a message here to the finer or finest level.
+     * @param  type    The expected object type.
+     * @param  key     The key in the pool.
+     * @param  creator The creator to use if the object is not in the pool.
+     * @return The cached or created object.
+     * @throws FactoryException if the object creation failed.
+     */
+    private <T> T create(final Class<T> type, final Object key, final Creator<T> creator)
+            throws FactoryException
+    {
+        Object cached = get(key);
+        while (!type.isInstance(cached)) {
+            final boolean nested = Boolean.TRUE.equals(CREATING.get());
+            final Creation creation = new Creation();
+            final Creation running = nested ? null : pending.putIfAbsent(key, creation);
+            if (running != null) {
+                try {
+                    running.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FactoryException(e.getLocalizedMessage(), e);
+                }
+                // The other thread may have failed, or created an object of an other type.
+                cached = get(key);
+                continue;
+            }
+            try {
+                CREATING.set(Boolean.TRUE);
+                cached = get(key);
+                if (!type.isInstance(cached)) {
+                    final T created;
+                    creations.incrementAndGet();
+                    try {
+                        created = creator.create(getBackingStore());
+                    } finally {
+                        creations.decrementAndGet();
+                    }
+                    if (created == null) {
+                        return null;
+                    }
+                    put(key, created);
+                    cached = created;
+                }
+            } finally {
+                if (!nested) {
+                    CREATING.remove();
+                    pending.remove(key, creation);
+                    creation.countDown();
+                }
+            }
+        }
+        return type.cast(cached);
+    }
+
+    /**
+     * Returns an object from the pool for the specified code. If the object was retained as a
+     * {@linkplain Reference weak reference}, the {@link Reference#get referent} is returned
+     * and put back among the objects kept by strong references.
      */
     private Object get(final Object key) {
-        assert Thread.holdsLock(this);
         Object object = pool.get(key);
         if (object instanceof Reference) {
-            object = ((Reference<?>) object).get();
+            final Reference<?> reference = (Reference<?>) object;
+            object = reference.get();
+            if (object == null) {
+                pool.remove(key, reference);
+            } else if (pool.replace(key, reference, object)) {
+                retain(key);
+            }
         }
         return object;
     }
 
     /**
-     * Put an element in the pool. This method is invoked everytime a {@code createFoo(...)}
-     * method is invoked, even if an object was already in the pool for the given code, for
-     * the following reasons: 1) Replaces weak reference by strong reference (if applicable)
-     * and 2) Alters the linked hash set order, so that this object is declared as the last
-     * one used.
+     * Put an element in the pool. The object is retained by strong reference, and the
+     * least recently created or revived objects are replaced by weak references if the
+     * maximum amount of strong references is exceeded.
      */
     private void put(final Object key, final Object object) {
-        assert Thread.holdsLock(this);
         pool.put(key, object);
-        int toReplace = pool.size() - maxStrongReferences;
-        if (toReplace > 0) {
-            for (final Iterator<Map.Entry<Object,Object>> it=pool.entrySet().iterator(); it.hasNext();) {
-                final Map.Entry<Object,Object> entry = it.next();
-                final Object value = entry.getValue();
-                if (value instanceof Reference) {
-                    if (((Reference) value).get() == null) {
-                        it.remove();
-                    }
-                    continue;
-                }
-                entry.setValue(new WeakReference<Object>(value));
-                if (--toReplace == 0) {
-                    break;
+        retain(key);
+    }
+
+    /**
+     * Declares the object for the given key as the most recently used one, and replaces the
+     * strong references to the oldest objects by weak references if needed. Cache hits on
+     * objects already kept by strong reference do not invoke this method, so they do not
+     * need any lock.
+     */
+    private void retain(final Object key) {
+        synchronized (strongKeys) {
+            strongKeys.remove(key);
+            strongKeys.put(key, key);
+            int toReplace = strongKeys.size() - maxStrongReferences;
+            for (final Iterator<Object> it=strongKeys.keySet().iterator(); toReplace > 0 && it.hasNext();) {
+                final Object oldest = it.next();
+                it.remove();
+                toReplace--;
+                final Object value = pool.get(oldest);
+                if (value != null && !(value instanceof Reference)) {
+                    pool.replace(oldest, value, new WeakReference<Object>(value));
                 }
             }
         }
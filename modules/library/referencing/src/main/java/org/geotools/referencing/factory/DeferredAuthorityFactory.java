@@ -249,7 +249,7 @@ public abstract class DeferredAuthorityFactory extends BufferedAuthorityFactory
     private final class Disposer extends TimerTask {
         public void run() {
             synchronized (DeferredAuthorityFactory.this) {
-                if (used || !canDisposeBackingStore(backingStore)) {
+                if (used || creations.get() != 0 || !canDisposeBackingStore(backingStore)) {
                     used = false;
                     return;
                 }
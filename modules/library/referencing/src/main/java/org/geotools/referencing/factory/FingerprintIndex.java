@@ -0,0 +1,333 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+import org.opengis.referencing.AuthorityFactory;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.IdentifiedObject;
+import org.opengis.referencing.crs.CompoundCRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.EngineeringCRS;
+import org.opengis.referencing.crs.GeocentricCRS;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ImageCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.crs.SingleCRS;
+import org.opengis.referencing.crs.TemporalCRS;
+import org.opengis.referencing.crs.VerticalCRS;
+import org.opengis.referencing.datum.Datum;
+import org.opengis.referencing.datum.Ellipsoid;
+import org.opengis.referencing.datum.GeodeticDatum;
+import org.opengis.referencing.datum.PrimeMeridian;
+import org.opengis.referencing.datum.VerticalDatum;
+import org.opengis.referencing.operation.MathTransform;
+
+import org.geotools.referencing.operation.projection.MapProjection;
+import org.geotools.referencing.operation.transform.ConcatenatedTransform;
+
+import static org.geotools.referencing.factory.IdentifiedObjectFinder.LOGGER;
+
+
+/**
+ * An index of the coordinate reference systems provided by an authority factory, keyed by a
+ * fingerprint made of the properties {@linkplain org.geotools.referencing.CRS#equalsIgnoreMetadata
+ * compared ignoring metadata}: the kind of CRS and its dimension, the ellipsoid, the prime
+ * meridian, and the map projection with its parameters normalized to metres and degrees. Two
+ * CRS equal ignoring metadata always have the same fingerprint, so an
+ * {@link IdentifiedObjectFinder} only needs to create and compare the few CRS sharing the
+ * fingerprint of the object looked up, instead of every CRS of the factory.
+ * <p>
+ * The fingerprint leaves out the coordinate system axes, because the finders of
+ * {@link TransformedAuthorityFactory} also compare the candidates with their axis order,
+ * directions and units changed.
+ * <p>
+ * Building the index requires the creation of every CRS once, which takes as long as a
+ * full scan. It is built in a background thread the first time it is needed, the finders
+ * doing the usual scan in the meantime.
+ *
+ * @since 8.0
+ * @source $URL$
+ * @version $Id$
+ */
+final class FingerprintIndex {
+    /**
+     * The indexes for each factory and type of objects.
+     */
+    private static final Map<AuthorityFactory, Map<Class<?>,FingerprintIndex>> INDEXES =
+            new WeakHashMap<AuthorityFactory, Map<Class<?>,FingerprintIndex>>();
+
+    /**
+     * The scale of the rounded values in fingerprints.
+     */
+    private static final double SCALE = 1E6;
+
+    /**
+     * The proxy the CRS are created from, cleared once the index has been built
+     * in order to not retain the factory.
+     */
+    private AuthorityFactoryProxy proxy;
+
+    /**
+     * The codes for each fingerprint. Written only by the building thread.
+     */
+    private final Map<String,Set<String>> codes = new HashMap<String,Set<String>>();
+
+    /**
+     * Released when the index has been built.
+     */
+    private final CountDownLatch built = new CountDownLatch(1);
+
+    /**
+     * {@code true} if the index could not be built.
+     */
+    private volatile boolean failed;
+
+    /**
+     * Creates an index for the specified proxy.
+     */
+    private FingerprintIndex(final AuthorityFactoryProxy proxy) {
+        this.proxy = proxy;
+    }
+
+    /**
+     * Returns the index for the objects created by the specified proxy, starting its
+     * construction if needed.
+     */
+    static FingerprintIndex getInstance(final AuthorityFactoryProxy proxy) {
+        final AuthorityFactory factory = proxy.getAuthorityFactory();
+        final Class<?> type = proxy.getType();
+        FingerprintIndex index;
+        synchronized (INDEXES) {
+            Map<Class<?>,FingerprintIndex> indexes = INDEXES.get(factory);
+            if (indexes == null) {
+                indexes = new HashMap<Class<?>,FingerprintIndex>();
+                INDEXES.put(factory, indexes);
+            }
+            index = indexes.get(type);
+            if (index != null) {
+                return index;
+            }
+            index = new FingerprintIndex(proxy);
+            indexes.put(type, index);
+        }
+        final FingerprintIndex building = index;
+        final Thread thread = new Thread("Fingerprint index for " + factory.getAuthority().getTitle()) {
+            @Override
+            public void run() {
+                building.build();
+            }
+        };
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return index;
+    }
+
+    /**
+     * Returns the codes of the CRS that may be equal to the specified object, or {@code null}
+     * if the specified object is not a CRS or if the index is not yet built.
+     *
+     * @param  proxy  The proxy the finder creates the objects from.
+     * @param  object The object looked up.
+     * @return The code candidates, or {@code null} if unknown.
+     */
+    static Set<String> getCandidates(final AuthorityFactoryProxy proxy, final IdentifiedObject object) {
+        if (!(object instanceof CoordinateReferenceSystem)
+                || !CoordinateReferenceSystem.class.isAssignableFrom(proxy.getType()))
+        {
+            return null;
+        }
+        return getInstance(proxy).getCandidates((CoordinateReferenceSystem) object);
+    }
+
+    /**
+     * Returns the codes of the CRS having the same fingerprint than the specified one,
+     * or {@code null} if the index is not yet built.
+     */
+    Set<String> getCandidates(final CoordinateReferenceSystem crs) {
+        if (built.getCount() != 0 || failed) {
+            return null;
+        }
+        final String fingerprint;
+        try {
+            fingerprint = fingerprint(crs);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINER, "Can't compute the fingerprint of " + crs.getName(), e);
+            return null;
+        }
+        final Set<String> candidates = codes.get(fingerprint);
+        if (candidates == null) {
+            return Collections.emptySet();
+        }
+        return candidates;
+    }
+
+    /**
+     * Waits for the index to be built, for at most the specified amount of milliseconds.
+     *
+     * @return {@code true} if the index is built.
+     */
+    boolean await(final long timeout) throws InterruptedException {
+        return built.await(timeout, TimeUnit.MILLISECONDS) && !failed;
+    }
+
+    /**
+     * Creates every CRS and stores their fingerprint.
+     */
+    private void build() {
+        try {
+            for (final Iterator<?> it=proxy.getAuthorityCodes().iterator(); it.hasNext();) {
+                final String code = (String) it.next();
+                final String fingerprint;
+                try {
+                    fingerprint = fingerprint((CoordinateReferenceSystem) proxy.create(code));
+                } catch (Exception e) {
+                    // The scan would not be able to create this object neither.
+                    LOGGER.log(Level.FINEST, "Could not index '" + code + "':" + e);
+                    continue;
+                }
+                Set<String> set = codes.get(fingerprint);
+                if (set == null) {
+                    set = new LinkedHashSet<String>(4);
+                    codes.put(fingerprint, set);
+                }
+                set.add(code);
+            }
+            for (final Map.Entry<String,Set<String>> entry : codes.entrySet()) {
+                entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+            }
+        } catch (FactoryException e) {
+            LOGGER.log(Level.WARNING, "Can't build the fingerprint index", e);
+            failed = true;
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Can't build the fingerprint index", e);
+            failed = true;
+        } finally {
+            proxy = null;
+            built.countDown();
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the specified CRS.
+     *
+     * @param  crs The coordinate reference system.
+     * @return A string which is the same for every CRS equal ignoring metadata.
+     */
+    static String fingerprint(final CoordinateReferenceSystem crs) {
+        final StringBuilder buffer = new StringBuilder();
+        append(crs, buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Appends the fingerprint of the specified CRS to the given buffer.
+     */
+    private static void append(final CoordinateReferenceSystem crs, final StringBuilder buffer) {
+        if (crs instanceof CompoundCRS) {
+            buffer.append("COMPD_CS[");
+            for (final CoordinateReferenceSystem component :
+                    ((CompoundCRS) crs).getCoordinateReferenceSystems())
+            {
+                append(component, buffer);
+                buffer.append(';');
+            }
+            buffer.append(']');
+            return;
+        }
+        final String kind;
+        if      (crs instanceof ProjectedCRS)   kind = "PROJCS";
+        else if (crs instanceof GeographicCRS)  kind = "GEOGCS";
+        else if (crs instanceof GeocentricCRS)  kind = "GEOCCS";
+        else if (crs instanceof VerticalCRS)    kind = "VERT_CS";
+        else if (crs instanceof TemporalCRS)    kind = "TIME_CS";
+        else if (crs instanceof ImageCRS)       kind = "IMAGE_CS";
+        else if (crs instanceof EngineeringCRS) kind = "LOCAL_CS";
+        else                                    kind = crs.getClass().getName();
+        buffer.append(kind).append(crs.getCoordinateSystem().getDimension());
+        if (crs instanceof SingleCRS) {
+            final Datum datum = ((SingleCRS) crs).getDatum();
+            if (datum instanceof GeodeticDatum) {
+                final Ellipsoid ellipsoid = ((GeodeticDatum) datum).getEllipsoid();
+                final PrimeMeridian pm = ((GeodeticDatum) datum).getPrimeMeridian();
+                buffer.append(",a=").append(round(ellipsoid.getAxisUnit().getConverterTo(SI.METER)
+                        .convert(ellipsoid.getSemiMajorAxis())));
+                buffer.append(",f=").append(round(ellipsoid.getInverseFlattening()));
+                buffer.append(",pm=").append(round(pm.getAngularUnit().getConverterTo(
+                        NonSI.DEGREE_ANGLE).convert(pm.getGreenwichLongitude())));
+            } else if (datum instanceof VerticalDatum) {
+                buffer.append(',').append(((VerticalDatum) datum).getVerticalDatumType().name());
+            }
+        }
+        if (crs instanceof ProjectedCRS) {
+            final MapProjection projection = getMapProjection(
+                    ((ProjectedCRS) crs).getConversionFromBase().getMathTransform());
+            if (projection != null) {
+                buffer.append(',').append(projection.getClass().getName());
+                for (final GeneralParameterValue param : projection.getParameterValues().values()) {
+                    if (param instanceof ParameterValue) {
+                        final Object value = ((ParameterValue) param).getValue();
+                        if (value instanceof Number) {
+                            buffer.append(',').append(param.getDescriptor().getName().getCode())
+                                  .append('=').append(round(((Number) value).doubleValue()));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the map projection in the specified transform, which may be concatenated
+     * with axis swapping or unit conversions.
+     */
+    private static MapProjection getMapProjection(final MathTransform mt) {
+        if (mt instanceof MapProjection) {
+            return (MapProjection) mt;
+        }
+        if (mt instanceof ConcatenatedTransform) {
+            final ConcatenatedTransform ct = (ConcatenatedTransform) mt;
+            final MapProjection projection = getMapProjection(ct.transform1);
+            return (projection != null) ? projection : getMapProjection(ct.transform2);
+        }
+        return null;
+    }
+
+    /**
+     * Rounds the specified value, in order to hide the last digits which may be lost
+     * in unit conversions.
+     */
+    private static long round(final double value) {
+        return Math.round(value * SCALE);
+    }
+}
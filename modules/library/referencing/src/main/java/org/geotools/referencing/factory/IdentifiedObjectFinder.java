@@ -373,17 +373,36 @@ public class IdentifiedObjectFinder {
      * may iterates through every returned codes, instantiate the objects and compare them with
      * the specified one in order to determine which codes are really applicable.
      * <p>
-     * The default implementation returns the same set than
+     * The default implementation returns the {@linkplain #getIndexedCandidates indexed
+     * candidates} if they are available, or the same set than
      * <code>{@linkplain AuthorityFactory#getAuthorityCodes getAuthorityCodes}(type)</code>
-     * where {@code type} is the interface specified at construction type. Subclasses should
-     * override this method in order to return a smaller set, if they can.
+     * otherwise, where {@code type} is the interface specified at construction type. Subclasses
+     * should override this method in order to return a smaller set, if they can.
      *
      * @param  object The object looked up.
      * @return A set of code candidates.
      * @throws FactoryException if an error occured while fetching the set of code candidates.
      */
     protected Set/*<String>*/ getCodeCandidates(final IdentifiedObject object) throws FactoryException {
-        return getProxy().getAuthorityCodes();
+        final Set/*<String>*/ candidates = getIndexedCandidates(object);
+        return (candidates != null) ? candidates : getProxy().getAuthorityCodes();
+    }
+
+    /**
+     * Returns the codes of the coordinate reference systems having the same fingerprint
+     * (kind of CRS, ellipsoid, prime meridian and map projection parameters) than the
+     * specified object. Those codes are taken from an index built in a background thread
+     * the first time this method is invoked for the factory, so lookups are fast once the
+     * index is ready.
+     *
+     * @param  object The object looked up.
+     * @return The code candidates, or {@code null} if the object is not a CRS or if the
+     *         index is not yet available.
+     *
+     * @since 8.0
+     */
+    protected final Set/*<String>*/ getIndexedCandidates(final IdentifiedObject object) {
+        return FingerprintIndex.getCandidates(getProxy(), object);
     }
 
     /*
@@ -2593,10 +2593,16 @@ public abstract class AbstractEpsgFactory extends AbstractCachedAuthorityFactory
         /**
          * Returns a set of authority codes that <strong>may</strong> identify the same object
          * than the specified one. This implementation tries to get a smaller set than what
-         * {@link AbstractEpsgFactory#getAuthorityCodes} would produce.
+         * {@link AbstractEpsgFactory#getAuthorityCodes} would produce. The fingerprint index is used
+         * for coordinate reference systems once it is available, since it avoids the lookup
+         * of the datum or base CRS.
          */
         @Override
         protected Set getCodeCandidates(final IdentifiedObject object) throws FactoryException {
+            final Set candidates = getIndexedCandidates(object);
+            if (candidates != null) {
+                return candidates;
+            }
             String select = "COORD_REF_SYS_CODE";
             String from   = "[Coordinate Reference System]";
             String where, code;
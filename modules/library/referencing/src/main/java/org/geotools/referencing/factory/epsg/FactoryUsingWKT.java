@@ -91,7 +91,7 @@ public class FactoryUsingWKT extends DeferredAuthorityFactory implements CRSAuth
      *
      * @see #getAuthority
      */
-    private Citation authority;
+    private volatile Citation authority;
 
     /**
      * The default filename to read. The default {@code FactoryUsingWKT} implementation will
@@ -180,7 +180,7 @@ public class FactoryUsingWKT extends DeferredAuthorityFactory implements CRSAuth
      * @see #getAuthorities
      */
     @Override
-    public synchronized Citation getAuthority() {
+    public Citation getAuthority() {
         // No need to synchronize; this is not a big deal if we create this object twice.
         if (authority == null) {
             final Citation[] authorities = getAuthorities();
@@ -0,0 +1,372 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory.gridshift;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.resources.i18n.ErrorKeys;
+import org.geotools.resources.i18n.Errors;
+
+
+/**
+ * A NTv2 grid shift file read directly from a memory mapped buffer. Contrary to the
+ * {@code GridShiftFile} of jgridshift, the shift values are never copied in the Java heap:
+ * the file is mapped when the grid is created, the sub-grid headers are indexed the first
+ * time a point is shifted, and the bilinear interpolation reads the four surrounding nodes
+ * from the mapped buffer. Grids which are not on the local file system are read in a heap
+ * buffer instead.
+ * <p>
+ * The file layout and the interpolation follow the NTv2 specification: angles are stored in
+ * seconds with longitudes positive west, each node holds the latitude and longitude shifts
+ * followed by their accuracies as 4 bytes floats, and a point is shifted with the values of
+ * the most dense sub-grid containing it.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @since 8.0
+ * @source $URL$
+ * @version $Id$
+ */
+public final class MappedNTv2Grid {
+    /**
+     * The number of bytes in a header record.
+     */
+    private static final int RECORD = 16;
+
+    /**
+     * The number of bytes in a grid node.
+     */
+    private static final int NODE = 16;
+
+    /**
+     * The number of iterations of the reverse shift.
+     */
+    private static final int REVERSE_ITERATIONS = 4;
+
+    /**
+     * The number of seconds in a degree.
+     */
+    private static final double SEC_2_DEG = 3600;
+
+    /**
+     * A sub-grid of the file, with its header values converted to seconds.
+     */
+    private static final class SubGrid {
+        final String name, parent;
+        final double minLat, maxLat, minLon, maxLon, latInc, lonInc;
+        final int rows, cols, dataOffset;
+        SubGrid[] children = new SubGrid[0];
+
+        SubGrid(final ByteBuffer buffer, final int offset) throws IOException {
+            name   = string(buffer, offset + 8);
+            parent = string(buffer, offset + RECORD + 8);
+            minLat = buffer.getDouble(offset + 4 * RECORD + 8);
+            maxLat = buffer.getDouble(offset + 5 * RECORD + 8);
+            minLon = buffer.getDouble(offset + 6 * RECORD + 8); // east longitude, positive west
+            maxLon = buffer.getDouble(offset + 7 * RECORD + 8);
+            latInc = buffer.getDouble(offset + 8 * RECORD + 8);
+            lonInc = buffer.getDouble(offset + 9 * RECORD + 8);
+            final int count = buffer.getInt(offset + 10 * RECORD + 8);
+            rows = 1 + (int) Math.round((maxLat - minLat) / latInc);
+            cols = 1 + (int) Math.round((maxLon - minLon) / lonInc);
+            dataOffset = offset + 11 * RECORD;
+            if (rows * cols != count || rows < 1 || cols < 1
+                    || dataOffset + (long) count * NODE > buffer.limit())
+            {
+                throw new IOException("Inconsistent NTv2 sub-grid " + name);
+            }
+        }
+
+        /**
+         * Returns {@code true} if this sub-grid contains the given point, in seconds.
+         * The north and west edges are included only for the top level grids, since
+         * they belong to the parent grid otherwise.
+         */
+        boolean contains(final double lonW, final double lat, final boolean edges) {
+            if (edges) {
+                return lonW >= minLon && lonW <= maxLon && lat >= minLat && lat <= maxLat;
+            }
+            return lonW >= minLon && lonW < maxLon && lat >= minLat && lat < maxLat;
+        }
+
+        /**
+         * Returns the most dense grid among this one and its children containing the point.
+         */
+        SubGrid find(final double lonW, final double lat) {
+            for (final SubGrid child : children) {
+                if (child.contains(lonW, lat, false)) {
+                    return child.find(lonW, lat);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * The location of the grid file.
+     */
+    private final URL location;
+
+    /**
+     * The mapped, or loaded, file content. Only absolute reads are performed on it.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The top level sub-grids, indexed when first needed.
+     */
+    private volatile SubGrid[] roots;
+
+    /**
+     * Maps or loads the specified NTv2 file. Only the overview header is read.
+     *
+     * @param  location The grid file location.
+     * @throws IOException if the file can't be read or is not a NTv2 file.
+     */
+    public MappedNTv2Grid(final URL location) throws IOException {
+        this.location = location;
+        final ByteBuffer buffer;
+        if ("file".equals(location.getProtocol())) {
+            final File file = DataUtilities.urlToFile(location);
+            if (!file.isFile() || !file.canRead()) {
+                throw new IOException(Errors.format(ErrorKeys.FILE_DOES_NOT_EXIST_$1, file));
+            }
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                final FileChannel channel = in.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                in.close();
+            }
+        } else {
+            final InputStream in = location.openStream();
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] chunk = new byte[8192];
+                int n;
+                while ((n = in.read(chunk)) >= 0) {
+                    out.write(chunk, 0, n);
+                }
+                buffer = ByteBuffer.wrap(out.toByteArray());
+            } finally {
+                in.close();
+            }
+        }
+        if (buffer.limit() < 11 * RECORD || !"NUM_OREC".equals(string(buffer, 0))) {
+            throw new IOException(location + " is not a NTv2 grid file");
+        }
+        // The files may be written in either byte order, NUM_OREC is always 11.
+        buffer.order(buffer.getInt(8) == 11 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(8) != 11) {
+            throw new IOException(location + " is not a NTv2 grid file");
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads a 8 characters string.
+     */
+    static String string(final ByteBuffer buffer, final int offset) {
+        final char[] chars = new char[8];
+        for (int i=0; i<chars.length; i++) {
+            chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+        }
+        return new String(chars).trim();
+    }
+
+    /**
+     * Returns the location of the grid file.
+     */
+    public URL getLocation() {
+        return location;
+    }
+
+    /**
+     * Returns the number of sub-grids in the file.
+     */
+    public int getSubGridCount() {
+        return buffer.getInt(2 * RECORD + 8);
+    }
+
+    /**
+     * Returns the top level sub-grids, indexing the sub-grid headers if needed.
+     */
+    private SubGrid[] getRoots() throws IOException {
+        SubGrid[] roots = this.roots;
+        if (roots == null) {
+            synchronized (this) {
+                roots = this.roots;
+                if (roots == null) {
+                    this.roots = roots = index();
+                }
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Reads the sub-grid headers and builds the parent-child tree.
+     */
+    private SubGrid[] index() throws IOException {
+        final int headerRecords = buffer.getInt(8);
+        final int gridRecords   = buffer.getInt(RECORD + 8);
+        final int count = getSubGridCount();
+        final Map<String,SubGrid> grids = new LinkedHashMap<String,SubGrid>();
+        int offset = headerRecords * RECORD;
+        for (int i=0; i<count; i++) {
+            final SubGrid grid = new SubGrid(buffer, offset);
+            grids.put(grid.name, grid);
+            offset = grid.dataOffset + (gridRecords - 11) * RECORD + grid.rows * grid.cols * NODE;
+        }
+        final List<SubGrid> roots = new ArrayList<SubGrid>();
+        final Map<SubGrid,List<SubGrid>> children = new LinkedHashMap<SubGrid,List<SubGrid>>();
+        for (final SubGrid grid : grids.values()) {
+            final SubGrid parent = grids.get(grid.parent);
+            if (parent == null || "NONE".equalsIgnoreCase(grid.parent)) {
+                roots.add(grid);
+            } else {
+                List<SubGrid> list = children.get(parent);
+                if (list == null) {
+                    list = new ArrayList<SubGrid>();
+                    children.put(parent, list);
+                }
+                list.add(grid);
+            }
+        }
+        for (final Map.Entry<SubGrid,List<SubGrid>> entry : children.entrySet()) {
+            entry.getKey().children = entry.getValue().toArray(new SubGrid[entry.getValue().size()]);
+        }
+        return roots.toArray(new SubGrid[roots.size()]);
+    }
+
+    /**
+     * Returns the sub-grid to use for the given point in seconds, positive west,
+     * or {@code null} if none.
+     */
+    private static SubGrid find(final SubGrid[] roots, final double lonW, final double lat) {
+        for (final SubGrid root : roots) {
+            if (root.contains(lonW, lat, true)) {
+                return root.find(lonW, lat);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Interpolates the shift at the given point, in seconds positive west, and stores the
+     * latitude and longitude shifts in {@code shift}.
+     */
+    private void interpolate(final SubGrid grid, final double lonW, final double lat,
+                             final double[] shift)
+    {
+        final double x = (lonW - grid.minLon) / grid.lonInc;
+        final double y = (lat  - grid.minLat) / grid.latInc;
+        final int col = Math.max(0, Math.min((int) x, grid.cols - 2));
+        final int row = Math.max(0, Math.min((int) y, grid.rows - 2));
+        final double fx = (grid.cols > 1) ? x - col : 0;
+        final double fy = (grid.rows > 1) ? y - row : 0;
+        final int a = grid.dataOffset + (row * grid.cols + col) * NODE;
+        final int b = (grid.cols > 1) ? a + NODE : a;
+        final int c = (grid.rows > 1) ? a + grid.cols * NODE : a;
+        final int d = (grid.cols > 1) ? c + NODE : c;
+        final ByteBuffer buffer = this.buffer;
+        for (int i=0; i<2; i++) {
+            final int o = i * 4;
+            final double va = buffer.getFloat(a + o);
+            final double vb = buffer.getFloat(b + o);
+            final double vc = buffer.getFloat(c + o);
+            final double vd = buffer.getFloat(d + o);
+            shift[i] = va + (vb - va) * fx + (vc - va) * fy + (va + vd - vb - vc) * fx * fy;
+        }
+    }
+
+    /**
+     * Shifts an array of (<var>longitude</var>, <var>latitude</var>) coordinates in decimal
+     * degrees, longitudes positive east. The points not covered by the grid are copied
+     * unchanged. The source and destination arrays may be the same if {@code srcOff >= dstOff}
+     * or if the ranges do not overlap.
+     *
+     * @param  srcPts  The source coordinates.
+     * @param  srcOff  The index of the first ordinate to shift in the source array.
+     * @param  dstPts  The destination array.
+     * @param  dstOff  The index of the first ordinate to write in the destination array.
+     * @param  numPts  The number of points.
+     * @param  forward {@code true} for the forward shift, or {@code false} for the reverse one.
+     * @return The number of points which were not covered by the grid.
+     * @throws IOException if the sub-grid headers can't be read.
+     */
+    public int shift(final double[] srcPts, int srcOff, final double[] dstPts, int dstOff,
+                     int numPts, final boolean forward) throws IOException
+    {
+        final SubGrid[] roots = getRoots();
+        final double[] shift = new double[2];
+        SubGrid last = null;
+        int missed = 0;
+        while (--numPts >= 0) {
+            final double lonW = -srcPts[srcOff++] * SEC_2_DEG;
+            final double lat  =  srcPts[srcOff++] * SEC_2_DEG;
+            double outLonW = lonW;
+            double outLat  = lat;
+            boolean covered = true;
+            if (forward) {
+                // Consecutive points are often in the same sub-grid.
+                SubGrid grid = (last != null && last.contains(lonW, lat, false)
+                        && last.children.length == 0) ? last : find(roots, lonW, lat);
+                if (grid != null) {
+                    interpolate(grid, lonW, lat, shift);
+                    outLat  = lat  + shift[0];
+                    outLonW = lonW + shift[1];
+                    last = grid;
+                } else {
+                    covered = false;
+                }
+            } else {
+                for (int i=0; i<REVERSE_ITERATIONS; i++) {
+                    final SubGrid grid = find(roots, outLonW, outLat);
+                    if (grid == null) {
+                        covered = false;
+                        break;
+                    }
+                    interpolate(grid, outLonW, outLat, shift);
+                    outLat  = lat  - shift[0];
+                    outLonW = lonW - shift[1];
+                }
+            }
+            if (covered) {
+                dstPts[dstOff++] = -outLonW / SEC_2_DEG;
+                dstPts[dstOff++] =  outLat  / SEC_2_DEG;
+            } else {
+                dstPts[dstOff++] = srcPts[srcOff - 2];
+                dstPts[dstOff++] = srcPts[srcOff - 1];
+                missed++;
+            }
+        }
+        return missed;
+    }
+}
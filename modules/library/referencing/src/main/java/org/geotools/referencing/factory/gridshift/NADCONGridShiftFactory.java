@@ -27,6 +27,7 @@ import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.StringTokenizer;
 import java.util.logging.Logger;
@@ -189,76 +190,85 @@ public class NADCONGridShiftFactory extends ReferencingFactory implements Buffer
         // setup
         // //////////////////////
         latChannel = getReadChannel(latGridUrl);
-        latBuffer = fillBuffer(latChannel, HEADER_BYTES);
-
-        longChannel = getReadChannel(longGridUrl);
-        longBuffer = fillBuffer(longChannel, HEADER_BYTES);
-
-        // //////////////////////
-        // read header info
-        // //////////////////////
-        // skip the header description
-        latBuffer.position(latBuffer.position() + DESCRIPTION_LENGTH);
-
-        int nc = latBuffer.getInt();
-        int nr = latBuffer.getInt();
-        int nz = latBuffer.getInt();
-
-        float xmin = latBuffer.getFloat();
-        float dx = latBuffer.getFloat();
-        float ymin = latBuffer.getFloat();
-        float dy = latBuffer.getFloat();
-
-        float angle = latBuffer.getFloat();
-        float xmax = xmin + ((nc - 1) * dx);
-        float ymax = ymin + ((nr - 1) * dy);
-
-        // skip the longitude header description
-        longBuffer.position(longBuffer.position() + DESCRIPTION_LENGTH);
-
-        // check that latitude grid header is the same as for latitude grid
-        if ((nc != longBuffer.getInt()) || (nr != longBuffer.getInt())
-                || (nz != longBuffer.getInt()) || (xmin != longBuffer.getFloat())
-                || (dx != longBuffer.getFloat()) || (ymin != longBuffer.getFloat())
-                || (dy != longBuffer.getFloat()) || (angle != longBuffer.getFloat())) {
-            throw new FactoryException(Errors.format(ErrorKeys.GRID_LOCATIONS_UNEQUAL));
+        try {
+            longChannel = getReadChannel(longGridUrl);
+        } catch (IOException e) {
+            latChannel.close();
+            throw e;
         }
+        try {
+            latBuffer = fillBuffer(latChannel, HEADER_BYTES);
+            longBuffer = fillBuffer(longChannel, HEADER_BYTES);
+
+            // //////////////////////
+            // read header info
+            // //////////////////////
+            // skip the header description
+            latBuffer.position(latBuffer.position() + DESCRIPTION_LENGTH);
+
+            int nc = latBuffer.getInt();
+            int nr = latBuffer.getInt();
+            int nz = latBuffer.getInt();
+
+            float xmin = latBuffer.getFloat();
+            float dx = latBuffer.getFloat();
+            float ymin = latBuffer.getFloat();
+            float dy = latBuffer.getFloat();
+
+            float angle = latBuffer.getFloat();
+            float xmax = xmin + ((nc - 1) * dx);
+            float ymax = ymin + ((nr - 1) * dy);
+
+            // skip the longitude header description
+            longBuffer.position(longBuffer.position() + DESCRIPTION_LENGTH);
+
+            // check that latitude grid header is the same as for latitude grid
+            if ((nc != longBuffer.getInt()) || (nr != longBuffer.getInt())
+                    || (nz != longBuffer.getInt()) || (xmin != longBuffer.getFloat())
+                    || (dx != longBuffer.getFloat()) || (ymin != longBuffer.getFloat())
+                    || (dy != longBuffer.getFloat()) || (angle != longBuffer.getFloat())) {
+                throw new FactoryException(Errors.format(ErrorKeys.GRID_LOCATIONS_UNEQUAL));
+            }
 
-        // //////////////////////
-        // read grid shift data into LocalizationGrid
-        // //////////////////////
-        final int RECORD_LENGTH = (nc * 4) + SEPARATOR_BYTES;
-        final int NUM_BYTES_LEFT = ((nr + 1) * RECORD_LENGTH) - HEADER_BYTES;
-        final int START_OF_DATA = RECORD_LENGTH - HEADER_BYTES;
+            // //////////////////////
+            // read grid shift data into LocalizationGrid
+            // //////////////////////
+            final int RECORD_LENGTH = (nc * 4) + SEPARATOR_BYTES;
+            final int NUM_BYTES_LEFT = ((nr + 1) * RECORD_LENGTH) - HEADER_BYTES;
+            final int START_OF_DATA = RECORD_LENGTH - HEADER_BYTES;
 
-        latBuffer = fillBuffer(latChannel, NUM_BYTES_LEFT);
-        latBuffer.position(START_OF_DATA); // start of second record (data)
+            latBuffer = fillBuffer(latChannel, NUM_BYTES_LEFT);
+            latBuffer.position(START_OF_DATA); // start of second record (data)
 
-        longBuffer = fillBuffer(longChannel, NUM_BYTES_LEFT);
-        longBuffer.position(START_OF_DATA);
+            longBuffer = fillBuffer(longChannel, NUM_BYTES_LEFT);
+            longBuffer.position(START_OF_DATA);
 
-        NADConGridShift gridShift = new NADConGridShift(xmin, ymin, xmax, ymax, dx, dy, nc, nr);
+            NADConGridShift gridShift = new NADConGridShift(xmin, ymin, xmax, ymax, dx, dy, nc, nr);
 
-        int i = 0;
-        int j = 0;
-        for (i = 0; i < nr; i++) {
-            latBuffer.position(latBuffer.position() + SEPARATOR_BYTES); // skip record separator
-            longBuffer.position(longBuffer.position() + SEPARATOR_BYTES);
+            int i = 0;
+            int j = 0;
+            for (i = 0; i < nr; i++) {
+                latBuffer.position(latBuffer.position() + SEPARATOR_BYTES); // skip record separator
+                longBuffer.position(longBuffer.position() + SEPARATOR_BYTES);
 
-            for (j = 0; j < nc; j++) {
-                gridShift.setLocalizationPoint(j, i, longBuffer.getFloat(), latBuffer.getFloat());
+                for (j = 0; j < nc; j++) {
+                    gridShift.setLocalizationPoint(j, i, longBuffer.getFloat(), latBuffer.getFloat());
+                }
             }
-        }
 
-        assert i == nr : i;
-        assert j == nc : j;
+            assert i == nr : i;
+            assert j == nc : j;
 
-        return gridShift;
+            return gridShift;
+        } finally {
+            latChannel.close();
+            longChannel.close();
+        }
     }
 
     /**
      * Returns a new bytebuffer, of numBytes length and little endian byte order, filled from the
-     * channel.
+     * channel. File channels are memory mapped instead of being read.
      * 
      * @param channel the channel to fill the buffer from
      * @param numBytes number of bytes to read
@@ -267,6 +277,18 @@ public class NADCONGridShiftFactory extends ReferencingFactory implements Buffer
      * @throws EOFException if the end of the channel is reached
      */
     private ByteBuffer fillBuffer(ReadableByteChannel channel, int numBytes) throws IOException {
+        if (channel instanceof FileChannel) {
+            // map the file region rather than copying it, grids can be large
+            FileChannel fc = (FileChannel) channel;
+            long position = fc.position();
+            if (position + numBytes > fc.size()) {
+                throw new EOFException(Errors.format(ErrorKeys.END_OF_DATA_FILE));
+            }
+            ByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, position, numBytes);
+            fc.position(position + numBytes);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            return buf;
+        }
         ByteBuffer buf = ByteBuffer.allocate(numBytes);
 
         if (fill(buf, channel) == -1) {
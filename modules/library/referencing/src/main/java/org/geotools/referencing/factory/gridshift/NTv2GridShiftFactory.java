@@ -60,12 +60,18 @@ public class NTv2GridShiftFactory extends ReferencingFactory implements Buffered
      */
     private SoftValueHashMap<String, GridShiftFile> ntv2GridCache;
 
+    /**
+     * The soft cache that holds memory mapped grids.
+     */
+    private SoftValueHashMap<String, MappedNTv2Grid> mappedGridCache;
+
     /**
      * Constructs a factory with the default priority.
      */
     public NTv2GridShiftFactory() {
         super();
         ntv2GridCache = new SoftValueHashMap<String, GridShiftFile>(GRID_CACHE_HARD_REFERENCES);
+        mappedGridCache = new SoftValueHashMap<String, MappedNTv2Grid>(GRID_CACHE_HARD_REFERENCES);
     }
 
     /**
@@ -78,6 +84,7 @@ public class NTv2GridShiftFactory extends ReferencingFactory implements Buffered
     public NTv2GridShiftFactory(final int priority) {
         super(priority);
         ntv2GridCache = new SoftValueHashMap<String, GridShiftFile>(GRID_CACHE_HARD_REFERENCES);
+        mappedGridCache = new SoftValueHashMap<String, MappedNTv2Grid>(GRID_CACHE_HARD_REFERENCES);
     }
 
     /**
@@ -123,6 +130,36 @@ public class NTv2GridShiftFactory extends ReferencingFactory implements Buffered
         }
     }
 
+    /**
+     * Creates a memory mapped NTv2 Grid. Contrary to {@link #createNTv2Grid(URL)}, the shift
+     * values are not loaded in memory, so large national grids can be used without heap cost
+     * and are not reloaded after being garbage collected.
+     * 
+     * @param gridLocation The NTv2 grid location
+     * @return the grid
+     * @throws FactoryException if grid cannot be created
+     * @since 8.0
+     */
+    public MappedNTv2Grid createMappedNTv2Grid(URL gridLocation) throws FactoryException {
+        if (gridLocation == null) {
+            throw new FactoryException("The grid location must be not null");
+        }
+
+        synchronized (mappedGridCache) { // Prevent simultaneous threads mapping the same grid
+            MappedNTv2Grid grid = mappedGridCache.get(gridLocation.toExternalForm());
+            if (grid == null) {
+                try {
+                    grid = new MappedNTv2Grid(gridLocation);
+                } catch (IOException e) {
+                    throw new FactoryException("NTv2 Grid " + gridLocation
+                            + " could not be created.", e);
+                }
+                mappedGridCache.put(gridLocation.toExternalForm(), grid);
+            }
+            return grid;
+        }
+    }
+
     
 
     /**
@@ -267,6 +267,116 @@ public class AlbersEqualArea extends MapProjection {
         return new Point2D.Double(x,y);
     }
 
+    /**
+     * Transforms in place a list of (<var>longitude</var>,<var>latitude</var>) pairs in decimal
+     * degrees, using the equations of {@link #transformNormalized transformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void transformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        ProjectionException firstException = null;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = toRadians(ordinates[offset]);
+            if (cm != 0) {
+                x = rollLongitude(x - cm);
+            }
+            final double y = toRadians(ordinates[offset + 1]);
+            x *= n;
+            double rho;
+            if (isSpherical) {
+                rho = c - n*2 * sin(y);
+            } else {
+                rho = c - n * qsfn(sin(y));
+            }
+            if (rho < 0.0) {
+                if (rho > -EPSILON) {
+                    rho = 0.0;
+                } else {
+                    ordinates[offset    ] = Double.NaN;
+                    ordinates[offset + 1] = Double.NaN;
+                    if (firstException == null) {
+                        firstException = new ProjectionException(ErrorKeys.TOLERANCE_ERROR);
+                    }
+                    continue;
+                }
+            }
+            rho = sqrt(rho) / n;
+            ordinates[offset    ] = scale*(       rho * sin(x)) + fe;
+            ordinates[offset + 1] = scale*(rho0 - rho * cos(x)) + fn;
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    /**
+     * Inverse transforms in place a list of (<var>x</var>,<var>y</var>) pairs in metres, using
+     * the equations of {@link #inverseTransformNormalized inverseTransformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void inverseTransformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        ProjectionException firstException = null;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = (ordinates[offset    ] - fe) / scale;
+            double y = rho0 - (ordinates[offset + 1] - fn) / scale;
+            double rho = hypot(x, y);
+            if (rho > EPSILON) {
+                if (n < 0.0) {
+                    rho = -rho;
+                    x   = -x;
+                    y   = -y;
+                }
+                x = atan2(x, y) / n;
+                y = rho * n;
+                if (isSpherical) {
+                    y = (c - y * y) / (n*2);
+                    if (abs(y) <= 1.0){
+                        y = asin(y);
+                    } else {
+                        y = (y < 0.0) ? -PI/2.0 : PI/2.0;
+                    }
+                } else {
+                    y = (c - y*y) / n;
+                    if (abs(ec - abs(y)) > EPSILON) {
+                        try {
+                            y = phi1(y);
+                        } catch (ProjectionException exception) {
+                            ordinates[offset    ] = Double.NaN;
+                            ordinates[offset + 1] = Double.NaN;
+                            if (firstException == null) {
+                                firstException = exception;
+                            }
+                            continue;
+                        }
+                    } else {
+                        y = (y < 0.0) ? -PI/2.0 : PI/2.0;
+                    }
+                }
+            } else {
+                x = 0.0;
+                y = n > 0.0 ? PI/2.0 : - PI/2.0;
+            }
+            ordinates[offset    ] = toDegrees(cm != 0 ? rollLongitude(x + cm) : x);
+            ordinates[offset + 1] = toDegrees(y);
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
     /**
      * Iteratively solves equation (3-16) from Snyder.
      *
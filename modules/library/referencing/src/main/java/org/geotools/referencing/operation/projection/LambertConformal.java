@@ -280,6 +280,109 @@ public abstract class LambertConformal extends MapProjection {
         return new Point2D.Double(x,y);
     }
 
+    /**
+     * Transforms in place a list of (<var>longitude</var>,<var>latitude</var>) pairs in decimal
+     * degrees, using the equations of {@link #transformNormalized transformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void transformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        ProjectionException firstException = null;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = toRadians(ordinates[offset]);
+            if (cm != 0) {
+                x = rollLongitude(x - cm);
+            }
+            final double y = toRadians(ordinates[offset + 1]);
+            final double rho;
+            if (abs(abs(y) - PI/2) < EPSILON) {
+                if (y*n <= 0) {
+                    ordinates[offset    ] = Double.NaN;
+                    ordinates[offset + 1] = Double.NaN;
+                    if (firstException == null) {
+                        firstException = new ProjectionException(y);
+                    }
+                    continue;
+                }
+                rho = 0;
+            } else if (isSpherical) {
+                rho = F * pow(tan(PI/4 + 0.5*y), -n);
+            } else {
+                rho = F * pow(tsfn(y, sin(y)), n);
+            }
+            x *= n;
+            if (belgium) {
+                x -= BELGE_A;
+            }
+            ordinates[offset    ] = scale*(       rho * sin(x)) + fe;
+            ordinates[offset + 1] = scale*(rho0 - rho * cos(x)) + fn;
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    /**
+     * Inverse transforms in place a list of (<var>x</var>,<var>y</var>) pairs in metres, using
+     * the equations of {@link #inverseTransformNormalized inverseTransformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void inverseTransformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        ProjectionException firstException = null;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = (ordinates[offset    ] - fe) / scale;
+            double y = rho0 - (ordinates[offset + 1] - fn) / scale;
+            double rho = hypot(x, y);
+            if (rho > EPSILON) {
+                if (n < 0) {
+                    rho = -rho;
+                    x = -x;
+                    y = -y;
+                }
+                double theta = atan2(x, y);
+                if (belgium) {
+                    theta += BELGE_A;
+                }
+                x = theta/n;
+                if (isSpherical) {
+                    y = 2.0 * atan(pow(F/rho, 1.0/n)) - PI/2;
+                } else {
+                    try {
+                        y = cphi2(pow(rho/F, 1.0/n));
+                    } catch (ProjectionException exception) {
+                        ordinates[offset    ] = Double.NaN;
+                        ordinates[offset + 1] = Double.NaN;
+                        if (firstException == null) {
+                            firstException = exception;
+                        }
+                        continue;
+                    }
+                }
+            } else {
+                x = 0.0;
+                y = n < 0 ? -(PI/2) : (PI/2);
+            }
+            ordinates[offset    ] = toDegrees(cm != 0 ? rollLongitude(x + cm) : x);
+            ordinates[offset + 1] = toDegrees(y);
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
     /**
      * Returns a hash value for this projection.
      */
@@ -270,6 +270,13 @@ public abstract class MapProjection extends AbstractMathTransform
      */
     protected boolean invertible = true;
 
+    /**
+     * Whether the {@link #transformInPlace} and {@link #inverseTransformInPlace} bulk kernels
+     * can be used: {@code 0} if not yet determined, {@code 1} if they cannot, {@code 2} if they
+     * can. Computed only when first needed.
+     */
+    private transient byte forwardKernel, inverseKernel;
+
     /**
      * Constructs a new map projection from the suplied parameters.
      *
@@ -886,43 +893,167 @@ public abstract class MapProjection extends AbstractMathTransform
                                 final double[] dstPts, int dstOff, int numPts)
             throws ProjectionException
     {
+        if (numPts <= 0) {
+            return;
+        }
         /*
-         * Vérifie s'il faudra parcourir le tableau en sens inverse.
-         * Ce sera le cas si les tableaux source et destination se
-         * chevauchent et que la destination est après la source.
+         * The kernels work in place, copy the source ordinates in the destination array first.
+         * System.arraycopy takes care of overlapping source and destination.
          */
-        final boolean reverse = (srcPts == dstPts && srcOff < dstOff &&
-                                 srcOff + (2*numPts) > dstOff);
-        if (reverse) {
-            srcOff += 2*numPts;
-            dstOff += 2*numPts;
+        if (srcPts != dstPts || srcOff != dstOff) {
+            System.arraycopy(srcPts, srcOff, dstPts, dstOff, 2*numPts);
         }
+        if (forwardKernel == 0) {
+            forwardKernel = isKernelUsable(getClass(), "transformInPlace", "transformNormalized");
+        }
+        if (forwardKernel == 2) {
+            if (verifyCoordinateRanges()) {
+                verifyGeographicRanges(this, this, dstPts, dstOff, numPts);
+            }
+            transformInPlace(dstPts, dstOff, numPts);
+        } else {
+            transformPointByPoint(dstPts, dstOff, numPts);
+        }
+    }
+
+    /**
+     * Transforms in place a list of (<var>longitude</var>,<var>latitude</var>) pairs in decimal
+     * degrees into (<var>x</var>,<var>y</var>) pairs in metres. This is the bulk counterpart of
+     * {@link #transform(Point2D, Point2D)}: subclasses can override it with a kernel working
+     * directly on the array, fusing the normalization (conversion to radians, removal of the
+     * {@link #centralMeridian}) and the denormalization (multiplication by {@link #globalScale},
+     * addition of {@link #falseEasting} and {@link #falseNorthing}) with the projection equations,
+     * without any {@link Point2D} round trip.
+     * <p>
+     * An override is used only if declared by the same class declaring
+     * {@link #transformNormalized transformNormalized} or by one of its subclasses, so that
+     * the subclasses providing different equations (for example for the spherical case) keep
+     * on working without overriding this method as well. Coordinate ranges have already been
+     * checked when this method is invoked.
+     * <p>
+     * The default implementation invokes {@link #transform(Point2D, Point2D)} for each point.
+     *
+     * @param ordinates The ordinates to transform.
+     * @param offset The offset of the first ordinate.
+     * @param numPts The number of points to transform.
+     * @throws ProjectionException if a point can't be transformed. Implementations should
+     *         transform every points even if some of them can't be transformed, storing
+     *         {@link Double#NaN} for the non-transformable ones, and throw the first
+     *         exception at the end.
+     *
+     * @since 8.0
+     */
+    protected void transformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        transformPointByPoint(ordinates, offset, numPts);
+    }
+
+    /**
+     * Transforms in place a list of points, one by one.
+     */
+    private void transformPointByPoint(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
         final Point2D.Double point = new Point2D.Double();
         ProjectionException firstException = null;
         while (--numPts >= 0) {
             try {
-                point.x = srcPts[srcOff++];
-                point.y = srcPts[srcOff++];
+                point.x = ordinates[offset  ];
+                point.y = ordinates[offset+1];
                 transform(point, point);
-                dstPts[dstOff++] = point.x;
-                dstPts[dstOff++] = point.y;
+                ordinates[offset++] = point.x;
+                ordinates[offset++] = point.y;
             } catch (ProjectionException exception) {
-                dstPts[dstOff++] = Double.NaN;
-                dstPts[dstOff++] = Double.NaN;
+                ordinates[offset++] = Double.NaN;
+                ordinates[offset++] = Double.NaN;
                 if (firstException == null) {
                     firstException = exception;
                 }
             }
-            if (reverse) {
-                srcOff -= 4;
-                dstOff -= 4;
-            }
         }
         if (firstException != null) {
             throw firstException;
         }
     }
 
+    /**
+     * Inverse transforms in place a list of (<var>x</var>,<var>y</var>) pairs in metres into
+     * (<var>longitude</var>,<var>latitude</var>) pairs in decimal degrees. This is the bulk
+     * counterpart of {@link #inverseTransformNormalized inverseTransformNormalized}, see
+     * {@link #transformInPlace transformInPlace} for details. The coordinate ranges are checked
+     * after this method is invoked.
+     * <p>
+     * The default implementation invokes the inverse transform for each point.
+     *
+     * @param ordinates The ordinates to transform.
+     * @param offset The offset of the first ordinate.
+     * @param numPts The number of points to transform.
+     * @throws ProjectionException if a point can't be transformed.
+     *
+     * @since 8.0
+     */
+    protected void inverseTransformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        if (inverse == null) {
+            inverse = new Inverse();
+        }
+        ((Inverse) inverse).transformPointByPoint(ordinates, offset, numPts);
+    }
+
+    /**
+     * Returns {@code 2} if the given kernel method is declared by the class declaring the
+     * given point method, or by one of its subclasses, or {@code 1} otherwise.
+     */
+    private static byte isKernelUsable(final Class<?> type, final String kernel, final String point) {
+        try {
+            final Class<?> kernelClass = getDeclaringClass(type, kernel,
+                    double[].class, int.class, int.class);
+            final Class<?> pointClass = getDeclaringClass(type, point,
+                    double.class, double.class, Point2D.class);
+            if (kernelClass != MapProjection.class && pointClass.isAssignableFrom(kernelClass)) {
+                return 2;
+            }
+        } catch (SecurityException e) {
+            // Can't check, fall back on the point by point transformations.
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the most specific class declaring the given method,
+     * or {@code MapProjection} if none.
+     */
+    private static Class<?> getDeclaringClass(Class<?> type, final String name,
+                                              final Class<?>... parameterTypes)
+    {
+        for (; type != null && type != MapProjection.class; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod(name, parameterTypes);
+                return type;
+            } catch (NoSuchMethodException e) {
+                // Not declared here, check the super class.
+            }
+        }
+        return MapProjection.class;
+    }
+
+    /**
+     * Checks the given (<var>longitude</var>,<var>latitude</var>) pairs, and logs a
+     * warning on behalf of the given transform for the first one out of the geographic ranges.
+     */
+    static void verifyGeographicRanges(final MapProjection projection,
+            final AbstractMathTransform tr, final double[] ordinates, int offset, int numPts)
+    {
+        while (--numPts >= 0) {
+            if (verifyGeographicRanges(tr, ordinates[offset++], ordinates[offset++])) {
+                projection.warningLogged();
+                return;
+            }
+        }
+    }
+
     /**
      * Transforms a list of coordinate point ordinal values. Ordinates must be
      * (<var>longitude</var>,<var>latitude</var>) pairs in decimal degrees.
@@ -1053,37 +1184,51 @@ public abstract class MapProjection extends AbstractMathTransform
                                     final double[] dest, int dstOffset, int numPts)
                 throws TransformException
         {
-            /*
-             * Vérifie s'il faudra parcourir le tableau en sens inverse.
-             * Ce sera le cas si les tableaux source et destination se
-             * chevauchent et que la destination est après la source.
-             */
-            final boolean reverse = (src==dest && srcOffset<dstOffset &&
-                                     srcOffset+(2*numPts) > dstOffset);
-            if (reverse) {
-                srcOffset += 2*numPts;
-                dstOffset += 2*numPts;
+            if (numPts <= 0) {
+                return;
+            }
+            if (src != dest || srcOffset != dstOffset) {
+                System.arraycopy(src, srcOffset, dest, dstOffset, 2*numPts);
+            }
+            if (inverseKernel == 0) {
+                inverseKernel = isKernelUsable(MapProjection.this.getClass(),
+                        "inverseTransformInPlace", "inverseTransformNormalized");
             }
+            if (inverseKernel == 2) {
+                try {
+                    inverseTransformInPlace(dest, dstOffset, numPts);
+                } finally {
+                    if (verifyCoordinateRanges()) {
+                        verifyGeographicRanges(MapProjection.this, this, dest, dstOffset, numPts);
+                    }
+                }
+            } else {
+                transformPointByPoint(dest, dstOffset, numPts);
+            }
+        }
+
+        /**
+         * Inverse transforms in place a list of points, one by one.
+         */
+        final void transformPointByPoint(final double[] ordinates, int offset, int numPts)
+                throws ProjectionException
+        {
             final Point2D.Double point = new Point2D.Double();
             ProjectionException firstException = null;
-            while (--numPts>=0) {
+            while (--numPts >= 0) {
                 try {
-                    point.x = src[srcOffset++];
-                    point.y = src[srcOffset++];
+                    point.x = ordinates[offset  ];
+                    point.y = ordinates[offset+1];
                     transform(point, point);
-                    dest[dstOffset++] = point.x;
-                    dest[dstOffset++] = point.y;
+                    ordinates[offset++] = point.x;
+                    ordinates[offset++] = point.y;
                 } catch (ProjectionException exception) {
-                    dest[dstOffset++] = Double.NaN;
-                    dest[dstOffset++] = Double.NaN;
+                    ordinates[offset++] = Double.NaN;
+                    ordinates[offset++] = Double.NaN;
                     if (firstException == null) {
                         firstException = exception;
                     }
                 }
-                if (reverse) {
-                    srcOffset -= 4;
-                    dstOffset -= 4;
-                }
             }
             if (firstException != null) {
                 throw firstException;
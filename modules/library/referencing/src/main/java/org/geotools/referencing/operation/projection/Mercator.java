@@ -171,6 +171,75 @@ public abstract class Mercator extends MapProjection {
         return new Point2D.Double(x,y);
     }
 
+    /**
+     * Transforms in place a list of (<var>longitude</var>,<var>latitude</var>) pairs in decimal
+     * degrees, using the equations of {@link #transformNormalized transformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void transformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        ProjectionException firstException = null;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = toRadians(ordinates[offset]);
+            if (cm != 0) {
+                x = rollLongitude(x - cm);
+            }
+            final double y = toRadians(ordinates[offset + 1]);
+            if (abs(y) > (PI/2 - EPSILON)) {
+                ordinates[offset    ] = Double.NaN;
+                ordinates[offset + 1] = Double.NaN;
+                if (firstException == null) {
+                    firstException = new ProjectionException(y);
+                }
+                continue;
+            }
+            ordinates[offset    ] = scale*x + fe;
+            ordinates[offset + 1] = scale*(-log(tsfn(y, sin(y)))) + fn;
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    /**
+     * Inverse transforms in place a list of (<var>x</var>,<var>y</var>) pairs in metres, using
+     * the equations of {@link #inverseTransformNormalized inverseTransformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void inverseTransformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        ProjectionException firstException = null;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            final double x = (ordinates[offset    ] - fe) / scale;
+            final double y = (ordinates[offset + 1] - fn) / scale;
+            try {
+                ordinates[offset + 1] = toDegrees(cphi2(exp(-y)));
+                ordinates[offset    ] = toDegrees(cm != 0 ? rollLongitude(x + cm) : x);
+            } catch (ProjectionException exception) {
+                ordinates[offset    ] = Double.NaN;
+                ordinates[offset + 1] = Double.NaN;
+                if (firstException == null) {
+                    firstException = exception;
+                }
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
 
     /**
      * Provides the transform equations for the spherical case of the Mercator projection.
@@ -236,6 +236,92 @@ public class PolarStereographic extends Stereographic {
         return new Point2D.Double(x,y);
     }
 
+    /**
+     * Transforms in place a list of (<var>longitude</var>,<var>latitude</var>) pairs in decimal
+     * degrees, using the equations of {@link #transformNormalized transformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void transformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = toRadians(ordinates[offset]);
+            if (cm != 0) {
+                x = rollLongitude(x - cm);
+            }
+            final double y = toRadians(ordinates[offset + 1]);
+            final double sinlat = sin(y);
+            final double coslon = cos(x);
+            final double sinlon = sin(x);
+            if (southPole) {
+                final double rho = k0 * tsfn(-y, -sinlat);
+                ordinates[offset    ] = scale*(rho * sinlon) + fe;
+                ordinates[offset + 1] = scale*(rho * coslon) + fn;
+            } else {
+                final double rho = k0 * tsfn(y, sinlat);
+                ordinates[offset    ] = scale*( rho * sinlon) + fe;
+                ordinates[offset + 1] = scale*(-rho * coslon) + fn;
+            }
+        }
+    }
+
+    /**
+     * Inverse transforms in place a list of (<var>x</var>,<var>y</var>) pairs in metres, using
+     * the equations of {@link #inverseTransformNormalized inverseTransformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void inverseTransformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        final double halfe = excentricity/2.0;
+        ProjectionException firstException = null;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = (ordinates[offset    ] - fe) / scale;
+            double y = (ordinates[offset + 1] - fn) / scale;
+            final double rho = hypot(x, y);
+            if (southPole) {
+                y = -y;
+            }
+            final double t = rho/k0;
+            double phi0 = 0;
+            boolean converged = false;
+            for (int i=MAXIMUM_ITERATIONS; i >= 0; i--) {
+                final double esinphi = excentricity * sin(phi0);
+                final double phi = (PI/2) - 2.0*atan(t*pow((1-esinphi)/(1+esinphi), halfe));
+                if (abs(phi-phi0) < ITERATION_TOLERANCE) {
+                    x = (abs(rho) < EPSILON) ? 0.0 : atan2(x, -y);
+                    y = (southPole) ? -phi : phi;
+                    converged = true;
+                    break;
+                }
+                phi0 = phi;
+            }
+            if (!converged) {
+                ordinates[offset    ] = Double.NaN;
+                ordinates[offset + 1] = Double.NaN;
+                if (firstException == null) {
+                    firstException = new ProjectionException(ErrorKeys.NO_CONVERGENCE);
+                }
+                continue;
+            }
+            ordinates[offset    ] = toDegrees(cm != 0 ? rollLongitude(x + cm) : x);
+            ordinates[offset + 1] = toDegrees(y);
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
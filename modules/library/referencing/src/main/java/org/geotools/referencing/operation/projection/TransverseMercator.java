@@ -248,6 +248,113 @@ public class TransverseMercator extends MapProjection {
         return new Point2D.Double(x,y);
     }
 
+    /**
+     * Transforms in place a list of (<var>longitude</var>,<var>latitude</var>) pairs in decimal
+     * degrees, using the equations of {@link #transformNormalized transformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void transformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        final double es = excentricitySquared;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = toRadians(ordinates[offset]);
+            if (cm != 0) {
+                x = rollLongitude(x - cm);
+            }
+            double y = toRadians(ordinates[offset + 1]);
+
+            final double sinphi = sin(y);
+            final double cosphi = cos(y);
+            double t = (abs(cosphi) > EPSILON) ? sinphi/cosphi : 0;
+            t *= t;
+            double al = cosphi*x;
+            final double als = al*al;
+            al /= sqrt(1.0 - es * sinphi*sinphi);
+            final double n = esp * cosphi*cosphi;
+
+            y = (mlfn(y, sinphi, cosphi) - ml0 +
+                sinphi * al * x *
+                FC2 * ( 1.0 +
+                FC4 * als * (5.0 - t + n*(9.0 + 4.0*n) +
+                FC6 * als * (61.0 + t * (t - 58.0) + n*(270.0 - 330.0*t) +
+                FC8 * als * (1385.0 + t * ( t*(543.0 - t) - 3111.0))))));
+
+            x = al*(FC1 + FC3 * als*(1.0 - t + n +
+                FC5 * als * (5.0 + t*(t - 18.0) + n*(14.0 - 58.0*t) +
+                FC7 * als * (61.0+ t*(t*(179.0 - t) - 479.0 )))));
+
+            ordinates[offset    ] = scale*x + fe;
+            ordinates[offset + 1] = scale*y + fn;
+        }
+    }
+
+    /**
+     * Inverse transforms in place a list of (<var>x</var>,<var>y</var>) pairs in metres, using
+     * the equations of {@link #inverseTransformNormalized inverseTransformNormalized} with the
+     * normalization and denormalization steps fused in the same loop.
+     */
+    @Override
+    protected void inverseTransformInPlace(final double[] ordinates, int offset, int numPts)
+            throws ProjectionException
+    {
+        final double cm = centralMeridian;
+        final double scale = globalScale;
+        final double fe = falseEasting;
+        final double fn = falseNorthing;
+        final double es = excentricitySquared;
+        ProjectionException firstException = null;
+        for (final int upper = offset + 2*numPts; offset < upper; offset += 2) {
+            double x = (ordinates[offset    ] - fe) / scale;
+            double y = (ordinates[offset + 1] - fn) / scale;
+            final double phi;
+            try {
+                phi = inv_mlfn(ml0 + y);
+            } catch (ProjectionException exception) {
+                ordinates[offset    ] = Double.NaN;
+                ordinates[offset + 1] = Double.NaN;
+                if (firstException == null) {
+                    firstException = exception;
+                }
+                continue;
+            }
+            if (abs(phi) >= PI/2) {
+                y = y<0.0 ? -(PI/2) : (PI/2);
+                x = 0.0;
+            } else {
+                final double sinphi = sin(phi);
+                final double cosphi = cos(phi);
+                double t = (abs(cosphi) > EPSILON) ? sinphi/cosphi : 0.0;
+                final double n = esp * cosphi*cosphi;
+                double con = 1.0 - es * sinphi*sinphi;
+                final double d = x * sqrt(con);
+                con *= t;
+                t *= t;
+                final double ds = d*d;
+
+                y = phi - (con*ds / (1.0 - es)) *
+                    FC2 * (1.0 - ds *
+                    FC4 * (5.0 + t*(3.0 - 9.0*n) + n*(1.0 - 4*n) - ds *
+                    FC6 * (61.0 + t*(90.0 - 252.0*n + 45.0*t) + 46.0*n - ds *
+                    FC8 * (1385.0 + t*(3633.0 + t*(4095.0 + 1574.0*t))))));
+
+                x = d*(FC1 - ds * FC3 * (1.0 + 2.0*t + n -
+                    ds*FC5*(5.0 + t*(28.0 + 24* t + 8.0*n) + 6.0*n -
+                    ds*FC7*(61.0 + t*(662.0 + t*(1320.0 + 720.0*t))))))/cosphi;
+            }
+            ordinates[offset    ] = toDegrees(cm != 0 ? rollLongitude(x + cm) : x);
+            ordinates[offset + 1] = toDegrees(y);
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,379 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.operation.transform;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opengis.geometry.DirectPosition;
+import org.opengis.referencing.operation.MathTransform2D;
+import org.opengis.referencing.operation.Matrix;
+import org.opengis.referencing.operation.NoninvertibleTransformException;
+import org.opengis.referencing.operation.TransformException;
+
+import org.geotools.util.logging.Logging;
+
+
+/**
+ * A two dimensional transform approximating another transform within a rectangular domain of
+ * its source space, with a known error bound. The domain is split into a regular grid of cells,
+ * the exact transform is evaluated only at the grid nodes, and the points falling inside a cell
+ * are bilinearly interpolated between its four corners. The grid density is chosen by the same
+ * recursive subdivision used by {@link WarpBuilder}, so that the distance between the
+ * approximated and the exact position stays below the tolerance, expressed in target units
+ * (if the target space is the screen, the tolerance is in pixels).
+ * <p>
+ * Points outside of the domain, or inside cells whose corners could not be transformed, are
+ * transformed with the exact transform, so the approximation never fails where the exact
+ * transform would succeed. Contrary to a JAI {@link javax.media.jai.WarpGrid}, the grid nodes
+ * are kept in double precision, making the approximation usable with projected coordinates.
+ * <p>
+ * The derivative and the inverse are the ones of the exact transform.
+ *
+ * @since 8.0
+ * @source $URL$
+ * @version $Id$
+ */
+public class ApproximateMathTransform extends AbstractMathTransform
+        implements MathTransform2D, Serializable
+{
+    /**
+     * For cross-version compatibility.
+     */
+    private static final long serialVersionUID = 6124589120412587125L;
+
+    /**
+     * The logger for the approximation diagnostics.
+     */
+    private static final Logger LOGGER = Logging.getLogger(ApproximateMathTransform.class);
+
+    /**
+     * The default maximum number of cells along each axis.
+     */
+    public static final int MAX_CELLS = 1024;
+
+    /**
+     * The exact transform.
+     */
+    private final MathTransform2D exact;
+
+    /**
+     * The approximated domain, in source coordinates.
+     */
+    private final double minX, minY, cellWidth, cellHeight;
+
+    /**
+     * The number of cells along each axis.
+     */
+    private final int cols, rows;
+
+    /**
+     * The transformed grid nodes, row by row, as (x,y) tuples. Nodes that could not be
+     * transformed are set to NaN.
+     */
+    private final double[] nodes;
+
+    /**
+     * Builds the approximation.
+     */
+    private ApproximateMathTransform(final MathTransform2D exact, final Rectangle2D domain,
+                                     final int rows, final int cols)
+    {
+        this.exact      = exact;
+        this.minX       = domain.getMinX();
+        this.minY       = domain.getMinY();
+        this.cols       = cols;
+        this.rows       = rows;
+        this.cellWidth  = domain.getWidth()  / cols;
+        this.cellHeight = domain.getHeight() / rows;
+        nodes = new double[(rows + 1) * (cols + 1) * 2];
+        int idx = 0;
+        for (int r=0; r<=rows; r++) {
+            final double y = (r == rows) ? domain.getMaxY() : minY + r * cellHeight;
+            for (int c=0; c<=cols; c++) {
+                nodes[idx++] = (c == cols) ? domain.getMaxX() : minX + c * cellWidth;
+                nodes[idx++] = y;
+            }
+        }
+        try {
+            exact.transform(nodes, 0, nodes, 0, nodes.length / 2);
+        } catch (TransformException e) {
+            // The GeoTools transforms set the failed points to NaN and keep going,
+            // the cells touching them will use the exact transform.
+            LOGGER.log(Level.FINE, "Some grid nodes could not be transformed", e);
+        }
+    }
+
+    /**
+     * Returns a transform approximating {@code mt} within the specified tolerance, inside the
+     * specified domain. If {@code mt} is affine, or if the approximation would need a grid too
+     * dense to be worth it, then {@code mt} itself is returned.
+     *
+     * @param  mt        The exact transform.
+     * @param  domain    The area where the transform will be approximated, in source units.
+     * @param  tolerance The maximum distance between an approximated point and the exact one,
+     *                   in target units.
+     * @return The approximated transform, or {@code mt}.
+     * @throws TransformException if the approximation could not be computed.
+     */
+    public static MathTransform2D create(final MathTransform2D mt, final Rectangle2D domain,
+                                         final double tolerance) throws TransformException
+    {
+        return create(mt, domain, tolerance, MAX_CELLS);
+    }
+
+    /**
+     * Returns a transform approximating {@code mt} within the specified tolerance, inside the
+     * specified domain, using at most {@code maxCells} grid cells along each axis. The grid is
+     * only as dense as the tolerance needs, but if the tolerance needs more cells than allowed,
+     * transforming the points exactly is deemed cheaper and {@code mt} itself is returned.
+     *
+     * @param  mt        The exact transform.
+     * @param  domain    The area where the transform will be approximated, in source units.
+     * @param  tolerance The maximum distance between an approximated point and the exact one,
+     *                   in target units.
+     * @param  maxCells  The maximum number of cells along each axis, rounded down to a power
+     *                   of two.
+     * @return The approximated transform, or {@code mt}.
+     * @throws TransformException if the approximation could not be computed.
+     *
+     * @since 8.0
+     */
+    public static MathTransform2D create(final MathTransform2D mt, final Rectangle2D domain,
+                                         final double tolerance, final int maxCells)
+            throws TransformException
+    {
+        if (mt instanceof AffineTransform || mt instanceof ApproximateMathTransform
+                || !(tolerance > 0) || domain.isEmpty() || maxCells < 1)
+        {
+            return mt;
+        }
+        /*
+         * Express the domain in a virtual grid space so that the WarpBuilder limits, meant
+         * for pixels, apply whatever the source units are. The builder stops when cells get
+         * smaller than 4 units, which bounds the number of cells along each axis.
+         */
+        final double gridSpace = 4.0 * Integer.highestOneBit(maxCells);
+        final AffineTransform gridToSource = new AffineTransform(
+                domain.getWidth() / gridSpace, 0, 0, domain.getHeight() / gridSpace,
+                domain.getMinX(), domain.getMinY());
+        final MathTransform2D gridToTarget = (MathTransform2D) ConcatenatedTransform.create(
+                new AffineTransform2D(gridToSource), mt);
+        final WarpBuilder builder = new WarpBuilder(tolerance);
+        final int[] depths;
+        try {
+            depths = builder.computeOptimalDepths(gridToTarget, 0, gridSpace, 0, gridSpace, 0, 0);
+        } catch (WarpBuilder.ExcessiveDepthException e) {
+            LOGGER.log(Level.FINE, "Cannot approximate the transform, using the exact one", e);
+            return mt;
+        }
+        return new ApproximateMathTransform(mt, domain, 1 << depths[0], 1 << depths[1]);
+    }
+
+    /**
+     * Returns the exact transform this one approximates.
+     */
+    public MathTransform2D getExactTransform() {
+        return exact;
+    }
+
+    /**
+     * Returns the number of grid cells along the x and y axis.
+     */
+    public int[] getGridSize() {
+        return new int[] {cols, rows};
+    }
+
+    /**
+     * Gets the dimension of input points, which is 2.
+     */
+    public final int getSourceDimensions() {
+        return 2;
+    }
+
+    /**
+     * Gets the dimension of output points, which is 2.
+     */
+    public final int getTargetDimensions() {
+        return 2;
+    }
+
+    /**
+     * Interpolates a single point in the grid, and stores the result in {@code dstPts}.
+     * Returns {@code false} if the point falls outside the grid, or in a cell that could
+     * not be interpolated.
+     */
+    private boolean interpolate(final double x, final double y,
+                                final double[] dstPts, final int dstOff)
+    {
+        final double gx = (x - minX) / cellWidth;
+        final double gy = (y - minY) / cellHeight;
+        if (!(gx >= 0 && gx <= cols && gy >= 0 && gy <= rows)) {
+            return false;
+        }
+        final int c = Math.min((int) gx, cols - 1);
+        final int r = Math.min((int) gy, rows - 1);
+        final double fx = gx - c;
+        final double fy = gy - r;
+        final int i00 = (r * (cols + 1) + c) * 2;
+        final int i10 = i00 + 2;
+        final int i01 = i00 + (cols + 1) * 2;
+        final int i11 = i01 + 2;
+        final double[] nodes = this.nodes;
+        final double tx = (1 - fy) * (nodes[i00    ] + fx * (nodes[i10    ] - nodes[i00    ]))
+                        +      fy  * (nodes[i01    ] + fx * (nodes[i11    ] - nodes[i01    ]));
+        final double ty = (1 - fy) * (nodes[i00 + 1] + fx * (nodes[i10 + 1] - nodes[i00 + 1]))
+                        +      fy  * (nodes[i01 + 1] + fx * (nodes[i11 + 1] - nodes[i01 + 1]));
+        if (Double.isNaN(tx) || Double.isNaN(ty)) {
+            return false;
+        }
+        dstPts[dstOff    ] = tx;
+        dstPts[dstOff + 1] = ty;
+        return true;
+    }
+
+    /**
+     * Transforms the specified point, interpolating it if it falls inside the domain.
+     */
+    @Override
+    public Point2D transform(final Point2D ptSrc, Point2D ptDst) throws TransformException {
+        final double[] ordinates = new double[2];
+        if (!interpolate(ptSrc.getX(), ptSrc.getY(), ordinates, 0)) {
+            return exact.transform(ptSrc, ptDst);
+        }
+        if (ptDst == null) {
+            ptDst = new Point2D.Double();
+        }
+        ptDst.setLocation(ordinates[0], ordinates[1]);
+        return ptDst;
+    }
+
+    /**
+     * Transforms a list of coordinate point ordinal values. The points outside of the
+     * domain are transformed with the exact transform.
+     */
+    @Override
+    public void transform(double[] srcPts, int srcOff,
+                          final double[] dstPts, int dstOff, int numPts)
+            throws TransformException
+    {
+        if (srcPts == dstPts && needCopy(srcOff, 2, dstOff, 2, numPts)) {
+            final double[] old = srcPts;
+            srcPts = new double[numPts * 2];
+            System.arraycopy(old, srcOff, srcPts, 0, srcPts.length);
+            srcOff = 0;
+        }
+        final double[] point = new double[2];
+        TransformException failure = null;
+        while (--numPts >= 0) {
+            final double x = srcPts[srcOff++];
+            final double y = srcPts[srcOff++];
+            if (!interpolate(x, y, dstPts, dstOff)) {
+                point[0] = x;
+                point[1] = y;
+                try {
+                    exact.transform(point, 0, point, 0, 1);
+                } catch (TransformException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    point[0] = point[1] = Double.NaN;
+                }
+                dstPts[dstOff    ] = point[0];
+                dstPts[dstOff + 1] = point[1];
+            }
+            dstOff += 2;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Transforms a list of coordinate point ordinal values.
+     */
+    @Override
+    public void transform(final float[] srcPts, int srcOff,
+                          final float[] dstPts, int dstOff, int numPts)
+            throws TransformException
+    {
+        final double[] buffer = new double[numPts * 2];
+        for (int i=0; i<buffer.length; i++) {
+            buffer[i] = srcPts[srcOff + i];
+        }
+        transform(buffer, 0, buffer, 0, numPts);
+        for (int i=0; i<buffer.length; i++) {
+            dstPts[dstOff + i] = (float) buffer[i];
+        }
+    }
+
+    /**
+     * Gets the derivative of the exact transform at a point.
+     */
+    @Override
+    public Matrix derivative(final Point2D point) throws TransformException {
+        return exact.derivative(point);
+    }
+
+    /**
+     * Gets the derivative of the exact transform at a point.
+     */
+    @Override
+    public Matrix derivative(final DirectPosition point) throws TransformException {
+        return exact.derivative(point);
+    }
+
+    /**
+     * Returns the inverse of the exact transform.
+     */
+    @Override
+    public MathTransform2D inverse() throws NoninvertibleTransformException {
+        return exact.inverse();
+    }
+
+    /**
+     * Returns a hash value for this transform.
+     */
+    @Override
+    public int hashCode() {
+        return exact.hashCode() ^ (rows * 31 + cols) ^ (int) serialVersionUID;
+    }
+
+    /**
+     * Compares the specified object with this math transform for equality.
+     */
+    @Override
+    public boolean equals(final Object object) {
+        if (object == this) {
+            return true;
+        }
+        if (super.equals(object)) {
+            final ApproximateMathTransform that = (ApproximateMathTransform) object;
+            return rows == that.rows && cols == that.cols
+                    && Double.doubleToLongBits(minX) == Double.doubleToLongBits(that.minX)
+                    && Double.doubleToLongBits(minY) == Double.doubleToLongBits(that.minY)
+                    && Double.doubleToLongBits(cellWidth) == Double.doubleToLongBits(that.cellWidth)
+                    && Double.doubleToLongBits(cellHeight) == Double.doubleToLongBits(that.cellHeight)
+                    && exact.equals(that.exact);
+        }
+        return false;
+    }
+}
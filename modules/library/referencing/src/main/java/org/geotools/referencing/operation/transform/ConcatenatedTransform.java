@@ -71,6 +71,13 @@ public class ConcatenatedTransform extends AbstractMathTransform implements Seri
      */
     private static final int TEMPORARY_ARRAY_LENGTH = 256;
 
+    /**
+     * Maximum number of ordinates transformed by each step of a chain of transforms before
+     * moving to the next step, when the transformation can be done without intermediate buffer.
+     * A value of 2048 uses 16 kilobytes, which should fit in the first level processor cache.
+     */
+    static final int BLOCK_LENGTH = 2048;
+
     /**
      * The first math transform.
      */
@@ -69,16 +69,36 @@ class ConcatenatedTransformDirect extends ConcatenatedTransform {
     }
 
     /**
-     * Transforms a list of coordinate point ordinal values.
+     * Transforms a list of coordinate point ordinal values. Large arrays are processed in blocks
+     * of at most {@link #BLOCK_LENGTH} ordinates, each block going through the whole chain of
+     * transforms before the next one is processed. This way the intermediate results stay in the
+     * processor cache instead of being written back to memory and read again by each step.
+     * <p>
+     * As when the whole array goes through each step, a failure of the first step aborts the
+     * chain: the second step is not applied to the failed block, and the remaining blocks are
+     * not transformed.
      */
     @Override
-    public void transform(final double[] srcPts, final int srcOff,
-                          final double[] dstPts, final int dstOff, final int numPts)
+    public void transform(final double[] srcPts, int srcOff,
+                          final double[] dstPts, int dstOff, int numPts)
             throws TransformException
     {
         assert isValid();
-        transform1.transform(srcPts, srcOff, dstPts, dstOff, numPts);
-        transform2.transform(dstPts, dstOff, dstPts, dstOff, numPts);
+        final int dimension = getSourceDimensions();
+        final int blockPts = Math.max(1, BLOCK_LENGTH / dimension);
+        if (srcPts == dstPts && srcOff != dstOff && numPts > blockPts) {
+            // Possibly overlapping arrays: the blocks must be processed in place.
+            System.arraycopy(srcPts, srcOff, dstPts, dstOff, numPts * dimension);
+            srcOff = dstOff;
+        }
+        while (numPts > 0) {
+            final int n = Math.min(blockPts, numPts);
+            transform1.transform(srcPts, srcOff, dstPts, dstOff, n);
+            transform2.transform(dstPts, dstOff, dstPts, dstOff, n);
+            srcOff += n * dimension;
+            dstOff += n * dimension;
+            numPts -= n;
+        }
     }
 
     // Do NOT override the transform(float[]...) version because we really need to use an
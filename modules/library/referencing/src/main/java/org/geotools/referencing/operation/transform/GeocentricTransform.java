@@ -262,18 +262,34 @@ public class GeocentricTransform extends AbstractMathTransform implements Serial
             System.arraycopy(old, srcOff, srcPts, 0, srcPts.length);
             srcOff = 0;
         }
+        /*
+         * Points on the same row of a raster share their latitude, and points on the same
+         * column their longitude: the trigonometric terms of the last point are reused
+         * when the angle did not change.
+         */
+        final double e2c = 1 - e2;
+        double lastL = Double.NaN, cosLon = 0, sinLon = 0;
+        double lastP = Double.NaN, cosLat = 0, sinLat = 0, rn = 0;
         while (--numPts >= 0) {
-            final double L = Math.toRadians(srcPts[srcOff++]); // Longitude
-            final double P = Math.toRadians(srcPts[srcOff++]); // Latitude
+            final double L = srcPts[srcOff++];                 // Longitude
+            final double P = srcPts[srcOff++];                 // Latitude
             final double h = hasHeight ? srcPts[srcOff++] : 0; // Height above the ellipsoid (m)
-
-            final double cosLat = Math.cos(P);
-            final double sinLat = Math.sin(P);
-            final double rn     = a / Math.sqrt(1 - e2 * (sinLat*sinLat));
-
-            dstPts[dstOff++] = (rn + h) * cosLat * Math.cos(L); // X: Toward prime meridian
-            dstPts[dstOff++] = (rn + h) * cosLat * Math.sin(L); // Y: Toward East
-            dstPts[dstOff++] = (rn * (1-e2) + h) * sinLat;      // Z: Toward North
+            if (P != lastP) {
+                final double r = Math.toRadians(P);
+                cosLat = Math.cos(r);
+                sinLat = Math.sin(r);
+                rn     = a / Math.sqrt(1 - e2 * (sinLat*sinLat));
+                lastP  = P;
+            }
+            if (L != lastL) {
+                final double r = Math.toRadians(L);
+                cosLon = Math.cos(r);
+                sinLon = Math.sin(r);
+                lastL  = L;
+            }
+            dstPts[dstOff++] = (rn + h) * cosLat * cosLon; // X: Toward prime meridian
+            dstPts[dstOff++] = (rn + h) * cosLat * sinLon; // Y: Toward East
+            dstPts[dstOff++] = (rn * e2c + h) * sinLat;    // Z: Toward North
         }
     }
 
@@ -294,18 +310,29 @@ public class GeocentricTransform extends AbstractMathTransform implements Serial
             System.arraycopy(old, srcOff, srcPts, 0, srcPts.length);
             srcOff = 0;
         }
+        final double e2c = 1 - e2;
+        double lastL = Double.NaN, cosLon = 0, sinLon = 0;
+        double lastP = Double.NaN, cosLat = 0, sinLat = 0, rn = 0;
         while (--numPts >= 0) {
-            final double L = Math.toRadians(srcPts[srcOff++]); // Longitude
-            final double P = Math.toRadians(srcPts[srcOff++]); // Latitude
+            final double L = srcPts[srcOff++];                 // Longitude
+            final double P = srcPts[srcOff++];                 // Latitude
             final double h = hasHeight ? srcPts[srcOff++] : 0; // Height above the ellipsoid (m)
-
-            final double cosLat = Math.cos(P);
-            final double sinLat = Math.sin(P);
-            final double rn     = a / Math.sqrt(1 - e2 * (sinLat*sinLat));
-
-            dstPts[dstOff++] = (float) ((rn + h) * cosLat * Math.cos(L)); // X: Toward prime meridian
-            dstPts[dstOff++] = (float) ((rn + h) * cosLat * Math.sin(L)); // Y: Toward East
-            dstPts[dstOff++] = (float) ((rn * (1-e2) + h) * sinLat);      // Z: Toward North
+            if (P != lastP) {
+                final double r = Math.toRadians(P);
+                cosLat = Math.cos(r);
+                sinLat = Math.sin(r);
+                rn     = a / Math.sqrt(1 - e2 * (sinLat*sinLat));
+                lastP  = P;
+            }
+            if (L != lastL) {
+                final double r = Math.toRadians(L);
+                cosLon = Math.cos(r);
+                sinLon = Math.sin(r);
+                lastL  = L;
+            }
+            dstPts[dstOff++] = (float) ((rn + h) * cosLat * cosLon); // X: Toward prime meridian
+            dstPts[dstOff++] = (float) ((rn + h) * cosLat * sinLon); // Y: Toward East
+            dstPts[dstOff++] = (float) ((rn * e2c + h) * sinLat);    // Z: Toward North
         }
     }
 
@@ -335,6 +335,14 @@ public class MolodenskiTransform extends AbstractMathTransform implements Serial
             dstOff += (numPts-1)*step;
             step *= -2;
         }
+        /*
+         * Points on the same row of a raster share their latitude, and points on the same
+         * column their longitude: the terms depending only on the latitude or only on the
+         * longitude are reused when the angle did not change.
+         */
+        final double e2c = 1 - e2;
+        double lastX = Double.NaN, sinX = 0, cosX = 0;
+        double lastY = Double.NaN, sinY = 0, cosY = 0, sin2Y = 0, Rn = 0, Rm = 0, sinYcosY = 0;
         while (--numPts >= 0) {
             double x,y,z;
             if (srcPts2 != null) {
@@ -346,15 +354,27 @@ public class MolodenskiTransform extends AbstractMathTransform implements Serial
                 y =              srcPts1[srcOff++];
                 z = (source3D) ? srcPts1[srcOff++] : 0.0;
             }
-            x = toRadians(x);
-            y = toRadians(y);
-            final double sinX = sin(x);
-            final double cosX = cos(x);
-            final double sinY = sin(y);
-            final double cosY = cos(y);
-            final double sin2Y = sinY * sinY;
-            final double Rn = a / sqrt(1 - e2*sin2Y);
-            final double Rm = Rn * (1 - e2) / (1 - e2*sin2Y);
+            if (x != lastX) {
+                lastX = x;
+                x = toRadians(x);
+                sinX = sin(x);
+                cosX = cos(x);
+            } else {
+                x = toRadians(x);
+            }
+            if (y != lastY) {
+                lastY = y;
+                y = toRadians(y);
+                sinY = sin(y);
+                cosY = cos(y);
+                sin2Y = sinY * sinY;
+                sinYcosY = sinY * cosY;
+                final double w = 1 - e2*sin2Y;
+                Rn = a / sqrt(w);
+                Rm = Rn * e2c / w;
+            } else {
+                y = toRadians(y);
+            }
 
             // Note: Computation of 'x' and 'y' ommit the division by sin(1"), because
             //       1/sin(1") / (60*60*180/PI) = 1.0000000000039174050898603898692...
@@ -362,11 +382,11 @@ public class MolodenskiTransform extends AbstractMathTransform implements Serial
             //       and 180/PI is for converting degrees to radians). This is an error
             //       of about 8E-7 arc seconds, probably close to rounding errors anyway.
             if (abridged) {
-                y += (dz*cosY - sinY*(dy*sinX + dx*cosX) + adf*sin(2*y)) / Rm;
+                y += (dz*cosY - sinY*(dy*sinX + dx*cosX) + adf*(2*sinYcosY)) / Rm;
                 x += (dy*cosX - dx*sinX) / (Rn*cosY);
             } else {
-                y += (dz*cosY - sinY*(dy*sinX + dx*cosX) + da_a*(Rn*e2*sinY*cosY) +
-                      df*(Rm*(a_b) + Rn*(b_a))*sinY*cosY) / (Rm + z);
+                y += (dz*cosY - sinY*(dy*sinX + dx*cosX) + da_a*(Rn*e2*sinYcosY) +
+                      df*(Rm*(a_b) + Rn*(b_a))*sinYcosY) / (Rm + z);
                 x += (dy*cosX - dx*sinX) / ((Rn + z)*cosY);
             }
             // stay within latitude +-90 deg. and longitude +-180 deg.
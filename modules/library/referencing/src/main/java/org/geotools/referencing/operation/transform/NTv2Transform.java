@@ -33,6 +33,7 @@ import org.geotools.referencing.NamedIdentifier;
 import org.geotools.referencing.ReferencingFactoryFinder;
 import org.geotools.referencing.factory.IdentifiedObjectSet;
 import org.geotools.referencing.factory.gridshift.GridShiftLocator;
+import org.geotools.referencing.factory.gridshift.MappedNTv2Grid;
 import org.geotools.referencing.factory.gridshift.NTv2GridShiftFactory;
 import org.geotools.referencing.operation.MathTransformProvider;
 import org.geotools.util.Utilities;
@@ -50,9 +51,6 @@ import org.opengis.referencing.operation.MathTransform2D;
 import org.opengis.referencing.operation.TransformException;
 import org.opengis.referencing.operation.Transformation;
 
-import au.com.objectix.jgridshift.GridShift;
-import au.com.objectix.jgridshift.GridShiftFile;
-
 /**
  * The "<cite>NTv2</cite>" coordinate transformation method (EPSG:9615).
  * <p>
@@ -82,9 +80,9 @@ public class NTv2Transform extends AbstractMathTransform implements MathTransfor
     private URL gridLocation = null;
     
     /**
-     * The grid shift to be used
+     * The grid shift to be used, memory mapped when first needed.
      */
-    private GridShiftFile gridShift; 
+    private transient MappedNTv2Grid gridShift; 
     
     /**
      * The factory that loads the grid shift files
@@ -246,39 +244,31 @@ public class NTv2Transform extends AbstractMathTransform implements MathTransfor
     private void bidirectionalTransform(double[] srcPts, int srcOff, double[] dstPts,
             int dstOff, int numPts, boolean forward) throws TransformException {
 
-        boolean shifted;
-        
-        if (gridShift == null) { // Create grid when first needed.
+        MappedNTv2Grid mapped = gridShift;
+        if (mapped == null) { // Map grid when first needed.
             try {
-                gridShift = FACTORY.createNTv2Grid(gridLocation);
+                mapped = FACTORY.createMappedNTv2Grid(gridLocation);
             } catch (FactoryException e) {
                 throw new TransformException("NTv2 Grid " + gridLocation +
                         " Could not be created", e);
             }
+            gridShift = mapped;
         }
-        
+
+        if (srcPts == dstPts && needCopy(srcOff, 2, dstOff, 2, numPts)) {
+            final double[] old = srcPts;
+            srcPts = new double[numPts * 2];
+            System.arraycopy(old, srcOff, srcPts, 0, srcPts.length);
+            srcOff = 0;
+        }
+
         try {
-            GridShift shift = new GridShift();
-            while(--numPts >= 0) {
-                shift.setLonPositiveEastDegrees(srcPts[srcOff++]);
-                shift.setLatDegrees(srcPts[srcOff++]);
-                if (forward) {
-                    shifted = gridShift.gridShiftForward(shift);
-                } else {
-                    shifted = gridShift.gridShiftReverse(shift);
-                }
-                if (shifted) {
-                    dstPts[dstOff++]=shift.getShiftedLonPositiveEastDegrees();
-                    dstPts[dstOff++]=shift.getShiftedLatDegrees();
-                } else {
-                    if(LOGGER.isLoggable(Level.FINE)) {
-                        LOGGER.log(Level.FINE, "Point (" + srcPts[srcOff-2] + ", " + srcPts[srcOff-1] +
-                                ") is not covered by '" + this.grid + "' NTv2 grid," +
-                		    " it will not be shifted.");
-                    }
-                    dstPts[dstOff++]=srcPts[srcOff-2];
-                    dstPts[dstOff++]=srcPts[srcOff-1];
-                }
+            // The points are interpolated straight from the mapped grid, without
+            // allocating a GridShift object for each of them.
+            final int missed = mapped.shift(srcPts, srcOff, dstPts, dstOff, numPts, forward);
+            if (missed != 0 && LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, missed + " points are not covered by '" + this.grid +
+                        "' NTv2 grid, they will not be shifted.");
             }
         } catch (IOException e) {
             throw new TransformException(e.getLocalizedMessage(), e);
@@ -374,6 +374,24 @@ public class ProjectiveTransform extends AbstractMathTransform implements Linear
                 }
             }
         }
+        if (numRow == 4 && numCol == 4 && elt[12] == 0 && elt[13] == 0 && elt[14] == 0 && elt[15] == 1) {
+            /*
+             * Affine transform of 3D points, like the geocentric translations on the path of
+             * every datum shift: unrolled loop without the homogeneous division.
+             */
+            final double m00=elt[0], m01=elt[1], m02=elt[ 2], m03=elt[ 3];
+            final double m10=elt[4], m11=elt[5], m12=elt[ 6], m13=elt[ 7];
+            final double m20=elt[8], m21=elt[9], m22=elt[10], m23=elt[11];
+            while (--numPts >= 0) {
+                final double x = srcPts[srcOff++];
+                final double y = srcPts[srcOff++];
+                final double z = srcPts[srcOff++];
+                dstPts[dstOff++] = m00*x + m01*y + m02*z + m03;
+                dstPts[dstOff++] = m10*x + m11*y + m12*z + m13;
+                dstPts[dstOff++] = m20*x + m21*y + m22*z + m23;
+            }
+            return;
+        }
         while (--numPts >= 0) {
             int mix = 0;
             for (int j=0; j<numRow; j++) {
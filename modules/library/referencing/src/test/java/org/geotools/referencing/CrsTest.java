@@ -32,6 +32,7 @@ import org.junit.Test;
 import org.opengis.geometry.Envelope;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.ProjectedCRS;
 import org.opengis.referencing.operation.CoordinateOperation;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.MathTransform2D;
@@ -269,6 +270,44 @@ public final class CrsTest {
         assertTrue(XRectangle2D.equalsEpsilon(expected, actual));
     }
 
+    /**
+     * Tests the transformation of many envelopes at once. The batch results should contain
+     * the single envelope results, and follow the curved boundaries between the samples.
+     */
+    @Test
+    public void testBatchEnvelopeTransformation() throws FactoryException, TransformException {
+        CoordinateOperation operation = CRS.getCoordinateOperationFactory(false).createOperation(
+                CRS.parseWKT(WKT.POLAR_STEREOGRAPHIC), DefaultGeographicCRS.WGS84);
+        final GeneralEnvelope overPole = new GeneralEnvelope(
+                new double[] {-4000000, -4000000}, new double[] {300000, 30000});
+        GeneralEnvelope[] actual = CRS.transform(operation, new Envelope[] {overPole, null}, 2);
+        assertNull(actual[1]);
+        assertTrue(actual[0].contains(CRS.transform(operation, overPole), true));
+        assertEquals(-90, actual[0].getMinimum(1), 0);
+        /*
+         * The north edge of a geographic envelope is curved in UTM, with the maximal
+         * northing on the central meridian which is between two samples.
+         */
+        final ProjectedCRS utm = (ProjectedCRS) CRS.parseWKT(WKT.UTM_10N);
+        operation = CRS.getCoordinateOperationFactory(false).createOperation(utm.getBaseCRS(), utm);
+        final GeneralEnvelope geographic = new GeneralEnvelope(
+                new double[] {-130, 30}, new double[] {-110, 60});
+        actual = CRS.transform(operation, new Envelope[] {geographic}, 16);
+        assertTrue(actual[0].contains(CRS.transform(operation, geographic), true));
+        final int n = 4000;
+        final double[] edge = new double[2 * n];
+        for (int i=0; i<n; i++) {
+            edge[2*i]   = -130 + 20.0 * i / (n - 1);
+            edge[2*i+1] = 60;
+        }
+        operation.getMathTransform().transform(edge, 0, edge, 0, n);
+        double northing = Double.NEGATIVE_INFINITY;
+        for (int i=1; i<edge.length; i+=2) {
+            northing = Math.max(northing, edge[i]);
+        }
+        assertEquals(northing, actual[0].getMaximum(1), 1);
+    }
+
     @Test
     public void testGetHorizontalCrs() {
         assertEquals( DefaultEngineeringCRS.GENERIC_2D, CRS.getHorizontalCRS(DefaultEngineeringCRS.GENERIC_2D));
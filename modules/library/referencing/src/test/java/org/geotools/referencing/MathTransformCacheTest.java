@@ -0,0 +1,86 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing;
+
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the {@link MathTransformCache}.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class MathTransformCacheTest {
+    private static final String ED50 =
+            "GEOGCS[\"ED50\",DATUM[\"European_Datum_1950\",SPHEROID[\"International 1924\",6378388,297]," +
+            "TOWGS84[%d,-98,-121,0,0,0,0]],PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.017453292519943295]]";
+
+    private static final String UTM =
+            "PROJCS[\"UTM %d\",GEOGCS[\"WGS 84\",DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563]]," +
+            "PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.017453292519943295]],PROJECTION[\"Transverse_Mercator\"]," +
+            "PARAMETER[\"central_meridian\",%d],PARAMETER[\"scale_factor\",0.9996]," +
+            "PARAMETER[\"false_easting\",500000],UNIT[\"metre\",1]]";
+
+    /**
+     * Equivalent CRS parsed separately share the same transform, CRS differing only
+     * by their Bursa-Wolf parameters do not.
+     */
+    @Test
+    public void testEquivalentInstances() throws Exception {
+        final MathTransformCache cache = new MathTransformCache();
+        final CoordinateReferenceSystem wgs84 = DefaultGeographicCRS.WGS84;
+        final MathTransform mt = cache.get(CRS.parseWKT(String.format(ED50, -87)), wgs84, false);
+        assertSame(mt, cache.get(CRS.parseWKT(String.format(ED50, -87)), wgs84, false));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        final MathTransform other = cache.get(CRS.parseWKT(String.format(ED50, -86)), wgs84, false);
+        assertNotSame(mt, other);
+        assertFalse(mt.equals(other));
+        assertNotSame(mt, cache.get(CRS.parseWKT(String.format(ED50, -87)), wgs84, true));
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.getMisses());
+    }
+
+    /**
+     * The least recently used transforms are evicted.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        final MathTransformCache cache = new MathTransformCache(2);
+        final CoordinateReferenceSystem wgs84 = DefaultGeographicCRS.WGS84;
+        cache.get(wgs84, CRS.parseWKT(String.format(UTM, 31, 3)), false);
+        cache.get(wgs84, CRS.parseWKT(String.format(UTM, 32, 9)), false);
+        cache.get(wgs84, CRS.parseWKT(String.format(UTM, 31, 3)), false);
+        cache.get(wgs84, CRS.parseWKT(String.format(UTM, 33, 15)), false);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHits());
+        // zone 32 was the least recently used one
+        cache.get(wgs84, CRS.parseWKT(String.format(UTM, 31, 3)), false);
+        assertEquals(2, cache.getHits());
+        cache.get(wgs84, CRS.parseWKT(String.format(UTM, 32, 9)), false);
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+}
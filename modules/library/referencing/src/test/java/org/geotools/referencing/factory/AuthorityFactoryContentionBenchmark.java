@@ -0,0 +1,113 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.referencing.CRS;
+
+
+/**
+ * Measures the throughput of {@link CRS#decode(String)} when many threads decode a mix of
+ * codes at the same time, as a busy web map server would do. Not a test, run it from the
+ * command line:
+ * <pre>
+ * java -cp ... org.geotools.referencing.factory.AuthorityFactoryContentionBenchmark [threads]
+ * </pre>
+ * The decodes are run once as they are, and once serialized on a global lock, which
+ * mimics the behavior of factories synchronizing their cache accesses.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class AuthorityFactoryContentionBenchmark {
+    /** The codes being decoded, most of them cache hits after the first round. */
+    private static final String[] CODES = {
+        "EPSG:4326", "EPSG:3857", "EPSG:32632", "EPSG:32633", "EPSG:2154",
+        "EPSG:27700", "EPSG:3035", "EPSG:4269", "EPSG:26910", "EPSG:3395", "EPSG:4258",
+        "EPSG:31467", "EPSG:28992", "EPSG:3003", "EPSG:23032"
+    };
+
+    /** The duration of each measurement, in milliseconds. */
+    private static final long DURATION = 5000;
+
+    /** Do not allow instantiation of this class. */
+    private AuthorityFactoryContentionBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     */
+    public static void main(final String[] args) throws Exception {
+        final int threads = (args.length != 0) ? Integer.parseInt(args[0]) : 64;
+        // warm up the caches
+        for (String code : CODES) {
+            CRS.decode(code);
+        }
+        run(threads, false);
+        final double serialized = run(threads, true);
+        final double concurrent = run(threads, false);
+        System.out.println(String.format("%d threads: %,15.0f decodes/s serialized, "
+                + "%,15.0f decodes/s concurrent (x%.1f)", threads, serialized, concurrent,
+                concurrent / serialized));
+    }
+
+    /**
+     * Returns the number of decodes per second performed by the specified amount of threads.
+     */
+    private static double run(final int threads, final boolean serialize) throws Exception {
+        final Object lock = new Object();
+        final AtomicLong decodes = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long[] end = new long[1];
+        for (int i=0; i<threads; i++) {
+            final int offset = i;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        long count = 0;
+                        int index = offset;
+                        while (System.currentTimeMillis() < end[0]) {
+                            final String code = CODES[index++ % CODES.length];
+                            if (serialize) {
+                                synchronized (lock) {
+                                    CRS.decode(code);
+                                }
+                            } else {
+                                CRS.decode(code);
+                            }
+                            count++;
+                        }
+                        decodes.addAndGet(count);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        end[0] = System.currentTimeMillis() + DURATION;
+        start.countDown();
+        done.await();
+        return decodes.get() / (DURATION / 1000.0);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opengis.metadata.citation.Citation;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.IdentifiedObject;
+import org.opengis.referencing.NoSuchAuthorityCodeException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.util.InternationalString;
+
+import org.geotools.metadata.iso.citation.Citations;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.cs.DefaultEllipsoidalCS;
+import org.geotools.referencing.datum.DefaultGeodeticDatum;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the {@link BufferedAuthorityFactory} under concurrent access.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class BufferedAuthorityFactoryTest {
+    /**
+     * A backing store creating a new CRS for every request, counting them.
+     */
+    private static final class CountingFactory extends AbstractAuthorityFactory {
+        final AtomicInteger created = new AtomicInteger();
+
+        CountingFactory() {
+            super(NORMAL_PRIORITY);
+        }
+
+        public Citation getAuthority() {
+            return Citations.EPSG;
+        }
+
+        public Set<String> getAuthorityCodes(Class<? extends IdentifiedObject> type) {
+            return Collections.emptySet();
+        }
+
+        public InternationalString getDescriptionText(String code) {
+            return null;
+        }
+
+        @Override
+        public IdentifiedObject createObject(final String code) throws FactoryException {
+            if (code.startsWith("missing")) {
+                throw new NoSuchAuthorityCodeException("Missing", "EPSG", code);
+            }
+            created.incrementAndGet();
+            try {
+                // make the creation slow enough for the threads to overlap
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new FactoryException(e.getLocalizedMessage(), e);
+            }
+            return new DefaultGeographicCRS(code, DefaultGeodeticDatum.WGS84,
+                    DefaultEllipsoidalCS.GEODETIC_2D);
+        }
+    }
+
+    /**
+     * Many threads asking for the same few codes should get the same instances,
+     * each one created only once.
+     */
+    @Test
+    public void testConcurrentCreation() throws Exception {
+        final CountingFactory backingStore = new CountingFactory();
+        final BufferedAuthorityFactory factory = new BufferedAuthorityFactory(backingStore, 20) {};
+        final int codes = 10;
+        final ExecutorService executor = Executors.newFixedThreadPool(64);
+        try {
+            final List<Future<CoordinateReferenceSystem[]>> results =
+                    new ArrayList<Future<CoordinateReferenceSystem[]>>();
+            for (int i=0; i<64; i++) {
+                final int offset = i;
+                results.add(executor.submit(new Callable<CoordinateReferenceSystem[]>() {
+                    public CoordinateReferenceSystem[] call() throws Exception {
+                        final CoordinateReferenceSystem[] crs = new CoordinateReferenceSystem[codes];
+                        for (int j=0; j<codes; j++) {
+                            final int code = (offset + j) % codes;
+                            crs[code] = factory.createCoordinateReferenceSystem("EPSG:" + code);
+                        }
+                        return crs;
+                    }
+                }));
+            }
+            final CoordinateReferenceSystem[] expected = results.get(0).get();
+            for (Future<CoordinateReferenceSystem[]> result : results) {
+                final CoordinateReferenceSystem[] actual = result.get();
+                for (int j=0; j<codes; j++) {
+                    assertSame(expected[j], actual[j]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(codes, backingStore.created.get());
+
+        // cache hits
+        assertSame(factory.createCoordinateReferenceSystem("0"),
+                   factory.createCoordinateReferenceSystem("EPSG:0"));
+        assertEquals(codes, backingStore.created.get());
+    }
+
+    /**
+     * A failed creation should not be cached, and should not block the other threads.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        final CountingFactory backingStore = new CountingFactory();
+        final BufferedAuthorityFactory factory = new BufferedAuthorityFactory(backingStore, 20) {};
+        for (int i=0; i<2; i++) {
+            try {
+                factory.createCoordinateReferenceSystem("missing");
+                fail("The code does not exist");
+            } catch (NoSuchAuthorityCodeException e) {
+                // expected
+            }
+        }
+        assertNotNull(factory.createCoordinateReferenceSystem("4326"));
+    }
+
+    /**
+     * The objects beyond the strong references limit should still be returned
+     * as long as they are referenced somewhere else.
+     */
+    @Test
+    public void testStrongReferencesLimit() throws Exception {
+        final CountingFactory backingStore = new CountingFactory();
+        final BufferedAuthorityFactory factory = new BufferedAuthorityFactory(backingStore, 2) {};
+        final List<CoordinateReferenceSystem> crs = new ArrayList<CoordinateReferenceSystem>();
+        for (int i=0; i<5; i++) {
+            crs.add(factory.createCoordinateReferenceSystem(String.valueOf(i)));
+        }
+        for (int i=0; i<5; i++) {
+            assertSame(crs.get(i), factory.createCoordinateReferenceSystem(String.valueOf(i)));
+        }
+        assertEquals(5, backingStore.created.get());
+    }
+}
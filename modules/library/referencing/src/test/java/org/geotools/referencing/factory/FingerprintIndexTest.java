@@ -0,0 +1,114 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import org.geotools.metadata.iso.citation.Citations;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the {@link FingerprintIndex} used by {@link IdentifiedObjectFinder}.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class FingerprintIndexTest {
+    private static final String WGS84 =
+            "GEOGCS[\"WGS 84\",DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563]]," +
+            "PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.017453292519943295]]";
+
+    private static final String UTM =
+            "PROJCS[\"WGS 84 / UTM zone %d\"," + WGS84 + ",PROJECTION[\"Transverse_Mercator\"]," +
+            "PARAMETER[\"latitude_of_origin\",0],PARAMETER[\"central_meridian\",%d]," +
+            "PARAMETER[\"scale_factor\",0.9996],PARAMETER[\"false_easting\",500000]," +
+            "PARAMETER[\"false_northing\",0],UNIT[\"metre\",1]]";
+
+    private static final String SPHERE =
+            "GEOGCS[\"Sphere\",DATUM[\"Sphere\",SPHEROID[\"Sphere\",6371000,0]]," +
+            "PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.017453292519943295]]";
+
+    /**
+     * The fingerprint should ignore the names and the axis order.
+     */
+    @Test
+    public void testFingerprint() throws Exception {
+        final CoordinateReferenceSystem latLon = CRS.parseWKT(
+                "GEOGCS[\"Renamed\",DATUM[\"D_WGS_1984\",SPHEROID[\"WGS84\",6378137,298.257223563]]," +
+                "PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.017453292519943295]," +
+                "AXIS[\"Lat\",NORTH],AXIS[\"Lon\",EAST]]");
+        assertEquals(FingerprintIndex.fingerprint(DefaultGeographicCRS.WGS84),
+                     FingerprintIndex.fingerprint(latLon));
+        assertFalse(FingerprintIndex.fingerprint(DefaultGeographicCRS.WGS84).equals(
+                    FingerprintIndex.fingerprint(CRS.parseWKT(SPHERE))));
+        assertFalse(FingerprintIndex.fingerprint(CRS.parseWKT(String.format(UTM, 32, 9))).equals(
+                    FingerprintIndex.fingerprint(CRS.parseWKT(String.format(UTM, 33, 15)))));
+    }
+
+    /**
+     * Looks up unidentified CRS in a small factory, once the index is built.
+     */
+    @Test
+    public void testFind() throws Exception {
+        final Properties definitions = new Properties();
+        definitions.put("4326", WGS84);
+        definitions.put("4047", SPHERE);
+        for (int zone=30; zone<=35; zone++) {
+            definitions.put(String.valueOf(32600 + zone), String.format(UTM, zone, zone * 6 - 183));
+        }
+        final File file = File.createTempFile("fingerprint", ".properties");
+        try {
+            final OutputStream out = new FileOutputStream(file);
+            definitions.store(out, null);
+            out.close();
+            final PropertyAuthorityFactory factory = new PropertyAuthorityFactory(
+                    ReferencingFactoryContainer.instance(null), Citations.EPSG, file.toURI().toURL());
+            final IdentifiedObjectFinder finder =
+                    factory.getIdentifiedObjectFinder(CoordinateReferenceSystem.class);
+
+            // an object without identifier or known name
+            final CoordinateReferenceSystem utm33 = CRS.parseWKT(
+                    String.format(UTM, 33, 15).replace("WGS 84 / UTM zone 33", "My UTM"));
+            assertEquals("EPSG:32633", finder.findIdentifier(utm33));
+
+            final FingerprintIndex index = FingerprintIndex.getInstance(finder.getProxy());
+            assertTrue(index.await(60000));
+            assertEquals(Collections.singleton("32633"), index.getCandidates(utm33));
+            assertEquals(Collections.singleton("32633"), finder.getCodeCandidates(utm33));
+            assertEquals("EPSG:32633", finder.findIdentifier(utm33));
+            assertEquals("EPSG:4047", finder.findIdentifier(CRS.parseWKT(SPHERE.replace("Sphere", "S"))));
+
+            // no match at all
+            final CoordinateReferenceSystem other = CRS.parseWKT(String.format(UTM, 36, 33));
+            assertTrue(finder.getCodeCandidates(other).isEmpty());
+            assertNull(finder.findIdentifier(other));
+        } finally {
+            file.delete();
+        }
+    }
+}
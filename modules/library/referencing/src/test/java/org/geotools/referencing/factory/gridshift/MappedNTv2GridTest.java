@@ -0,0 +1,96 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory.gridshift;
+
+import java.net.URL;
+
+import au.com.objectix.jgridshift.GridShift;
+import au.com.objectix.jgridshift.GridShiftFile;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Compares the {@link MappedNTv2Grid} interpolation with the one of jgridshift.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class MappedNTv2GridTest {
+    /**
+     * The grid used for the tests.
+     */
+    private static final URL TEST_GRID = MappedNTv2GridTest.class.getResource("BALR2009.gsb");
+
+    /**
+     * Tolerance in decimal degrees, about 1 mm.
+     */
+    private static final double TOLERANCE = 1E-8;
+
+    /**
+     * Shifts a lattice of points covering the Balearic islands, and a few points outside
+     * the grid, in both directions.
+     */
+    @Test
+    public void testCompareWithJGridShift() throws Exception {
+        final NTv2GridShiftFactory factory = new NTv2GridShiftFactory();
+        final GridShiftFile reference = factory.createNTv2Grid(TEST_GRID);
+        final MappedNTv2Grid grid = factory.createMappedNTv2Grid(TEST_GRID);
+        assertSame(grid, factory.createMappedNTv2Grid(TEST_GRID));
+
+        final int n = 40;
+        final double[] points = new double[n * n * 2];
+        int k = 0;
+        for (int i=0; i<n; i++) {
+            for (int j=0; j<n; j++) {
+                points[k++] = 0.5 + 4.5 * i / n;   // longitude, some outside the grid
+                points[k++] = 38.0 + 2.5 * j / n;  // latitude
+            }
+        }
+        for (final boolean forward : new boolean[] {true, false}) {
+            final double[] shifted = new double[points.length];
+            int missed = grid.shift(points, 0, shifted, 0, n * n, forward);
+            int expectedMissed = 0;
+            final GridShift shift = new GridShift();
+            for (k=0; k<points.length; k+=2) {
+                shift.setLonPositiveEastDegrees(points[k]);
+                shift.setLatDegrees(points[k+1]);
+                final boolean covered = forward ? reference.gridShiftForward(shift)
+                                                : reference.gridShiftReverse(shift);
+                if (covered) {
+                    assertEquals(shift.getShiftedLonPositiveEastDegrees(), shifted[k],   TOLERANCE);
+                    assertEquals(shift.getShiftedLatDegrees(),             shifted[k+1], TOLERANCE);
+                } else {
+                    expectedMissed++;
+                    assertEquals(points[k],   shifted[k],   0);
+                    assertEquals(points[k+1], shifted[k+1], 0);
+                }
+            }
+            assertEquals(expectedMissed, missed);
+            assertTrue(missed > 0 && missed < n * n);
+        }
+    }
+
+    /**
+     * Tests that a file which is not a NTv2 grid is rejected.
+     */
+    @Test(expected = java.io.IOException.class)
+    public void testMalformed() throws Exception {
+        new MappedNTv2Grid(MappedNTv2GridTest.class.getResource("malformedNTv2grid.gsb"));
+    }
+}
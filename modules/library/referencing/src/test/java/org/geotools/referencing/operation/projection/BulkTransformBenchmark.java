@@ -0,0 +1,122 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.operation.projection;
+
+import java.awt.geom.Point2D;
+
+import org.opengis.referencing.operation.MathTransform2D;
+import org.opengis.referencing.operation.MathTransformFactory;
+import org.opengis.referencing.operation.TransformException;
+
+import org.geotools.referencing.ReferencingFactoryFinder;
+
+import static org.geotools.referencing.operation.projection.BulkTransformTest.*;
+
+
+/**
+ * Measures the throughput, in points per second, of the map projection array transformations
+ * against the point by point ones. Not a test, run it from the command line with assertions
+ * disabled:
+ * <pre>
+ * java -cp ... org.geotools.referencing.operation.projection.BulkTransformBenchmark
+ * </pre>
+ * Each measurement is preceded by a warm up round, and the best of several rounds is reported,
+ * in the same spirit as a JMH throughput benchmark.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class BulkTransformBenchmark {
+    /** The number of points transformed in each round */
+    private static final int POINTS = 1000000;
+
+    /** The number of measured rounds */
+    private static final int ROUNDS = 5;
+
+    /** Do not allow instantiation of this class. */
+    private BulkTransformBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     */
+    public static void main(final String[] args) throws Exception {
+        final MathTransformFactory factory = ReferencingFactoryFinder.getMathTransformFactory(null);
+        final int steps = (int) Math.sqrt(POINTS);
+        run("Transverse Mercator", createProjection(factory, "Transverse_Mercator", false,
+                CM, 9, K, 0.9996, FE, 500000), createGrid(6, 12, -60, 60, steps));
+        run("Mercator", createProjection(factory, "Mercator_1SP", false),
+                createGrid(-170, 170, -80, 80, steps));
+        run("Lambert Conformal", createProjection(factory, "Lambert_Conformal_Conic_2SP", false,
+                CM, 3, LAT0, 46.5, SP1, 44, SP2, 49, FE, 700000, FN, 6600000),
+                createGrid(-30, 30, 20, 70, steps));
+        run("Albers Equal Area", createProjection(factory, "Albers_Conic_Equal_Area", false,
+                CM, -96, LAT0, 23, SP1, 29.5, SP2, 45.5), createGrid(-120, -70, 20, 60, steps));
+        run("Polar Stereographic", createProjection(factory, "Stereographic_North_Pole", false,
+                CM, -45, SP1, 70), createGrid(-170, 170, 60, 89, steps));
+    }
+
+    private static void run(final String name, final MathTransform2D mt, final double[] source)
+            throws TransformException
+    {
+        final MathTransform2D inverse = mt.inverse();
+        final double[] projected = new double[source.length];
+        mt.transform(source, 0, projected, 0, source.length / 2);
+
+        final double pointForward = measure(mt, source, false);
+        final double bulkForward = measure(mt, source, true);
+        final double pointInverse = measure(inverse, projected, false);
+        final double bulkInverse = measure(inverse, projected, true);
+        System.out.println(name);
+        System.out.println(String.format("  forward: %,15.0f pts/s point by point, %,15.0f pts/s bulk (x%.1f)",
+                pointForward, bulkForward, bulkForward / pointForward));
+        System.out.println(String.format("  inverse: %,15.0f pts/s point by point, %,15.0f pts/s bulk (x%.1f)",
+                pointInverse, bulkInverse, bulkInverse / pointInverse));
+    }
+
+    /**
+     * Returns the best throughput over the rounds, after a warm up round
+     */
+    private static double measure(final MathTransform2D mt, final double[] source,
+            final boolean bulk) throws TransformException
+    {
+        final double[] target = new double[source.length];
+        final int numPts = source.length / 2;
+        double best = 0;
+        for (int round = -1; round < ROUNDS; round++) {
+            final long start = System.nanoTime();
+            if (bulk) {
+                mt.transform(source, 0, target, 0, numPts);
+            } else {
+                // what the array transform used to do
+                final Point2D.Double point = new Point2D.Double();
+                for (int i = 0; i < source.length; i += 2) {
+                    point.x = source[i];
+                    point.y = source[i + 1];
+                    mt.transform(point, point);
+                    target[i] = point.x;
+                    target[i + 1] = point.y;
+                }
+            }
+            final long elapsed = System.nanoTime() - start;
+            if (round >= 0) {
+                best = Math.max(best, numPts / (elapsed / 1E9));
+            }
+        }
+        return best;
+    }
+}
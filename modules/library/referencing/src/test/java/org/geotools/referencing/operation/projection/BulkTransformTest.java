@@ -0,0 +1,189 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.operation.projection;
+
+import java.awt.geom.Point2D;
+
+import org.opengis.parameter.ParameterValueGroup;
+import org.opengis.referencing.operation.MathTransform2D;
+import org.opengis.referencing.operation.MathTransformFactory;
+
+import org.geotools.referencing.ReferencingFactoryFinder;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that the bulk array kernels of the map projections give the same results as the
+ * point by point transformations.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class BulkTransformTest {
+    /** Tolerance for test when units are degrees. */
+    private static final double TOL_DEG = 1E-9;
+
+    /** Tolerance for test when units are metres. */
+    private static final double TOL_M = 1E-6;
+
+    /** factory to use to create projection transforms*/
+    private MathTransformFactory mtFactory;
+
+    @Before
+    public void setUp() {
+        mtFactory = ReferencingFactoryFinder.getMathTransformFactory(null);
+    }
+
+    /**
+     * Creates a projection on the WGS84 ellipsoid, or on a sphere.
+     */
+    static MathTransform2D createProjection(final MathTransformFactory factory,
+            final String name, final boolean spherical, final double... parameters)
+            throws Exception
+    {
+        final ParameterValueGroup params = factory.getDefaultParameters(name);
+        params.parameter("semi_major").setValue(6378137.0);
+        params.parameter("semi_minor").setValue(spherical ? 6378137.0 : 6356752.314245179);
+        for (int i = 0; i < parameters.length; i += 2) {
+            params.parameter(PARAMETER_NAMES[(int) parameters[i]]).setValue(parameters[i + 1]);
+        }
+        return (MathTransform2D) factory.createParameterizedTransform(params);
+    }
+
+    static final String[] PARAMETER_NAMES = {
+        "central_meridian", "latitude_of_origin", "standard_parallel_1", "standard_parallel_2",
+        "false_easting", "false_northing", "scale_factor"
+    };
+
+    static final int CM = 0, LAT0 = 1, SP1 = 2, SP2 = 3, FE = 4, FN = 5, K = 6;
+
+    /**
+     * Builds a grid of (longitude, latitude) points
+     */
+    static double[] createGrid(final double minLon, final double maxLon,
+                               final double minLat, final double maxLat, final int steps)
+    {
+        final double[] ordinates = new double[steps * steps * 2];
+        int k = 0;
+        for (int i = 0; i < steps; i++) {
+            for (int j = 0; j < steps; j++) {
+                ordinates[k++] = minLon + (maxLon - minLon) * i / (steps - 1);
+                ordinates[k++] = minLat + (maxLat - minLat) * j / (steps - 1);
+            }
+        }
+        return ordinates;
+    }
+
+    /**
+     * Compares the bulk transformation against the point by point one, in both directions.
+     */
+    private static void assertBulkConsistent(final MathTransform2D mt, final double[] geographic)
+            throws Exception
+    {
+        final int numPts = geographic.length / 2;
+        // leave some room to check offsets are honored
+        final double[] projected = new double[geographic.length + 2];
+        mt.transform(geographic, 0, projected, 2, numPts);
+        final Point2D.Double point = new Point2D.Double();
+        for (int i = 0; i < numPts; i++) {
+            point.setLocation(geographic[2*i], geographic[2*i + 1]);
+            mt.transform(point, point);
+            assertEquals(point.x, projected[2*i + 2], TOL_M);
+            assertEquals(point.y, projected[2*i + 3], TOL_M);
+        }
+
+        // inverse, in place
+        final MathTransform2D inverse = mt.inverse();
+        final double[] back = projected.clone();
+        inverse.transform(back, 2, back, 2, numPts);
+        for (int i = 0; i < numPts; i++) {
+            point.setLocation(projected[2*i + 2], projected[2*i + 3]);
+            inverse.transform(point, point);
+            assertEquals(point.x, back[2*i + 2], TOL_DEG);
+            assertEquals(point.y, back[2*i + 3], TOL_DEG);
+            assertEquals(geographic[2*i    ], back[2*i + 2], 1E-6);
+            assertEquals(geographic[2*i + 1], back[2*i + 3], 1E-6);
+        }
+    }
+
+    @Test
+    public void testTransverseMercator() throws Exception {
+        final double[] grid = createGrid(6, 12, -60, 60, 20);
+        for (boolean spherical : new boolean[] {false, true}) {
+            assertBulkConsistent(createProjection(mtFactory, "Transverse_Mercator", spherical,
+                    CM, 9, K, 0.9996, FE, 500000), grid);
+        }
+    }
+
+    @Test
+    public void testMercator() throws Exception {
+        final double[] grid = createGrid(-170, 170, -80, 80, 20);
+        for (boolean spherical : new boolean[] {false, true}) {
+            assertBulkConsistent(createProjection(mtFactory, "Mercator_1SP", spherical,
+                    CM, 10, FE, 1000, FN, -2000), grid);
+        }
+    }
+
+    @Test
+    public void testMercatorPole() throws Exception {
+        final MathTransform2D mt = createProjection(mtFactory, "Mercator_1SP", false);
+        final double[] ordinates = {10, 45, 10, 90, 20, 30};
+        try {
+            mt.transform(ordinates, 0, ordinates, 0, 3);
+            fail("The pole cannot be projected");
+        } catch (ProjectionException e) {
+            // expected, the other points are transformed anyways
+        }
+        assertTrue(Double.isNaN(ordinates[2]));
+        assertTrue(Double.isNaN(ordinates[3]));
+        assertFalse(Double.isNaN(ordinates[4]));
+        assertFalse(Double.isNaN(ordinates[5]));
+    }
+
+    @Test
+    public void testLambertConformal() throws Exception {
+        final double[] grid = createGrid(-30, 30, 20, 70, 20);
+        for (boolean spherical : new boolean[] {false, true}) {
+            assertBulkConsistent(createProjection(mtFactory, "Lambert_Conformal_Conic_2SP",
+                    spherical, CM, 3, LAT0, 46.5, SP1, 44, SP2, 49, FE, 700000, FN, 6600000), grid);
+        }
+    }
+
+    @Test
+    public void testAlbersEqualArea() throws Exception {
+        final double[] grid = createGrid(-120, -70, 20, 60, 20);
+        for (boolean spherical : new boolean[] {false, true}) {
+            assertBulkConsistent(createProjection(mtFactory, "Albers_Conic_Equal_Area",
+                    spherical, CM, -96, LAT0, 23, SP1, 29.5, SP2, 45.5), grid);
+        }
+    }
+
+    @Test
+    public void testPolarStereographic() throws Exception {
+        final double[] grid = createGrid(-170, 170, 60, 89, 20);
+        for (boolean spherical : new boolean[] {false, true}) {
+            // series inverse equations
+            assertBulkConsistent(createProjection(mtFactory, "Polar_Stereographic", spherical,
+                    CM, -45, LAT0, 90, K, 0.994, FE, 2000000, FN, 2000000), grid);
+            // iterative inverse equations
+            assertBulkConsistent(createProjection(mtFactory, "Stereographic_North_Pole",
+                    spherical, CM, -45, SP1, 70), grid);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.operation.transform;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.opengis.parameter.ParameterValueGroup;
+import org.opengis.referencing.operation.MathTransform2D;
+import org.opengis.referencing.operation.MathTransformFactory;
+
+import org.geotools.referencing.ReferencingFactoryFinder;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the {@link ApproximateMathTransform} error bound.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class ApproximateMathTransformTest {
+    /**
+     * Builds a transform from geographic coordinates to a 1000x1000 pixels image
+     * covering Europe in Lambert Conformal Conic.
+     */
+    private static MathTransform2D createGeographicToScreen() throws Exception {
+        final MathTransformFactory factory = ReferencingFactoryFinder.getMathTransformFactory(null);
+        final ParameterValueGroup params = factory.getDefaultParameters("Lambert_Conformal_Conic_2SP");
+        params.parameter("semi_major").setValue(6378137.0);
+        params.parameter("semi_minor").setValue(6356752.314245179);
+        params.parameter("central_meridian").setValue(10);
+        params.parameter("latitude_of_origin").setValue(52);
+        params.parameter("standard_parallel_1").setValue(35);
+        params.parameter("standard_parallel_2").setValue(65);
+        final MathTransform2D projection = (MathTransform2D) factory.createParameterizedTransform(params);
+        // about 4km per pixel, centered on the origin
+        final AffineTransform worldToScreen = new AffineTransform(1 / 4000.0, 0, 0, -1 / 4000.0, 500, 500);
+        return (MathTransform2D) ConcatenatedTransform.create(projection,
+                ProjectiveTransform.create(worldToScreen));
+    }
+
+    /**
+     * Checks that the approximation stays within the tolerance inside the domain,
+     * and is exact outside of it.
+     */
+    @Test
+    public void testErrorBound() throws Exception {
+        final MathTransform2D exact = createGeographicToScreen();
+        final Rectangle2D domain = new Rectangle2D.Double(-15, 35, 50, 35);
+        for (double tolerance : new double[] {1, 0.25}) {
+            final MathTransform2D approx = ApproximateMathTransform.create(exact, domain, tolerance);
+            assertTrue(approx instanceof ApproximateMathTransform);
+            final int[] size = ((ApproximateMathTransform) approx).getGridSize();
+            assertTrue(size[0] > 1 && size[1] > 1);
+
+            final Random random = new Random(486321);
+            final int numPts = 10000;
+            final double[] source = new double[numPts * 2];
+            for (int i=0; i<numPts; i++) {
+                source[2*i    ] = domain.getMinX() + random.nextDouble() * domain.getWidth();
+                source[2*i + 1] = domain.getMinY() + random.nextDouble() * domain.getHeight();
+            }
+            final double[] expected = new double[source.length];
+            final double[] actual   = new double[source.length];
+            exact .transform(source, 0, expected, 0, numPts);
+            approx.transform(source, 0, actual,   0, numPts);
+            for (int i=0; i<numPts; i++) {
+                final double dx = expected[2*i] - actual[2*i];
+                final double dy = expected[2*i + 1] - actual[2*i + 1];
+                // the subdivision checks sample points only, leave some slack
+                assertTrue(Math.hypot(dx, dy) < tolerance * 2);
+            }
+
+            // single point, and outside the domain
+            final Point2D inside  = new Point2D.Double(5, 50);
+            final Point2D outside = new Point2D.Double(60, 60);
+            assertEquals(0, exact.transform(inside, null).distance(approx.transform(inside, null)), tolerance * 2);
+            assertEquals(exact.transform(outside, null), approx.transform(outside, null));
+        }
+    }
+
+    /**
+     * Checks the cases where the exact transform is returned.
+     */
+    @Test
+    public void testNoApproximation() throws Exception {
+        final MathTransform2D affine = (MathTransform2D) ProjectiveTransform.create(
+                new AffineTransform(2, 0, 0, 3, 1, 1));
+        final Rectangle2D domain = new Rectangle2D.Double(-15, 35, 50, 35);
+        assertSame(affine, ApproximateMathTransform.create(affine, domain, 1));
+
+        final MathTransform2D exact = createGeographicToScreen();
+        assertSame(exact, ApproximateMathTransform.create(exact, domain, 0));
+        // way too small tolerance, the grid would get denser than worth it
+        assertSame(exact, ApproximateMathTransform.create(exact, domain, 1E-9));
+    }
+
+    /**
+     * Checks the grid is as dense as the tolerance needs, and that the exact transform
+     * is returned if that is denser than allowed.
+     */
+    @Test
+    public void testGridCap() throws Exception {
+        final MathTransform2D exact = createGeographicToScreen();
+        final Rectangle2D domain = new Rectangle2D.Double(-15, 35, 50, 35);
+        final int[] size = ((ApproximateMathTransform) ApproximateMathTransform.create(
+                exact, domain, 0.25)).getGridSize();
+        final int needed = Math.max(size[0], size[1]);
+        assertTrue(needed > 1);
+
+        final MathTransform2D capped = ApproximateMathTransform.create(exact, domain, 0.25, needed);
+        assertTrue(capped instanceof ApproximateMathTransform);
+        assertTrue(Arrays.equals(size, ((ApproximateMathTransform) capped).getGridSize()));
+        assertSame(exact, ApproximateMathTransform.create(exact, domain, 0.25, needed / 2));
+    }
+
+    /**
+     * Checks the approximation works in place, with overlapping arrays.
+     */
+    @Test
+    public void testInPlace() throws Exception {
+        final MathTransform2D exact = createGeographicToScreen();
+        final MathTransform2D approx = ApproximateMathTransform.create(exact,
+                new Rectangle2D.Double(-15, 35, 50, 35), 0.5);
+        final double[] ordinates = {0, 0, -10, 40, 0, 50, 10, 60, 20, 65};
+        final double[] expected = new double[8];
+        approx.transform(ordinates, 2, expected, 0, 4);
+        approx.transform(ordinates, 2, ordinates, 0, 4);
+        for (int i=0; i<expected.length; i++) {
+            assertEquals(expected[i], ordinates[i], 0);
+        }
+    }
+}
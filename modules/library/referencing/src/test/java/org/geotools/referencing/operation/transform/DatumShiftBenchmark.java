@@ -0,0 +1,127 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.operation.transform;
+
+import java.util.Random;
+
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+
+/**
+ * Measures the throughput, in points per second, of the ED50 to WGS84 datum shift through the
+ * geocentric translation chain and through the Molodenski transform. Not a test, run it from
+ * the command line with assertions disabled and a heap large enough for the point arrays:
+ * <pre>
+ * java -Xmx1g -cp ... org.geotools.referencing.operation.transform.DatumShiftBenchmark [points]
+ * </pre>
+ * The points are transformed in raster order, where the trigonometric terms of a latitude
+ * are reused along the row, then in random order, where they can't be reused, then point
+ * by point. Each measurement is preceded by a warm up round, and the best of several rounds
+ * is reported.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class DatumShiftBenchmark {
+    /** The default number of points transformed in each round */
+    private static final int POINTS = 10000000;
+
+    /** The number of measured rounds */
+    private static final int ROUNDS = 3;
+
+    /** ED50 with the Bursa-Wolf parameters to WGS84 */
+    private static final String ED50 =
+            "GEOGCS[\"ED50\",DATUM[\"European_Datum_1950\",SPHEROID[\"International 1924\",6378388,297]," +
+            "TOWGS84[-87,-98,-121,0,0,0,0]],PRIMEM[\"Greenwich\",0],UNIT[\"degree\",0.017453292519943295]]";
+
+    /** Do not allow instantiation of this class. */
+    private DatumShiftBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     */
+    public static void main(final String[] args) throws Exception {
+        final int numPts = (args.length != 0) ? Integer.parseInt(args[0]) : POINTS;
+        final int width = (int) Math.sqrt(numPts);
+        final double[] raster = new double[width * width * 2];
+        int k = 0;
+        for (int j=0; j<width; j++) {
+            for (int i=0; i<width; i++) {
+                raster[k++] = -10 + 40.0 * i / width;
+                raster[k++] =  35 + 35.0 * j / width;
+            }
+        }
+        final double[] scattered = raster.clone();
+        final Random random = new Random(23475);
+        for (int i=scattered.length/2; --i > 0;) {
+            final int j = random.nextInt(i + 1);
+            double t = scattered[2*i  ]; scattered[2*i  ] = scattered[2*j  ]; scattered[2*j  ] = t;
+            t        = scattered[2*i+1]; scattered[2*i+1] = scattered[2*j+1]; scattered[2*j+1] = t;
+        }
+        final MathTransform chain = CRS.findMathTransform(CRS.parseWKT(ED50), DefaultGeographicCRS.WGS84);
+        run("Geocentric translation", chain, raster, scattered);
+        final MathTransform molodenski = new MolodenskiTransform(false,
+                6378388, 6356911.946, false, 6378137, 6356752.314, false, -87, -98, -121);
+        run("Molodenski", molodenski, raster, scattered);
+        final MathTransform abridged = new MolodenskiTransform(true,
+                6378388, 6356911.946, false, 6378137, 6356752.314, false, -87, -98, -121);
+        run("Abridged Molodenski", abridged, raster, scattered);
+    }
+
+    private static void run(final String name, final MathTransform mt,
+            final double[] raster, final double[] scattered) throws TransformException
+    {
+        final double rows = measure(mt, raster, true);
+        final double random = measure(mt, scattered, true);
+        final double point = measure(mt, raster, false);
+        System.out.println(name);
+        System.out.println(String.format("  %,15.0f pts/s raster order, %,15.0f pts/s random order, " +
+                "%,15.0f pts/s point by point", rows, random, point));
+    }
+
+    /**
+     * Returns the best throughput over the rounds, after a warm up round
+     */
+    private static double measure(final MathTransform mt, final double[] source,
+            final boolean bulk) throws TransformException
+    {
+        final double[] target = new double[source.length];
+        final int numPts = source.length / 2;
+        double best = 0;
+        for (int round = -1; round < ROUNDS; round++) {
+            final long start = System.nanoTime();
+            if (bulk) {
+                mt.transform(source, 0, target, 0, numPts);
+            } else {
+                // no reuse of the terms between points
+                for (int i = 0; i < source.length; i += 2) {
+                    mt.transform(source, i, target, i, 1);
+                }
+            }
+            final long elapsed = System.nanoTime() - start;
+            if (round >= 0) {
+                best = Math.max(best, numPts / (elapsed / 1E9));
+            }
+        }
+        return best;
+    }
+}
@@ -229,6 +229,86 @@ public final class MathTransformTest {
         }
     }
 
+    /**
+     * Tests that concatenated transforms processing large arrays block by block give the same
+     * results than the steps applied one after the other, including on overlapping arrays.
+     */
+    @Test
+    public void testBlockConcatenation() throws FactoryException, TransformException {
+        final int numPts = 10000;
+        final MathTransform tr1 = ProjectiveTransform.create(new AffineTransform(2, 0, 0, 3, 1, 1));
+        final MathTransform tr2 = LogarithmicTransform1D.create(10, 0);
+        final MathTransform tr3 = PassThroughTransform.create(1, tr2, 0);
+        final MathTransform tr4 = factory.createAffineTransform(getRandomMatrix(2, 2));
+        final MathTransform transform = ConcatenatedTransform.createConcatenatedTransform(tr1,
+                ConcatenatedTransform.createConcatenatedTransform(tr3, tr4));
+        final double[] sourcePt = new double[2 * numPts + 2];
+        for (int i=0; i<sourcePt.length; i++) {
+            sourcePt[i] = 100*random.nextDouble() + 1;
+        }
+        final double[] targetPt = new double[2 * numPts];
+        tr1.transform(sourcePt, 0, targetPt, 0, numPts);
+        tr3.transform(targetPt, 0, targetPt, 0, numPts);
+        tr4.transform(targetPt, 0, targetPt, 0, numPts);
+        final double[] delta = new double[] {1E-9, 1E-9};
+
+        final double[] compare = new double[2 * numPts];
+        transform.transform(sourcePt, 0, compare, 0, numPts);
+        assertPointsEqual("separate arrays", targetPt, compare, delta);
+
+        // destination overlapping the source, after it
+        final double[] overlap = sourcePt.clone();
+        transform.transform(overlap, 0, overlap, 2, numPts);
+        final double[] shifted = new double[2 * numPts];
+        System.arraycopy(overlap, 2, shifted, 0, shifted.length);
+        assertPointsEqual("overlapping arrays", targetPt, shifted, delta);
+    }
+
+    /**
+     * Tests that a failure of the first step of a concatenated transform aborts the chain,
+     * without applying the second step to the points that failed.
+     */
+    @Test
+    public void testFirstStepFailure() {
+        final MathTransform failing = new AbstractMathTransform() {
+            public int getSourceDimensions() {
+                return 2;
+            }
+            public int getTargetDimensions() {
+                return 2;
+            }
+            @Override
+            public void transform(double[] srcPts, int srcOff, double[] dstPts, int dstOff,
+                    int numPts) throws TransformException {
+                throw new TransformException("First step failure");
+            }
+        };
+        final int[] calls = new int[1];
+        final MathTransform counting = new AbstractMathTransform() {
+            public int getSourceDimensions() {
+                return 2;
+            }
+            public int getTargetDimensions() {
+                return 2;
+            }
+            @Override
+            public void transform(double[] srcPts, int srcOff, double[] dstPts, int dstOff,
+                    int numPts) {
+                calls[0]++;
+                System.arraycopy(srcPts, srcOff, dstPts, dstOff, numPts * 2);
+            }
+        };
+        final MathTransform transform = new ConcatenatedTransformDirect(failing, counting);
+        final int numPts = 10000;
+        try {
+            transform.transform(new double[2 * numPts], 0, new double[2 * numPts], 0, numPts);
+            fail("The first step failed");
+        } catch (TransformException e) {
+            assertEquals("First step failure", e.getMessage());
+        }
+        assertEquals(0, calls[0]);
+    }
+
     /**
      * Make sure that linear transformation preserve NaN values.
      * This is required for {@link org.geotools.coverage.Category}.
@@ -79,4 +79,34 @@ public final class MolodenskiTransformTest extends TransformTestBase {
             assertEquals(srcFloat2[srcOff+dim*i+1], overWriteTestArray[dstOff+dim*i+1], 1E-6);
         }
     }
+
+    /**
+     * Tests that the terms reused along the rows and columns of a grid give the same
+     * results than points transformed one by one.
+     */
+    @Test
+    public void testGrid() {
+        final double[] grid = new double[20 * 20 * 3];
+        int k = 0;
+        for (int j=0; j<20; j++) {
+            for (int i=0; i<20; i++) {
+                grid[k++] = -10 + i * 0.75; // longitude
+                grid[k++] =  35 + j * 1.25; // latitude
+                grid[k++] = 100;            // height
+            }
+        }
+        for (final boolean abridged : new boolean[] {false, true}) {
+            final MolodenskiTransform ed50 = new MolodenskiTransform(abridged,
+                    6378388, 6356911.946, true, 6378137, 6356752.314, true, -87, -98, -121);
+            final double[] bulk = new double[grid.length];
+            ed50.transform(grid, 0, bulk, 0, grid.length / 3);
+            final double[] single = new double[3];
+            for (k=0; k<grid.length; k+=3) {
+                ed50.transform(grid, k, single, 0, 1);
+                assertEquals(single[0], bulk[k  ], 1E-12);
+                assertEquals(single[1], bulk[k+1], 1E-12);
+                assertEquals(single[2], bulk[k+2], 1E-7);
+            }
+        }
+    }
 }
@@ -43,6 +43,7 @@ import org.geotools.geometry.jts.GeometryClipper;
 import org.geotools.geometry.jts.LiteShape2;
 import org.geotools.renderer.label.LabelCacheItem.GraphicResize;
 import org.geotools.renderer.lite.LabelCache;
+import org.geotools.renderer.lite.RenderingMetrics;
 import org.geotools.renderer.style.SLDStyleFactory;
 import org.geotools.renderer.style.TextStyle2D;
 import org.geotools.styling.TextSymbolizer;
@@ -156,6 +157,11 @@ public final class LabelCacheImpl implements LabelCache {
 
     private boolean needsOrdering = false;
 
+    /**
+     * Collects the placed and rejected labels counts, if not null
+     */
+    private RenderingMetrics metrics;
+
     public void enableLayer(String layerId) {
         needsOrdering = true;
         enabledLayers.add(layerId);
@@ -172,6 +178,14 @@ public final class LabelCacheImpl implements LabelCache {
         this.labelRenderingMode = mode;
     }
 
+    /**
+     * Sets the metrics collector that will receive the counts of placed and rejected labels,
+     * or null to disable the collection
+     */
+    public void setMetrics(RenderingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void stop() {
         stop = true;
         activeLayers.clear();
@@ -586,14 +600,18 @@ public final class LabelCacheImpl implements LabelCache {
                 AffineTransform tempTransform = new AffineTransform();
 
                 Geometry geom = labelItem.getGeometry();
+                boolean placed = false;
                 if ((geom instanceof Point) || (geom instanceof MultiPoint))
-                    paintPointLabel(painter, tempTransform, displayArea, glyphs);
+                    placed = paintPointLabel(painter, tempTransform, displayArea, glyphs);
                 else if (((geom instanceof LineString) && !(geom instanceof LinearRing))
                         || (geom instanceof MultiLineString))
-                    paintLineLabels(painter, tempTransform, displayArea, glyphs);
+                    placed = paintLineLabels(painter, tempTransform, displayArea, glyphs);
                 else if (geom instanceof Polygon || geom instanceof MultiPolygon
                         || geom instanceof LinearRing)
-                    paintPolygonLabel(painter, tempTransform, displayArea, glyphs);
+                    placed = paintPolygonLabel(painter, tempTransform, displayArea, glyphs);
+                if (metrics != null) {
+                    recordLabel(labelItem, placed);
+                }
             } catch (Exception e) {
                 System.out.println("Issues painting " + labelItem.getLabel());
                 // the decimation can cause problems - we try to minimize it
@@ -603,6 +621,30 @@ public final class LabelCacheImpl implements LabelCache {
         }
     }
 
+    /**
+     * Accounts the label as placed or rejected, both in the overall label painting metrics and
+     * in the metrics of the layers the label belongs to
+     */
+    private void recordLabel(LabelCacheItem labelItem, boolean placed) {
+        List<RenderingMetrics.Counters> targets = new ArrayList<RenderingMetrics.Counters>();
+        targets.add(metrics.getLabelPainting());
+        synchronized (labelItem.getLayerIds()) {
+            for (String layerId : labelItem.getLayerIds()) {
+                RenderingMetrics.LayerMetrics layer = metrics.getLayer(layerId);
+                if (layer != null) {
+                    targets.add(layer);
+                }
+            }
+        }
+        for (RenderingMetrics.Counters counters : targets) {
+            if (placed) {
+                counters.labelPlaced();
+            } else {
+                counters.labelRejected();
+            }
+        }
+    }
+
     private Envelope toEnvelope(Rectangle2D bounds) {
         return new Envelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY());
     }
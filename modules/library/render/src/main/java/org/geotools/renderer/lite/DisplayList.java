@@ -0,0 +1,306 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * A compact binary list of the screen space geometries painted by a {@link StreamingRenderer},
+ * each one tagged with the rule and symbolizer that would have painted it. Built by a
+ * {@link DisplayListBuilder}, it can be cached or shipped to clients and painted later, at
+ * a different resolution or with a different style, without going back to the data.
+ * <p>
+ * The encoding is as follows, all integers being unsigned variable length quantities,
+ * coordinates being zig-zag encoded deltas from the previous coordinate in the list,
+ * expressed in 1/{@code subPixels} of a pixel:
+ * <pre>
+ * header: magic, version, width, height, subPixels, rule count, rules (layer id, rule name)
+ * command: type (point, line, polygon), rule id, symbolizer index, geometry
+ * point geometry: point count, coordinates
+ * line geometry: line count, (point count, coordinates) for each line
+ * polygon geometry: polygon count, (ring count, (point count, coordinates) for each ring)
+ *                   for each polygon
+ * </pre>
+ * Strings are written as in {@link java.io.DataOutput#writeUTF(String)}.
+ *
+ * @source $URL$
+ */
+public class DisplayList {
+
+    static final int MAGIC = 0x47544C44;
+
+    static final int VERSION = 1;
+
+    static final int POINT = 1;
+
+    static final int LINE = 2;
+
+    static final int POLYGON = 3;
+
+    /**
+     * Receives the contents of a display list, in painting order
+     */
+    public interface Handler {
+        /**
+         * Called once for each recorded geometry
+         *
+         * @param ruleId the position of the rule in {@link DisplayList#getRules()}
+         * @param symbolizerIndex the position of the symbolizer in the rule
+         * @param geometry the geometry, in pixels, relative to the top left corner of the
+         *        painted area
+         */
+        void geometry(int ruleId, int symbolizerIndex, Geometry geometry);
+    }
+
+    /**
+     * A rule referenced by the display list
+     */
+    public static class RuleEntry {
+        String layerId;
+
+        String ruleName;
+
+        RuleEntry(String layerId, String ruleName) {
+            this.layerId = layerId;
+            this.ruleName = ruleName;
+        }
+
+        /**
+         * The id of the layer the rule was applied to
+         */
+        public String getLayerId() {
+            return layerId;
+        }
+
+        /**
+         * The rule name, or null if the rule had none
+         */
+        public String getRuleName() {
+            return ruleName;
+        }
+
+        @Override
+        public String toString() {
+            return "RuleEntry[layer=" + layerId + ", rule=" + ruleName + "]";
+        }
+    }
+
+    byte[] data;
+
+    int width;
+
+    int height;
+
+    int subPixels;
+
+    List<RuleEntry> rules;
+
+    /** The position of the first command in the data */
+    int commandsOffset;
+
+    /**
+     * Parses a display list out of its binary representation
+     *
+     * @throws IOException if the data is not a valid display list
+     */
+    public DisplayList(byte[] data) throws IOException {
+        this.data = data;
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("Not a display list");
+        }
+        int version = readInt(dis);
+        if (version != VERSION) {
+            throw new IOException("Unsupported display list version " + version);
+        }
+        width = readInt(dis);
+        height = readInt(dis);
+        subPixels = readInt(dis);
+        int ruleCount = readInt(dis);
+        List<RuleEntry> rules = new ArrayList<RuleEntry>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            String layerId = dis.readUTF();
+            String ruleName = dis.readUTF();
+            rules.add(new RuleEntry(layerId, "".equals(ruleName) ? null : ruleName));
+        }
+        this.rules = Collections.unmodifiableList(rules);
+        this.commandsOffset = data.length - dis.available();
+    }
+
+    /**
+     * The binary representation of this display list
+     */
+    public byte[] getBytes() {
+        return data;
+    }
+
+    /**
+     * The width of the painted area, in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * The height of the painted area, in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The number of steps each pixel has been split into when quantizing the coordinates
+     */
+    public int getSubPixels() {
+        return subPixels;
+    }
+
+    /**
+     * The rules referenced by the display list commands
+     */
+    public List<RuleEntry> getRules() {
+        return rules;
+    }
+
+    /**
+     * Decodes the recorded geometries and passes them to the handler, in painting order.
+     *
+     * @param handler the handler receiving the geometries
+     * @param scale a scale factor applied to the decoded coordinates, use 1 to get back the
+     *        original screen coordinates, 2 to paint the display list at twice the resolution,
+     *        and so on
+     */
+    public void accept(Handler handler, double scale) throws IOException {
+        ByteArrayInputStream bis = new ByteArrayInputStream(data, commandsOffset, data.length
+                - commandsOffset);
+        DataInputStream dis = new DataInputStream(bis);
+        GeometryFactory gf = new GeometryFactory();
+        Cursor cursor = new Cursor(dis, scale / subPixels);
+        while (bis.available() > 0) {
+            int type = readInt(dis);
+            int ruleId = readInt(dis);
+            int symbolizerIndex = readInt(dis);
+            Geometry geometry;
+            if (type == POINT) {
+                int count = readInt(dis);
+                Point[] points = new Point[count];
+                for (int i = 0; i < count; i++) {
+                    points[i] = gf.createPoint(cursor.next());
+                }
+                geometry = count == 1 ? points[0] : gf.createMultiPoint(points);
+            } else if (type == LINE) {
+                int count = readInt(dis);
+                LineString[] lines = new LineString[count];
+                for (int i = 0; i < count; i++) {
+                    lines[i] = gf.createLineString(cursor.readSequence());
+                }
+                geometry = count == 1 ? lines[0] : gf.createMultiLineString(lines);
+            } else if (type == POLYGON) {
+                int count = readInt(dis);
+                Polygon[] polygons = new Polygon[count];
+                for (int i = 0; i < count; i++) {
+                    int ringCount = readInt(dis);
+                    LinearRing shell = gf.createLinearRing(cursor.readSequence());
+                    LinearRing[] holes = new LinearRing[ringCount - 1];
+                    for (int j = 0; j < holes.length; j++) {
+                        holes[j] = gf.createLinearRing(cursor.readSequence());
+                    }
+                    polygons[i] = gf.createPolygon(shell, holes);
+                }
+                geometry = count == 1 ? polygons[0] : gf.createMultiPolygon(polygons);
+            } else {
+                throw new IOException("Unknown display list command " + type);
+            }
+            handler.geometry(ruleId, symbolizerIndex, geometry);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DisplayList[width=" + width + ", height=" + height + ", subPixels=" + subPixels
+                + ", rules=" + rules.size() + ", bytes=" + data.length + "]";
+    }
+
+    /**
+     * Reads back a variable length unsigned integer
+     */
+    static int readInt(DataInputStream dis) throws IOException {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = dis.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    /**
+     * Decodes the delta encoded coordinates
+     */
+    static class Cursor {
+        DataInputStream dis;
+
+        double scale;
+
+        int x;
+
+        int y;
+
+        Cursor(DataInputStream dis, double scale) {
+            this.dis = dis;
+            this.scale = scale;
+        }
+
+        Coordinate next() throws IOException {
+            x += zigZagDecode(readInt(dis));
+            y += zigZagDecode(readInt(dis));
+            return new Coordinate(x * scale, y * scale);
+        }
+
+        Coordinate[] readSequence() throws IOException {
+            int count = readInt(dis);
+            Coordinate[] coordinates = new Coordinate[count];
+            for (int i = 0; i < count; i++) {
+                coordinates[i] = next();
+            }
+            return coordinates;
+        }
+
+        static int zigZagDecode(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
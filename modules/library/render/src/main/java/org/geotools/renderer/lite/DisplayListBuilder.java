@@ -0,0 +1,236 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.renderer.lite.DisplayList.RuleEntry;
+import org.geotools.styling.Rule;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Records the geometries painted by a {@link StreamingRenderer} into a {@link DisplayList},
+ * instead of painting them. Usage:
+ * <pre>
+ * DisplayListBuilder builder = new DisplayListBuilder();
+ * renderer.setDisplayListBuilder(builder);
+ * renderer.paint(graphics, paintArea, mapArea);
+ * DisplayList displayList = builder.build();
+ * </pre>
+ * The geometries still go through the whole data access, reprojection, generalization and
+ * clipping pipeline, but are recorded in screen space instead of being painted. Labels and
+ * rasters are not recorded, they are painted on the graphics as usual.
+ * <p>
+ * A builder is meant to be used by a single renderer at a time, each paint resets it.
+ *
+ * @source $URL$
+ */
+public class DisplayListBuilder {
+
+    /**
+     * The default number of steps a pixel is split into when quantizing coordinates
+     */
+    public static final int DEFAULT_SUB_PIXELS = 4;
+
+    final int subPixels;
+
+    Rectangle paintArea = new Rectangle();
+
+    Map<Rule, Integer> ruleIds = new IdentityHashMap<Rule, Integer>();
+
+    List<RuleEntry> rules = new ArrayList<RuleEntry>();
+
+    ByteArrayOutputStream commands = new ByteArrayOutputStream();
+
+    DataOutputStream out = new DataOutputStream(commands);
+
+    int lastX;
+
+    int lastY;
+
+    /**
+     * Builds a display list builder quantizing coordinates at a quarter of a pixel
+     */
+    public DisplayListBuilder() {
+        this(DEFAULT_SUB_PIXELS);
+    }
+
+    /**
+     * Builds a display list builder quantizing coordinates at 1/subPixels of a pixel
+     */
+    public DisplayListBuilder(int subPixels) {
+        if (subPixels <= 0) {
+            throw new IllegalArgumentException("The sub pixel count must be positive");
+        }
+        this.subPixels = subPixels;
+    }
+
+    /**
+     * Resets the builder for a new paint over the specified area
+     */
+    void start(Rectangle paintArea) {
+        this.paintArea = new Rectangle(paintArea);
+        ruleIds.clear();
+        rules.clear();
+        commands.reset();
+        lastX = 0;
+        lastY = 0;
+    }
+
+    /**
+     * Returns the id of the specified rule, registering it if not seen before
+     */
+    int getRuleId(String layerId, Rule rule) {
+        Integer id = ruleIds.get(rule);
+        if (id == null) {
+            id = rules.size();
+            ruleIds.put(rule, id);
+            rules.add(new RuleEntry(layerId, rule.getName()));
+        }
+        return id;
+    }
+
+    /**
+     * Records a geometry, in screen coordinates. Geometry collections are split into one
+     * command per component type.
+     */
+    void add(int ruleId, int symbolizerIndex, Geometry geometry) {
+        try {
+            if (geometry instanceof Point || geometry instanceof MultiPoint) {
+                writeHeader(DisplayList.POINT, ruleId, symbolizerIndex);
+                int count = geometry.getNumGeometries();
+                writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    CoordinateSequence cs = ((Point) geometry.getGeometryN(i))
+                            .getCoordinateSequence();
+                    writeCoordinate(cs.getX(0), cs.getY(0));
+                }
+            } else if (geometry instanceof LineString || geometry instanceof MultiLineString) {
+                writeHeader(DisplayList.LINE, ruleId, symbolizerIndex);
+                int count = geometry.getNumGeometries();
+                writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    writeSequence(((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
+                }
+            } else if (geometry instanceof Polygon || geometry instanceof MultiPolygon) {
+                writeHeader(DisplayList.POLYGON, ruleId, symbolizerIndex);
+                int count = geometry.getNumGeometries();
+                writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    Polygon polygon = (Polygon) geometry.getGeometryN(i);
+                    writeInt(polygon.getNumInteriorRing() + 1);
+                    writeSequence(polygon.getExteriorRing().getCoordinateSequence());
+                    for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                        writeSequence(polygon.getInteriorRingN(j).getCoordinateSequence());
+                    }
+                }
+            } else if (geometry instanceof GeometryCollection) {
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    add(ruleId, symbolizerIndex, geometry.getGeometryN(i));
+                }
+            }
+        } catch (IOException e) {
+            // cannot happen, we're writing in memory
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Builds the display list out of the geometries recorded so far
+     */
+    public DisplayList build() {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(commands.size() + 64
+                    * rules.size() + 32);
+            DataOutputStream dos = new DataOutputStream(bos);
+            dos.writeInt(DisplayList.MAGIC);
+            writeInt(dos, DisplayList.VERSION);
+            writeInt(dos, paintArea.width);
+            writeInt(dos, paintArea.height);
+            writeInt(dos, subPixels);
+            writeInt(dos, rules.size());
+            for (RuleEntry rule : rules) {
+                dos.writeUTF(rule.layerId);
+                dos.writeUTF(rule.ruleName == null ? "" : rule.ruleName);
+            }
+            commands.writeTo(dos);
+            dos.flush();
+            return new DisplayList(bos.toByteArray());
+        } catch (IOException e) {
+            // cannot happen, we're reading and writing in memory
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeHeader(int type, int ruleId, int symbolizerIndex) throws IOException {
+        writeInt(type);
+        writeInt(ruleId);
+        writeInt(symbolizerIndex);
+    }
+
+    private void writeSequence(CoordinateSequence cs) throws IOException {
+        writeInt(cs.size());
+        for (int i = 0; i < cs.size(); i++) {
+            writeCoordinate(cs.getX(i), cs.getY(i));
+        }
+    }
+
+    private void writeCoordinate(double x, double y) throws IOException {
+        // coordinates are relative to the paint area origin, and delta encoded
+        int qx = (int) Math.round((x - paintArea.x) * subPixels);
+        int qy = (int) Math.round((y - paintArea.y) * subPixels);
+        writeInt(zigZagEncode(qx - lastX));
+        writeInt(zigZagEncode(qy - lastY));
+        lastX = qx;
+        lastY = qy;
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeInt(out, value);
+    }
+
+    /**
+     * Writes an unsigned integer as a variable length quantity
+     */
+    static void writeInt(DataOutputStream dos, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            dos.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dos.write(value);
+    }
+
+    static int zigZagEncode(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+}
@@ -22,6 +22,7 @@ import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.List;
+import java.util.Map;
 
 import org.geotools.renderer.ScreenMap;
 import org.geotools.styling.Rule;
@@ -69,6 +70,21 @@ public final class LiteFeatureTypeStyle {
      */
     ScreenMap screenMap;
 
+    /**
+     * The compiled form of the rule list, or null if the rules could not be indexed
+     */
+    RuleIndex ruleIndex;
+
+    /**
+     * The metrics of the layer being rendered, or null if metrics are not being collected
+     */
+    RenderingMetrics.LayerMetrics layerMetrics;
+
+    /**
+     * The metrics of each rule, or null if metrics are not being collected
+     */
+    Map<Rule, RenderingMetrics.Counters> ruleMetrics;
+
     public LiteFeatureTypeStyle(BufferedImage image, AffineTransform at, List ruleList,
             List elseRule, RenderingHints hints, Expression transformation) {
         this.myImage = image;
@@ -98,4 +114,40 @@ public final class LiteFeatureTypeStyle {
         this.transformation = transformation;
     }
 
+    /**
+     * Compiles the rule list into a {@link RuleIndex}, when possible. To be called once the rule
+     * list has been finalized, the index is not updated if the rules are modified afterwards
+     */
+    void compileRules() {
+        ruleIndex = RuleIndex.build(ruleList);
+    }
+
+    /**
+     * Returns the rules whose filter might match the specified feature, in painting order. Without
+     * a compiled index this is the full rule list.
+     * 
+     * @param feature
+     * @return
+     */
+    Rule[] getCandidateRules(Object feature) {
+        if (ruleIndex == null) {
+            return ruleList;
+        }
+        return ruleIndex.getRules(feature);
+    }
+
+    /**
+     * Returns the metrics associated to the specified rule, or null if metrics are not
+     * being collected
+     * 
+     * @param rule
+     * @return
+     */
+    RenderingMetrics.Counters getRuleMetrics(Rule rule) {
+        if (ruleMetrics == null) {
+            return null;
+        }
+        return ruleMetrics.get(rule);
+    }
+
 }
@@ -0,0 +1,191 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.Map;
+
+import org.geotools.renderer.lite.RenderingBudgetReport.LayerReport;
+import org.geotools.renderer.lite.RenderingBudgetReport.Status;
+
+/**
+ * Keeps track of the time and features consumed by a paint operation against the limits set in
+ * the renderer hints. Used only by the {@link StreamingRenderer} producer thread, so it's not
+ * thread safe.
+ * <p>
+ * The overall time budget is shared among the layers proportionally to their priority: each layer
+ * gets a time slice equal to the remaining time, multiplied by its priority, divided by the sum of
+ * the priorities of the layers still to be painted. This way layers keep on being painted in map
+ * order (preserving the z-order) but the important ones get more time. An explicit per layer time
+ * slice can be provided as well, the smaller of the two is used.
+ *
+ * @source $URL$
+ */
+class RenderingBudget {
+
+    static final long NO_LIMIT = Long.MAX_VALUE;
+
+    /** Overall deadline, as a {@link System#nanoTime()} value */
+    final long deadline;
+
+    /** Explicit per layer time slice, in nanoseconds */
+    final long layerTimeSlice;
+
+    /** Maximum number of features per layer scan */
+    final long maxLayerFeatures;
+
+    final long start;
+
+    final RenderingBudgetReport report = new RenderingBudgetReport();
+
+    LayerReport current;
+
+    long layerStart;
+
+    long layerDeadline;
+
+    long scanFeatures;
+
+    /**
+     * Builds a budget out of the renderer hints, or returns null if no limit has been set
+     *
+     * @param hints
+     * @return
+     */
+    static RenderingBudget create(Map hints) {
+        if (hints == null) {
+            return null;
+        }
+        long maxTime = getLong(hints, StreamingRenderer.MAX_RENDERING_TIME_KEY);
+        long layerTime = getLong(hints, StreamingRenderer.MAX_LAYER_RENDERING_TIME_KEY);
+        long maxFeatures = getLong(hints, StreamingRenderer.MAX_LAYER_FEATURES_KEY);
+        if (maxTime == NO_LIMIT && layerTime == NO_LIMIT && maxFeatures == NO_LIMIT) {
+            return null;
+        }
+        return new RenderingBudget(maxTime, layerTime, maxFeatures);
+    }
+
+    private static long getLong(Map hints, String key) {
+        Object value = hints.get(key);
+        if (value instanceof Number && ((Number) value).longValue() > 0) {
+            return ((Number) value).longValue();
+        }
+        return NO_LIMIT;
+    }
+
+    /**
+     * @param maxTime the overall time budget, in milliseconds
+     * @param layerTime the per layer time slice, in milliseconds
+     * @param maxFeatures the per layer feature limit
+     */
+    RenderingBudget(long maxTime, long layerTime, long maxFeatures) {
+        this.start = System.nanoTime();
+        this.deadline = maxTime == NO_LIMIT ? NO_LIMIT : start + maxTime * 1000000;
+        this.layerTimeSlice = layerTime == NO_LIMIT ? NO_LIMIT : layerTime * 1000000;
+        this.maxLayerFeatures = maxFeatures;
+    }
+
+    RenderingBudgetReport getReport() {
+        return report;
+    }
+
+    /**
+     * Starts a new layer. Returns false if the overall time budget is already exhausted, in that
+     * case the layer is reported as skipped and should not be painted (or queried) at all.
+     *
+     * @param layerId the layer position in the map content
+     * @param title the layer title
+     * @param priority the layer priority
+     * @param remainingPriority the sum of the priorities of this and all the following layers
+     */
+    boolean startLayer(String layerId, String title, double priority, double remainingPriority) {
+        endLayer();
+
+        current = new LayerReport(layerId, title);
+        report.layers.add(current);
+        layerStart = System.nanoTime();
+        scanFeatures = 0;
+        if (deadline != NO_LIMIT && layerStart >= deadline) {
+            current.status = Status.SKIPPED;
+            current = null;
+            return false;
+        }
+
+        layerDeadline = NO_LIMIT;
+        if (deadline != NO_LIMIT) {
+            double share = remainingPriority > 0 ? priority / remainingPriority : 1;
+            layerDeadline = layerStart + (long) ((deadline - layerStart) * share);
+        }
+        if (layerTimeSlice != NO_LIMIT) {
+            layerDeadline = Math.min(layerDeadline, layerStart + layerTimeSlice);
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks the beginning of a new scan over the layer data. The feature limit applies to each
+     * scan separately, a scan truncated by the feature limit does not prevent the following
+     * ones (e.g., the other feature type styles of the layer) from being painted
+     */
+    void startScan() {
+        scanFeatures = 0;
+    }
+
+    /**
+     * Returns true if the current layer time budget has been exhausted and no further queries
+     * should be issued against it
+     */
+    boolean isLayerExhausted() {
+        return current == null || current.status == Status.LAYER_TIMEOUT
+                || current.status == Status.TIMEOUT;
+    }
+
+    /**
+     * Accounts for a new feature about to be rendered, returns false if the layer budget has been
+     * exhausted instead, in that case the layer is marked as truncated
+     */
+    boolean nextFeature() {
+        if (isLayerExhausted()) {
+            return false;
+        }
+        if (scanFeatures >= maxLayerFeatures) {
+            current.status = Status.FEATURE_LIMIT;
+            return false;
+        }
+        if (layerDeadline != NO_LIMIT) {
+            long now = System.nanoTime();
+            if (now >= layerDeadline) {
+                current.status = deadline != NO_LIMIT && now >= deadline ? Status.TIMEOUT
+                        : Status.LAYER_TIMEOUT;
+                return false;
+            }
+        }
+        scanFeatures++;
+        current.featuresRendered++;
+        return true;
+    }
+
+    /**
+     * Closes the current layer, if any
+     */
+    void endLayer() {
+        if (current != null) {
+            current.elapsed = (System.nanoTime() - layerStart) / 1000000;
+            current = null;
+        }
+    }
+}
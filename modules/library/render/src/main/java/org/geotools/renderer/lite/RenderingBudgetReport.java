@@ -0,0 +1,150 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reports how a paint went against the time and feature budget set by the
+ * {@link StreamingRenderer#MAX_RENDERING_TIME_KEY}, {@link StreamingRenderer#MAX_LAYER_RENDERING_TIME_KEY}
+ * and {@link StreamingRenderer#MAX_LAYER_FEATURES_KEY} hints.
+ * <p>
+ * Layers are always painted in map order, and a layer is either fully painted, truncated (the
+ * features read before the budget exhaustion are painted, the others are not read at all), or
+ * skipped altogether. Labels collected from the painted features are always drawn, so the
+ * resulting image is partial, but consistent.
+ *
+ * @source $URL$
+ */
+public class RenderingBudgetReport {
+
+    /**
+     * How a layer was handled
+     */
+    public enum Status {
+        /** All the features have been painted */
+        COMPLETE,
+        /** The features were truncated because the layer feature limit was reached */
+        FEATURE_LIMIT,
+        /** The features were truncated because the layer time slice was exhausted */
+        LAYER_TIMEOUT,
+        /** The features were truncated because the overall rendering time was exhausted */
+        TIMEOUT,
+        /** The layer was not painted at all, the overall rendering time was already exhausted */
+        SKIPPED
+    };
+
+    /**
+     * The outcome of a single layer
+     */
+    public static class LayerReport {
+        String layerId;
+
+        String title;
+
+        Status status = Status.COMPLETE;
+
+        long featuresRendered;
+
+        long elapsed;
+
+        LayerReport(String layerId, String title) {
+            this.layerId = layerId;
+            this.title = title;
+        }
+
+        /**
+         * The layer position in the map content
+         */
+        public String getLayerId() {
+            return layerId;
+        }
+
+        /**
+         * The layer title, if any
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * The number of features that have been processed before the layer was truncated
+         */
+        public long getFeaturesRendered() {
+            return featuresRendered;
+        }
+
+        /**
+         * The time spent on the layer, in milliseconds
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return "LayerReport[layer=" + (title != null ? title : layerId) + ", status="
+                    + status + ", features=" + featuresRendered + ", elapsed=" + elapsed + "ms]";
+        }
+    }
+
+    List<LayerReport> layers = new ArrayList<LayerReport>();
+
+    /**
+     * The report of each layer, in painting order
+     */
+    public List<LayerReport> getLayers() {
+        return Collections.unmodifiableList(layers);
+    }
+
+    /**
+     * Returns true if all the layers have been completely painted
+     */
+    public boolean isComplete() {
+        for (LayerReport layer : layers) {
+            if (layer.status != Status.COMPLETE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the layers that have been truncated or skipped
+     */
+    public List<LayerReport> getIncompleteLayers() {
+        List<LayerReport> result = new ArrayList<LayerReport>();
+        for (LayerReport layer : layers) {
+            if (layer.status != Status.COMPLETE) {
+                result.add(layer);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderingBudgetReport" + layers;
+    }
+
+}
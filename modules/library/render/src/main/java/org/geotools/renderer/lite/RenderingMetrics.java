@@ -0,0 +1,347 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.styling.Rule;
+
+/**
+ * Collects timings and counts about the work performed by the {@link StreamingRenderer}, per
+ * layer and per rule.
+ * <p>
+ * Set an instance with {@link StreamingRenderer#setMetrics(RenderingMetrics)} and inspect it once
+ * the paint is done. When no metrics are set the renderer does not take any timing, so leaving the
+ * facility disabled has no measurable cost. The same instance can be reused for multiple paints,
+ * in that case the values accumulate, call {@link #reset()} to start over.
+ * <p>
+ * The following phases are tracked:
+ * <ul>
+ * <li>{@link Phase#QUERY}: time spent reading the data (feature collection creation, iteration,
+ * coverage reads)</li>
+ * <li>{@link Phase#TRANSFORM}: time spent reprojecting, generalizing and turning the geometries
+ * in screen space shapes</li>
+ * <li>{@link Phase#CLIP}: time spent clipping the shapes to the visible area</li>
+ * <li>{@link Phase#PAINT}: time spent painting in the Java2D graphics (this happens in the painting
+ * thread, so it overlaps with the other phases)</li>
+ * <li>{@link Phase#LABEL}: time spent adding labels to the label cache. The actual label placement
+ * happens once all the layers have been processed, and is reported in the
+ * {@link #getLabelPainting() label painting} counters</li>
+ * </ul>
+ * Rules are identified by their name, or by their filter when unnamed, since the renderer works
+ * against private copies of them. Allocated bytes are measured only on JVMs providing a per thread
+ * allocation counter, and only cover the thread calling the paint method.
+ *
+ * @source $URL$
+ */
+public class RenderingMetrics {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging
+            .getLogger("org.geotools.renderer.lite");
+
+    /**
+     * The rendering phases being timed
+     */
+    public enum Phase {
+        QUERY, TRANSFORM, CLIP, PAINT, LABEL
+    };
+
+    /**
+     * Thread safe set of counters
+     */
+    public static class Counters {
+        final String name;
+
+        final AtomicLongArray times = new AtomicLongArray(Phase.values().length);
+
+        final AtomicLong featuresRead = new AtomicLong();
+
+        final AtomicLong featuresPainted = new AtomicLong();
+
+        final AtomicLong featuresCulled = new AtomicLong();
+
+        final AtomicLong labelsPlaced = new AtomicLong();
+
+        final AtomicLong labelsRejected = new AtomicLong();
+
+        final AtomicLong allocatedBytes = new AtomicLong(-1);
+
+        Counters(String name) {
+            this.name = name;
+        }
+
+        /**
+         * The layer or rule name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Time spent in the specified phase, in nanoseconds
+         */
+        public long getTime(Phase phase) {
+            return times.get(phase.ordinal());
+        }
+
+        /**
+         * Number of features read from the data source
+         */
+        public long getFeaturesRead() {
+            return featuresRead.get();
+        }
+
+        /**
+         * Number of features that resulted in something being painted or labelled
+         */
+        public long getFeaturesPainted() {
+            return featuresPainted.get();
+        }
+
+        /**
+         * Number of features that matched a rule but were discarded before painting (out of the
+         * visible area, overlapping other features once generalized, failed to reproject)
+         */
+        public long getFeaturesCulled() {
+            return featuresCulled.get();
+        }
+
+        /**
+         * Number of labels painted
+         */
+        public long getLabelsPlaced() {
+            return labelsPlaced.get();
+        }
+
+        /**
+         * Number of labels that could not be painted due to conflicts or lack of space
+         */
+        public long getLabelsRejected() {
+            return labelsRejected.get();
+        }
+
+        /**
+         * Bytes allocated by the rendering thread, or -1 if the JVM cannot measure them
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes.get();
+        }
+
+        void addTime(Phase phase, long nanos) {
+            times.addAndGet(phase.ordinal(), nanos);
+        }
+
+        /**
+         * Accounts for a label that has been painted
+         */
+        public void labelPlaced() {
+            labelsPlaced.incrementAndGet();
+        }
+
+        /**
+         * Accounts for a label that could not be painted
+         */
+        public void labelRejected() {
+            labelsRejected.incrementAndGet();
+        }
+
+        void addAllocatedBytes(long bytes) {
+            if (bytes < 0) {
+                return;
+            }
+            allocatedBytes.compareAndSet(-1, 0);
+            allocatedBytes.addAndGet(bytes);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(name).append("[");
+            for (Phase phase : Phase.values()) {
+                sb.append(phase.name().toLowerCase()).append("=")
+                        .append(getTime(phase) / 1000000).append("ms, ");
+            }
+            sb.append("read=").append(getFeaturesRead());
+            sb.append(", painted=").append(getFeaturesPainted());
+            sb.append(", culled=").append(getFeaturesCulled());
+            sb.append(", labelsPlaced=").append(getLabelsPlaced());
+            sb.append(", labelsRejected=").append(getLabelsRejected());
+            if (getAllocatedBytes() >= 0) {
+                sb.append(", allocated=").append(getAllocatedBytes());
+            }
+            return sb.append("]").toString();
+        }
+    }
+
+    /**
+     * The counters for a single layer, including the counters of each rule used to render it
+     */
+    public static class LayerMetrics extends Counters {
+
+        Map<String, Counters> rules = new LinkedHashMap<String, Counters>();
+
+        LayerMetrics(String name) {
+            super(name);
+        }
+
+        /**
+         * Returns the counters of the specified rule, creating them if missing
+         */
+        public synchronized Counters getRule(Rule rule) {
+            String key = getRuleKey(rule);
+            Counters counters = rules.get(key);
+            if (counters == null) {
+                counters = new Counters(key);
+                rules.put(key, counters);
+            }
+            return counters;
+        }
+
+        /**
+         * Returns the counters of all the rules used to paint this layer, in the order they were
+         * first used
+         */
+        public synchronized List<Counters> getRules() {
+            return new ArrayList<Counters>(rules.values());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(super.toString());
+            for (Counters rule : getRules()) {
+                sb.append("\n  ").append(rule);
+            }
+            return sb.toString();
+        }
+    }
+
+    Map<String, LayerMetrics> layers = new LinkedHashMap<String, LayerMetrics>();
+
+    Counters labelPainting = new Counters("labels");
+
+    /**
+     * Returns the metrics for the specified layer, creating them if missing
+     *
+     * @param layerId the layer identifier, that is, its position in the map content
+     * @param name the layer title, if any, used to name the metrics
+     */
+    public synchronized LayerMetrics getLayer(String layerId, String name) {
+        LayerMetrics layer = layers.get(layerId);
+        if (layer == null) {
+            layer = new LayerMetrics(name != null ? name : layerId);
+            layers.put(layerId, layer);
+        }
+        return layer;
+    }
+
+    /**
+     * Returns the metrics for the specified layer, or null if the layer has not been rendered
+     */
+    public synchronized LayerMetrics getLayer(String layerId) {
+        return layers.get(layerId);
+    }
+
+    /**
+     * Returns the metrics of all rendered layers, in painting order
+     */
+    public synchronized List<LayerMetrics> getLayers() {
+        return new ArrayList<LayerMetrics>(layers.values());
+    }
+
+    /**
+     * The time spent placing and painting labels at the end of the rendering, and the total
+     * number of labels placed and rejected
+     */
+    public Counters getLabelPainting() {
+        return labelPainting;
+    }
+
+    /**
+     * Clears all the collected metrics
+     */
+    public synchronized void reset() {
+        layers.clear();
+        labelPainting = new Counters("labels");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (LayerMetrics layer : getLayers()) {
+            sb.append(layer).append("\n");
+        }
+        return sb.append(labelPainting).toString();
+    }
+
+    static String getRuleKey(Rule rule) {
+        if (rule.getName() != null) {
+            return rule.getName();
+        } else if (rule.isElseFilter()) {
+            return "ElseFilter";
+        } else if (rule.getFilter() != null) {
+            return rule.getFilter().toString();
+        } else {
+            return "Include";
+        }
+    }
+
+    /**
+     * Support for per thread allocation counters, available only on some JVMs
+     */
+    static final Method ALLOCATED_BYTES;
+    static {
+        Method method = null;
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+            if (sunBean.isInstance(bean)) {
+                method = sunBean.getMethod("getThreadAllocatedBytes", long.class);
+                method.invoke(bean, Thread.currentThread().getId());
+            }
+        } catch (Throwable t) {
+            LOGGER.log(Level.FINE, "Per thread allocation counters are not available", t);
+            method = null;
+        }
+        ALLOCATED_BYTES = method;
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or -1 if the JVM
+     * cannot tell
+     */
+    static long getCurrentThreadAllocatedBytes() {
+        if (ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            Object result = ALLOCATED_BYTES.invoke(ManagementFactory.getThreadMXBean(), Thread
+                    .currentThread().getId());
+            return ((Number) result).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
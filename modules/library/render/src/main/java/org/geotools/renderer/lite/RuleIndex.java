@@ -0,0 +1,446 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.styling.Rule;
+import org.geotools.util.Converters;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * A compiled form of the rules of a {@link LiteFeatureTypeStyle} that quickly locates the rules
+ * that can possibly match a feature.
+ * <p>
+ * Thematic styles (classified maps, recodes) are usually made of many rules filtering the same
+ * attribute against disjoint value ranges, or against distinct values. For those the renderer
+ * would evaluate each rule filter against each feature, while a lookup on the attribute value
+ * is enough to find the one or two rules that can match. This class recognizes such rule families
+ * and builds either a sorted interval list (numeric ranges and values, binary searched) or a hash
+ * map (string values). Rules not belonging to the family are always returned, in their original
+ * position, so that the renderer can evaluate them as usual.
+ * <p>
+ * The index is only a pre-filter: the renderer still evaluates the filter of each returned rule,
+ * so an index is allowed to return more rules than needed, but never less. Whenever the attribute
+ * value is not of the type the index has been built for, the full rule list is returned.
+ *
+ * @source $URL$
+ */
+final class RuleIndex {
+
+    /**
+     * Below this number of rules a linear scan is just as fast as the index lookup
+     */
+    static final int MIN_RULES = 8;
+
+    /**
+     * The original rules, in painting order
+     */
+    final Rule[] rules;
+
+    /**
+     * The attribute all the indexed rules are filtering on
+     */
+    final PropertyName property;
+
+    /**
+     * The positions of the rules that are not indexed and have to be always evaluated
+     */
+    final int[] unindexed;
+
+    /**
+     * Numeric index, sorted by range minimum, or null if this is a string index
+     */
+    double[] minimums;
+
+    double[] maximums;
+
+    int[] rangePositions;
+
+    /**
+     * String index, or null if this is a numeric index
+     */
+    Map<String, int[]> valuePositions;
+
+    private RuleIndex(Rule[] rules, PropertyName property, int[] unindexed) {
+        this.rules = rules;
+        this.property = property;
+        this.unindexed = unindexed;
+    }
+
+    /**
+     * Builds an index for the specified rules, or returns null if the rules do not contain a
+     * family of filters that can be indexed, or are too few to make indexing worthwhile
+     *
+     * @param rules
+     * @return
+     */
+    static RuleIndex build(Rule[] rules) {
+        if (rules == null || rules.length < MIN_RULES) {
+            return null;
+        }
+
+        // parse the filters and look for the attribute used by most rules
+        Selection[] selections = new Selection[rules.length];
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        String propertyName = null;
+        int maxCount = 0;
+        for (int i = 0; i < rules.length; i++) {
+            Selection s = Selection.parse(rules[i].getFilter());
+            if (s != null) {
+                String name = s.property.getPropertyName();
+                Integer count = counts.get(name);
+                count = count == null ? 1 : count + 1;
+                counts.put(name, count);
+                if (count > maxCount) {
+                    maxCount = count;
+                    propertyName = name;
+                }
+            }
+            selections[i] = s;
+        }
+        if (maxCount < MIN_RULES) {
+            return null;
+        }
+
+        // rules on other attributes will be evaluated linearly
+        PropertyName property = null;
+        for (int i = 0; i < selections.length; i++) {
+            if (selections[i] != null) {
+                if (!propertyName.equals(selections[i].property.getPropertyName())) {
+                    selections[i] = null;
+                } else if (property == null) {
+                    property = selections[i].property;
+                }
+            }
+        }
+
+        // all indexed values must be of the same kind
+        boolean numeric = true;
+        boolean allEqualities = true;
+        for (Selection s : selections) {
+            if (s != null) {
+                numeric &= s.value == null;
+                allEqualities &= s.value != null;
+            }
+        }
+        if (!numeric && !allEqualities) {
+            return null;
+        }
+
+        List<Integer> unindexed = new ArrayList<Integer>();
+        List<Integer> indexed = new ArrayList<Integer>();
+        for (int i = 0; i < selections.length; i++) {
+            Selection s = selections[i];
+            // an empty numeric range never matches, but it's rare enough not to warrant special
+            // treatment, just evaluate it
+            if (s == null || (numeric && s.min > s.max)) {
+                unindexed.add(i);
+            } else {
+                indexed.add(i);
+            }
+        }
+        if (indexed.size() < MIN_RULES) {
+            return null;
+        }
+
+        RuleIndex index = new RuleIndex(rules, property, toArray(unindexed));
+        if (numeric) {
+            if (!index.buildRanges(selections, indexed)) {
+                return null;
+            }
+        } else {
+            index.buildValues(selections, indexed);
+        }
+        return index;
+    }
+
+    /**
+     * Builds the sorted range list. Ranges can only share their end points, the lookup won't work
+     * properly if they overlap, in that case the method gives up and returns false
+     */
+    private boolean buildRanges(final Selection[] selections, List<Integer> indexed) {
+        Integer[] sorted = (Integer[]) indexed.toArray(new Integer[indexed.size()]);
+        // stable sort, rules with the same minimum keep their painting order
+        Arrays.sort(sorted, new Comparator<Integer>() {
+
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(selections[i1].min, selections[i2].min);
+            }
+        });
+
+        final int size = sorted.length;
+        minimums = new double[size];
+        maximums = new double[size];
+        rangePositions = new int[size];
+        for (int i = 0; i < size; i++) {
+            Selection s = selections[sorted[i]];
+            if (i > 0 && s.min < maximums[i - 1]) {
+                return false;
+            }
+            minimums[i] = s.min;
+            maximums[i] = s.max;
+            rangePositions[i] = sorted[i];
+        }
+
+        return true;
+    }
+
+    private void buildValues(Selection[] selections, List<Integer> indexed) {
+        Map<String, List<Integer>> map = new HashMap<String, List<Integer>>();
+        for (Integer position : indexed) {
+            String value = selections[position].value;
+            List<Integer> positions = map.get(value);
+            if (positions == null) {
+                positions = new ArrayList<Integer>(1);
+                map.put(value, positions);
+            }
+            positions.add(position);
+        }
+
+        valuePositions = new HashMap<String, int[]>();
+        for (Map.Entry<String, List<Integer>> entry : map.entrySet()) {
+            valuePositions.put(entry.getKey(), toArray(entry.getValue()));
+        }
+    }
+
+    /**
+     * Returns the rules that might match the specified feature, in painting order
+     *
+     * @param feature
+     * @return
+     */
+    Rule[] getRules(Object feature) {
+        Object value = property.evaluate(feature);
+        if (value == null) {
+            return rules;
+        }
+
+        if (minimums != null) {
+            if (!(value instanceof Number)) {
+                return rules;
+            }
+            double v = ((Number) value).doubleValue();
+            if (Double.isNaN(v)) {
+                return rules;
+            }
+
+            // find the last range whose minimum is lower or equal than the value, the
+            // ranges containing the value (if any) precede it
+            int idx = Arrays.binarySearch(minimums, v);
+            if (idx >= 0) {
+                while (idx < minimums.length - 1 && minimums[idx + 1] == v) {
+                    idx++;
+                }
+            } else {
+                idx = -idx - 2;
+            }
+            int count = 0;
+            int[] matches = null;
+            for (int i = idx; i >= 0 && maximums[i] >= v; i--) {
+                if (matches == null) {
+                    matches = new int[idx - i + 1];
+                }
+                if (count == matches.length) {
+                    int[] grown = new int[count * 2];
+                    System.arraycopy(matches, 0, grown, 0, count);
+                    matches = grown;
+                }
+                matches[count++] = rangePositions[i];
+            }
+            return merge(matches, count);
+        } else {
+            if (!(value instanceof String)) {
+                return rules;
+            }
+            int[] matches = valuePositions.get(value);
+            return merge(matches, matches == null ? 0 : matches.length);
+        }
+    }
+
+    /**
+     * Merges the matched rule positions with the unindexed ones, preserving the painting order
+     */
+    private Rule[] merge(int[] matches, int count) {
+        final int length = count + unindexed.length;
+        int[] positions = new int[length];
+        if (count > 0) {
+            System.arraycopy(matches, 0, positions, 0, count);
+        }
+        System.arraycopy(unindexed, 0, positions, count, unindexed.length);
+        Arrays.sort(positions);
+
+        Rule[] result = new Rule[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = rules[positions[i]];
+        }
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * The set of attribute values selected by a single rule filter: either a numeric closed range,
+     * or a single case sensitive string value. Ranges are always considered closed, which at
+     * worst makes the index return a rule whose filter does not match a value on its boundary.
+     */
+    static final class Selection {
+        PropertyName property;
+
+        double min = Double.NEGATIVE_INFINITY;
+
+        double max = Double.POSITIVE_INFINITY;
+
+        String value;
+
+        /**
+         * Parses the filter into a selection, returns null if the filter is not indexable
+         */
+        static Selection parse(Filter filter) {
+            if (filter == null) {
+                return null;
+            }
+
+            if (filter instanceof PropertyIsBetween) {
+                PropertyIsBetween between = (PropertyIsBetween) filter;
+                if (!(between.getExpression() instanceof PropertyName)) {
+                    return null;
+                }
+                Double lower = toNumber(between.getLowerBoundary());
+                Double upper = toNumber(between.getUpperBoundary());
+                if (lower == null || upper == null) {
+                    return null;
+                }
+                Selection s = new Selection();
+                s.property = (PropertyName) between.getExpression();
+                s.min = lower;
+                s.max = upper;
+                return s;
+            } else if (filter instanceof And) {
+                Selection result = null;
+                for (Filter child : ((And) filter).getChildren()) {
+                    Selection s = parse(child);
+                    if (s == null || s.value != null) {
+                        return null;
+                    }
+                    if (result == null) {
+                        result = s;
+                    } else if (!result.property.getPropertyName().equals(
+                            s.property.getPropertyName())) {
+                        return null;
+                    } else {
+                        result.min = Math.max(result.min, s.min);
+                        result.max = Math.min(result.max, s.max);
+                    }
+                }
+                return result;
+            } else if (filter instanceof PropertyIsEqualTo
+                    || filter instanceof PropertyIsGreaterThan
+                    || filter instanceof PropertyIsGreaterThanOrEqualTo
+                    || filter instanceof PropertyIsLessThan
+                    || filter instanceof PropertyIsLessThanOrEqualTo) {
+                return parseComparison((BinaryComparisonOperator) filter);
+            }
+
+            return null;
+        }
+
+        private static Selection parseComparison(BinaryComparisonOperator comparison) {
+            Expression e1 = comparison.getExpression1();
+            Expression e2 = comparison.getExpression2();
+            // normalize to "property op literal"
+            boolean flipped = false;
+            if (e1 instanceof Literal && e2 instanceof PropertyName) {
+                Expression tmp = e1;
+                e1 = e2;
+                e2 = tmp;
+                flipped = true;
+            }
+            if (!(e1 instanceof PropertyName) || !(e2 instanceof Literal)) {
+                return null;
+            }
+
+            Selection s = new Selection();
+            s.property = (PropertyName) e1;
+            Double number = toNumber(e2);
+            if (comparison instanceof PropertyIsEqualTo) {
+                if (number != null) {
+                    s.min = number;
+                    s.max = number;
+                } else {
+                    Object value = ((Literal) e2).getValue();
+                    if (!(value instanceof String) || !comparison.isMatchingCase()) {
+                        return null;
+                    }
+                    s.value = (String) value;
+                }
+                return s;
+            }
+
+            if (number == null) {
+                return null;
+            }
+            boolean greater = comparison instanceof PropertyIsGreaterThan
+                    || comparison instanceof PropertyIsGreaterThanOrEqualTo;
+            if (greater != flipped) {
+                s.min = number;
+            } else {
+                s.max = number;
+            }
+            return s;
+        }
+
+        private static Double toNumber(Expression expression) {
+            if (!(expression instanceof Literal)) {
+                return null;
+            }
+            Object value = ((Literal) expression).getValue();
+            Double result = null;
+            if (value instanceof Number) {
+                result = ((Number) value).doubleValue();
+            } else if (value instanceof String) {
+                result = Converters.convert(value, Double.class);
+            }
+            if (result == null || result.isNaN()) {
+                return null;
+            }
+            return result;
+        }
+    }
+}
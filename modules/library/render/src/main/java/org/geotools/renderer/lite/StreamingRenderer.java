@@ -26,6 +26,7 @@ import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
@@ -34,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -94,6 +96,7 @@ import org.geotools.parameter.Parameter;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.operation.matrix.XAffineTransform;
 import org.geotools.referencing.operation.transform.AffineTransform2D;
+import org.geotools.referencing.operation.transform.ApproximateMathTransform;
 import org.geotools.referencing.operation.transform.ConcatenatedTransform;
 import org.geotools.referencing.operation.transform.ProjectiveTransform;
 import org.geotools.renderer.GTRenderer;
@@ -288,6 +291,37 @@ public final class StreamingRenderer implements GTRenderer {
 
     private List<RenderListener> renderListeners = new CopyOnWriteArrayList<RenderListener>();
 
+    /**
+     * The optional collector of rendering timings and counts
+     */
+    private RenderingMetrics metrics;
+
+    /**
+     * The time and feature budget of the current paint, if any
+     */
+    private RenderingBudget budget;
+
+    /**
+     * The optional recorder of the painted geometries
+     */
+    private DisplayListBuilder displayList;
+
+    /**
+     * The cache of transformed geometries used in the current paint, if any
+     */
+    private TransformedGeometryCache geometryCache;
+
+    /**
+     * The approximated source to screen transforms built during the current paint, by source CRS
+     */
+    private Map<CoordinateReferenceSystem, MathTransform2D> approximateTransforms = new HashMap<CoordinateReferenceSystem, MathTransform2D>();
+
+    /**
+     * The approximated source to rendering CRS transforms built during the current paint, by
+     * source CRS
+     */
+    Map<CoordinateReferenceSystem, MathTransform2D> approximateCRSTransforms = new HashMap<CoordinateReferenceSystem, MathTransform2D>();
+
     private RenderingHints java2dHints;
 
     private int renderingBufferDEFAULT = 0;
@@ -346,6 +380,17 @@ public final class StreamingRenderer implements GTRenderer {
      */
     public static final String OPTIMIZE_FTS_RENDERING_KEY = "optimizeFTSRendering";
 
+    /**
+     * Boolean flag controlling the compilation of the feature type style rules into
+     * an attribute index.
+     * <p>When enabled (by default) feature type styles made of many rules filtering the
+     * same attribute against disjoint ranges or distinct values (classified maps) will
+     * look up the matching rules by attribute value, instead of evaluating every rule
+     * filter against every feature.</p>
+     * <p>When disabled all rule filters are evaluated against each feature</p>
+     */
+    public static final String RULE_INDEXING_KEY = "ruleIndexing";
+
 
     /**
      * Enables advanced reprojection handling. Geometries will be sliced to fit into the
@@ -368,6 +413,75 @@ public final class StreamingRenderer implements GTRenderer {
     public static final String VECTOR_RENDERING_KEY = "vectorRenderingEnabled";
     private static boolean VECTOR_RENDERING_ENABLED_DEFAULT = false;
 
+    /**
+     * Overall rendering time budget, in milliseconds, as a Number. Once the budget is exhausted
+     * the current layer rendering is truncated and the following layers are skipped, without
+     * being queried. The features already read are painted, and so are their labels.
+     * See {@link #getBudgetReport()} to find out what was skipped. 
+     * <p>The budget is shared among the layers according to their priority, 
+     * see {@link #LAYER_PRIORITY_KEY}</p>
+     */
+    public static final String MAX_RENDERING_TIME_KEY = "maxRenderingTime";
+
+    /**
+     * Maximum time, in milliseconds, that can be spent rendering a single layer, as a Number
+     */
+    public static final String MAX_LAYER_RENDERING_TIME_KEY = "maxLayerRenderingTime";
+
+    /**
+     * Maximum number of features rendered out of a single layer scan, as a Number
+     */
+    public static final String MAX_LAYER_FEATURES_KEY = "maxLayerFeatures";
+
+    /**
+     * Key of the layer user data entry holding the layer priority, a positive Number 
+     * (1 if missing). When a {@link #MAX_RENDERING_TIME_KEY} is set each layer gets a share 
+     * of the remaining time proportional to its priority. Layers are still painted in map order. 
+     */
+    public static final String LAYER_PRIORITY_KEY = "renderingPriority";
+
+    /**
+     * A {@link TransformedGeometryCache} instance, allowing the renderer to reuse the 
+     * geometries it already reprojected and generalized in previous paints at the same scale.
+     * Useful for interactive panning and tile rendering, the same cache can be shared among
+     * multiple renderers. 
+     */
+    public static final String TRANSFORMED_GEOMETRY_CACHE_KEY = "transformedGeometryCache";
+
+    /**
+     * The maximum error, in pixels, tolerated when reprojecting vector data. When set to a
+     * positive number the renderer replaces the exact reprojection with an
+     * {@link ApproximateMathTransform}, that evaluates the exact transformation only on a grid
+     * covering the map extent and interpolates the other points, within the tolerance.
+     * Speeds up the rendering of large layers in a different CRS than the map one. By default
+     * the exact transformation is used. 
+     * <p>
+     * Building the grid costs more than transforming a small layer exactly, so the first
+     * {@value #APPROXIMATION_MIN_FEATURES} features of each layer are transformed exactly, and
+     * only the larger layers switch to the approximation. The grid is as dense as the tolerance
+     * needs, but its cells never get smaller than {@value #APPROXIMATION_MIN_CELL_SIZE} pixels:
+     * if the tolerance needs more than that, the exact transformation is used. The geometries
+     * transformed by an approximation are not stored in the {@link TransformedGeometryCache}.
+     * <p>
+     * The approximation applies to the advanced projection handling as well: the geometries cut
+     * by the projection handler are transformed into the rendering CRS by an approximation, whose
+     * tolerance is converted from pixels to rendering CRS units. The inverse transformation
+     * used by the projection handler stays exact.
+     */
+    public static final String APPROXIMATE_TRANSFORM_TOLERANCE_KEY = "approximateTransformTolerance";
+
+    /**
+     * The number of features of a layer transformed exactly before switching to the
+     * approximated transformation, see {@link #APPROXIMATE_TRANSFORM_TOLERANCE_KEY}
+     */
+    static final int APPROXIMATION_MIN_FEATURES = 1000;
+
+    /**
+     * The smallest cell of the approximation grid, in pixels, see
+     * {@link #APPROXIMATE_TRANSFORM_TOLERANCE_KEY}
+     */
+    static final int APPROXIMATION_MIN_CELL_SIZE = 8;
+
     public static final String LABEL_CACHE_KEY = "labelCache";
     public static final String FORCE_EPSG_AXIS_ORDER_KEY = "ForceEPSGAxisOrder";
     public static final String DPI_KEY = "dpi";
@@ -470,6 +584,62 @@ public final class StreamingRenderer implements GTRenderer {
         renderListeners.remove(listener);
     }
 
+    /**
+     * Sets the collector of per layer and per rule rendering timings and counts. 
+     * By default no metrics are collected.
+     * 
+     * @see RenderingMetrics
+     * 
+     * @param metrics
+     *            the metrics collector, or null to disable metrics collection
+     */
+    public void setMetrics(RenderingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the collector of rendering timings and counts, or null if none was set
+     */
+    public RenderingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets a builder that will record the geometries in screen space, along with the
+     * rule and symbolizer they are associated to, instead of painting them. Labels and rasters
+     * are still painted on the graphics. By default the geometries are painted.
+     * 
+     * @see DisplayList
+     * 
+     * @param displayList
+     *            the display list builder, or null to paint the geometries
+     */
+    public void setDisplayListBuilder(DisplayListBuilder displayList) {
+        this.displayList = displayList;
+    }
+
+    /**
+     * Returns the display list builder recording the geometries, or null if none was set
+     */
+    public DisplayListBuilder getDisplayListBuilder() {
+        return displayList;
+    }
+
+    /**
+     * Returns the report of the layers truncated or skipped by the last paint because 
+     * of the time and feature budget, or null if no budget was set.
+     * 
+     * @see #MAX_RENDERING_TIME_KEY
+     * @see #MAX_LAYER_RENDERING_TIME_KEY
+     * @see #MAX_LAYER_FEATURES_KEY
+     */
+    public RenderingBudgetReport getBudgetReport() {
+        if(budget == null) {
+            return null;
+        }
+        return budget.getReport();
+    }
+
     private void fireFeatureRenderedEvent(Object feature) {
         if( !(feature instanceof SimpleFeature)){
             if(feature instanceof Feature) {
@@ -714,6 +884,23 @@ public final class StreamingRenderer implements GTRenderer {
         // reset the abort flag
         renderingStopRequested = false;
         
+        // setup the time and features budget, if any
+        budget = RenderingBudget.create(rendererHints);
+        
+        // reset the display list, if any
+        if (displayList != null) {
+            displayList.start(paintArea);
+        }
+        
+        // and the transformed geometry cache
+        geometryCache = null;
+        if (rendererHints != null 
+                && rendererHints.get(TRANSFORMED_GEOMETRY_CACHE_KEY) instanceof TransformedGeometryCache) {
+            geometryCache = (TransformedGeometryCache) rendererHints.get(TRANSFORMED_GEOMETRY_CACHE_KEY);
+        }
+        approximateTransforms.clear();
+        approximateCRSTransforms.clear();
+        
         // setup the graphic clip
         graphics.setClip(paintArea);
 
@@ -780,8 +967,13 @@ public final class StreamingRenderer implements GTRenderer {
             labelCache.start();
             if(labelCache instanceof LabelCacheImpl) {
                 ((LabelCacheImpl) labelCache).setLabelRenderingMode(LabelRenderingMode.valueOf(getTextRenderingMethod()));
+                ((LabelCacheImpl) labelCache).setMetrics(metrics);
             }
             final int layersNumber = mapContent.layers().size();
+            double[] remainingPriorities = null;
+            if(budget != null) {
+                remainingPriorities = getRemainingPriorities(mapContent.layers());
+            }
             for (int i = 0; i < layersNumber; i++) // DJB: for each layer (ie. one
             {
                 Layer layer = mapContent.layers().get(i);
@@ -794,6 +986,12 @@ public final class StreamingRenderer implements GTRenderer {
                 if (renderingStopRequested) {
                     return;
                 }
+                
+                // out of time? then don't even query the layer
+                if (budget != null && !budget.startLayer(i + "", layer.getTitle(), 
+                        getLayerPriority(layer), remainingPriorities[i])) {
+                    continue;
+                }
                 labelCache.startLayer(i+"");
                 
                 if (layer instanceof DirectLayer) {
@@ -807,6 +1005,12 @@ public final class StreamingRenderer implements GTRenderer {
                     
                 } else {
                     MapLayer currLayer = new MapLayer(layer);
+                    RenderingMetrics.LayerMetrics layerMetrics = null;
+                    long allocated = -1;
+                    if(metrics != null) {
+                        layerMetrics = metrics.getLayer(i + "", currLayer.getTitle());
+                        allocated = RenderingMetrics.getCurrentThreadAllocatedBytes();
+                    }
                     try {
 
                         // extract the feature type stylers from the style object
@@ -816,10 +1020,17 @@ public final class StreamingRenderer implements GTRenderer {
                     } catch (Throwable t) {
                         fireErrorEvent(t);
                     }
+                    if(layerMetrics != null && allocated >= 0) {
+                        layerMetrics.addAllocatedBytes(
+                                RenderingMetrics.getCurrentThreadAllocatedBytes() - allocated);
+                    }
                 }
     
                 labelCache.endLayer(i+"", graphics, screenSize);
             }
+            if(budget != null) {
+                budget.endLayer();
+            }
         } finally {
             try {
                 requests.put(new EndRequest());
@@ -834,7 +1045,12 @@ public final class StreamingRenderer implements GTRenderer {
             }
         }
         
+        long labelStart = metrics != null ? System.nanoTime() : 0;
         labelCache.end(graphics, paintArea);
+        if(metrics != null) {
+            metrics.getLabelPainting().addTime(RenderingMetrics.Phase.LABEL, 
+                    System.nanoTime() - labelStart);
+        }
     
         if (LOGGER.isLoggable(Level.FINE))
             LOGGER.fine(new StringBuffer("Style cache hit ratio: ").append(
@@ -868,6 +1084,34 @@ public final class StreamingRenderer implements GTRenderer {
                 envelope.getMaxY() + bufferY);
     }
 
+    /**
+     * Returns the layer priority, see {@link #LAYER_PRIORITY_KEY}
+     */
+    private double getLayerPriority(Layer layer) {
+        Object priority = layer.getUserData().get(LAYER_PRIORITY_KEY);
+        if(priority instanceof Number && ((Number) priority).doubleValue() > 0) {
+            return ((Number) priority).doubleValue();
+        }
+        return 1;
+    }
+    
+    /**
+     * For each layer, computes the sum of the priorities of the visible layers from it to the
+     * end of the layer list
+     */
+    private double[] getRemainingPriorities(List<Layer> layers) {
+        double[] result = new double[layers.size()];
+        double sum = 0;
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Layer layer = layers.get(i);
+            if(layer.isVisible()) {
+                sum += getLayerPriority(layer);
+            }
+            result[i] = sum;
+        }
+        return result;
+    }
+
     /**
      * Queries a given layer's <code>Source</code> instance to be rendered. 
      * <p>
@@ -1180,6 +1424,70 @@ public final class StreamingRenderer implements GTRenderer {
         return mt;
     }
 
+    /**
+     * Replaces the full transform with an approximation covering the map extent, if an
+     * approximation tolerance has been provided.
+     * See {@link #APPROXIMATE_TRANSFORM_TOLERANCE_KEY} for details.
+     */
+    private MathTransform2D approximateTransform(CoordinateReferenceSystem sourceCRS,
+            MathTransform2D fullTransform) {
+        return approximate(approximateTransforms, sourceCRS, fullTransform,
+                getApproximateTransformTolerance());
+    }
+
+    /**
+     * Replaces the transform into the rendering CRS with an approximation covering the map
+     * extent, if an approximation tolerance has been provided. Used when the geometries go
+     * through the rendering CRS before being turned into pixels (advanced projection handling,
+     * transformed geometry cache), the tolerance is converted to rendering CRS units.
+     */
+    private MathTransform2D approximateCRSTransform(CoordinateReferenceSystem sourceCRS,
+            MathTransform2D crsTransform) {
+        double tolerance = getApproximateTransformTolerance()
+                / XAffineTransform.getScale(worldToScreenTransform);
+        return approximate(approximateCRSTransforms, sourceCRS, crsTransform, tolerance);
+    }
+
+    private MathTransform2D approximate(Map<CoordinateReferenceSystem, MathTransform2D> cache,
+            CoordinateReferenceSystem sourceCRS, MathTransform2D fullTransform, double tolerance) {
+        if (!(tolerance > 0) || sourceCRS == null) {
+            return fullTransform;
+        }
+        MathTransform2D approximate = cache.get(sourceCRS);
+        if (approximate == null) {
+            approximate = fullTransform;
+            try {
+                // the points outside of the domain will be transformed exactly
+                ReferencedEnvelope domain = mapExtent.transform(sourceCRS, true);
+                int maxCells = Math.max(screenSize.width, screenSize.height)
+                        / APPROXIMATION_MIN_CELL_SIZE;
+                approximate = ApproximateMathTransform.create(fullTransform, new Rectangle2D.Double(
+                        domain.getMinX(), domain.getMinY(), domain.getWidth(), domain.getHeight()),
+                        tolerance, maxCells);
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not approximate the transformation, "
+                        + "will use the exact one", e);
+            }
+            cache.put(sourceCRS, approximate);
+        }
+        return approximate;
+    }
+
+    /**
+     * Returns the approximate transform tolerance, or 0 if exact transformations are
+     * to be used
+     */
+    private double getApproximateTransformTolerance() {
+        if (rendererHints == null)
+            return 0;
+        Object result = rendererHints.get(APPROXIMATE_TRANSFORM_TOLERANCE_KEY);
+        if (result instanceof Number)
+            return ((Number) result).doubleValue();
+        if (result instanceof String)
+            return Double.parseDouble((String) result);
+        return 0;
+    }
+
     /**
      * Builds the transform from sourceCRS to destCRS
      * @param sourceCRS
@@ -1342,6 +1650,19 @@ public final class StreamingRenderer implements GTRenderer {
         return Boolean.TRUE.equals(result);
     }
 
+    /**
+     * Checks if rule indexing is enabled, or not.
+     * See {@link #RULE_INDEXING_KEY} description for a full explanation.
+     */
+    private boolean isRuleIndexingEnabled() {
+        if (rendererHints == null)
+            return true;
+        Object result = rendererHints.get(RULE_INDEXING_KEY);
+        if (result == null)
+            return true;
+        return Boolean.TRUE.equals(result);
+    }
+
     /**
      * Checks if the advanced projection handling is enabled
      * @return
@@ -1960,11 +2281,19 @@ public final class StreamingRenderer implements GTRenderer {
             // apply the uom and dpi rescale
             applyUnitRescale(lfts);
             
+            // the rules are final, compile them
+            compileRules(lfts);
+            prepareMetrics(lfts, currLayer, layerId);
+            
             // classify by transformation
             List<List<LiteFeatureTypeStyle>> txClassified = classifyByTransformation(lfts);
             
             // render groups by uniform transformation
             for (List<LiteFeatureTypeStyle> uniform : txClassified) {
+                // the budget is exhausted, don't issue any further query
+                if(budget != null && budget.isLayerExhausted()) {
+                    break;
+                }
                 Expression transform = uniform.get(0).transformation;
                 
                 // ... assume we have to do the generalization, the query layer process will
@@ -1974,6 +2303,7 @@ public final class StreamingRenderer implements GTRenderer {
                         uniform, mapArea, destinationCrs, sourceCrs, screenSize,
                         geometryAttribute, at);
                 FeatureCollection rawFeatures;
+                long queryStart = metrics != null ? System.nanoTime() : 0;
                 if(transform != null) {
                     GridEnvelope2D ge = new GridEnvelope2D(screenSize);
                     ReferencedEnvelope re = new ReferencedEnvelope(mapArea, destinationCrs);
@@ -1987,6 +2317,10 @@ public final class StreamingRenderer implements GTRenderer {
                     checkAttributeExistence(featureSource.getSchema(), query);
                     rawFeatures = featureSource.getFeatures(query);
                 }
+                if(metrics != null) {
+                    uniform.get(0).layerMetrics.addTime(RenderingMetrics.Phase.QUERY, 
+                            System.nanoTime() - queryStart);
+                }
                 features = prepFeatureCollection(rawFeatures, sourceCrs);          
 
                 // HACK HACK HACK
@@ -2021,6 +2355,8 @@ public final class StreamingRenderer implements GTRenderer {
             lfts = createLiteFeatureTypeStyles( 
                     style.featureTypeStyles(), source.describe(), graphics );
             applyUnitRescale(lfts);
+            compileRules(lfts);
+            prepareMetrics(lfts, currLayer, layerId);
             
             if (lfts.isEmpty()) return; // nothing to do
 
@@ -2328,6 +2664,41 @@ public final class StreamingRenderer implements GTRenderer {
         }
     }
     
+    /**
+     * Compiles the rules of each {@link LiteFeatureTypeStyle} into an attribute index, 
+     * if enabled. See {@link #RULE_INDEXING_KEY} 
+     * @param lfts
+     */
+    void compileRules(final ArrayList<LiteFeatureTypeStyle> lfts) {
+        if(!isRuleIndexingEnabled()) {
+            return;
+        }
+        for(LiteFeatureTypeStyle fts : lfts) {
+            fts.compileRules();
+        }
+    }
+    
+    /**
+     * Associates the layer and rule metrics to each {@link LiteFeatureTypeStyle}, if 
+     * metrics collection is enabled
+     */
+    void prepareMetrics(final ArrayList<LiteFeatureTypeStyle> lfts, MapLayer layer, String layerId) {
+        if(metrics == null) {
+            return;
+        }
+        RenderingMetrics.LayerMetrics layerMetrics = metrics.getLayer(layerId, layer.getTitle());
+        for(LiteFeatureTypeStyle fts : lfts) {
+            fts.layerMetrics = layerMetrics;
+            fts.ruleMetrics = new IdentityHashMap<Rule, RenderingMetrics.Counters>();
+            for(Rule r : fts.ruleList) {
+                fts.ruleMetrics.put(r, layerMetrics.getRule(r));
+            }
+            for(Rule r : fts.elseRules) {
+                fts.ruleMetrics.put(r, layerMetrics.getRule(r));
+            }
+        }
+    }
+    
     /**
      * Reprojects the spatial filters in each {@link LiteFeatureTypeStyle} so that they match
      * the feature source native coordinate system
@@ -2484,8 +2855,18 @@ public final class StreamingRenderer implements GTRenderer {
         final LiteFeatureTypeStyle[] fts_array = (LiteFeatureTypeStyle[]) lfts
         .toArray(new LiteFeatureTypeStyle[lfts.size()]);
 
+        final RenderingMetrics.LayerMetrics layerMetrics = fts_array.length > 0 ? 
+                fts_array[0].layerMetrics : null;
+
         // for each lite feature type style, scan the whole collection and draw
         for (LiteFeatureTypeStyle liteFeatureTypeStyle : fts_array) {
+            if (budget != null) {
+                if (budget.isLayerExhausted()) {
+                    return;
+                }
+                budget.startScan();
+            }
+            long queryStart = layerMetrics != null ? System.nanoTime() : 0;
             Iterator iterator = null;
             if (collection != null)
                 iterator = collection.iterator();
@@ -2497,19 +2878,27 @@ public final class StreamingRenderer implements GTRenderer {
 
             try {
                 boolean clone = isCloningRequired(currLayer, fts_array);
-                RenderableFeature rf = new RenderableFeature(currLayer, clone);
+                RenderableFeature rf = new RenderableFeature(currLayer, clone,
+                        isTransformed(fts_array));
                 // loop exit condition tested inside try catch
                 // make sure we test hasNext() outside of the try/cath that follows, as that
                 // one is there to make sure a single feature error does not ruin the rendering
                 // (best effort) whilst an exception in hasNext() + ignoring catch results in
                 // an infinite loop
-                while (iterator.hasNext() && !renderingStopRequested) {
+                while (iterator.hasNext() && !renderingStopRequested
+                        && (budget == null || budget.nextFeature())) {
                     try {
                         rf.setFeature(iterator.next());
+                        if (layerMetrics != null) {
+                            recordRead(layerMetrics, queryStart);
+                        }
                         process(rf, liteFeatureTypeStyle, scaleRange, at, destinationCrs, layerId);
                     } catch (Throwable tr) {
                         fireErrorEvent(tr);
                     }
+                    if (layerMetrics != null) {
+                        queryStart = System.nanoTime();
+                    }
                 }
             } finally {
                 if (collection instanceof FeatureCollection) {
@@ -2530,26 +2919,37 @@ public final class StreamingRenderer implements GTRenderer {
     private void drawOptimized(final Graphics2D graphics, MapLayer currLayer, AffineTransform at,
             CoordinateReferenceSystem destinationCrs, String layerId, Collection collection,
             FeatureCollection features, final NumberRange scaleRange, final List lfts) {
+        final LiteFeatureTypeStyle[] fts_array = (LiteFeatureTypeStyle[]) lfts
+        .toArray(new LiteFeatureTypeStyle[lfts.size()]);
+        final RenderingMetrics.LayerMetrics layerMetrics = fts_array.length > 0 ? 
+                fts_array[0].layerMetrics : null;
+        long queryStart = layerMetrics != null ? System.nanoTime() : 0;
+        if (budget != null) {
+            budget.startScan();
+        }
+
         Iterator iterator = null;
         if( collection != null ) iterator = collection.iterator();        
         if( features != null ) iterator = features.iterator();
 
         if( iterator == null ) return; // nothing to do
 
-        final LiteFeatureTypeStyle[] fts_array = (LiteFeatureTypeStyle[]) lfts
-        .toArray(new LiteFeatureTypeStyle[lfts.size()]);
-
         try {
             boolean clone = isCloningRequired(currLayer, fts_array);
-            RenderableFeature rf = new RenderableFeature(currLayer, clone);
+            RenderableFeature rf = new RenderableFeature(currLayer, clone,
+                    isTransformed(fts_array));
             // loop exit condition tested inside try catch
             // make sure we test hasNext() outside of the try/cath that follows, as that
             // one is there to make sure a single feature error does not ruin the rendering
             // (best effort) whilst an exception in hasNext() + ignoring catch results in
             // an infinite loop
-            while (iterator.hasNext() && !renderingStopRequested) { 
+            while (iterator.hasNext() && !renderingStopRequested 
+                    && (budget == null || budget.nextFeature())) { 
                 try {
                     rf.setFeature(iterator.next());
+                    if (layerMetrics != null) {
+                        recordRead(layerMetrics, queryStart);
+                    }
                     // draw the feature on the main graphics and on the eventual extra image buffers
                     for (LiteFeatureTypeStyle liteFeatureTypeStyle : fts_array) {
                         rf.setScreenMap(liteFeatureTypeStyle.screenMap);
@@ -2559,6 +2959,9 @@ public final class StreamingRenderer implements GTRenderer {
                 } catch (Throwable tr) {
                     fireErrorEvent(tr);
                 }
+                if (layerMetrics != null) {
+                    queryStart = System.nanoTime();
+                }
             }
             
             // submit the merge request
@@ -2575,6 +2978,19 @@ public final class StreamingRenderer implements GTRenderer {
         } 
     }
 
+    /**
+     * Tells if the features are the output of a rendering transformation, rather than the
+     * ones of the layer feature source
+     */
+    private boolean isTransformed(LiteFeatureTypeStyle[] lfts) {
+        for (LiteFeatureTypeStyle lft : lfts) {
+            if (lft.transformation != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Tells if geometry cloning is required or not
      */
@@ -2638,10 +3054,12 @@ public final class StreamingRenderer implements GTRenderer {
             throws Exception {
         boolean doElse = true;
         Rule[] elseRuleList = fts.elseRules;
-        Rule[] ruleList = fts.ruleList;
+        Rule[] ruleList = fts.getCandidateRules(rf.content);
         Rule r;
         Filter filter;
         Graphics2D graphics = fts.graphics;
+        final RenderingMetrics.LayerMetrics layerMetrics = fts.layerMetrics;
+        boolean painted = false;
         // applicable rules
         final int length = ruleList.length;
         for (int t = 0; t < length; t++) {
@@ -2650,7 +3068,8 @@ public final class StreamingRenderer implements GTRenderer {
 
             if (filter == null || filter.evaluate(rf.content)) {
                 doElse = false;
-                processSymbolizers(graphics, rf, r.symbolizers(), scaleRange, at, destinationCrs, layerId);
+                painted |= processSymbolizers(graphics, rf, r, scaleRange, at,
+                        destinationCrs, layerId, layerMetrics, fts.getRuleMetrics(r));
             }
         }
 
@@ -2659,11 +3078,27 @@ public final class StreamingRenderer implements GTRenderer {
             for (int tt = 0; tt < elseLength; tt++) {
                 r = elseRuleList[tt];
 
-                processSymbolizers(graphics, rf, r.symbolizers(), scaleRange,
-                        at, destinationCrs, layerId);
+                painted |= processSymbolizers(graphics, rf, r, scaleRange,
+                        at, destinationCrs, layerId, layerMetrics, fts.getRuleMetrics(r));
 
             }
         }
+        
+        if (layerMetrics != null && (!doElse || elseRuleList.length > 0)) {
+            if (painted) {
+                layerMetrics.featuresPainted.incrementAndGet();
+            } else {
+                layerMetrics.featuresCulled.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Records the time spent reading a feature and increments the read features count
+     */
+    private void recordRead(RenderingMetrics.Counters layerMetrics, long queryStart) {
+        layerMetrics.addTime(RenderingMetrics.Phase.QUERY, System.nanoTime() - queryStart);
+        layerMetrics.featuresRead.incrementAndGet();
     }
 
     /**
@@ -2676,24 +3111,34 @@ public final class StreamingRenderer implements GTRenderer {
      * @param graphics
      * @param drawMe
      *            The feature to be rendered
-     * @param symbolizers
-     *            An array of symbolizers which actually perform the rendering.
+     * @param rule
+     *            The rule whose symbolizers actually perform the rendering.
      * @param scaleRange
      *            The scale range we are working on... provided in order to make
      *            the style factory happy
      * @param shape
      * @param destinationCrs
      * @param layerId 
+     * @param layerMetrics the layer metrics, or null if not collecting metrics 
+     * @param ruleMetrics the rule metrics, or null if not collecting metrics
+     * @return true if at least one symbolizer resulted in something being painted or labelled
      * @throws TransformException
      * @throws FactoryException
      */
-    private void processSymbolizers(final Graphics2D graphics,
-            final RenderableFeature drawMe, final List<Symbolizer> symbolizers,
+    private boolean processSymbolizers(final Graphics2D graphics,
+            final RenderableFeature drawMe, final Rule rule,
             NumberRange scaleRange, AffineTransform at,
-            CoordinateReferenceSystem destinationCrs, String layerId)
+            CoordinateReferenceSystem destinationCrs, String layerId, 
+            RenderingMetrics.Counters layerMetrics, RenderingMetrics.Counters ruleMetrics)
             throws Exception {
+        boolean painted = false;
+        final boolean timed = layerMetrics != null && ruleMetrics != null;
+        long start = 0;
+        final int ruleId = displayList != null ? displayList.getRuleId(layerId, rule) : -1;
+        int symbolizerIndex = -1;
         
-        for (Symbolizer symbolizer : symbolizers) {
+        for (Symbolizer symbolizer : rule.symbolizers()) {
+            symbolizerIndex++;
 
             // /////////////////////////////////////////////////////////////////
             //
@@ -2716,7 +3161,13 @@ public final class StreamingRenderer implements GTRenderer {
                         final Object params = paramsPropertyName.evaluate(drawMe.content);
                         GridGeometry2D readGG = new GridGeometry2D(new GridEnvelope2D(screenSize), mapExtent);
                         AbstractGridCoverage2DReader reader = (AbstractGridCoverage2DReader) grid;
+                        if(timed) {
+                            start = System.nanoTime();
+                        }
                         coverage = readCoverage(reader, params, readGG);
+                        if(timed) {
+                            addTime(layerMetrics, ruleMetrics, RenderingMetrics.Phase.QUERY, start);
+                        }
                         disposeCoverage = true;
                     }
                 } catch (IllegalArgumentException e) {
@@ -2728,8 +3179,11 @@ public final class StreamingRenderer implements GTRenderer {
                 }
                 
                 if(coverage != null) {
-                    requests.put(new RenderRasterRequest(graphics, coverage, disposeCoverage,
-                            (RasterSymbolizer) symbolizer, destinationCrs, at));
+                    RenderRasterRequest request = new RenderRasterRequest(graphics, coverage,
+                            disposeCoverage, (RasterSymbolizer) symbolizer, destinationCrs, at);
+                    request.setMetrics(layerMetrics, ruleMetrics);
+                    requests.put(request);
+                    painted = true;
                 }
             } else {
 
@@ -2738,14 +3192,27 @@ public final class StreamingRenderer implements GTRenderer {
                 // FEATURE
                 //
                 // /////////////////////////////////////////////////////////////////
+                if(timed) {
+                    start = System.nanoTime();
+                }
                 LiteShape2 shape = drawMe.getShape(symbolizer, at);
+                if(timed) {
+                    addTime(layerMetrics, ruleMetrics, RenderingMetrics.Phase.TRANSFORM, start);
+                }
                 if(shape == null) {
                     continue;
                 }
                 
                 if (symbolizer instanceof TextSymbolizer && drawMe.content instanceof Feature) {
+                    if(timed) {
+                        start = System.nanoTime();
+                    }
                     labelCache.put(layerId, (TextSymbolizer) symbolizer, (Feature) drawMe.content,
                             shape, scaleRange);
+                    if(timed) {
+                        addTime(layerMetrics, ruleMetrics, RenderingMetrics.Phase.LABEL, start);
+                    }
+                    painted = true;
                 } else {
                     Style2D style = styleFactory.createStyle(drawMe.content,
                             symbolizer, scaleRange);
@@ -2755,11 +3222,23 @@ public final class StreamingRenderer implements GTRenderer {
                     double size = RendererUtilities.getStyle2DSize(style) + 10;
                     Envelope env = new Envelope(screenSize.getMinX(), screenSize.getMaxX(), screenSize.getMinY(), screenSize.getMaxY());
                     env.expandBy(size);
+                    if(timed) {
+                        start = System.nanoTime();
+                    }
                     final GeometryClipper clipper = new GeometryClipper(env);
                     Geometry g = clipper.clip(shape.getGeometry(), false);
+                    if(timed) {
+                        addTime(layerMetrics, ruleMetrics, RenderingMetrics.Phase.CLIP, start);
+                    }
                     //System.out.println(g);
                     if(g == null) 
                         continue;
+                    if(displayList != null) {
+                        // record instead of painting
+                        displayList.add(ruleId, symbolizerIndex, g);
+                        painted = true;
+                        continue;
+                    }
                     if(g != shape.getGeometry()) {
                         shape = new LiteShape2(g, null, null, false);
                     }
@@ -2769,12 +3248,33 @@ public final class StreamingRenderer implements GTRenderer {
                     if (symbolizer.hasOption("labelObstacle")) {
                         paintShapeRequest.setLabelObstacle(true);
                     }
+                    paintShapeRequest.setMetrics(layerMetrics, ruleMetrics);
                     requests.put(paintShapeRequest);
+                    painted = true;
                 }
 
             }
         }
         fireFeatureRenderedEvent(drawMe.content);
+        
+        if(ruleMetrics != null) {
+            if(painted) {
+                ruleMetrics.featuresPainted.incrementAndGet();
+            } else {
+                ruleMetrics.featuresCulled.incrementAndGet();
+            }
+        }
+        return painted;
+    }
+
+    /**
+     * Adds the time elapsed since start to both the layer and rule metrics
+     */
+    private static void addTime(RenderingMetrics.Counters layerMetrics, 
+            RenderingMetrics.Counters ruleMetrics, RenderingMetrics.Phase phase, long start) {
+        long elapsed = System.nanoTime() - start;
+        layerMetrics.addTime(phase, elapsed);
+        ruleMetrics.addTime(phase, elapsed);
     }
 
 
@@ -3132,13 +3632,20 @@ public final class StreamingRenderer implements GTRenderer {
         private List geometries = new ArrayList();
         private List shapes = new ArrayList();
         private boolean clone;
+        private boolean transformed;
         private IdentityHashMap decimators = new IdentityHashMap();
         private ScreenMap screenMap;
+        private int featureCount;
 
 
-        public RenderableFeature(MapLayer layer, boolean clone) {
+        /**
+         * @param transformed true if the features come out of a rendering transformation,
+         *        in which case they are not the layer ones and cannot be cached
+         */
+        public RenderableFeature(MapLayer layer, boolean clone, boolean transformed) {
             this.layer = layer;
             this.clone = clone;
+            this.transformed = transformed;
         }
 
         public void setScreenMap(ScreenMap screenMap) {
@@ -3147,6 +3654,7 @@ public final class StreamingRenderer implements GTRenderer {
 
         public void setFeature(Object feature) {
             this.content = feature;
+            featureCount++;
             geometries.clear();
             shapes.clear();
         }
@@ -3156,6 +3664,7 @@ public final class StreamingRenderer implements GTRenderer {
 
             if ( g == null )
                 return null;
+            final Geometry original = g;
             
             try {
                 // process screenmap if necessary (only do it once, 
@@ -3198,6 +3707,14 @@ public final class StreamingRenderer implements GTRenderer {
     
                     symbolizerAssociationHT.put(symbolizer, sa);
                 }
+                
+                // switch to the approximated transforms once the layer proved large enough
+                if (!sa.approximated && sa.crsxform != null
+                        && featureCount > APPROXIMATION_MIN_FEATURES) {
+                    sa.approximated = true;
+                    sa.xform = approximateTransform(sa.crs, sa.xform);
+                    sa.crsxform = approximateCRSTransform(sa.crs, sa.crsxform);
+                }
 
                 // some shapes may be too close to projection boundaries to
                 // get transformed, try to be lenient
@@ -3219,6 +3736,8 @@ public final class StreamingRenderer implements GTRenderer {
                     } else {
                         return getTransformedShape(RendererUtilities.getCentroid(g), sa);
                     }
+                } else if (g == original && isGeometryCacheable(symbolizer, sa)) {
+                    return getCachedShape(g, symbolizer, sa);
                 } else {
                     return getTransformedShape(g, sa);
                 }
@@ -3233,6 +3752,66 @@ public final class StreamingRenderer implements GTRenderer {
             }
         }
         
+        /**
+         * Returns true if the transformed geometry can be stored in and retrieved from the 
+         * {@link TransformedGeometryCache}. The cache contexts do not account for the 
+         * tolerance and domain of the approximated transforms, so the geometries they 
+         * transform are not cached
+         */
+        private boolean isGeometryCacheable(Symbolizer symbolizer, SymbolizerAssociation sa) {
+            return geometryCache != null
+                    && !transformed
+                    && projectionHandler == null
+                    && sa.xform != null
+                    && !(sa.crsxform instanceof ApproximateMathTransform)
+                    && layer.getFeatureSource() != null
+                    && content instanceof SimpleFeature
+                    && ((SimpleFeature) content).getID() != null
+                    && (symbolizer.getGeometry() == null || symbolizer.getGeometry() instanceof PropertyName);
+        }
+        
+        /**
+         * Same as {@link #getTransformedShape(Geometry, SymbolizerAssociation)}, but looks up
+         * the geometry reprojected and generalized in the rendering CRS in the 
+         * {@link TransformedGeometryCache} first, and stores it there if missing 
+         */
+        private LiteShape2 getCachedShape(Geometry originalGeom, Symbolizer symbolizer,
+                SymbolizerAssociation sa) throws TransformException, FactoryException {
+            int idx = getGeometryIndex(originalGeom);
+            if(idx != -1) {
+                return (LiteShape2) shapes.get(idx);
+            }
+            
+            if(sa.cacheContext == null) {
+                double resolution = 1 / XAffineTransform.getScale(worldToScreenTransform);
+                double generalization = inMemoryGeneralization ? generalizationDistance : 0;
+                sa.cacheContext = geometryCache.getContext(layer.getFeatureSource(), sa.crs, 
+                        destinationCrs, resolution, generalization);
+            }
+            String fid = ((SimpleFeature) content).getID();
+            String geometryName = symbolizer.getGeometry() == null ? "" : 
+                ((PropertyName) symbolizer.getGeometry()).getPropertyName();
+            Geometry projected = geometryCache.get(sa.cacheContext, fid, geometryName);
+            if(projected == null) {
+                // generalize and transform into the rendering CRS, on a copy since the
+                // cached geometry is going to be shared
+                projected = LiteCoordinateSequence.cloneGeometry(originalGeom);
+                Decimator d = getDecimator(sa.xform);
+                d.decimateTransformGeneralize(projected, sa.crsxform);
+                projected.geometryChanged();
+                geometryCache.put(sa.cacheContext, fid, geometryName, projected);
+            }
+            
+            // apply the affine transform turning the coordinates into pixels, cloning the 
+            // cached geometry
+            LiteShape2 shape = new LiteShape2(projected, sa.axform, NULL_DECIMATOR, false, true);
+            
+            // cache the result
+            geometries.add(originalGeom);
+            shapes.add(shape);
+            return shape;
+        }
+        
         private int getGeometryIndex(Geometry g) {
             for (int i = 0; i < geometries.size(); i++) {
                 if(geometries.get(i) == g) {
@@ -3328,7 +3907,28 @@ public final class StreamingRenderer implements GTRenderer {
      * @author aaime
      */
     abstract class RenderingRequest {
+        RenderingMetrics.Counters layerMetrics;
+        
+        RenderingMetrics.Counters ruleMetrics;
+        
         abstract void execute();
+        
+        /**
+         * Sets the metrics the painting time will be accounted to, if any
+         */
+        void setMetrics(RenderingMetrics.Counters layerMetrics, RenderingMetrics.Counters ruleMetrics) {
+            this.layerMetrics = layerMetrics;
+            this.ruleMetrics = ruleMetrics;
+        }
+        
+        /**
+         * Accounts the time elapsed since start as painting time
+         */
+        void recordPaintTime(long start) {
+            if(layerMetrics != null && ruleMetrics != null) {
+                addTime(layerMetrics, ruleMetrics, RenderingMetrics.Phase.PAINT, start);
+            }
+        }
     }
     
     /**
@@ -3364,11 +3964,13 @@ public final class StreamingRenderer implements GTRenderer {
                 ((DelayedBackbufferGraphic) graphic).init();
             }
             
+            long start = layerMetrics != null ? System.nanoTime() : 0;
             try {
                 painter.paint(graphic, shape, style, scale, labelObstacle);
             } catch(Throwable t) {
                 fireErrorEvent(t);
             }
+            recordPaintTime(start);
         }
     }
     
@@ -3451,9 +4053,11 @@ public final class StreamingRenderer implements GTRenderer {
                 final GridCoverageRenderer gcr = new GridCoverageRenderer(destinationCRS,
                         originalMapExtent, screenSize, worldToScreen, java2dHints);
 
+                long start = layerMetrics != null ? System.nanoTime() : 0;
                 try {
                     gcr.paint(graphics, coverage, symbolizer);
                 } finally {
+                    recordPaintTime(start);
                     // we need to try and dispose this coverage if was created on purpose for
                     // rendering
                     if (coverage != null && disposeCoverage) {
@@ -31,4 +31,7 @@ class SymbolizerAssociation
      public MathTransform2D  crsxform = null;
      public CoordinateReferenceSystem crs = null;
 	 public MathTransform2D axform;
+	 public TransformedGeometryCache.Context cacheContext;
+	 /** True once the transforms have been replaced by their approximations, if any */
+	 public boolean approximated;
 }
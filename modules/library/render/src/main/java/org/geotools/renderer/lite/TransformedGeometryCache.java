@@ -0,0 +1,450 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.data.FeatureEvent;
+import org.geotools.data.FeatureListener;
+import org.geotools.data.FeatureSource;
+import org.geotools.referencing.CRS;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A cache of feature geometries already generalized and transformed in the rendering CRS, that
+ * can be shared among renderers and reused across paints.
+ * <p>
+ * Interactive clients panning around a map, or tile servers rendering adjacent tiles, ask the
+ * renderer over and over to reproject and generalize the same features at the same scale. Setting
+ * an instance of this class in the {@link StreamingRenderer#TRANSFORMED_GEOMETRY_CACHE_KEY}
+ * renderer hint allows the renderer to skip the reprojection and generalization steps for the
+ * features it already processed, only the cheap affine transformation to the screen space is
+ * applied on each paint.
+ * <p>
+ * Geometries are keyed by feature source, feature id, geometry attribute, source and target CRS,
+ * resolution (target CRS units per pixel) and generalization distance, and evicted in least
+ * recently used order once the total number of cached coordinates goes beyond the configured
+ * limit. The cache registers itself as a {@link FeatureListener} on each feature source it sees,
+ * and drops the geometries of the modified features when notified of a change.
+ * <p>
+ * At most {@link #MAX_CONTEXTS} combinations of feature source, CRS, resolution and
+ * generalization are tracked, the least recently used one being dropped along with its
+ * geometries when a new one shows up. The ones left without geometries are dropped as well, and
+ * the listener is removed from a feature source once it has no combination left, so that the
+ * cache does not hold onto the feature sources it's not used for anymore.
+ * <p>
+ * Only features with a stable identifier are cached, and only when the advanced projection
+ * handling is disabled, since in that case the geometries are also cut to the rendering area.
+ *
+ * @source $URL$
+ */
+public class TransformedGeometryCache {
+
+    /**
+     * The default limit, roughly 16MB of coordinates
+     */
+    public static final long DEFAULT_MAX_COORDINATES = 1024 * 1024;
+
+    /**
+     * The max number of transformation contexts tracked at the same time
+     */
+    static final int MAX_CONTEXTS = 64;
+
+    final long maxCoordinates;
+
+    long coordinates;
+
+    long hits;
+
+    long misses;
+
+    /**
+     * The cached geometries, in access order
+     */
+    LinkedHashMap<Key, Geometry> geometries = new LinkedHashMap<Key, Geometry>(1024, 0.75f,
+            true);
+
+    /**
+     * The canonical contexts, so that keys can compare them by identity, least recently used
+     * first
+     */
+    List<Context> contexts = new ArrayList<Context>();
+
+    /**
+     * The contexts left without geometries, dropped on the next lookup or insertion (not right
+     * away, the feature source might be notifying its listeners)
+     */
+    List<Context> emptied = new ArrayList<Context>();
+
+    /**
+     * The feature sources we registered a listener against
+     */
+    Map<FeatureSource, FeatureListener> listeners = new IdentityHashMap<FeatureSource, FeatureListener>();
+
+    /**
+     * Builds a cache with the default size limit
+     */
+    public TransformedGeometryCache() {
+        this(DEFAULT_MAX_COORDINATES);
+    }
+
+    /**
+     * Builds a cache holding at most the specified number of coordinates
+     */
+    public TransformedGeometryCache(long maxCoordinates) {
+        if (maxCoordinates <= 0) {
+            throw new IllegalArgumentException("The max number of coordinates must be positive");
+        }
+        this.maxCoordinates = maxCoordinates;
+    }
+
+    /**
+     * The set of conditions a geometry has been transformed under. Looked up once per layer,
+     * and then shared among all the cache keys of the layer features.
+     */
+    static final class Context {
+        final FeatureSource source;
+
+        final CoordinateReferenceSystem sourceCRS;
+
+        final CoordinateReferenceSystem targetCRS;
+
+        final float resolution;
+
+        final float generalization;
+
+        /**
+         * The number of cached geometries transformed under this context
+         */
+        int entries;
+
+        /**
+         * Whether this context has been dropped from the cache
+         */
+        boolean removed;
+
+        Context(FeatureSource source, CoordinateReferenceSystem sourceCRS,
+                CoordinateReferenceSystem targetCRS, float resolution, float generalization) {
+            this.source = source;
+            this.sourceCRS = sourceCRS;
+            this.targetCRS = targetCRS;
+            this.resolution = resolution;
+            this.generalization = generalization;
+        }
+
+        boolean matches(FeatureSource source, CoordinateReferenceSystem sourceCRS,
+                CoordinateReferenceSystem targetCRS, float resolution, float generalization) {
+            return this.source == source && this.resolution == resolution
+                    && this.generalization == generalization
+                    && sameCRS(this.sourceCRS, sourceCRS) && sameCRS(this.targetCRS, targetCRS);
+        }
+
+        private boolean sameCRS(CoordinateReferenceSystem crs1, CoordinateReferenceSystem crs2) {
+            if (crs1 == crs2) {
+                return true;
+            } else if (crs1 == null || crs2 == null) {
+                return false;
+            }
+            return CRS.equalsIgnoreMetadata(crs1, crs2);
+        }
+    }
+
+    static final class Key {
+        final Context context;
+
+        final String fid;
+
+        final String geometryName;
+
+        final int hashCode;
+
+        Key(Context context, String fid, String geometryName) {
+            this.context = context;
+            this.fid = fid;
+            this.geometryName = geometryName;
+            this.hashCode = System.identityHashCode(context) * 31 * 31 + fid.hashCode() * 31
+                    + geometryName.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return context == other.context && fid.equals(other.fid)
+                    && geometryName.equals(other.geometryName);
+        }
+    }
+
+    /**
+     * Returns the context for the specified transformation conditions, registering a listener on
+     * the feature source if this is the first time it's seen
+     *
+     * @param source the feature source the geometries are coming from
+     * @param sourceCRS the geometries native CRS
+     * @param targetCRS the rendering CRS
+     * @param resolution the size of a pixel, in target CRS units
+     * @param generalization the generalization distance, in pixels, or 0 if the geometries
+     *        are not generalized
+     */
+    synchronized Context getContext(FeatureSource source, CoordinateReferenceSystem sourceCRS,
+            CoordinateReferenceSystem targetCRS, double resolution, double generalization) {
+        // the resolution is computed out of the map extent, which is subject to rounding
+        // errors when panning, reducing the precision makes those go away
+        float fr = (float) resolution;
+        float fg = (float) generalization;
+        pruneEmptied();
+        for (int i = contexts.size() - 1; i >= 0; i--) {
+            Context context = contexts.get(i);
+            if (context.matches(source, sourceCRS, targetCRS, fr, fg)) {
+                // move it to the most recently used end
+                contexts.remove(i);
+                contexts.add(context);
+                return context;
+            }
+        }
+
+        Context context = new Context(source, sourceCRS, targetCRS, fr, fg);
+        register(context);
+        return context;
+    }
+
+    /**
+     * Adds a context to the cache, dropping the least recently used ones if there are too many
+     */
+    private void register(Context context) {
+        context.removed = false;
+        contexts.add(context);
+        if (!listeners.containsKey(context.source)) {
+            FeatureListener listener = new InvalidatingListener(context.source);
+            context.source.addFeatureListener(listener);
+            listeners.put(context.source, listener);
+        }
+        while (contexts.size() > MAX_CONTEXTS) {
+            Context eldest = contexts.get(0);
+            Iterator<Map.Entry<Key, Geometry>> it = geometries.entrySet().iterator();
+            while (it.hasNext() && eldest.entries > 0) {
+                Map.Entry<Key, Geometry> entry = it.next();
+                if (entry.getKey().context == eldest) {
+                    coordinates -= entry.getValue().getNumPoints();
+                    eldest.entries--;
+                    it.remove();
+                }
+            }
+            remove(eldest);
+        }
+    }
+
+    /**
+     * Removes a context without geometries, and the listener of its feature source if no other
+     * context uses it
+     */
+    private void remove(Context context) {
+        contexts.remove(context);
+        context.removed = true;
+        for (Context other : contexts) {
+            if (other.source == context.source) {
+                return;
+            }
+        }
+        FeatureListener listener = listeners.remove(context.source);
+        if (listener != null) {
+            context.source.removeFeatureListener(listener);
+        }
+    }
+
+    /**
+     * Accounts for the removal of a cached geometry, scheduling its context for removal if it has
+     * no geometries left
+     */
+    private void evicted(Key key, Geometry geometry) {
+        coordinates -= geometry.getNumPoints();
+        if (--key.context.entries == 0) {
+            emptied.add(key.context);
+        }
+    }
+
+    /**
+     * Drops the contexts left without geometries
+     */
+    private void pruneEmptied() {
+        for (Context context : emptied) {
+            if (context.entries == 0 && !context.removed) {
+                remove(context);
+            }
+        }
+        emptied.clear();
+    }
+
+    /**
+     * Returns the cached geometry, or null if not found. The returned geometry is shared and must
+     * not be modified.
+     */
+    synchronized Geometry get(Context context, String fid, String geometryName) {
+        Geometry result = geometries.get(new Key(context, fid, geometryName));
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Caches a transformed geometry. The geometry must not be modified after being cached.
+     */
+    synchronized void put(Context context, String fid, String geometryName, Geometry geometry) {
+        int size = geometry.getNumPoints();
+        if (size > maxCoordinates) {
+            return;
+        }
+        if (context.removed) {
+            // dropped while the renderer was still using it
+            register(context);
+        }
+        Geometry old = geometries.put(new Key(context, fid, geometryName), geometry);
+        if (old != null) {
+            coordinates -= old.getNumPoints();
+        } else {
+            context.entries++;
+        }
+        coordinates += size;
+
+        // evict the least recently used entries
+        Iterator<Map.Entry<Key, Geometry>> it = geometries.entrySet().iterator();
+        while (coordinates > maxCoordinates && it.hasNext()) {
+            Map.Entry<Key, Geometry> entry = it.next();
+            it.remove();
+            evicted(entry.getKey(), entry.getValue());
+        }
+        pruneEmptied();
+    }
+
+    /**
+     * Removes the geometries of the specified feature source. If the feature ids are provided only
+     * their geometries are removed, otherwise all the geometries coming from the source are.
+     */
+    synchronized void invalidate(FeatureSource source, Set<String> fids) {
+        Iterator<Map.Entry<Key, Geometry>> it = geometries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Geometry> entry = it.next();
+            Key key = entry.getKey();
+            if (key.context.source == source && (fids == null || fids.contains(key.fid))) {
+                it.remove();
+                evicted(key, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Empties the cache and unregisters the feature source listeners
+     */
+    public synchronized void clear() {
+        geometries.clear();
+        for (Context context : contexts) {
+            context.entries = 0;
+            context.removed = true;
+        }
+        contexts.clear();
+        emptied.clear();
+        coordinates = 0;
+        for (Map.Entry<FeatureSource, FeatureListener> entry : listeners.entrySet()) {
+            entry.getKey().removeFeatureListener(entry.getValue());
+        }
+        listeners.clear();
+    }
+
+    /**
+     * The number of cached geometries
+     */
+    public synchronized int size() {
+        return geometries.size();
+    }
+
+    /**
+     * The number of coordinates held by the cached geometries
+     */
+    public synchronized long getCoordinates() {
+        return coordinates;
+    }
+
+    /**
+     * The number of successful lookups
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of failed lookups
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "TransformedGeometryCache[size=" + size() + ", coordinates=" + getCoordinates()
+                + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+
+    /**
+     * Drops the cached geometries of the features modified in the source
+     */
+    class InvalidatingListener implements FeatureListener {
+        FeatureSource source;
+
+        InvalidatingListener(FeatureSource source) {
+            this.source = source;
+        }
+
+        public void changed(FeatureEvent event) {
+            if (event.getType() == FeatureEvent.Type.ADDED) {
+                // new features, nothing cached about them
+                return;
+            }
+
+            Set<String> fids = null;
+            Filter filter = event.getFilter();
+            if (filter instanceof Id
+                    && (event.getType() == FeatureEvent.Type.CHANGED || event.getType() == FeatureEvent.Type.REMOVED)) {
+                fids = new HashSet<String>();
+                for (Object id : ((Id) filter).getIDs()) {
+                    fids.add(String.valueOf(id));
+                }
+            }
+            invalidate(source, fids);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.test.TestData;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class DisplayListTest {
+
+    static class Collector implements DisplayList.Handler {
+        List<Integer> ruleIds = new ArrayList<Integer>();
+
+        List<Geometry> geometries = new ArrayList<Geometry>();
+
+        public void geometry(int ruleId, int symbolizerIndex, Geometry geometry) {
+            ruleIds.add(ruleId);
+            geometries.add(geometry);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DisplayListBuilder builder = new DisplayListBuilder(4);
+        builder.start(new Rectangle(0, 0, 256, 256));
+        WKTReader reader = new WKTReader();
+        builder.add(0, 0, reader.read("POINT(10.25 20.5)"));
+        builder.add(0, 1, reader.read("LINESTRING(0 0, 100.1 50, 30 -5)"));
+        builder.add(1, 0, reader.read("POLYGON((0 0, 0 10, 10 10, 10 0, 0 0), "
+                + "(2 2, 4 2, 4 4, 2 4, 2 2))"));
+        builder.add(1, 0, reader.read("GEOMETRYCOLLECTION(POINT(1 1), LINESTRING(1 1, 2 2))"));
+
+        DisplayList dl = new DisplayList(builder.build().getBytes());
+        assertEquals(256, dl.getWidth());
+        assertEquals(256, dl.getHeight());
+        assertEquals(4, dl.getSubPixels());
+
+        Collector collector = new Collector();
+        dl.accept(collector, 1);
+        assertEquals(5, collector.geometries.size());
+        assertTrue(collector.geometries.get(0).equalsExact(reader.read("POINT(10.25 20.5)")));
+        // quantized at a quarter of pixel
+        assertTrue(collector.geometries.get(1).equalsExact(
+                reader.read("LINESTRING(0 0, 100 50, 30 -5)")));
+        Polygon polygon = (Polygon) collector.geometries.get(2);
+        assertEquals(1, polygon.getNumInteriorRing());
+        assertEquals(96, polygon.getArea(), 0d);
+        assertEquals(Integer.valueOf(1), collector.ruleIds.get(4));
+
+        // paint at twice the resolution
+        collector = new Collector();
+        dl.accept(collector, 2);
+        assertEquals(384, collector.geometries.get(2).getArea(), 0d);
+    }
+
+    @Test
+    public void testInvalidData() throws Exception {
+        try {
+            new DisplayList(new byte[] { 1, 2, 3, 4 });
+            fail("Should have failed, invalid magic");
+        } catch (IOException e) {
+            // fine
+        }
+    }
+
+    @Test
+    public void testRecordPaint() throws Exception {
+        File property = new File(TestData.getResource(this, "square.properties").toURI());
+        PropertyDataStore ds = new PropertyDataStore(property.getParentFile());
+        SimpleFeatureSource squareFS = ds.getFeatureSource("square");
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10,
+                DefaultGeographicCRS.WGS84);
+        Style style = RendererBaseTest.loadStyle(this, "fillSolidTwoRules.sld");
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(squareFS, style));
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        DisplayListBuilder builder = new DisplayListBuilder();
+        renderer.setDisplayListBuilder(builder);
+        RendererBaseTest.renderImage(renderer, bounds, null);
+
+        DisplayList dl = builder.build();
+        assertEquals(2, dl.getRules().size());
+        assertEquals("0", dl.getRules().get(0).getLayerId());
+        Collector collector = new Collector();
+        dl.accept(collector, 1);
+        assertEquals(2, collector.geometries.size());
+        assertTrue(collector.ruleIds.contains(0));
+        assertTrue(collector.ruleIds.contains(1));
+        Envelope area = new Envelope(0, dl.getWidth(), 0, dl.getHeight());
+        for (Geometry g : collector.geometries) {
+            assertTrue(g instanceof Polygon);
+            assertTrue(area.contains(g.getEnvelopeInternal()));
+        }
+    }
+}
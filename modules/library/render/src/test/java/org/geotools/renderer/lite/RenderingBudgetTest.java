@@ -0,0 +1,149 @@
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.lite.RenderingBudgetReport.LayerReport;
+import org.geotools.renderer.lite.RenderingBudgetReport.Status;
+import org.geotools.styling.Style;
+import org.geotools.test.TestData;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderingBudgetTest {
+
+    SimpleFeatureSource squareFS;
+
+    ReferencedEnvelope bounds;
+
+    Style style;
+
+    @Before
+    public void setUp() throws Exception {
+        File property = new File(TestData.getResource(this, "square.properties").toURI());
+        PropertyDataStore ds = new PropertyDataStore(property.getParentFile());
+        squareFS = ds.getFeatureSource("square");
+        bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+        style = RendererBaseTest.loadStyle(this, "fillSolidTwoRules.sld");
+    }
+
+    @Test
+    public void testNoBudget() {
+        assertNull(RenderingBudget.create(null));
+        assertNull(RenderingBudget.create(new HashMap()));
+        StreamingRenderer renderer = new StreamingRenderer();
+        assertNull(renderer.getBudgetReport());
+    }
+
+    @Test
+    public void testFeatureLimit() throws Exception {
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(squareFS, style));
+        mc.addLayer(new FeatureLayer(squareFS, style));
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.MAX_LAYER_FEATURES_KEY, 1);
+        renderer.setRendererHints(hints);
+        RendererBaseTest.renderImage(renderer, bounds, null);
+
+        RenderingBudgetReport report = renderer.getBudgetReport();
+        assertNotNull(report);
+        assertFalse(report.isComplete());
+        assertEquals(2, report.getLayers().size());
+        for (LayerReport layer : report.getLayers()) {
+            assertEquals(Status.FEATURE_LIMIT, layer.getStatus());
+            assertEquals(1, layer.getFeaturesRendered());
+        }
+    }
+
+    @Test
+    public void testFeatureLimitPerScan() throws Exception {
+        // two feature type styles painted in two separate scans, each gets its own feature limit
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(squareFS, RendererBaseTest.loadStyle(this, "fillSolidFTS.sld")));
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.MAX_LAYER_FEATURES_KEY, 1);
+        hints.put(StreamingRenderer.OPTIMIZE_FTS_RENDERING_KEY, Boolean.FALSE);
+        renderer.setRendererHints(hints);
+        RendererBaseTest.renderImage(renderer, bounds, null);
+
+        LayerReport layer = renderer.getBudgetReport().getLayers().get(0);
+        assertEquals(Status.FEATURE_LIMIT, layer.getStatus());
+        assertEquals(2, layer.getFeaturesRendered());
+    }
+
+    @Test
+    public void testScanReset() throws Exception {
+        RenderingBudget budget = new RenderingBudget(RenderingBudget.NO_LIMIT,
+                RenderingBudget.NO_LIMIT, 1);
+        assertTrue(budget.startLayer("0", "first", 1, 1));
+        budget.startScan();
+        assertTrue(budget.nextFeature());
+        assertFalse(budget.nextFeature());
+        assertFalse(budget.isLayerExhausted());
+        budget.startScan();
+        assertTrue(budget.nextFeature());
+        budget.endLayer();
+        assertEquals(Status.FEATURE_LIMIT, budget.getReport().getLayers().get(0).getStatus());
+        assertEquals(2, budget.getReport().getLayers().get(0).getFeaturesRendered());
+    }
+
+    @Test
+    public void testCompleteWithinBudget() throws Exception {
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(squareFS, style));
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.MAX_LAYER_FEATURES_KEY, 10);
+        hints.put(StreamingRenderer.MAX_RENDERING_TIME_KEY, 60000);
+        renderer.setRendererHints(hints);
+        RendererBaseTest.renderImage(renderer, bounds, null);
+
+        RenderingBudgetReport report = renderer.getBudgetReport();
+        assertTrue(report.isComplete());
+        assertEquals(2, report.getLayers().get(0).getFeaturesRendered());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        RenderingBudget budget = new RenderingBudget(1, RenderingBudget.NO_LIMIT,
+                RenderingBudget.NO_LIMIT);
+        Thread.sleep(10);
+        assertFalse(budget.startLayer("0", "first", 1, 2));
+        assertFalse(budget.startLayer("1", "second", 1, 1));
+        budget.endLayer();
+
+        RenderingBudgetReport report = budget.getReport();
+        assertEquals(2, report.getIncompleteLayers().size());
+        assertEquals(Status.SKIPPED, report.getLayers().get(0).getStatus());
+        assertEquals(Status.SKIPPED, report.getLayers().get(1).getStatus());
+    }
+
+    @Test
+    public void testLayerTimeSlice() throws Exception {
+        RenderingBudget budget = new RenderingBudget(RenderingBudget.NO_LIMIT, 1,
+                RenderingBudget.NO_LIMIT);
+        assertTrue(budget.startLayer("0", "first", 1, 1));
+        Thread.sleep(10);
+        assertFalse(budget.nextFeature());
+        assertTrue(budget.isLayerExhausted());
+        budget.endLayer();
+        assertEquals(Status.LAYER_TIMEOUT, budget.getReport().getLayers().get(0).getStatus());
+    }
+}
@@ -0,0 +1,74 @@
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.test.TestData;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderingMetricsTest {
+
+    SimpleFeatureSource squareFS;
+
+    ReferencedEnvelope bounds;
+
+    @Before
+    public void setUp() throws Exception {
+        File property = new File(TestData.getResource(this, "square.properties").toURI());
+        PropertyDataStore ds = new PropertyDataStore(property.getParentFile());
+        squareFS = ds.getFeatureSource("square");
+        bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        StreamingRenderer renderer = new StreamingRenderer();
+        assertNull(renderer.getMetrics());
+    }
+
+    @Test
+    public void testCollectMetrics() throws Exception {
+        Style style = RendererBaseTest.loadStyle(this, "fillSolidTwoRules.sld");
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(squareFS, style));
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        RenderingMetrics metrics = new RenderingMetrics();
+        renderer.setMetrics(metrics);
+        RendererBaseTest.renderImage(renderer, bounds, null);
+
+        List<RenderingMetrics.LayerMetrics> layers = metrics.getLayers();
+        assertEquals(1, layers.size());
+        RenderingMetrics.LayerMetrics layer = layers.get(0);
+        assertSame(layer, metrics.getLayer("0"));
+        assertEquals(2, layer.getFeaturesRead());
+        assertEquals(2, layer.getFeaturesPainted());
+        assertEquals(0, layer.getFeaturesCulled());
+        assertTrue(layer.getTime(RenderingMetrics.Phase.QUERY) > 0);
+        assertTrue(layer.getTime(RenderingMetrics.Phase.PAINT) > 0);
+
+        // one feature per rule
+        List<RenderingMetrics.Counters> rules = layer.getRules();
+        assertEquals(2, rules.size());
+        for (RenderingMetrics.Counters rule : rules) {
+            assertEquals(1, rule.getFeaturesPainted());
+        }
+
+        // reuse accumulates
+        RendererBaseTest.renderImage(renderer, bounds, null);
+        assertEquals(4, metrics.getLayer("0").getFeaturesRead());
+        metrics.reset();
+        assertTrue(metrics.getLayers().isEmpty());
+    }
+}
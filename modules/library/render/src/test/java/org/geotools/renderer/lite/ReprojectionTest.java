@@ -20,6 +20,8 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -33,6 +35,7 @@ import org.geotools.map.DefaultMapContext;
 import org.geotools.map.MapContext;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.operation.transform.ApproximateMathTransform;
 import org.geotools.renderer.RenderListener;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleBuilder;
@@ -127,4 +130,46 @@ public class ReprojectionTest extends TestCase {
         // projected but the renderer itself should not throw exceptions
         assertEquals(1, errors);
     }
+
+    public void testApproximateTransformWithProjectionHandling() throws Exception {
+        SimpleFeatureCollection fc = FeatureCollections.newCollection();
+        fc.add(createLine(-179, 22, -171, 38));
+        fc.add(createLine(-179, 38, -171, 22));
+        MapContext mapContext = new DefaultMapContext(DefaultGeographicCRS.WGS84);
+        mapContext.addLayer(fc, createLineStyle());
+
+        ReferencedEnvelope reWgs = new ReferencedEnvelope(new Envelope(-180, -170, 20, 40),
+                DefaultGeographicCRS.WGS84);
+        CoordinateReferenceSystem utm1N = CRS.decode("EPSG:32601");
+        ReferencedEnvelope reUtm = reWgs.transform(utm1N, true);
+
+        StreamingRenderer sr = new StreamingRenderer();
+        sr.setContext(mapContext);
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.ADVANCED_PROJECTION_HANDLING_KEY, Boolean.TRUE);
+        sr.setRendererHints(hints);
+        BufferedImage exact = new BufferedImage(200, 200, BufferedImage.TYPE_4BYTE_ABGR);
+        sr.paint((Graphics2D) exact.getGraphics(), new Rectangle(200, 200), reUtm);
+        assertTrue(sr.approximateCRSTransforms.isEmpty());
+
+        // the transformation into the rendering CRS is approximated as well
+        hints.put(StreamingRenderer.APPROXIMATE_TRANSFORM_TOLERANCE_KEY, 0.1);
+        sr.setRendererHints(hints);
+        BufferedImage approximate = new BufferedImage(200, 200, BufferedImage.TYPE_4BYTE_ABGR);
+        sr.paint((Graphics2D) approximate.getGraphics(), new Rectangle(200, 200), reUtm);
+        assertEquals(1, sr.approximateCRSTransforms.size());
+        assertTrue(sr.approximateCRSTransforms.values().iterator().next() 
+                instanceof ApproximateMathTransform);
+
+        // and stays within the tolerance, so the output is the same
+        int differences = 0;
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 200; x++) {
+                if (exact.getRGB(x, y) != approximate.getRGB(x, y)) {
+                    differences++;
+                }
+            }
+        }
+        assertTrue("Too many different pixels: " + differences, differences < 20);
+    }
 }
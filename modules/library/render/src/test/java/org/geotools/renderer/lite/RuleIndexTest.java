@@ -0,0 +1,146 @@
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.styling.Rule;
+import org.geotools.styling.StyleFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+public class RuleIndexTest {
+
+    FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    StyleFactory sf = CommonFactoryFinder.getStyleFactory(null);
+
+    SimpleFeatureType type;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.add("value", Double.class);
+        tb.add("name", String.class);
+        type = tb.buildFeatureType();
+    }
+
+    SimpleFeature feature(Object value, String name) {
+        return SimpleFeatureBuilder.build(type, new Object[] { value, name }, null);
+    }
+
+    Rule rule(Filter filter) {
+        Rule rule = sf.createRule();
+        rule.setFilter(filter);
+        return rule;
+    }
+
+    /**
+     * Classes in the usual "min <= value < max" form, as generated by the ColorBrewer tools
+     */
+    Rule[] classes(int count) {
+        Rule[] rules = new Rule[count];
+        for (int i = 0; i < count; i++) {
+            rules[i] = rule(ff.and(ff.greaterOrEqual(ff.property("value"), ff.literal(i * 10)),
+                    ff.less(ff.property("value"), ff.literal((i + 1) * 10))));
+        }
+        return rules;
+    }
+
+    @Test
+    public void testTooFewRules() {
+        assertNull(RuleIndex.build(classes(RuleIndex.MIN_RULES - 1)));
+    }
+
+    @Test
+    public void testRanges() {
+        Rule[] rules = classes(20);
+        RuleIndex index = RuleIndex.build(rules);
+        assertNotNull(index);
+
+        assertEquals(Arrays.asList(rules[5]), Arrays.asList(index.getRules(feature(55d, null))));
+        // on the boundary both ranges are returned, the filter evaluation will pick the right one
+        assertEquals(Arrays.asList(rules[4], rules[5]),
+                Arrays.asList(index.getRules(feature(50d, null))));
+        assertEquals(0, index.getRules(feature(-5d, null)).length);
+        assertEquals(0, index.getRules(feature(500d, null)).length);
+        // no value, no lookup
+        assertSame(rules, index.getRules(feature(null, null)));
+    }
+
+    @Test
+    public void testStringLiterals() {
+        Rule[] rules = new Rule[10];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = rule(ff.between(ff.property("value"), ff.literal(String.valueOf(i)),
+                    ff.literal(String.valueOf(i + 0.5))));
+        }
+        RuleIndex index = RuleIndex.build(rules);
+        assertNotNull(index);
+        assertEquals(Arrays.asList(rules[3]), Arrays.asList(index.getRules(feature(3.2, null))));
+        assertEquals(0, index.getRules(feature(3.7, null)).length);
+    }
+
+    @Test
+    public void testOverlappingRanges() {
+        Rule[] rules = classes(10);
+        rules[3] = rule(ff.between(ff.property("value"), ff.literal(0), ff.literal(100)));
+        assertNull(RuleIndex.build(rules));
+    }
+
+    @Test
+    public void testUnindexedRules() {
+        Rule[] rules = classes(10);
+        Rule other = rule(ff.equals(ff.property("name"), ff.literal("abc")));
+        Rule noFilter = sf.createRule();
+        Rule[] mixed = new Rule[12];
+        System.arraycopy(rules, 0, mixed, 1, 10);
+        mixed[0] = other;
+        mixed[11] = noFilter;
+
+        RuleIndex index = RuleIndex.build(mixed);
+        assertNotNull(index);
+        assertEquals(Arrays.asList(other, rules[2], noFilter),
+                Arrays.asList(index.getRules(feature(25d, null))));
+    }
+
+    @Test
+    public void testValues() {
+        Rule[] rules = new Rule[10];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = rule(ff.equals(ff.property("name"), ff.literal("name" + i)));
+        }
+        RuleIndex index = RuleIndex.build(rules);
+        assertNotNull(index);
+        assertEquals(Arrays.asList(rules[7]),
+                Arrays.asList(index.getRules(feature(null, "name7"))));
+        assertEquals(0, index.getRules(feature(null, "abc")).length);
+    }
+
+    @Test
+    public void testMixedKinds() {
+        Rule[] rules = classes(10);
+        rules[5] = rule(ff.equals(ff.property("value"), ff.literal("abc")));
+        assertNull(RuleIndex.build(rules));
+    }
+
+    @Test
+    public void testLiteFeatureTypeStyle() {
+        Rule[] rules = classes(10);
+        LiteFeatureTypeStyle lfts = new LiteFeatureTypeStyle(null, Arrays.asList(rules),
+                Arrays.asList(new Rule[0]), null);
+        SimpleFeature f = feature(35d, null);
+        assertSame(lfts.ruleList, lfts.getCandidateRules(f));
+
+        lfts.compileRules();
+        assertEquals(Arrays.asList(rules[3]), Arrays.asList(lfts.getCandidateRules(f)));
+    }
+}
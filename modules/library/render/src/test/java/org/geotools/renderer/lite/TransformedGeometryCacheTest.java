@@ -0,0 +1,180 @@
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.FeatureEvent;
+import org.geotools.data.FeatureListener;
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.FilterFactory;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class TransformedGeometryCacheTest {
+
+    SimpleFeatureSource squareFS;
+
+    ReferencedEnvelope bounds;
+
+    TransformedGeometryCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        File property = new File(TestData.getResource(this, "square.properties").toURI());
+        PropertyDataStore ds = new PropertyDataStore(property.getParentFile());
+        squareFS = ds.getFeatureSource("square");
+        bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+        cache = new TransformedGeometryCache();
+    }
+
+    @After
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Test
+    public void testReuseAcrossPaints() throws Exception {
+        Style style = RendererBaseTest.loadStyle(this, "fillSolidTwoRules.sld");
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(squareFS, style));
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.TRANSFORMED_GEOMETRY_CACHE_KEY, cache);
+        renderer.setRendererHints(hints);
+
+        RendererBaseTest.renderImage(renderer, bounds, null);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+
+        // same scale, same geometries
+        RendererBaseTest.renderImage(renderer, bounds, null);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHits());
+
+        // different scale, new transformed geometries
+        RendererBaseTest.renderImage(renderer, new ReferencedEnvelope(0, 20, 0, 20,
+                DefaultGeographicCRS.WGS84), null);
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void testRenderingTransformation() throws Exception {
+        // the buffered features are not the layer ones, only the plain line ones get cached
+        Style style = RendererBaseTest.loadStyle(this, "line_rendering_transform.sld");
+        MapContent mc = new MapContent();
+        mc.addLayer(new FeatureLayer(squareFS, style));
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.TRANSFORMED_GEOMETRY_CACHE_KEY, cache);
+        renderer.setRendererHints(hints);
+
+        RendererBaseTest.renderImage(renderer, bounds, null);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        cache = new TransformedGeometryCache(10);
+        TransformedGeometryCache.Context context = cache.getContext(squareFS,
+                DefaultGeographicCRS.WGS84, DefaultGeographicCRS.WGS84, 1, 0);
+        Geometry square = new WKTReader().read("POLYGON((0 0, 0 1, 1 1, 1 0, 0 0))");
+        cache.put(context, "f1", "", square);
+        cache.put(context, "f2", "", square);
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.getCoordinates());
+
+        // access f1, so that f2 becomes the least recently used
+        assertSame(square, cache.get(context, "f1", ""));
+        cache.put(context, "f3", "", square);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(context, "f1", ""));
+        assertNull(cache.get(context, "f2", ""));
+        assertNotNull(cache.get(context, "f3", ""));
+
+        // contexts are shared among equivalent conditions
+        assertSame(context, cache.getContext(squareFS, DefaultGeographicCRS.WGS84,
+                DefaultGeographicCRS.WGS84, 1, 0));
+        assertNotSame(context, cache.getContext(squareFS, DefaultGeographicCRS.WGS84,
+                DefaultGeographicCRS.WGS84, 2, 0));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        TransformedGeometryCache.Context context = cache.getContext(squareFS,
+                DefaultGeographicCRS.WGS84, DefaultGeographicCRS.WGS84, 1, 0);
+        Geometry square = new WKTReader().read("POLYGON((0 0, 0 1, 1 1, 1 0, 0 0))");
+        cache.put(context, "square.0", "", square);
+        cache.put(context, "square.1", "", square);
+
+        FeatureListener listener = cache.listeners.get(squareFS);
+        assertNotNull(listener);
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        listener.changed(new FeatureEvent(squareFS, FeatureEvent.Type.CHANGED, bounds, ff
+                .id(Collections.singleton(ff.featureId("square.0")))));
+        assertEquals(1, cache.size());
+        assertNull(cache.get(context, "square.0", ""));
+
+        // a commit drops everything coming from the source
+        listener.changed(new FeatureEvent(squareFS, FeatureEvent.Type.COMMIT, bounds, null));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getCoordinates());
+
+        // the context is left without geometries, the source is released on the next lookup
+        cache.getContext(new PropertyDataStore(new File(TestData.getResource(this,
+                "square.properties").toURI()).getParentFile()).getFeatureSource("square"),
+                DefaultGeographicCRS.WGS84, DefaultGeographicCRS.WGS84, 1, 0);
+        assertFalse(cache.listeners.containsKey(squareFS));
+        assertFalse(cache.contexts.contains(context));
+
+        // but comes back if the renderer still uses the context
+        cache.put(context, "square.0", "", square);
+        assertTrue(cache.listeners.containsKey(squareFS));
+        assertSame(square, cache.get(context, "square.0", ""));
+    }
+
+    @Test
+    public void testContextLimit() throws Exception {
+        Geometry square = new WKTReader().read("POLYGON((0 0, 0 1, 1 1, 1 0, 0 0))");
+        TransformedGeometryCache.Context first = cache.getContext(squareFS,
+                DefaultGeographicCRS.WGS84, DefaultGeographicCRS.WGS84, 1, 0);
+        cache.put(first, "square.0", "", square);
+        for (int i = 0; i < TransformedGeometryCache.MAX_CONTEXTS; i++) {
+            TransformedGeometryCache.Context context = cache.getContext(squareFS,
+                    DefaultGeographicCRS.WGS84, DefaultGeographicCRS.WGS84, i + 2, 0);
+            cache.put(context, "square.0", "", square);
+        }
+
+        // the least recently used context went away with its geometries
+        assertEquals(TransformedGeometryCache.MAX_CONTEXTS, cache.contexts.size());
+        assertEquals(TransformedGeometryCache.MAX_CONTEXTS, cache.size());
+        assertFalse(cache.contexts.contains(first));
+        assertNull(cache.get(first, "square.0", ""));
+        assertEquals(1, cache.listeners.size());
+
+        // clearing releases the source
+        cache.clear();
+        assertTrue(cache.listeners.isEmpty());
+    }
+}
@@ -24,6 +24,7 @@ import it.geosolutions.imageio.utilities.ImageIOUtilities;
 import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
+import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.renderable.ParameterBlock;
 import java.io.File;
@@ -37,6 +38,7 @@ import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -50,7 +52,6 @@ import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.measure.unit.Unit;
 import javax.media.jai.JAI;
-import javax.media.jai.RenderedOp;
 
 import org.geotools.coverage.Category;
 import org.geotools.coverage.GridSampleDimension;
@@ -109,6 +110,9 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 	/** No data value for this dataset. */
 	private double inNoData = Double.NaN;
 
+	/** Parser of the cells, for the uncompressed files. */
+	private AsciiGridParser parser;
+
 	/**
 	 * Creates a new instance of an ArcGridReader basing the decision on whether
 	 * the file is compressed or not. I assume nothing about file extension.
@@ -201,6 +205,14 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 
 			// release the stream if we can.
 			finalStreamPreparation();
+
+			// /////////////////////////////////////////////////////////////////////
+			//
+			// Native parser for the uncompressed files
+			//
+			// /////////////////////////////////////////////////////////////////////
+			if (source instanceof File && !gzipped)
+				parser = createParser((File) source);
 		} catch (IOException e) {
 			if (LOGGER.isLoggable(Level.SEVERE))
 				LOGGER.log(Level.SEVERE, e.getLocalizedMessage(), e);
@@ -213,6 +225,45 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 
 	}
 
+	/**
+	 * Creates a parser reading the cells of the provided file without going
+	 * through the imageio-ext reader.
+	 * 
+	 * @param file
+	 *            the uncompressed grid file.
+	 * @return the parser, or <code>null</code> if the file cannot be mapped or
+	 *         does not have the expected size.
+	 */
+	private AsciiGridParser createParser(final File file) {
+		try {
+			final Object executor = this.hints.get(Hints.EXECUTOR_SERVICE);
+			final AsciiGridParser gridParser = new AsciiGridParser(file,
+					executor instanceof ExecutorService ? (ExecutorService) executor : null);
+			if (gridParser.getWidth() == originalGridRange.getSpan(0)
+					&& gridParser.getHeight() == originalGridRange.getSpan(1))
+				return gridParser;
+			if (LOGGER.isLoggable(Level.FINE))
+				LOGGER.fine("Unexpected grid size, falling back on the image reader");
+		} catch (IOException e) {
+			if (LOGGER.isLoggable(Level.FINE))
+				LOGGER.log(Level.FINE, "Unable to map the grid, falling back on the image reader", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Unmaps the grid file read by the native parser, if any, then closes the
+	 * stream.
+	 */
+	@Override
+	public void dispose() {
+		if (parser != null) {
+			parser.close();
+			parser = null;
+		}
+		super.dispose();
+	}
+
 	/**
 	 * Close the {@link InStream} {@link ImageInputStream} if we open it up on
 	 * purpose to read header info for this {@link AbstractGridCoverage2DReader}.
@@ -474,41 +525,48 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 		// image and metadata
 		//
 		// //
-		final ParameterBlock pbjImageRead = new ParameterBlock();
-		// prepare input to handle possible parallelism between different
-		// readers
-		if (source instanceof File) {
-			if (!gzipped){
-			    if(inStreamSPI!=null)
-			        pbjImageRead.add(inStreamSPI.createInputStreamInstance(source, ImageIO.getUseCache(), ImageIO.getCacheDirectory()    ));
-			    else
-			        pbjImageRead.add(ImageIO.createImageInputStream(source));
-			}
-			else
-				pbjImageRead.add(ImageIO
-						.createImageInputStream(new GZIPInputStream(
-								new FileInputStream((File) source))));
-		} else if (source instanceof ImageInputStream
-				|| source instanceof InputStream)
-			pbjImageRead.add(inStream);
-		else if (source instanceof URL) {
-			if (gzipped)
-				ImageIO.createImageInputStream(new GZIPInputStream(
-						((URL) source).openConnection().getInputStream()));
-			else
-				pbjImageRead.add(ImageIO.createImageInputStream(((URL) source)
-						.openConnection().getInputStream()));
+		final RenderedImage asciiCoverage;
+		if (parser != null) {
+			// tiles parsed on demand
+			asciiCoverage = new AsciiGridImage(parser, readP.getSourceXSubsampling(),
+					readP.getSourceYSubsampling(), hints);
+		} else {
+			final ParameterBlock pbjImageRead = new ParameterBlock();
+			// prepare input to handle possible parallelism between different
+			// readers
+			if (source instanceof File) {
+				if (!gzipped){
+				    if(inStreamSPI!=null)
+				        pbjImageRead.add(inStreamSPI.createInputStreamInstance(source, ImageIO.getUseCache(), ImageIO.getCacheDirectory()    ));
+				    else
+				        pbjImageRead.add(ImageIO.createImageInputStream(source));
+				}
+				else
+					pbjImageRead.add(ImageIO
+							.createImageInputStream(new GZIPInputStream(
+									new FileInputStream((File) source))));
+			} else if (source instanceof ImageInputStream
+					|| source instanceof InputStream)
+				pbjImageRead.add(inStream);
+			else if (source instanceof URL) {
+				if (gzipped)
+					ImageIO.createImageInputStream(new GZIPInputStream(
+							((URL) source).openConnection().getInputStream()));
+				else
+					pbjImageRead.add(ImageIO.createImageInputStream(((URL) source)
+							.openConnection().getInputStream()));
 
+			}
+			pbjImageRead.add(imageChoice);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(null);
+			pbjImageRead.add(null);
+			pbjImageRead.add(readP);
+			pbjImageRead.add(readerSPI.createReaderInstance());
+			asciiCoverage = JAI.create("ImageRead", pbjImageRead,hints);
 		}
-		pbjImageRead.add(imageChoice);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(null);
-		pbjImageRead.add(null);
-		pbjImageRead.add(readP);
-		pbjImageRead.add(readerSPI.createReaderInstance());
-		final RenderedOp asciiCoverage = JAI.create("ImageRead", pbjImageRead,hints);
 
 		// //
 		//
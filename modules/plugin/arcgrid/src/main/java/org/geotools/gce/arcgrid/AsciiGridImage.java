@@ -0,0 +1,107 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.SourcelessOpImage;
+import javax.media.jai.util.ImagingException;
+
+/**
+ * An image whose tiles are parsed on demand from an ASCII grid by an {@link AsciiGridParser},
+ * so that only the tiles actually requested are parsed.
+ *
+ * @source $URL$
+ */
+final class AsciiGridImage extends SourcelessOpImage {
+
+    /** Size of the tiles, a multiple of {@link AsciiGridParser#INDEX_STEP}. */
+    static final int TILE_SIZE = 2 * AsciiGridParser.INDEX_STEP;
+
+    private final AsciiGridParser parser;
+
+    private final int xSubsampling;
+
+    private final int ySubsampling;
+
+    /**
+     * Creates an image of the whole grid.
+     *
+     * @param parser the parser of the grid.
+     * @param xSubsampling the column subsampling.
+     * @param ySubsampling the row subsampling.
+     * @param configuration the rendering hints, for the tile cache and scheduler.
+     */
+    AsciiGridImage(final AsciiGridParser parser, final int xSubsampling,
+            final int ySubsampling, final Map<?, ?> configuration) {
+        this(parser, xSubsampling, ySubsampling,
+                (parser.getWidth() + xSubsampling - 1) / xSubsampling,
+                (parser.getHeight() + ySubsampling - 1) / ySubsampling, configuration);
+    }
+
+    private AsciiGridImage(final AsciiGridParser parser, final int xSubsampling,
+            final int ySubsampling, final int width, final int height,
+            final Map<?, ?> configuration) {
+        super(layout(width, height), configuration, sampleModel(width, height), 0, 0, width,
+                height);
+        this.parser = parser;
+        this.xSubsampling = xSubsampling;
+        this.ySubsampling = ySubsampling;
+    }
+
+    private static SampleModel sampleModel(final int width, final int height) {
+        final int tileWidth = Math.min(width, TILE_SIZE);
+        final int tileHeight = Math.min(height, TILE_SIZE);
+        return new PixelInterleavedSampleModel(DataBuffer.TYPE_DOUBLE, tileWidth, tileHeight, 1,
+                tileWidth, new int[] { 0 });
+    }
+
+    private static ImageLayout layout(final int width, final int height) {
+        final ColorModel cm = RasterFactory.createComponentColorModel(DataBuffer.TYPE_DOUBLE,
+                ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false, Transparency.OPAQUE);
+        final ImageLayout layout = new ImageLayout(0, 0, width, height);
+        layout.setTileGridXOffset(0).setTileGridYOffset(0);
+        layout.setTileWidth(Math.min(width, TILE_SIZE)).setTileHeight(Math.min(height, TILE_SIZE));
+        layout.setColorModel(cm);
+        return layout;
+    }
+
+    @Override
+    protected void computeRect(final PlanarImage[] sources, final WritableRaster dest,
+            final Rectangle destRect) {
+        final Rectangle region = new Rectangle(destRect.x * xSubsampling, destRect.y
+                * ySubsampling, (destRect.width - 1) * xSubsampling + 1, (destRect.height - 1)
+                * ySubsampling + 1);
+        try {
+            parser.read(region, xSubsampling, ySubsampling, dest, destRect.x, destRect.y);
+        } catch (IOException e) {
+            throw new ImagingException(e.getLocalizedMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,651 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.awt.Rectangle;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.geotools.data.DataSourceException;
+import org.geotools.resources.NIOUtilities;
+
+/**
+ * Parses the cells of an uncompressed ESRI or GRASS ASCII grid file without going through
+ * the imageio-ext stream tokenizer.
+ *
+ * <p>
+ * The file is memory mapped. On the first read the values are counted once, in parallel
+ * chunks, to build an index with the position of every {@link #INDEX_STEP}-th value of each
+ * row: a region is then read by jumping to its first row and column and parsing only the
+ * values it needs, straight into the {@link DataBuffer} of the destination raster. Large
+ * regions are parsed in parallel bands of rows.
+ *
+ * <p>
+ * The file stays mapped until {@link #close()}, the reads still running at that time keep it
+ * mapped until they complete.
+ *
+ * @source $URL$
+ */
+final class AsciiGridParser {
+
+    /** Number of columns between two positions of the row index. */
+    static final int INDEX_STEP = 256;
+
+    /** Size of the mapped segments, files larger than this are mapped in several pieces. */
+    private static final int SEGMENT_SHIFT = 30;
+
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /** Minimum number of bytes counted by each task while building the index. */
+    private static final long MIN_CHUNK = 4 * 1024 * 1024;
+
+    /** Minimum number of cells of a region for it to be parsed in parallel. */
+    private static final long MIN_PARALLEL_CELLS = 1024 * 1024;
+
+    /** Largest integer exactly represented by a double. */
+    private static final long MAX_EXACT = 1L << 53;
+
+    /** Powers of ten exactly represented by a double. */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /** Executor for the files not provided with one through the hints. */
+    private static ExecutorService defaultExecutor;
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            final Thread thread = new Thread(r, "AsciiGridParser");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return defaultExecutor;
+    }
+
+    private final MappedByteBuffer[] segments;
+
+    /** Length of the file. */
+    private final long length;
+
+    /** Position of the first value. */
+    private final long dataStart;
+
+    private final int width;
+
+    private final int height;
+
+    private final boolean grass;
+
+    /** Number of positions of the row index for each row. */
+    private final int stepsPerRow;
+
+    private final ExecutorService executor;
+
+    /** Position of every {@link #INDEX_STEP}-th value of each row, built on demand. */
+    private long[] index;
+
+    /** Guards {@link #users} and {@link #closed}, not this parser which guards the index. */
+    private final Object usersLock = new Object();
+
+    /** Number of reads and tasks using the mapped segments. */
+    private int users;
+
+    private boolean closed;
+
+    /**
+     * Maps the file and parses its header.
+     *
+     * @param file an uncompressed ESRI or GRASS ASCII grid.
+     * @param executor the executor running the parallel tasks, or {@code null} for a shared one.
+     * @throws IOException if the file cannot be mapped or its header is not valid.
+     */
+    AsciiGridParser(final File file, final ExecutorService executor) throws IOException {
+        this.executor = executor;
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mappings stay valid once the channel is closed
+            final FileChannel channel = raf.getChannel();
+            length = channel.size();
+            segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                final long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(length - start, 1L << SEGMENT_SHIFT));
+            }
+        } finally {
+            raf.close();
+        }
+
+        // header lines start with a keyword, followed by a colon for GRASS
+        int cols = -1, rows = -1;
+        boolean grassHeader = false;
+        long pos = 0;
+        while (true) {
+            pos = skipWhitespaces(pos);
+            if (pos >= length || !isHeaderLine(pos)) {
+                break;
+            }
+            final long lineEnd = lineEnd(pos);
+            final String line = decode(pos, lineEnd).trim();
+            final int colon = line.indexOf(':');
+            final String key, value;
+            if (colon > 0) {
+                grassHeader = true;
+                key = line.substring(0, colon).trim();
+                value = line.substring(colon + 1).trim();
+            } else {
+                final String[] tokens = line.split("\\s+");
+                key = tokens[0];
+                value = tokens.length > 1 ? tokens[1] : "";
+            }
+            final String name = key.toLowerCase(Locale.ENGLISH);
+            try {
+                if (name.equals("ncols") || name.equals("cols")) {
+                    cols = Integer.parseInt(value);
+                } else if (name.equals("nrows") || name.equals("rows")) {
+                    rows = Integer.parseInt(value);
+                }
+            } catch (NumberFormatException e) {
+                throw new DataSourceException("Invalid header line: " + line);
+            }
+            pos = lineEnd;
+        }
+        if (cols <= 0 || rows <= 0) {
+            throw new DataSourceException("The number of rows and columns is missing");
+        }
+        this.width = cols;
+        this.height = rows;
+        this.grass = grassHeader;
+        this.dataStart = pos;
+        this.stepsPerRow = (cols + INDEX_STEP - 1) / INDEX_STEP;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    boolean isGrass() {
+        return grass;
+    }
+
+    /**
+     * Reads a region of the grid, subsampled, into a raster.
+     *
+     * @param region the region to read, in grid coordinates.
+     * @param xSubsampling the column subsampling.
+     * @param ySubsampling the row subsampling.
+     * @param raster the destination, backed by a {@link ComponentSampleModel}.
+     * @param destX the column of the raster receiving the first value.
+     * @param destY the row of the raster receiving the first value.
+     * @throws IOException if the values cannot be parsed.
+     */
+    void read(final Rectangle region, final int xSubsampling, final int ySubsampling,
+            final WritableRaster raster, final int destX, final int destY) throws IOException {
+        if (region.x < 0 || region.y < 0 || region.x + region.width > width
+                || region.y + region.height > height) {
+            throw new IllegalArgumentException("Region outside of the grid: " + region);
+        }
+        acquire();
+        try {
+            doRead(region, xSubsampling, ySubsampling, raster, destX, destY);
+        } finally {
+            release();
+        }
+    }
+
+    private void doRead(final Rectangle region, final int xSubsampling, final int ySubsampling,
+            final WritableRaster raster, final int destX, final int destY) throws IOException {
+        final long[] rowIndex = getIndex();
+        final int columns = (region.width + xSubsampling - 1) / xSubsampling;
+        final int rows = (region.height + ySubsampling - 1) / ySubsampling;
+        if (columns <= 0 || rows <= 0) {
+            return;
+        }
+
+        final ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+        final DataBuffer buffer = raster.getDataBuffer();
+        final int pixelStride = sm.getPixelStride();
+        final int scanlineStride = sm.getScanlineStride();
+        final int firstOffset = buffer.getOffset() + sm.getBandOffsets()[0]
+                + (destY - raster.getSampleModelTranslateY()) * scanlineStride
+                + (destX - raster.getSampleModelTranslateX()) * pixelStride;
+
+        // bands of rows, parsed in parallel for large regions
+        final int threads = (long) rows * columns < MIN_PARALLEL_CELLS ? 1 : Math.min(rows,
+                Runtime.getRuntime().availableProcessors());
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int first = (int) ((long) rows * t / threads);
+            final int last = (int) ((long) rows * (t + 1) / threads);
+            tasks.add(new Callable<Object>() {
+                public Object call() throws IOException {
+                    final Scanner scanner = new Scanner();
+                    final int step = region.x / INDEX_STEP;
+                    final int skip = region.x % INDEX_STEP;
+                    for (int j = first; j < last; j++) {
+                        final int row = region.y + j * ySubsampling;
+                        scanner.pos = rowIndex[row * stepsPerRow + step];
+                        scanner.skip(skip);
+                        int offset = firstOffset + j * scanlineStride;
+                        for (int i = 0; i < columns; i++) {
+                            if (i > 0) {
+                                scanner.skip(xSubsampling - 1);
+                            }
+                            buffer.setElemDouble(offset, scanner.next());
+                            offset += pixelStride;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invoke(tasks);
+    }
+
+    /**
+     * Returns the row index, building it on the first call.
+     */
+    private synchronized long[] getIndex() throws IOException {
+        if (index != null) {
+            return index;
+        }
+
+        // chunks starting on a value
+        final int chunks = (int) Math.max(1, Math.min(
+                4 * Runtime.getRuntime().availableProcessors(), (length - dataStart) / MIN_CHUNK));
+        final long[] bounds = new long[chunks + 1];
+        bounds[0] = dataStart;
+        bounds[chunks] = length;
+        for (int i = 1; i < chunks; i++) {
+            long bound = Math.max(bounds[i - 1], dataStart + (length - dataStart) * i / chunks);
+            while (bound < length && !isWhitespace(byteAt(bound - 1))) {
+                bound++;
+            }
+            bounds[i] = bound;
+        }
+
+        // count the values of each chunk
+        final List<Callable<Object>> counts = new ArrayList<Callable<Object>>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final long start = bounds[i];
+            final long end = bounds[i + 1];
+            counts.add(new Callable<Object>() {
+                public Object call() {
+                    long count = 0;
+                    boolean inValue = false;
+                    for (long pos = start; pos < end; pos++) {
+                        final boolean whitespace = isWhitespace(byteAt(pos));
+                        if (!whitespace && !inValue) {
+                            count++;
+                        }
+                        inValue = !whitespace;
+                    }
+                    return count;
+                }
+            });
+        }
+        final List<Object> results = invoke(counts);
+        final long[] firstValues = new long[chunks];
+        long total = 0;
+        for (int i = 0; i < chunks; i++) {
+            firstValues[i] = total;
+            total += (Long) results.get(i);
+        }
+        if (total != (long) width * height) {
+            throw new DataSourceException("Expected " + (long) width * height + " values, found "
+                    + total);
+        }
+
+        // record the position of the indexed values
+        final long[] positions = new long[height * stepsPerRow];
+        final List<Callable<Object>> indexers = new ArrayList<Callable<Object>>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final long start = bounds[i];
+            final long end = bounds[i + 1];
+            final long firstValue = firstValues[i];
+            indexers.add(new Callable<Object>() {
+                public Object call() {
+                    int row = (int) (firstValue / width);
+                    int col = (int) (firstValue % width);
+                    boolean inValue = false;
+                    for (long pos = start; pos < end; pos++) {
+                        final boolean whitespace = isWhitespace(byteAt(pos));
+                        if (!whitespace && !inValue) {
+                            if (col % INDEX_STEP == 0) {
+                                positions[row * stepsPerRow + col / INDEX_STEP] = pos;
+                            }
+                            if (++col == width) {
+                                col = 0;
+                                row++;
+                            }
+                        }
+                        inValue = !whitespace;
+                    }
+                    return null;
+                }
+            });
+        }
+        invoke(indexers);
+        index = positions;
+        return index;
+    }
+
+    /**
+     * Runs the tasks, on the executor if there are more than one.
+     */
+    private List<Object> invoke(final List<Callable<Object>> tasks) throws IOException {
+        final List<Object> results = new ArrayList<Object>(tasks.size());
+        if (tasks.size() == 1) {
+            try {
+                results.add(tasks.get(0).call());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new DataSourceException(e);
+            }
+            return results;
+        }
+        final ExecutorService service = executor != null ? executor : getDefaultExecutor();
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>(tasks.size());
+        for (final Callable<Object> task : tasks) {
+            // a cancelled task may still run once this read returned
+            futures.add(service.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    acquire();
+                    try {
+                        return task.call();
+                    } finally {
+                        release();
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<Object> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new DataSourceException(e.getCause());
+        } finally {
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Unmaps the file once the reads in progress are completed. The reads started afterwards
+     * fail.
+     */
+    void close() {
+        synchronized (usersLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (users > 0) {
+                return;
+            }
+        }
+        unmap();
+    }
+
+    private void acquire() throws IOException {
+        synchronized (usersLock) {
+            if (closed) {
+                throw new DataSourceException("The grid has been closed");
+            }
+            users++;
+        }
+    }
+
+    private void release() {
+        synchronized (usersLock) {
+            if (--users > 0 || !closed) {
+                return;
+            }
+        }
+        unmap();
+    }
+
+    private void unmap() {
+        for (MappedByteBuffer segment : segments) {
+            NIOUtilities.clean(segment, true);
+        }
+    }
+
+    private byte byteAt(final long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b <= ' ' && b >= 0;
+    }
+
+    private long skipWhitespaces(long pos) {
+        while (pos < length && isWhitespace(byteAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private long lineEnd(long pos) {
+        while (pos < length && byteAt(pos) != '\n' && byteAt(pos) != '\r') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Tells whether the line starting at the specified position is part of the header, that
+     * is whether it starts with a keyword rather than a value.
+     */
+    private boolean isHeaderLine(final long pos) {
+        final byte b = byteAt(pos);
+        if (!Character.isLetter((char) b)) {
+            return false;
+        }
+        final String word = decode(pos, Math.min(pos + 3, length)).toLowerCase(Locale.ENGLISH);
+        return !word.startsWith("nan") && !word.startsWith("inf");
+    }
+
+    /**
+     * Returns the ASCII characters between the specified positions.
+     */
+    private String decode(final long start, final long end) {
+        final char[] chars = new char[(int) (end - start)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (byteAt(start + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parses the values from a position of the file. The common decimal notations are parsed
+     * without allocating any object, the others go through {@link Double#parseDouble}.
+     */
+    private final class Scanner {
+
+        /** Position of the next byte to read. */
+        long pos;
+
+        /**
+         * Skips the specified number of values.
+         */
+        void skip(int count) throws IOException {
+            while (count-- > 0) {
+                pos = skipWhitespaces(pos);
+                if (pos >= length) {
+                    throw new DataSourceException("Unexpected end of file");
+                }
+                while (pos < length && !isWhitespace(byteAt(pos))) {
+                    pos++;
+                }
+            }
+        }
+
+        /**
+         * Parses the next value.
+         */
+        double next() throws IOException {
+            pos = skipWhitespaces(pos);
+            if (pos >= length) {
+                throw new DataSourceException("Unexpected end of file");
+            }
+            final long start = pos;
+            byte b = byteAt(pos);
+            final boolean negative = b == '-';
+            if (negative || b == '+') {
+                pos++;
+            }
+
+            // up to 18 significant digits fit in a long
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean any = false;
+            boolean truncated = false;
+            while (pos < length && (b = byteAt(pos)) >= '0' && b <= '9') {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    exponent++;
+                    truncated |= b != '0';
+                }
+                pos++;
+            }
+            if (pos < length && byteAt(pos) == '.') {
+                pos++;
+                while (pos < length && (b = byteAt(pos)) >= '0' && b <= '9') {
+                    any = true;
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                        exponent--;
+                    } else {
+                        truncated |= b != '0';
+                    }
+                    pos++;
+                }
+            }
+            if (any && pos < length && ((b = byteAt(pos)) == 'e' || b == 'E')) {
+                pos++;
+                boolean negativeExponent = false;
+                if (pos < length && ((b = byteAt(pos)) == '-' || b == '+')) {
+                    negativeExponent = b == '-';
+                    pos++;
+                }
+                int value = 0;
+                boolean exponentDigits = false;
+                while (pos < length && (b = byteAt(pos)) >= '0' && b <= '9') {
+                    exponentDigits = true;
+                    value = Math.min(value * 10 + (b - '0'), 100000);
+                    pos++;
+                }
+                if (!exponentDigits) {
+                    return parseToken(start);
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            if (!any || truncated || (pos < length && !isWhitespace(byteAt(pos)))) {
+                return parseToken(start);
+            }
+
+            // exactly rounded when both the mantissa and the power of ten are exact
+            final double value;
+            if (mantissa == 0) {
+                value = 0;
+            } else if (mantissa <= MAX_EXACT && exponent >= -22 && exponent <= 22) {
+                value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa
+                        / POWERS_OF_TEN[-exponent];
+            } else {
+                return parseToken(start);
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parses the value starting at the specified position the slow way, handling the GRASS
+         * null cells and the special values.
+         */
+        private double parseToken(final long start) throws IOException {
+            long end = start;
+            while (end < length && !isWhitespace(byteAt(end))) {
+                end++;
+            }
+            pos = end;
+            final String token = decode(start, end);
+            if (token.equals("*")) {
+                return Double.NaN;
+            }
+            final String lower = token.toLowerCase(Locale.ENGLISH);
+            if (lower.equals("nan") || lower.equals("-nan")) {
+                return Double.NaN;
+            } else if (lower.equals("inf") || lower.equals("+inf") || lower.equals("infinity")) {
+                return Double.POSITIVE_INFINITY;
+            } else if (lower.equals("-inf") || lower.equals("-infinity")) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw new DataSourceException("Invalid value: " + token);
+            }
+        }
+    }
+}
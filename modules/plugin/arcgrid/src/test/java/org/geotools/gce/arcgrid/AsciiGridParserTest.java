@@ -0,0 +1,182 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * Testing {@link AsciiGridParser} class.
+ *
+ * @source $URL$
+ */
+public class AsciiGridParserTest extends TestCase {
+
+    private static final int WIDTH = 700;
+
+    private static final int HEIGHT = 300;
+
+    private static double value(final int x, final int y) {
+        return (x * 7 + y * 13) % 1000 / 8.0 - 50;
+    }
+
+    /**
+     * Writes a grid, with a header in the ESRI or GRASS flavour.
+     */
+    private static File writeGrid(final boolean grass) throws IOException {
+        final File file = File.createTempFile("grid", ".asc");
+        final PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            if (grass) {
+                writer.println("north: 300");
+                writer.println("south: 0");
+                writer.println("east: 700");
+                writer.println("west: 0");
+                writer.println("rows: " + HEIGHT);
+                writer.println("cols: " + WIDTH);
+            } else {
+                writer.println("ncols " + WIDTH);
+                writer.println("nrows " + HEIGHT);
+                writer.println("xllcorner 0");
+                writer.println("yllcorner 0");
+                writer.println("cellsize 1");
+                writer.println("NODATA_value -9999");
+            }
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    if (x == 3 && y == 5) {
+                        writer.print(grass ? "*" : "-9999");
+                    } else {
+                        writer.print(value(x, y));
+                    }
+                    // values of a row may span several lines
+                    writer.print(x % 100 == 99 ? '\n' : ' ');
+                }
+                writer.println();
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static WritableRaster createRaster(final int width, final int height) {
+        return Raster.createWritableRaster(new PixelInterleavedSampleModel(
+                DataBuffer.TYPE_DOUBLE, width, height, 1, width, new int[] { 0 }), null);
+    }
+
+    public void testReadRegion() throws Exception {
+        final File file = writeGrid(false);
+        try {
+            final AsciiGridParser parser = new AsciiGridParser(file, null);
+            assertEquals(WIDTH, parser.getWidth());
+            assertEquals(HEIGHT, parser.getHeight());
+            assertFalse(parser.isGrass());
+
+            // the whole grid
+            WritableRaster raster = createRaster(WIDTH, HEIGHT);
+            parser.read(new Rectangle(0, 0, WIDTH, HEIGHT), 1, 1, raster, 0, 0);
+            assertEquals(-9999, raster.getSampleDouble(3, 5, 0), 0);
+            for (int y = 0; y < HEIGHT; y += 7) {
+                for (int x = 0; x < WIDTH; x += 3) {
+                    if (x != 3 || y != 5) {
+                        assertEquals(value(x, y), raster.getSampleDouble(x, y, 0), 0);
+                    }
+                }
+            }
+
+            // a subsampled region not aligned on the row index
+            final Rectangle region = new Rectangle(300, 100, 250, 50);
+            raster = createRaster(84, 25);
+            parser.read(region, 3, 2, raster, 0, 0);
+            for (int y = 0; y < 25; y++) {
+                for (int x = 0; x < 84; x++) {
+                    assertEquals(value(300 + 3 * x, 100 + 2 * y), raster.getSampleDouble(x, y, 0), 0);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testGrass() throws Exception {
+        final File file = writeGrid(true);
+        try {
+            final AsciiGridParser parser = new AsciiGridParser(file, null);
+            assertTrue(parser.isGrass());
+            final WritableRaster raster = createRaster(10, 10);
+            parser.read(new Rectangle(0, 0, 10, 10), 1, 1, raster, 0, 0);
+            assertTrue(Double.isNaN(raster.getSampleDouble(3, 5, 0)));
+            assertEquals(value(4, 5), raster.getSampleDouble(4, 5, 0), 0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testClose() throws Exception {
+        final File file = writeGrid(false);
+        try {
+            final AsciiGridParser parser = new AsciiGridParser(file, null);
+            final WritableRaster raster = createRaster(10, 10);
+            parser.read(new Rectangle(0, 0, 10, 10), 1, 1, raster, 0, 0);
+            parser.close();
+            // closing twice is harmless, reading after closing fails
+            parser.close();
+            try {
+                parser.read(new Rectangle(0, 0, 10, 10), 1, 1, raster, 0, 0);
+                fail("The parser has been closed");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testMissingValues() throws Exception {
+        final File file = File.createTempFile("grid", ".asc");
+        try {
+            final PrintWriter writer = new PrintWriter(new FileWriter(file));
+            writer.println("ncols 3");
+            writer.println("nrows 2");
+            writer.println("xllcorner 0");
+            writer.println("yllcorner 0");
+            writer.println("cellsize 1");
+            writer.println("1 2 3");
+            writer.println("4 5");
+            writer.close();
+            final AsciiGridParser parser = new AsciiGridParser(file, null);
+            try {
+                parser.read(new Rectangle(0, 0, 3, 2), 1, 1, createRaster(3, 2), 0, 0);
+                fail("The grid is truncated");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
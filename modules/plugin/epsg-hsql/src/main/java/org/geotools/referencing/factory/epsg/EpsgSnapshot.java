@@ -0,0 +1,1257 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory.epsg;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import org.opengis.metadata.citation.Citation;
+import org.opengis.metadata.extent.Extent;
+import org.opengis.metadata.extent.GeographicBoundingBox;
+import org.opengis.metadata.extent.GeographicExtent;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.IdentifiedObject;
+import org.opengis.referencing.NoSuchAuthorityCodeException;
+import org.opengis.referencing.ReferenceIdentifier;
+import org.opengis.referencing.ReferenceSystem;
+import org.opengis.referencing.crs.CRSAuthorityFactory;
+import org.opengis.referencing.crs.CompoundCRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.EngineeringCRS;
+import org.opengis.referencing.crs.GeocentricCRS;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.crs.SingleCRS;
+import org.opengis.referencing.crs.VerticalCRS;
+import org.opengis.referencing.cs.CartesianCS;
+import org.opengis.referencing.cs.CoordinateSystem;
+import org.opengis.referencing.cs.CoordinateSystemAxis;
+import org.opengis.referencing.cs.EllipsoidalCS;
+import org.opengis.referencing.cs.SphericalCS;
+import org.opengis.referencing.cs.VerticalCS;
+import org.opengis.referencing.datum.Datum;
+import org.opengis.referencing.datum.DatumAuthorityFactory;
+import org.opengis.referencing.datum.DatumFactory;
+import org.opengis.referencing.datum.EngineeringDatum;
+import org.opengis.referencing.datum.GeodeticDatum;
+import org.opengis.referencing.datum.VerticalDatum;
+import org.opengis.referencing.operation.Conversion;
+import org.opengis.referencing.operation.CoordinateOperation;
+import org.opengis.util.GenericName;
+import org.opengis.util.InternationalString;
+
+import org.geotools.factory.Hints;
+import org.geotools.metadata.iso.citation.Citations;
+import org.geotools.metadata.iso.extent.ExtentImpl;
+import org.geotools.metadata.iso.extent.GeographicBoundingBoxImpl;
+import org.geotools.referencing.AbstractIdentifiedObject;
+import org.geotools.referencing.NamedIdentifier;
+import org.geotools.referencing.crs.DefaultCompoundCRS;
+import org.geotools.referencing.crs.DefaultEngineeringCRS;
+import org.geotools.referencing.crs.DefaultGeocentricCRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.referencing.crs.DefaultProjectedCRS;
+import org.geotools.referencing.crs.DefaultVerticalCRS;
+import org.geotools.referencing.cs.DefaultCartesianCS;
+import org.geotools.referencing.cs.DefaultEllipsoidalCS;
+import org.geotools.referencing.cs.DefaultSphericalCS;
+import org.geotools.referencing.cs.DefaultVerticalCS;
+import org.geotools.referencing.datum.BursaWolfParameters;
+import org.geotools.referencing.datum.DefaultGeodeticDatum;
+import org.geotools.referencing.factory.DirectAuthorityFactory;
+import org.geotools.referencing.factory.ReferencingFactoryContainer;
+import org.geotools.referencing.operation.DefiningConversion;
+import org.geotools.referencing.wkt.Formattable;
+import org.geotools.referencing.wkt.Parser;
+import org.geotools.referencing.wkt.Symbols;
+import org.geotools.referencing.wkt.UnformattableObjectException;
+import org.geotools.resources.i18n.ErrorKeys;
+import org.geotools.resources.i18n.Errors;
+import org.geotools.util.LocalName;
+import org.geotools.util.ScopedName;
+import org.geotools.util.SimpleInternationalString;
+
+
+/**
+ * A read only snapshot of the EPSG coordinate reference systems and datums, stored in a compact
+ * binary file which is memory mapped. Each CRS is stored as its single line <cite>Well Known
+ * Text</cite> with full {@code AUTHORITY} elements, so creating a CRS costs a WKT parsing instead
+ * of the dozens of SQL queries needed to assemble it from the EPSG database.
+ * <p>
+ * Since WKT can't express them, the metadata of each CRS and of its coordinate system and
+ * defining conversion (name, identifiers, aliases, scope, remarks and domain of validity) are
+ * stored next to its WKT. The datums are stored in a separate table with their metadata, anchor
+ * point, realization epoch and every Bursa-Wolf parameters known by the EPSG database, toward
+ * any target datum and not only WGS84. The base CRS of a projected CRS and the components of a
+ * compound CRS are resolved through the snapshot itself, so the created objects are the same as
+ * the ones created from the EPSG database.
+ * <p>
+ * The file layout is:
+ * <ul>
+ *   <li>a header made of the {@value #MAGIC} magic number, the format version, the
+ *       {@linkplain ThreadedHsqlEpsgFactory#VERSION EPSG-HSQL plugin version} (as a
+ *       modified UTF-8 string), the number of CRS and the number of datums;</li>
+ *   <li>the CRS index, sorted by code, each entry being the code, the offset of the WKT
+ *       from the beginning of the file, its length in bytes and the length of the metadata;</li>
+ *   <li>the datum index, sorted by code, each entry being the code, the code of a CRS using
+ *       the datum (from which the ellipsoid and prime meridian are parsed), the offset of the
+ *       datum record and its length;</li>
+ *   <li>the UTF-8 encoded WKT of every CRS, each followed by its metadata, then the datum
+ *       records.</li>
+ * </ul>
+ * Snapshots are created by {@link #write}, and are normally used through
+ * {@link EpsgSnapshotFactory}.
+ *
+ * @since 8.0
+ * @source $URL$
+ * @version $Id$
+ */
+public class EpsgSnapshot extends DirectAuthorityFactory
+        implements CRSAuthorityFactory, DatumAuthorityFactory
+{
+    /**
+     * The magic number at the beginning of snapshot files.
+     */
+    public static final int MAGIC = 0x47544553;
+
+    /**
+     * The version of the file format.
+     */
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * The number of bytes used by each entry in the indexes.
+     */
+    private static final int ENTRY_SIZE = 16;
+
+    /**
+     * The kinds of datum records.
+     */
+    private static final byte GEODETIC = 0, VERTICAL = 1, ENGINEERING = 2;
+
+    /**
+     * The encoding of the WKT.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The memory mapped file content. Never read relatively, since many threads
+     * may share it.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The EPSG-HSQL plugin version the snapshot was created from.
+     */
+    private final String version;
+
+    /**
+     * The number of CRS in the snapshot.
+     */
+    private final int count;
+
+    /**
+     * The position of the CRS index in the file.
+     */
+    private final int indexStart;
+
+    /**
+     * The number of datums in the snapshot.
+     */
+    private final int datumCount;
+
+    /**
+     * The position of the datum index in the file.
+     */
+    private final int datumIndexStart;
+
+    /**
+     * The CRS codes, created only when first needed.
+     */
+    private transient Set<String> codes;
+
+    /**
+     * Views of the codes for subtypes, created only when first needed.
+     */
+    private final Map<Class<? extends IdentifiedObject>, Set<String>> filteredCodes =
+            new HashMap<Class<? extends IdentifiedObject>, Set<String>>();
+
+    /**
+     * The datums created so far, by code. They are needed by every CRS using them
+     * and as targets of Bursa-Wolf parameters, so they are kept for the life of this
+     * snapshot.
+     */
+    private final Map<Integer,Datum> datums = new HashMap<Integer,Datum>();
+
+    /**
+     * The WKT parser, created only when first needed.
+     */
+    private transient Parser parser;
+
+    /**
+     * Opens a snapshot file.
+     *
+     * @param  factories The underlying factories used for objects creation.
+     * @param  file      The snapshot file.
+     * @throws IOException if the file can't be read or is not a snapshot.
+     */
+    public EpsgSnapshot(final ReferencingFactoryContainer factories, final File file)
+            throws IOException
+    {
+        super(factories, MINIMUM_PRIORITY + 10);
+        hints.put(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER, Boolean.FALSE);
+        hints.put(Hints.FORCE_STANDARD_AXIS_DIRECTIONS,   Boolean.FALSE);
+        hints.put(Hints.FORCE_STANDARD_AXIS_UNITS,        Boolean.FALSE);
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+        if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not an EPSG snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported EPSG snapshot format " + buffer.getInt(4));
+        }
+        final int length = buffer.getShort(8) & 0xFFFF;
+        final byte[] bytes = new byte[length];
+        final ByteBuffer header = buffer.duplicate();
+        header.position(10);
+        header.get(bytes);
+        version = new String(bytes, ENCODING);
+        count = header.getInt();
+        datumCount = header.getInt();
+        indexStart = header.position();
+        datumIndexStart = indexStart + count * ENTRY_SIZE;
+        if (count < 0 || datumCount < 0 ||
+                indexStart + ((long) count + datumCount) * ENTRY_SIZE > buffer.limit())
+        {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    /**
+     * Returns the version of the EPSG-HSQL plugin the snapshot was created from.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the EPSG authority.
+     */
+    public Citation getAuthority() {
+        return Citations.EPSG;
+    }
+
+    /**
+     * Returns the position of the specified code in the index starting at the
+     * given position, or -1 if not found.
+     */
+    private int search(final int start, final int size, final int code) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int candidate = buffer.getInt(start + mid * ENTRY_SIZE);
+            if (candidate < code) {
+                low = mid + 1;
+            } else if (candidate > code) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the bytes at the specified position of the file.
+     */
+    private byte[] getBytes(final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer b = buffer.duplicate();
+        b.position(offset);
+        b.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the WKT of the CRS at the specified position in the index.
+     */
+    private String getWKT(final int entry) {
+        final int position = indexStart + entry * ENTRY_SIZE;
+        try {
+            return new String(getBytes(buffer.getInt(position + 4), buffer.getInt(position + 8)),
+                    ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            // Should never happen, UTF-8 is always supported.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns the metadata of the CRS at the specified position in the index,
+     * as written by {@link #writeMetadata}.
+     */
+    private DataInputStream getMetadata(final int entry) {
+        final int position = indexStart + entry * ENTRY_SIZE;
+        final int offset = buffer.getInt(position + 4) + buffer.getInt(position + 8);
+        return new DataInputStream(new ByteArrayInputStream(
+                getBytes(offset, buffer.getInt(position + 12))));
+    }
+
+    /**
+     * Returns the record of the datum at the specified position in the index,
+     * as written by {@link #writeDatum}.
+     */
+    private DataInputStream getDatumRecord(final int entry) {
+        final int position = datumIndexStart + entry * ENTRY_SIZE;
+        return new DataInputStream(new ByteArrayInputStream(
+                getBytes(buffer.getInt(position + 8), buffer.getInt(position + 12))));
+    }
+
+    /**
+     * Returns the numerical value of the specified code, or -1 if it is not numerical.
+     */
+    private int parseCode(final String code) {
+        ensureNonNull("code", code);
+        try {
+            return Integer.parseInt(trimAuthority(code));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the position in the CRS index of the specified code.
+     *
+     * @throws NoSuchAuthorityCodeException if the specified {@code code} is not in the snapshot.
+     */
+    private int getEntry(final String code) throws NoSuchAuthorityCodeException {
+        final int entry = search(indexStart, count, parseCode(code));
+        if (entry < 0) {
+            throw noSuchAuthorityCode(CoordinateReferenceSystem.class, code);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the Well Know Text from a code.
+     *
+     * @param  code Value allocated by authority.
+     * @return The Well Know Text (WKT) for the specified code.
+     * @throws NoSuchAuthorityCodeException if the specified {@code code} is not in the snapshot.
+     */
+    public String getWKT(final String code) throws NoSuchAuthorityCodeException {
+        return getWKT(getEntry(code));
+    }
+
+    /**
+     * Returns the set of authority codes of the given type. Only coordinate reference
+     * systems and datums are stored in the snapshot, so this method returns an empty
+     * set for any other type.
+     *
+     * @param  type The spatial reference objects type (may be {@code IdentifiedObject.class}).
+     * @return The set of authority codes for spatial reference objects of the given type.
+     */
+    public synchronized Set<String> getAuthorityCodes(final Class<? extends IdentifiedObject> type) {
+        if (codes == null) {
+            codes = new Codes(indexStart, count);
+        }
+        if (type == null || (type.isAssignableFrom(CoordinateReferenceSystem.class) &&
+                             type.isAssignableFrom(Datum.class)))
+        {
+            return getFilteredCodes(IdentifiedObject.class);
+        }
+        if (type.isAssignableFrom(CoordinateReferenceSystem.class)) {
+            return codes;
+        }
+        if (CoordinateReferenceSystem.class.isAssignableFrom(type) ||
+                Datum.class.isAssignableFrom(type))
+        {
+            return getFilteredCodes(type);
+        }
+        return Collections.emptySet();
+    }
+
+    /**
+     * Returns the codes of the CRS or datums of the specified type.
+     */
+    private Set<String> getFilteredCodes(final Class<? extends IdentifiedObject> type) {
+        assert Thread.holdsLock(this);
+        Set<String> filtered = filteredCodes.get(type);
+        if (filtered == null) {
+            filtered = new LinkedHashSet<String>();
+            for (int i=0; i<count; i++) {
+                final String wkt = getWKT(i);
+                final int length = wkt.length();
+                int s=0; while (s<length && Character.isJavaIdentifierPart(wkt.charAt(s))) s++;
+                final Class<?> candidate = Parser.getClassOf(wkt.substring(0, s));
+                if (candidate != null && type.isAssignableFrom(candidate)) {
+                    filtered.add(String.valueOf(buffer.getInt(indexStart + i * ENTRY_SIZE)));
+                }
+            }
+            for (int i=0; i<datumCount; i++) {
+                final int position = datumIndexStart + i * ENTRY_SIZE;
+                final Class<?> candidate;
+                switch (buffer.get(buffer.getInt(position + 8))) {
+                    case GEODETIC: candidate = GeodeticDatum.class;    break;
+                    case VERTICAL: candidate = VerticalDatum.class;    break;
+                    default:       candidate = EngineeringDatum.class; break;
+                }
+                if (type.isAssignableFrom(candidate)) {
+                    filtered.add(String.valueOf(buffer.getInt(position)));
+                }
+            }
+            filtered = Collections.unmodifiableSet(filtered);
+            filteredCodes.put(type, filtered);
+        }
+        return filtered;
+    }
+
+    /**
+     * The set of all codes in an index, read on the fly.
+     */
+    private final class Codes extends AbstractSet<String> {
+        private final int start, size;
+
+        Codes(final int start, final int size) {
+            this.start = start;
+            this.size  = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(final Object code) {
+            if (code instanceof String) {
+                try {
+                    return search(start, size, Integer.parseInt(trimAuthority((String) code))) >= 0;
+                } catch (NumberFormatException e) {
+                    // Not an EPSG code.
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int next;
+
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                public String next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return String.valueOf(buffer.getInt(start + (next++) * ENTRY_SIZE));
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * Gets a description of the object corresponding to a code.
+     *
+     * @param  code Value allocated by authority.
+     * @return A description of the object, or {@code null} if none.
+     * @throws NoSuchAuthorityCodeException if the specified {@code code} was not found.
+     */
+    public InternationalString getDescriptionText(final String code)
+            throws NoSuchAuthorityCodeException
+    {
+        final int entry = search(datumIndexStart, datumCount, parseCode(code));
+        if (entry >= 0) {
+            final DataInputStream in = getDatumRecord(entry);
+            try {
+                in.readByte();
+                in.readBoolean();
+                return new SimpleInternationalString(in.readUTF());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        final String wkt = getWKT(code);
+        int start = wkt.indexOf('"');
+        if (start >= 0) {
+            final int end = wkt.indexOf('"', ++start);
+            if (end >= 0) {
+                return new SimpleInternationalString(wkt.substring(start, end).trim());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns an arbitrary object from a code. Only coordinate reference systems and
+     * datums are stored in the snapshot.
+     *
+     * @param  code Value allocated by authority.
+     * @throws NoSuchAuthorityCodeException if the specified {@code code} was not found.
+     * @throws FactoryException if the object creation failed for some other reason.
+     */
+    @Override
+    public IdentifiedObject createObject(final String code)
+            throws NoSuchAuthorityCodeException, FactoryException
+    {
+        if (search(datumIndexStart, datumCount, parseCode(code)) >= 0) {
+            return createDatum(code);
+        }
+        return createCoordinateReferenceSystem(code);
+    }
+
+    /**
+     * Returns a datum from a code.
+     *
+     * @param  code Value allocated by authority.
+     * @throws NoSuchAuthorityCodeException if the specified {@code code} was not found.
+     * @throws FactoryException if the object creation failed for some other reason.
+     */
+    @Override
+    public synchronized Datum createDatum(final String code)
+            throws NoSuchAuthorityCodeException, FactoryException
+    {
+        final int key = parseCode(code);
+        if (search(datumIndexStart, datumCount, key) < 0) {
+            throw noSuchAuthorityCode(Datum.class, code);
+        }
+        return createDatum(key, new HashSet<Integer>());
+    }
+
+    /**
+     * Returns a coordinate reference system from a code.
+     *
+     * @param  code Value allocated by authority.
+     * @throws NoSuchAuthorityCodeException if the specified {@code code} was not found.
+     * @throws FactoryException if the object creation failed for some other reason.
+     */
+    @Override
+    public synchronized CoordinateReferenceSystem createCoordinateReferenceSystem(final String code)
+            throws NoSuchAuthorityCodeException, FactoryException
+    {
+        return createCoordinateReferenceSystem(getEntry(code));
+    }
+
+    /**
+     * Parses a WKT from the snapshot.
+     */
+    private CoordinateReferenceSystem parse(final String wkt) throws FactoryException {
+        assert Thread.holdsLock(this);
+        if (parser == null) {
+            parser = new Parser(Symbols.DEFAULT, factories);
+        }
+        try {
+            return parser.parseCoordinateReferenceSystem(wkt);
+        } catch (ParseException exception) {
+            throw new FactoryException(exception);
+        }
+    }
+
+    /**
+     * Creates the CRS at the specified position in the index, with its metadata.
+     */
+    private CoordinateReferenceSystem createCoordinateReferenceSystem(final int entry)
+            throws FactoryException
+    {
+        assert Thread.holdsLock(this);
+        final CoordinateReferenceSystem crs = parse(getWKT(entry));
+        final DataInputStream in = getMetadata(entry);
+        try {
+            final Map<String,Object> properties = readProperties(in, crs.getName());
+            final Map<String,Object> csProperties = in.readBoolean() ? readProperties(in, null) : null;
+            final Map<String,Object> conversionProperties = in.readBoolean() ? readProperties(in, null) : null;
+            return copy(crs, properties, csProperties, conversionProperties);
+        } catch (IOException exception) {
+            throw new FactoryException(Errors.format(ErrorKeys.CANT_READ_$1,
+                    buffer.getInt(indexStart + entry * ENTRY_SIZE)), exception);
+        }
+    }
+
+    /**
+     * Creates a datum with its metadata and Bursa-Wolf parameters.
+     *
+     * @param code       The code of the datum, which must be in the snapshot.
+     * @param inProgress The codes of the datums being created, whose Bursa-Wolf parameters are
+     *                   being resolved. They are created again without their own Bursa-Wolf
+     *                   parameters, like the EPSG factory does, in order to avoid never ending
+     *                   loops.
+     */
+    private Datum createDatum(final int code, final Set<Integer> inProgress)
+            throws FactoryException
+    {
+        assert Thread.holdsLock(this);
+        Datum datum = datums.get(code);
+        if (datum != null) {
+            return datum;
+        }
+        final int entry = search(datumIndexStart, datumCount, code);
+        final int host = buffer.getInt(datumIndexStart + entry * ENTRY_SIZE + 4);
+        final CoordinateReferenceSystem crs = parse(getWKT(search(indexStart, count, host)));
+        final Datum parsed = (crs instanceof SingleCRS) ? ((SingleCRS) crs).getDatum() : null;
+        final DataInputStream in = getDatumRecord(entry);
+        final boolean complete;
+        try {
+            final byte kind = in.readByte();
+            final Map<String,Object> properties = readProperties(in, null);
+            final String anchor = readString(in);
+            if (anchor != null) {
+                properties.put(Datum.ANCHOR_POINT_KEY, anchor);
+            }
+            if (in.readBoolean()) {
+                properties.put(Datum.REALIZATION_EPOCH_KEY, new Date(in.readLong()));
+            }
+            final DatumFactory factory = factories.getDatumFactory();
+            switch (kind) {
+                case GEODETIC: {
+                    final GeodeticDatum template = (GeodeticDatum) parsed;
+                    final int n = in.readUnsignedShort();
+                    complete = inProgress.add(code);
+                    if (complete && n != 0) {
+                        final BursaWolfParameters[] parameters = new BursaWolfParameters[n];
+                        for (int i=0; i<n; i++) {
+                            final int target = in.readInt();
+                            final BursaWolfParameters p = new BursaWolfParameters(
+                                    (GeodeticDatum) createDatum(target, inProgress));
+                            p.dx  = in.readDouble();
+                            p.dy  = in.readDouble();
+                            p.dz  = in.readDouble();
+                            p.ex  = in.readDouble();
+                            p.ey  = in.readDouble();
+                            p.ez  = in.readDouble();
+                            p.ppm = in.readDouble();
+                            parameters[i] = p;
+                        }
+                        properties.put(DefaultGeodeticDatum.BURSA_WOLF_KEY, parameters);
+                    }
+                    if (complete) {
+                        inProgress.remove(code);
+                    }
+                    datum = factory.createGeodeticDatum(properties, template.getEllipsoid(),
+                            template.getPrimeMeridian());
+                    break;
+                }
+                case VERTICAL: {
+                    complete = true;
+                    datum = factory.createVerticalDatum(properties,
+                            ((VerticalDatum) parsed).getVerticalDatumType());
+                    break;
+                }
+                default: {
+                    complete = true;
+                    datum = factory.createEngineeringDatum(properties);
+                    break;
+                }
+            }
+        } catch (IOException exception) {
+            throw new FactoryException(Errors.format(ErrorKeys.CANT_READ_$1, code), exception);
+        } catch (ClassCastException exception) {
+            throw new FactoryException(Errors.format(ErrorKeys.CANT_READ_$1, code), exception);
+        }
+        if (complete) {
+            datums.put(code, datum);
+        }
+        return datum;
+    }
+
+    /**
+     * Returns the datum from the snapshot having the same code than the specified one,
+     * or the specified datum if there is none.
+     */
+    private Datum resolve(final Datum datum) throws FactoryException {
+        final int code = getCode(datum);
+        if (search(datumIndexStart, datumCount, code) >= 0) {
+            return createDatum(code, new HashSet<Integer>());
+        }
+        return datum;
+    }
+
+    /**
+     * Returns the CRS from the snapshot having the same code than the specified one, or
+     * a copy of the specified CRS using the datums from the snapshot if there is none.
+     */
+    private CoordinateReferenceSystem resolve(final CoordinateReferenceSystem crs)
+            throws FactoryException
+    {
+        final int entry = search(indexStart, count, getCode(crs));
+        if (entry >= 0) {
+            final CoordinateReferenceSystem candidate = createCoordinateReferenceSystem(entry);
+            if (candidate.getClass().equals(crs.getClass())) {
+                return candidate;
+            }
+        }
+        return copy(crs, new HashMap<String,Object>(AbstractIdentifiedObject.getProperties(crs)),
+                null, null);
+    }
+
+    /**
+     * Returns a copy of the specified CRS with the specified properties, and the datums
+     * and nested CRS from the snapshot. The CRS types not created from EPSG codes are
+     * returned unchanged.
+     *
+     * @param crs                  The CRS parsed from the WKT.
+     * @param properties           The properties of the CRS.
+     * @param csProperties         The properties of the coordinate system, or {@code null}.
+     * @param conversionProperties The properties of the conversion from base, or {@code null}.
+     */
+    private CoordinateReferenceSystem copy(final CoordinateReferenceSystem crs,
+            final Map<String,Object> properties, final Map<String,Object> csProperties,
+            final Map<String,Object> conversionProperties) throws FactoryException
+    {
+        if (crs instanceof ProjectedCRS) {
+            final ProjectedCRS projected = (ProjectedCRS) crs;
+            final Conversion conversion = projected.getConversionFromBase();
+            final Conversion definition = (conversionProperties == null) ? conversion :
+                    new DefiningConversion(conversionProperties, conversion.getMethod(),
+                            conversion.getParameterValues());
+            return new DefaultProjectedCRS(properties, definition,
+                    (GeographicCRS) resolve(projected.getBaseCRS()), conversion.getMathTransform(),
+                    (CartesianCS) copy(projected.getCoordinateSystem(), csProperties));
+        }
+        if (crs instanceof GeographicCRS) {
+            final GeographicCRS geographic = (GeographicCRS) crs;
+            return new DefaultGeographicCRS(properties, (GeodeticDatum) resolve(geographic.getDatum()),
+                    (EllipsoidalCS) copy(geographic.getCoordinateSystem(), csProperties));
+        }
+        if (crs instanceof GeocentricCRS) {
+            final GeocentricCRS geocentric = (GeocentricCRS) crs;
+            final GeodeticDatum datum = (GeodeticDatum) resolve(geocentric.getDatum());
+            final CoordinateSystem cs = copy(geocentric.getCoordinateSystem(), csProperties);
+            if (cs instanceof CartesianCS) {
+                return new DefaultGeocentricCRS(properties, datum, (CartesianCS) cs);
+            }
+            if (cs instanceof SphericalCS) {
+                return new DefaultGeocentricCRS(properties, datum, (SphericalCS) cs);
+            }
+        }
+        if (crs instanceof VerticalCRS) {
+            final VerticalCRS vertical = (VerticalCRS) crs;
+            return new DefaultVerticalCRS(properties, (VerticalDatum) resolve(vertical.getDatum()),
+                    (VerticalCS) copy(vertical.getCoordinateSystem(), csProperties));
+        }
+        if (crs instanceof CompoundCRS) {
+            final List<CoordinateReferenceSystem> components =
+                    ((CompoundCRS) crs).getCoordinateReferenceSystems();
+            final CoordinateReferenceSystem[] resolved = new CoordinateReferenceSystem[components.size()];
+            for (int i=0; i<resolved.length; i++) {
+                resolved[i] = resolve(components.get(i));
+            }
+            return new DefaultCompoundCRS(properties, resolved);
+        }
+        if (crs instanceof EngineeringCRS) {
+            final EngineeringCRS engineering = (EngineeringCRS) crs;
+            return new DefaultEngineeringCRS(properties,
+                    (EngineeringDatum) resolve(engineering.getDatum()),
+                    copy(engineering.getCoordinateSystem(), csProperties));
+        }
+        return crs;
+    }
+
+    /**
+     * Returns a copy of the specified coordinate system with the specified properties.
+     * The coordinate system types not created from EPSG codes are returned unchanged.
+     */
+    private static CoordinateSystem copy(final CoordinateSystem cs,
+            final Map<String,Object> properties)
+    {
+        if (properties == null) {
+            return cs;
+        }
+        final CoordinateSystemAxis[] axis = new CoordinateSystemAxis[cs.getDimension()];
+        for (int i=0; i<axis.length; i++) {
+            axis[i] = cs.getAxis(i);
+        }
+        if (cs instanceof CartesianCS) {
+            switch (axis.length) {
+                case 2: return new DefaultCartesianCS(properties, axis[0], axis[1]);
+                case 3: return new DefaultCartesianCS(properties, axis[0], axis[1], axis[2]);
+            }
+        } else if (cs instanceof EllipsoidalCS) {
+            switch (axis.length) {
+                case 2: return new DefaultEllipsoidalCS(properties, axis[0], axis[1]);
+                case 3: return new DefaultEllipsoidalCS(properties, axis[0], axis[1], axis[2]);
+            }
+        } else if (cs instanceof VerticalCS) {
+            if (axis.length == 1) {
+                return new DefaultVerticalCS(properties, axis[0]);
+            }
+        } else if (cs instanceof SphericalCS) {
+            if (axis.length == 3) {
+                return new DefaultSphericalCS(properties, axis[0], axis[1], axis[2]);
+            }
+        }
+        return cs;
+    }
+
+    /**
+     * Returns the EPSG code of the specified object, or -1 if none.
+     */
+    private static int getCode(final IdentifiedObject object) {
+        final ReferenceIdentifier identifier =
+                AbstractIdentifiedObject.getIdentifier(object, Citations.EPSG);
+        if (identifier != null) try {
+            return Integer.parseInt(identifier.getCode().trim());
+        } catch (NumberFormatException e) {
+            // Not a numerical code.
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the scope of the specified object, if it has one.
+     */
+    private static InternationalString getScope(final IdentifiedObject object) {
+        if (object instanceof ReferenceSystem) {
+            return ((ReferenceSystem) object).getScope();
+        }
+        if (object instanceof Datum) {
+            return ((Datum) object).getScope();
+        }
+        if (object instanceof CoordinateOperation) {
+            return ((CoordinateOperation) object).getScope();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the domain of validity of the specified object, if it has one.
+     */
+    private static Extent getDomainOfValidity(final IdentifiedObject object) {
+        if (object instanceof ReferenceSystem) {
+            return ((ReferenceSystem) object).getDomainOfValidity();
+        }
+        if (object instanceof Datum) {
+            return ((Datum) object).getDomainOfValidity();
+        }
+        if (object instanceof CoordinateOperation) {
+            return ((CoordinateOperation) object).getDomainOfValidity();
+        }
+        return null;
+    }
+
+    /**
+     * Writes the metadata of an object which are not part of its WKT: the identifiers,
+     * the aliases, the scope, the remarks and the domain of validity, preceded by the
+     * name if requested.
+     */
+    private static void writeProperties(final DataOutputStream out, final IdentifiedObject object,
+            final boolean withName) throws IOException
+    {
+        out.writeBoolean(withName);
+        if (withName) {
+            final ReferenceIdentifier name = object.getName();
+            final Citation authority = name.getAuthority();
+            out.writeUTF(name.getCode());
+            writeString(out, (authority != null) ? Citations.getIdentifier(authority) : null);
+        }
+        final Set<ReferenceIdentifier> identifiers = object.getIdentifiers();
+        out.writeShort(identifiers.size());
+        for (final ReferenceIdentifier identifier : identifiers) {
+            final Citation authority = identifier.getAuthority();
+            writeString(out, (authority != null) ? Citations.getIdentifier(authority) : null);
+            writeString(out, identifier.getCode());
+            writeString(out, identifier.getVersion());
+        }
+        final Collection<GenericName> alias = object.getAlias();
+        out.writeShort(alias.size());
+        for (final GenericName name : alias) {
+            final List<?> parsed = name.getParsedNames();
+            out.writeShort(parsed.size());
+            for (final Object part : parsed) {
+                out.writeUTF(part.toString());
+            }
+        }
+        writeString(out, toString(getScope(object)));
+        writeString(out, toString(object.getRemarks()));
+        final Extent extent = getDomainOfValidity(object);
+        out.writeBoolean(extent != null);
+        if (extent != null) {
+            writeString(out, toString(extent.getDescription()));
+            final List<GeographicBoundingBox> boxes = new ArrayList<GeographicBoundingBox>();
+            for (final GeographicExtent element : extent.getGeographicElements()) {
+                if (element instanceof GeographicBoundingBox) {
+                    boxes.add((GeographicBoundingBox) element);
+                }
+            }
+            out.writeShort(boxes.size());
+            for (final GeographicBoundingBox box : boxes) {
+                out.writeDouble(box.getWestBoundLongitude());
+                out.writeDouble(box.getEastBoundLongitude());
+                out.writeDouble(box.getSouthBoundLatitude());
+                out.writeDouble(box.getNorthBoundLatitude());
+            }
+        }
+    }
+
+    /**
+     * Reads the metadata written by {@link #writeProperties}, as the properties of an
+     * object to be given to its constructor. The scope and domain of validity keys are
+     * the same for reference systems, datums and coordinate operations.
+     *
+     * @param name The name of the object, or {@code null} for the one in the stream.
+     */
+    private static Map<String,Object> readProperties(final DataInputStream in, Object name)
+            throws IOException
+    {
+        final Map<String,Object> properties = new HashMap<String,Object>();
+        if (in.readBoolean()) {
+            final String code = in.readUTF();
+            final String authority = readString(in);
+            if (name == null) {
+                name = new NamedIdentifier(
+                        (authority != null) ? Citations.fromName(authority) : null, code);
+            }
+        }
+        properties.put(IdentifiedObject.NAME_KEY, name);
+        final ReferenceIdentifier[] identifiers = new ReferenceIdentifier[in.readUnsignedShort()];
+        for (int i=0; i<identifiers.length; i++) {
+            final String authority = readString(in);
+            final String code      = readString(in);
+            final String version   = readString(in);
+            identifiers[i] = new NamedIdentifier(
+                    (authority != null) ? Citations.fromName(authority) : null, code, version);
+        }
+        if (identifiers.length != 0) {
+            properties.put(IdentifiedObject.IDENTIFIERS_KEY, identifiers);
+        }
+        final GenericName[] alias = new GenericName[in.readUnsignedShort()];
+        for (int i=0; i<alias.length; i++) {
+            final int length = in.readUnsignedShort();
+            GenericName part = new LocalName(in.readUTF());
+            for (int j=1; j<length; j++) {
+                part = new ScopedName(part, in.readUTF());
+            }
+            alias[i] = part;
+        }
+        if (alias.length != 0) {
+            properties.put(IdentifiedObject.ALIAS_KEY, alias);
+        }
+        final String scope = readString(in);
+        if (scope != null) {
+            properties.put(ReferenceSystem.SCOPE_KEY, scope);
+        }
+        final String remarks = readString(in);
+        if (remarks != null) {
+            properties.put(IdentifiedObject.REMARKS_KEY, remarks);
+        }
+        if (in.readBoolean()) {
+            final ExtentImpl extent = new ExtentImpl();
+            final String description = readString(in);
+            if (description != null) {
+                extent.setDescription(new SimpleInternationalString(description));
+            }
+            final int n = in.readUnsignedShort();
+            final List<GeographicExtent> boxes = new ArrayList<GeographicExtent>(n);
+            for (int i=0; i<n; i++) {
+                final double west  = in.readDouble();
+                final double east  = in.readDouble();
+                final double south = in.readDouble();
+                final double north = in.readDouble();
+                boxes.add(new GeographicBoundingBoxImpl(west, east, south, north));
+            }
+            if (n != 0) {
+                extent.setGeographicElements(boxes);
+            }
+            properties.put(ReferenceSystem.DOMAIN_OF_VALIDITY_KEY, extent.unmodifiable());
+        }
+        return properties;
+    }
+
+    /**
+     * Writes the metadata of a CRS, of its coordinate system and of its conversion
+     * from base if it is a projected CRS.
+     */
+    private static byte[] writeMetadata(final CoordinateReferenceSystem crs) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        writeProperties(out, crs, false);
+        final boolean hasCS = !(crs instanceof CompoundCRS);
+        out.writeBoolean(hasCS);
+        if (hasCS) {
+            writeProperties(out, crs.getCoordinateSystem(), true);
+        }
+        final boolean hasConversion = (crs instanceof ProjectedCRS);
+        out.writeBoolean(hasConversion);
+        if (hasConversion) {
+            writeProperties(out, ((ProjectedCRS) crs).getConversionFromBase(), true);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the record of a datum: its kind, metadata, anchor point, realization epoch and
+     * Bursa-Wolf parameters. The parameters toward datums not in the snapshot are omitted.
+     */
+    private static byte[] writeDatum(final Datum datum, final Set<Integer> stored)
+            throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte((datum instanceof GeodeticDatum) ? GEODETIC :
+                      (datum instanceof VerticalDatum) ? VERTICAL : ENGINEERING);
+        writeProperties(out, datum, true);
+        writeString(out, toString(datum.getAnchorPoint()));
+        final Date epoch = datum.getRealizationEpoch();
+        out.writeBoolean(epoch != null);
+        if (epoch != null) {
+            out.writeLong(epoch.getTime());
+        }
+        if (datum instanceof GeodeticDatum) {
+            final List<BursaWolfParameters> parameters = new ArrayList<BursaWolfParameters>();
+            if (datum instanceof DefaultGeodeticDatum) {
+                for (final BursaWolfParameters p : ((DefaultGeodeticDatum) datum).getBursaWolfParameters()) {
+                    if (stored.contains(getCode(p.targetDatum))) {
+                        parameters.add(p);
+                    } else {
+                        LOGGER.log(Level.FINE, "Skipping the Bursa-Wolf parameters from "
+                                + datum.getName() + " to " + p.targetDatum.getName());
+                    }
+                }
+            }
+            out.writeShort(parameters.size());
+            for (final BursaWolfParameters p : parameters) {
+                out.writeInt(getCode(p.targetDatum));
+                out.writeDouble(p.dx);
+                out.writeDouble(p.dy);
+                out.writeDouble(p.dz);
+                out.writeDouble(p.ex);
+                out.writeDouble(p.ey);
+                out.writeDouble(p.ez);
+                out.writeDouble(p.ppm);
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Adds the datums of a CRS written in the snapshot, with the code of the first CRS
+     * using each of them. The target datums of the Bursa-Wolf parameters are added too,
+     * but without CRS.
+     */
+    private static void collectDatums(final CoordinateReferenceSystem crs, final int code,
+            final Map<Integer,Datum> datums, final Map<Integer,Integer> hosts)
+    {
+        if (crs instanceof CompoundCRS) {
+            for (final CoordinateReferenceSystem component :
+                    ((CompoundCRS) crs).getCoordinateReferenceSystems())
+            {
+                collectDatums(component, -1, datums, hosts);
+            }
+        } else if (crs instanceof SingleCRS) {
+            final Datum datum = ((SingleCRS) crs).getDatum();
+            final int key = getCode(datum);
+            if (key >= 0 && code >= 0 && !hosts.containsKey(key)) {
+                hosts.put(key, code);
+            }
+            collectDatum(datum, datums);
+        }
+    }
+
+    /**
+     * Adds a datum and the targets of its Bursa-Wolf parameters.
+     */
+    private static void collectDatum(final Datum datum, final Map<Integer,Datum> datums) {
+        final int key = getCode(datum);
+        if (key < 0 || datums.containsKey(key)) {
+            return;
+        }
+        datums.put(key, datum);
+        if (datum instanceof DefaultGeodeticDatum) {
+            for (final BursaWolfParameters p : ((DefaultGeodeticDatum) datum).getBursaWolfParameters()) {
+                collectDatum(p.targetDatum, datums);
+            }
+        }
+    }
+
+    private static String toString(final InternationalString text) {
+        return (text != null) ? text.toString() : null;
+    }
+
+    private static void writeString(final DataOutputStream out, final String text)
+            throws IOException
+    {
+        out.writeBoolean(text != null);
+        if (text != null) {
+            out.writeUTF(text);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Writes a snapshot of every coordinate reference system provided by the specified
+     * factory. The CRS that can't be created, or can't be formatted as WKT, are skipped
+     * and will be looked for in the EPSG database at run time. The snapshot is first
+     * written to a temporary file, then renamed, so readers never see a partial file.
+     *
+     * @param  factory The factory to take the CRS from, usually a {@link ThreadedHsqlEpsgFactory}.
+     * @param  file    The snapshot file to write.
+     * @return The number of CRS written.
+     * @throws FactoryException if the codes can't be obtained from the factory.
+     * @throws IOException if the file can't be written.
+     */
+    public static int write(final CRSAuthorityFactory factory, final File file)
+            throws FactoryException, IOException
+    {
+        return write(factory, factory.getAuthorityCodes(CoordinateReferenceSystem.class), file);
+    }
+
+    /**
+     * Writes a snapshot of the specified coordinate reference systems, and of the datums
+     * they use.
+     *
+     * @param  factory The factory to take the CRS from, usually a {@link ThreadedHsqlEpsgFactory}.
+     * @param  codes   The codes of the CRS to write.
+     * @param  file    The snapshot file to write.
+     * @return The number of CRS written.
+     * @throws IOException if the file can't be written.
+     *
+     * @see #write(CRSAuthorityFactory, File)
+     */
+    public static int write(final CRSAuthorityFactory factory, final Collection<String> codes,
+                            final File file) throws IOException
+    {
+        final SortedMap<Integer,byte[][]> definitions = new TreeMap<Integer,byte[][]>();
+        final Map<Integer,Datum> datums = new HashMap<Integer,Datum>();
+        final Map<Integer,Integer> hosts = new HashMap<Integer,Integer>();
+        for (final String code : codes) {
+            final int key;
+            try {
+                key = Integer.parseInt(code.trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            final String wkt;
+            final byte[] metadata;
+            final CoordinateReferenceSystem crs;
+            try {
+                crs = factory.createCoordinateReferenceSystem(code);
+                wkt = (crs instanceof Formattable) ? ((Formattable) crs).toWKT(0) : crs.toWKT();
+                metadata = writeMetadata(crs);
+            } catch (FactoryException e) {
+                LOGGER.log(Level.FINE, "Skipping EPSG:" + code, e);
+                continue;
+            } catch (UnformattableObjectException e) {
+                LOGGER.log(Level.FINE, "Skipping EPSG:" + code, e);
+                continue;
+            } catch (UnsupportedOperationException e) {
+                LOGGER.log(Level.FINE, "Skipping EPSG:" + code, e);
+                continue;
+            }
+            definitions.put(key, new byte[][] {wkt.trim().getBytes(ENCODING), metadata});
+            collectDatums(crs, key, datums, hosts);
+        }
+        /*
+         * Only the datums used by a CRS of the snapshot can be stored, since their
+         * ellipsoid and prime meridian are parsed from the WKT of that CRS.
+         */
+        final SortedMap<Integer,byte[]> records = new TreeMap<Integer,byte[]>();
+        for (final Map.Entry<Integer,Datum> entry : datums.entrySet()) {
+            if (hosts.containsKey(entry.getKey())) {
+                records.put(entry.getKey(), writeDatum(entry.getValue(), hosts.keySet()));
+            }
+        }
+        final byte[] version = ThreadedHsqlEpsgFactory.VERSION.toString().getBytes(ENCODING);
+        final File tmp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(ThreadedHsqlEpsgFactory.VERSION.toString());
+            out.writeInt(definitions.size());
+            out.writeInt(records.size());
+            int offset = 4 + 4 + 2 + version.length + 4 + 4
+                    + (definitions.size() + records.size()) * ENTRY_SIZE;
+            for (final Map.Entry<Integer,byte[][]> entry : definitions.entrySet()) {
+                final int length = entry.getValue()[0].length;
+                final int metadataLength = entry.getValue()[1].length;
+                out.writeInt(entry.getKey());
+                out.writeInt(offset);
+                out.writeInt(length);
+                out.writeInt(metadataLength);
+                offset += length + metadataLength;
+            }
+            for (final Map.Entry<Integer,byte[]> entry : records.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(hosts.get(entry.getKey()));
+                out.writeInt(offset);
+                out.writeInt(entry.getValue().length);
+                offset += entry.getValue().length;
+            }
+            for (final byte[][] definition : definitions.values()) {
+                out.write(definition[0]);
+                out.write(definition[1]);
+            }
+            for (final byte[] record : records.values()) {
+                out.write(record);
+            }
+        } finally {
+            out.close();
+        }
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Can't rename " + tmp + " to " + file);
+        }
+        return definitions.size();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory.epsg;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import org.opengis.metadata.citation.Citation;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CRSAuthorityFactory;
+
+import org.geotools.factory.Hints;
+import org.geotools.metadata.iso.citation.Citations;
+import org.geotools.referencing.ReferencingFactoryFinder;
+import org.geotools.referencing.factory.AbstractAuthorityFactory;
+import org.geotools.referencing.factory.DeferredAuthorityFactory;
+import org.geotools.referencing.factory.FactoryNotFoundException;
+import org.geotools.referencing.factory.ReferencingFactoryContainer;
+import org.geotools.resources.i18n.ErrorKeys;
+import org.geotools.resources.i18n.Errors;
+import org.geotools.util.logging.Logging;
+
+
+/**
+ * Authority factory for the EPSG {@linkplain org.opengis.referencing.crs.CoordinateReferenceSystem
+ * coordinate reference systems} backed by a memory mapped {@linkplain EpsgSnapshot snapshot}.
+ * Opening the snapshot takes a few milliseconds, while the first access to the EPSG database
+ * needs to unpack and open the HSQL database, which may add seconds to the startup of short
+ * lived applications.
+ * <p>
+ * The snapshot stores the metadata of the CRS, of their coordinate systems and defining
+ * conversions, and the datums with all their Bursa-Wolf parameters, so the CRS it creates are
+ * the same as the ones created by {@link ThreadedHsqlEpsgFactory}. This factory has therefore
+ * a higher priority than the EPSG database, which is opened only for the codes not found in
+ * the snapshot and for the objects which are not CRS (datums, coordinate systems, operations),
+ * served by the next factories of the fallback chain as usual. The snapshot is
+ * searched in the following places:
+ * <ul>
+ *   <li>The file given by the {@value #SNAPSHOT_KEY} system property, if defined.</li>
+ *   <li>The {@value #FILENAME} resource bundled next to this class, usually generated at build
+ *       time with the {@linkplain #main main method}. If the resource is inside a JAR, it is
+ *       copied in the EPSG database directory.</li>
+ *   <li>The {@value #FILENAME} file in the EPSG database directory.</li>
+ * </ul>
+ * If no snapshot is found, or if it has been created from a different version of this plugin,
+ * this factory is not available. If the {@value #GENERATE_KEY} system property is set to
+ * {@code true}, a snapshot will then be generated in a background thread for the next runs.
+ *
+ * @since 8.0
+ * @source $URL$
+ * @version $Id$
+ */
+public class EpsgSnapshotFactory extends DeferredAuthorityFactory implements CRSAuthorityFactory {
+    /**
+     * The key for fetching the snapshot file from {@linkplain System#getProperty(String)
+     * system properties}.
+     */
+    public static final String SNAPSHOT_KEY = "EPSG-HSQL.snapshot";
+
+    /**
+     * The {@linkplain System#getProperty(String) system property} which, when set to
+     * {@code true}, enables the generation of the snapshot on first run.
+     */
+    public static final String GENERATE_KEY = "EPSG-HSQL.snapshot.generate";
+
+    /**
+     * The name of the snapshot file.
+     */
+    public static final String FILENAME = "EPSG.snapshot";
+
+    /**
+     * Set to {@code true} once a background generation has been started,
+     * in order to start it only once per JVM.
+     */
+    private static final AtomicBoolean generating = new AtomicBoolean();
+
+    /**
+     * The default priority for this factory, higher than the {@link ThreadedHsqlEpsgFactory}
+     * one so the snapshot is looked into before the EPSG database.
+     */
+    public static final int PRIORITY = ThreadedEpsgFactory.PRIORITY + 2;
+
+    /**
+     * The factories to be given to the backing store.
+     */
+    private final ReferencingFactoryContainer factories;
+
+    /**
+     * Creates a new instance of this factory.
+     */
+    public EpsgSnapshotFactory() {
+        this(null);
+    }
+
+    /**
+     * Creates a new instance of this factory using the specified hints.
+     */
+    public EpsgSnapshotFactory(final Hints userHints) {
+        super(userHints, PRIORITY);
+        factories = ReferencingFactoryContainer.instance(userHints);
+        // Same axis order than the EPSG database, which is (latitude, longitude).
+        hints.put(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER, Boolean.FALSE);
+        hints.put(Hints.FORCE_STANDARD_AXIS_DIRECTIONS,   Boolean.FALSE);
+        hints.put(Hints.FORCE_STANDARD_AXIS_UNITS,        Boolean.FALSE);
+        // Disposes the mapped snapshot after at least 15 minutes of inactivity.
+        setTimeout(15 * 60 * 1000L);
+    }
+
+    /**
+     * Returns the EPSG authority.
+     */
+    @Override
+    public Citation getAuthority() {
+        return Citations.EPSG;
+    }
+
+    /**
+     * Returns the snapshot file to use, as explained in the class javadoc.
+     * This method does not check if the file exists.
+     *
+     * @return The snapshot file.
+     */
+    protected File getSnapshotFile() {
+        try {
+            final String property = System.getProperty(SNAPSHOT_KEY);
+            if (property != null) {
+                return new File(property);
+            }
+        } catch (SecurityException e) {
+            // Fallback on the default locations.
+        }
+        final File file = new File(ThreadedHsqlEpsgFactory.getDatabaseDirectory(), FILENAME);
+        final URL url = EpsgSnapshotFactory.class.getResource(FILENAME);
+        if (url != null) {
+            if ("file".equalsIgnoreCase(url.getProtocol())) {
+                try {
+                    return new File(url.toURI());
+                } catch (URISyntaxException e) {
+                    Logging.unexpectedException(LOGGER, e);
+                }
+            } else try {
+                copy(url, file);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Can't extract the EPSG snapshot", e);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Copies the snapshot bundled in a JAR file to the specified file,
+     * unless the file is already up to date.
+     */
+    private static void copy(final URL url, final File file) throws IOException {
+        final URLConnection connection = url.openConnection();
+        if (file.isFile() && file.lastModified() >= connection.getLastModified()) {
+            return;
+        }
+        final File directory = file.getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        final File tmp = new File(file.getPath() + ".tmp");
+        final InputStream in = connection.getInputStream();
+        try {
+            final OutputStream out = new FileOutputStream(tmp);
+            try {
+                final byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Can't rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Opens the snapshot.
+     *
+     * @return The backing store to uses in {@code createXXX(...)} methods.
+     * @throws FactoryNotFoundException if no up to date snapshot has been found.
+     * @throws FactoryException if the snapshot can't be read.
+     */
+    protected AbstractAuthorityFactory createBackingStore() throws FactoryException {
+        final File file = getSnapshotFile();
+        if (file.isFile()) {
+            final EpsgSnapshot snapshot;
+            try {
+                snapshot = new EpsgSnapshot(factories, file);
+            } catch (IOException exception) {
+                throw new FactoryException(Errors.format(ErrorKeys.CANT_READ_$1, file), exception);
+            }
+            if (ThreadedHsqlEpsgFactory.VERSION.toString().equals(snapshot.getVersion())) {
+                LOGGER.log(Level.CONFIG, "Using the EPSG snapshot " + file);
+                return snapshot;
+            }
+            LOGGER.log(Level.FINE, "Ignoring the EPSG snapshot " + file + " created from version "
+                    + snapshot.getVersion());
+        }
+        if (Boolean.getBoolean(GENERATE_KEY)) {
+            generate(file);
+        }
+        throw new FactoryNotFoundException(Errors.format(ErrorKeys.FILE_DOES_NOT_EXIST_$1, file));
+    }
+
+    /**
+     * Generates the snapshot in a background thread, from the EPSG database.
+     */
+    private static void generate(final File file) {
+        if (generating.getAndSet(true)) {
+            return;
+        }
+        final Thread thread = new Thread("EPSG snapshot generation") {
+            @Override
+            public void run() {
+                try {
+                    final int count = EpsgSnapshot.write(getDatabaseFactory(), file);
+                    LOGGER.log(Level.CONFIG, "Wrote " + count + " CRS in the EPSG snapshot " + file);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Can't generate the EPSG snapshot", e);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Returns the factory backed by the EPSG database.
+     */
+    private static CRSAuthorityFactory getDatabaseFactory() {
+        return ReferencingFactoryFinder.getCRSAuthorityFactory("EPSG",
+                new Hints(Hints.CRS_AUTHORITY_FACTORY, ThreadedHsqlEpsgFactory.class));
+    }
+
+    /**
+     * Writes the snapshot from the EPSG database. This is run at build time by the
+     * {@code process-classes} phase, the snapshot being then bundled in the JAR as the
+     * {@value #FILENAME} resource. The optional
+     * argument is the file to write, which default to the one in the EPSG database directory.
+     *
+     * @param args The command line arguments.
+     * @throws Exception if the snapshot can't be written.
+     */
+    public static void main(final String[] args) throws Exception {
+        final File file = (args.length != 0) ? new File(args[0])
+                : new File(ThreadedHsqlEpsgFactory.getDatabaseDirectory(), FILENAME);
+        final int count = EpsgSnapshot.write(getDatabaseFactory(), file);
+        System.out.println("Wrote " + count + " CRS in " + file);
+    }
+}
@@ -174,6 +174,14 @@ public class ThreadedHsqlEpsgFactory extends ThreadedEpsgFactory {
         return getTemporaryDirectory();
     }
 
+    /**
+     * Returns the directory of the database for the current {@linkplain #VERSION version}
+     * of this plugin.
+     */
+    static File getDatabaseDirectory() {
+        return new File(getDirectory(), "v" + VERSION);
+    }
+
     /**
      * Returns the directory to uses in the temporary directory folder.
      */
@@ -215,7 +223,7 @@ public class ThreadedHsqlEpsgFactory extends ThreadedEpsgFactory {
             return candidate;
         }
         final jdbcDataSource source = new jdbcDataSource();
-        File directory = new File(getDirectory(), "v" + VERSION);
+        File directory = getDatabaseDirectory();
         if (directory != null) {
             /*
              * Constructs the full path to the HSQL database. Note: we do not use
@@ -0,0 +1,210 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.referencing.factory.epsg;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.opengis.metadata.extent.GeographicBoundingBox;
+import org.opengis.referencing.NoSuchAuthorityCodeException;
+import org.opengis.referencing.ReferenceIdentifier;
+import org.opengis.referencing.crs.CRSAuthorityFactory;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.crs.SingleCRS;
+import org.opengis.referencing.datum.Datum;
+import org.opengis.referencing.datum.DatumAuthorityFactory;
+import org.opengis.referencing.datum.GeodeticDatum;
+import org.opengis.util.GenericName;
+
+import org.geotools.factory.Hints;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.ReferencingFactoryFinder;
+import org.geotools.referencing.datum.BursaWolfParameters;
+import org.geotools.referencing.datum.DefaultGeodeticDatum;
+import org.geotools.referencing.factory.ReferencingFactoryContainer;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the {@link EpsgSnapshot} round trip against the EPSG database.
+ *
+ * @source $URL$
+ * @version $Id$
+ */
+public final class EpsgSnapshotTest {
+    /**
+     * The codes written in the test snapshot.
+     */
+    private static final List<String> CODES = Arrays.asList(
+            "4326", "4258", "3857", "32632", "27700", "2154", "3035", "26910", "4979");
+
+    /**
+     * The snapshot file, deleted after the test.
+     */
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("EPSG", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Writes a few CRS from the EPSG database, and checks they are read back
+     * equal to the original ones.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        final CRSAuthorityFactory database = ReferencingFactoryFinder.getCRSAuthorityFactory("EPSG",
+                new Hints(Hints.CRS_AUTHORITY_FACTORY, ThreadedHsqlEpsgFactory.class));
+        assertEquals(CODES.size(), EpsgSnapshot.write(database, CODES, file));
+
+        final EpsgSnapshot snapshot = new EpsgSnapshot(ReferencingFactoryContainer.instance(null), file);
+        assertEquals(ThreadedHsqlEpsgFactory.VERSION.toString(), snapshot.getVersion());
+        assertEquals(CODES.size(), snapshot.getAuthorityCodes(CoordinateReferenceSystem.class).size());
+        assertTrue(snapshot.getAuthorityCodes(GeographicCRS.class).contains("4326"));
+        assertFalse(snapshot.getAuthorityCodes(ProjectedCRS.class).contains("4326"));
+        for (final String code : CODES) {
+            final CoordinateReferenceSystem expected = database.createCoordinateReferenceSystem(code);
+            final CoordinateReferenceSystem actual = snapshot.createCoordinateReferenceSystem("EPSG:" + code);
+            assertTrue(code, CRS.equalsIgnoreMetadata(expected, actual));
+            assertEquals(code, CRS.lookupIdentifier(actual, false).substring(5));
+            assertEquals(expected.getName().getCode(), snapshot.getDescriptionText(code).toString());
+            // The metadata not expressed by the WKT
+            final GeographicBoundingBox bbox = CRS.getGeographicBoundingBox(expected);
+            assertNotNull(code, bbox);
+            assertEquals(code, bbox, CRS.getGeographicBoundingBox(actual));
+            assertNotNull(code, CRS.getEnvelope(actual));
+            assertEquals(code, expected.getDomainOfValidity().getDescription(),
+                               actual.getDomainOfValidity().getDescription());
+            assertEquals(code, expected.getIdentifiers().size(), actual.getIdentifiers().size());
+            final Iterator<ReferenceIdentifier> it = actual.getIdentifiers().iterator();
+            for (final ReferenceIdentifier identifier : expected.getIdentifiers()) {
+                final ReferenceIdentifier restored = it.next();
+                assertEquals(code, identifier.getCode(), restored.getCode());
+                assertEquals(code, identifier.getCodeSpace(), restored.getCodeSpace());
+                assertEquals(code, identifier.getVersion(), restored.getVersion());
+            }
+            assertEquals(code, expected.getAlias().size(), actual.getAlias().size());
+            final Iterator<GenericName> alias = actual.getAlias().iterator();
+            for (final GenericName name : expected.getAlias()) {
+                assertEquals(code, name.toString(), alias.next().toString());
+            }
+            assertEquals(code, String.valueOf(expected.getScope()), String.valueOf(actual.getScope()));
+            assertEquals(code, expected.getCoordinateSystem().getName().getCode(),
+                               actual.getCoordinateSystem().getName().getCode());
+            if (expected instanceof ProjectedCRS) {
+                assertEquals(code, ((ProjectedCRS) expected).getConversionFromBase().getName().getCode(),
+                                   ((ProjectedCRS) actual).getConversionFromBase().getName().getCode());
+                assertEquals(code, CRS.lookupIdentifier(((ProjectedCRS) expected).getBaseCRS(), false),
+                                   CRS.lookupIdentifier(((ProjectedCRS) actual).getBaseCRS(), false));
+            }
+            if (expected instanceof SingleCRS) {
+                assertDatumEquals(code, ((SingleCRS) expected).getDatum(),
+                        ((SingleCRS) actual).getDatum(), snapshot.getAuthorityCodes(Datum.class));
+            }
+        }
+        // The datums are available by themselves
+        assertTrue(snapshot.getAuthorityCodes(GeodeticDatum.class).contains("6277"));
+        assertFalse(snapshot.getAuthorityCodes(GeodeticDatum.class).contains("27700"));
+        assertFalse(snapshot.getAuthorityCodes(CoordinateReferenceSystem.class).contains("6277"));
+        assertDatumEquals("6277", ((DatumAuthorityFactory) database).createDatum("6277"),
+                snapshot.createDatum("6277"), snapshot.getAuthorityCodes(Datum.class));
+        assertTrue(((DefaultGeodeticDatum) snapshot.createDatum("6277")).getBursaWolfParameters().length != 0);
+        assertTrue(snapshot.createObject("6277") instanceof GeodeticDatum);
+        try {
+            snapshot.createCoordinateReferenceSystem("4230");
+            fail("The code is not in the snapshot");
+        } catch (NoSuchAuthorityCodeException e) {
+            // expected, the fallback chain will look in the database
+        }
+    }
+
+    /**
+     * Checks a datum from the snapshot has the same metadata and Bursa-Wolf
+     * parameters than the one from the EPSG database.
+     */
+    private static void assertDatumEquals(final String code, final Datum expected,
+            final Datum actual, final Set<String> stored)
+    {
+        assertTrue(code, CRS.equalsIgnoreMetadata(expected, actual));
+        assertEquals(code, expected.getName().getCode(), actual.getName().getCode());
+        assertEquals(code, CRS.lookupIdentifier(expected, false), CRS.lookupIdentifier(actual, false));
+        assertEquals(code, String.valueOf(expected.getAnchorPoint()), String.valueOf(actual.getAnchorPoint()));
+        assertEquals(code, expected.getRealizationEpoch(), actual.getRealizationEpoch());
+        assertEquals(code, String.valueOf(expected.getScope()), String.valueOf(actual.getScope()));
+        assertEquals(code, String.valueOf(expected.getRemarks()), String.valueOf(actual.getRemarks()));
+        if (expected instanceof DefaultGeodeticDatum) {
+            // Only the parameters toward the datums stored in the snapshot are kept.
+            final List<BursaWolfParameters> e = new ArrayList<BursaWolfParameters>();
+            for (final BursaWolfParameters p : ((DefaultGeodeticDatum) expected).getBursaWolfParameters()) {
+                if (stored.contains(CRS.lookupIdentifier(p.targetDatum, false).substring(5))) {
+                    e.add(p);
+                }
+            }
+            final BursaWolfParameters[] a = ((DefaultGeodeticDatum) actual).getBursaWolfParameters();
+            assertEquals(code, e.size(), a.length);
+            for (int i=0; i<a.length; i++) {
+                final BursaWolfParameters p = e.get(i);
+                assertEquals(code, CRS.lookupIdentifier(p.targetDatum, false),
+                                   CRS.lookupIdentifier(a[i].targetDatum, false));
+                assertArrayEquals(code, new double[] {p.dx, p.dy, p.dz, p.ex, p.ey, p.ez, p.ppm},
+                        new double[] {a[i].dx, a[i].dy, a[i].dz, a[i].ex, a[i].ey, a[i].ez, a[i].ppm}, 0);
+            }
+        }
+    }
+
+    /**
+     * Checks the factory uses the snapshot given by the system property,
+     * and ignores a file which is not a snapshot.
+     */
+    @Test
+    public void testFactory() throws Exception {
+        final CRSAuthorityFactory database = ReferencingFactoryFinder.getCRSAuthorityFactory("EPSG",
+                new Hints(Hints.CRS_AUTHORITY_FACTORY, ThreadedHsqlEpsgFactory.class));
+        EpsgSnapshot.write(database, CODES, file);
+        System.setProperty(EpsgSnapshotFactory.SNAPSHOT_KEY, file.getPath());
+        try {
+            final EpsgSnapshotFactory factory = new EpsgSnapshotFactory();
+            assertTrue(factory.isAvailable());
+            assertTrue(factory.getAuthorityCodes(CoordinateReferenceSystem.class).contains("32632"));
+            assertSame(factory.createCoordinateReferenceSystem("EPSG:32632"),
+                       factory.createCoordinateReferenceSystem("32632"));
+            factory.dispose();
+            assertTrue("The snapshot must come before the EPSG database",
+                    factory.getPriority() > new ThreadedHsqlEpsgFactory().getPriority());
+
+            System.setProperty(EpsgSnapshotFactory.SNAPSHOT_KEY,
+                    new File(file.getPath() + ".missing").getPath());
+            assertFalse(new EpsgSnapshotFactory().isAvailable());
+        } finally {
+            System.clearProperty(EpsgSnapshotFactory.SNAPSHOT_KEY);
+        }
+    }
+}
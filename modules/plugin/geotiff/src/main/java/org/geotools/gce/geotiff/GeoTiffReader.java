@@ -54,6 +54,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -139,6 +140,9 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 
     private int extOvrImgChoice = -1;
 
+    /** Reads small windows of tiled files tile by tile, {@code null} if the source is not a file. */
+    private TileReadPlanner tilePlanner;
+
 	/**
 	 * Creates a new instance of GeoTiffReader
 	 * 
@@ -218,6 +222,12 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 			// /////////////////////////////////////////////////////////////////////
 			getHRInfo(this.hints);
 
+			if (source instanceof File) {
+			    final Object executor = this.hints.get(Hints.EXECUTOR_SERVICE);
+			    tilePlanner = new TileReadPlanner((File) source, READER_SPI,
+			            executor instanceof ExecutorService ? (ExecutorService) executor : null);
+			}
+
 			// /////////////////////////////////////////////////////////////////////
 			// 
 			// Coverage name
@@ -495,6 +505,18 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 			new DataSourceException(e);
 		}
 
+		//
+		// TILE BY TILE READ OF SMALL WINDOWS
+		//
+		if (tilePlanner != null && requestedEnvelope != null && suggestedTileSize == null
+		        && (extOvrImgChoice < 0 || imageChoice < extOvrImgChoice)) {
+		    final GridCoverage2D coverage = readTiles(imageChoice, readP, requestedEnvelope,
+		            inputTransparentColor);
+		    if (coverage != null) {
+		        return coverage;
+		    }
+		}
+
 		//
 		// IMAGE READ OPERATION
 		//
@@ -568,6 +590,73 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 
 	}
 
+    /**
+     * Reads the tiles of an internal image intersecting the requested envelope.
+     * 
+     * @return the coverage, or {@code null} if the request is better served by the deferred
+     *         ImageRead path.
+     */
+    private GridCoverage2D readTiles(final int imageChoice, final ImageReadParam readP,
+            final GeneralEnvelope requestedEnvelope, final Color inputTransparentColor) throws IOException {
+        final CoordinateReferenceSystem requestedCRS = requestedEnvelope.getCoordinateReferenceSystem();
+        if (requestedCRS != null && !CRS.equalsIgnoreMetadata(requestedCRS, crs)) {
+            return null;
+        }
+        final TileReadPlanner.TileLayout layout = tilePlanner.getLayout(imageChoice);
+        if (layout == null) {
+            return null;
+        }
+
+        // raster to model of the image, as for the coverages built from the whole image
+        final AffineTransform imageToModel = new AffineTransform((AffineTransform) raster2Model);
+        imageToModel.scale(originalGridRange.getSpan(0) / (double) layout.width,
+                originalGridRange.getSpan(1) / (double) layout.height);
+
+        // the requested area in the pixels of the image
+        final Rectangle region;
+        try {
+            final AffineTransform cornerToModel = new AffineTransform(imageToModel);
+            cornerToModel.translate(-0.5, -0.5);
+            final GeneralEnvelope pixels = CRS.transform(ProjectiveTransform.create(cornerToModel)
+                    .inverse(), requestedEnvelope);
+            final int minX = (int) Math.max(Math.floor(pixels.getMinimum(0)), Integer.MIN_VALUE / 2);
+            final int minY = (int) Math.max(Math.floor(pixels.getMinimum(1)), Integer.MIN_VALUE / 2);
+            final int maxX = (int) Math.min(Math.ceil(pixels.getMaximum(0)), Integer.MAX_VALUE / 2);
+            final int maxY = (int) Math.min(Math.ceil(pixels.getMaximum(1)), Integer.MAX_VALUE / 2);
+            region = tilePlanner.plan(imageChoice, new Rectangle(minX, minY, maxX - minX, maxY - minY));
+        } catch (TransformException e) {
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+            return null;
+        }
+        if (region == null) {
+            return null;
+        }
+
+        final int xSubsampling = readP.getSourceXSubsampling();
+        final int ySubsampling = readP.getSourceYSubsampling();
+        PlanarImage coverageRaster = PlanarImage.wrapRenderedImage(tilePlanner.read(imageChoice, region,
+                xSubsampling, ySubsampling));
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Read tiles of " + region + " from image " + imageChoice);
+        }
+        if (inputTransparentColor != null) {
+            coverageRaster = new ImageWorker(coverageRaster).makeColorTransparent(inputTransparentColor)
+                    .getRenderedOperation();
+        }
+        imageToModel.translate(region.x, region.y);
+        imageToModel.scale(xSubsampling, ySubsampling);
+        return createCoverage(coverageRaster, ProjectiveTransform.create(imageToModel));
+    }
+
+    @Override
+    public void dispose() {
+        if (tilePlanner != null) {
+            tilePlanner.dispose();
+        }
+        super.dispose();
+    }
+
     /**
      * Returns the geotiff metadata for this geotiff file.
      * 
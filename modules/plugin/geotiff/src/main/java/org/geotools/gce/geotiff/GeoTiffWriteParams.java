@@ -89,6 +89,24 @@ import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
  */
 public class GeoTiffWriteParams extends GeoToolsWriteParams {
 
+    /**
+     * How the internal overviews are computed from the level above.
+     * 
+     * @since 8.0
+     */
+    public enum OverviewFilter {
+        /** Keeps the top left pixel of each 2x2 block, the only choice for palette images. */
+        NEAREST,
+        /** Averages the valid samples of each 2x2 block, ignoring the no data ones. */
+        AVERAGE
+    }
+
+    private int overviews;
+
+    private OverviewFilter overviewFilter = OverviewFilter.AVERAGE;
+
+    private int encodingThreads = 1;
+
     /**
      * Default constructor.
      */
@@ -104,4 +122,63 @@ public class GeoTiffWriteParams extends GeoToolsWriteParams {
         return ((TIFFImageWriteParam) adaptee).isForceToBigTIFF();
     }
 
+    /**
+     * Sets the number of internal overviews to write, each one halving the resolution of the
+     * previous one. No overview is written past the first one fitting in a single tile.
+     * Overviews require an explicit tiling.
+     * 
+     * @since 8.0
+     */
+    public void setOverviews(final int overviews) {
+        if (overviews < 0) {
+            throw new IllegalArgumentException("The number of overviews can't be negative: " + overviews);
+        }
+        this.overviews = overviews;
+    }
+
+    /**
+     * @since 8.0
+     */
+    public int getOverviews() {
+        return overviews;
+    }
+
+    /**
+     * Sets how the internal overviews are computed, {@link OverviewFilter#AVERAGE} by default.
+     * 
+     * @since 8.0
+     */
+    public void setOverviewFilter(final OverviewFilter overviewFilter) {
+        if (overviewFilter == null) {
+            throw new NullPointerException("The overview filter can't be null");
+        }
+        this.overviewFilter = overviewFilter;
+    }
+
+    /**
+     * @since 8.0
+     */
+    public OverviewFilter getOverviewFilter() {
+        return overviewFilter;
+    }
+
+    /**
+     * Sets the number of threads compressing the tiles of a tiled image, one by default.
+     * 
+     * @since 8.0
+     */
+    public void setEncodingThreads(final int encodingThreads) {
+        if (encodingThreads < 1) {
+            throw new IllegalArgumentException("At least one encoding thread is needed: " + encodingThreads);
+        }
+        this.encodingThreads = encodingThreads;
+    }
+
+    /**
+     * @since 8.0
+     */
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
 }
@@ -16,6 +16,7 @@
  */
 package org.geotools.gce.geotiff;
 
+import it.geosolutions.imageio.plugins.tiff.TIFFField;
 import it.geosolutions.imageio.plugins.tiff.TIFFImageWriteParam;
 import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageMetadata;
 import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageWriterSpi;
@@ -24,14 +25,20 @@ import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.image.RenderedImage;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 import javax.imageio.IIOException;
 import javax.imageio.IIOImage;
@@ -92,6 +99,9 @@ import org.opengis.util.ProgressListener;
 public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 		GridCoverageWriter {
 
+	/** Logger for the {@link GeoTiffWriter} class. */
+	private final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(GeoTiffWriter.class.toString());
+
 	private final Map<String, String> metadataKeyValue = new HashMap<String, String>(); 
 	
 	/** factory for getting tiff writers. */
@@ -261,7 +271,7 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 			setGeoReference(crs, metadata, tr, range);
 
 			// writing ALWAYS the geophysics vew of the data
-			writeImage(((GridCoverage2D) gc).geophysics(true).getRenderedImage(), this.outStream, metadata, gtParams,listener);
+			writeImage(((GridCoverage2D) gc).geophysics(true).getRenderedImage(), this.outStream, metadata, gtParams,listener, inNoData);
 			
 			// write tfw
 			if(writeTfw&& (destination instanceof File)){
@@ -420,12 +430,13 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 	 * 
 	 * @param gtParams
 	 * @param listener 
+	 * @param noData the no data value, NaN if none.
 	 */
 	private boolean writeImage(final RenderedImage image,
 			final ImageOutputStream outputStream,
 			final GeoTiffIIOMetadataEncoder geoTIFFMetadata,
 			GeoToolsWriteParams gtParams, 
-			ProgressListener listener) throws IOException {
+			ProgressListener listener, final double noData) throws IOException {
 		if (image == null || outputStream == null) {
 			throw new NullPointerException("Some input parameters are null");
 		}
@@ -443,6 +454,28 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 
 		try{
 
+			//
+			// PARALLEL TILED WRITE, WITH OVERVIEWS
+			//
+			if (gtParams instanceof GeoTiffWriteParams) {
+			    final GeoTiffWriteParams geoTiffParams = (GeoTiffWriteParams) gtParams;
+			    if (geoTiffParams.getEncodingThreads() > 1 || geoTiffParams.getOverviews() > 0) {
+			        final int compression = getTiledCompression(image, params);
+			        if (compression > 0) {
+			            final TiledTiffEncoder encoder = new TiledTiffEncoder(image, params.getTileWidth(),
+			                    params.getTileHeight(), compression, getDeflateLevel(params),
+			                    geoTiffParams.getOverviews(), geoTiffParams.getOverviewFilter(), noData,
+			                    geoTiffParams.isForceToBigTIFF());
+			            return encoder.write(outputStream, toFields(metadata),
+			                    geoTiffParams.getEncodingThreads(), listener);
+			        }
+			        if (geoTiffParams.getOverviews() > 0 && LOGGER.isLoggable(Level.WARNING)) {
+			            LOGGER.warning("Internal overviews need a tiling with sizes multiple of 16 and "
+			                    + "LZW, Deflate or no compression, they won't be written");
+			        }
+			    }
+			}
+
 			//
 			// IMAGEWRITE
 			//			
@@ -486,6 +519,104 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 		return true;
 	}
 
+	/**
+	 * Returns the TIFF compression of the tiles when the image and the parameters can be
+	 * written by the {@link TiledTiffEncoder}, -1 otherwise.
+	 */
+	private static int getTiledCompression(final RenderedImage image, final ImageWriteParam params) {
+		if (params.getTilingMode() != ImageWriteParam.MODE_EXPLICIT
+				|| params.getTileWidth() % 16 != 0 || params.getTileHeight() % 16 != 0
+				|| params.getSourceRegion() != null || params.getSourceBands() != null
+				|| params.getSourceXSubsampling() != 1 || params.getSourceYSubsampling() != 1
+				|| !TiledTiffEncoder.isSupported(image)) {
+			return -1;
+		}
+		if (params.getCompressionMode() != ImageWriteParam.MODE_EXPLICIT) {
+			return TiledTiffEncoder.COMPRESSION_NONE;
+		}
+		final String type = params.getCompressionType();
+		if ("LZW".equals(type)) {
+			return TiledTiffEncoder.COMPRESSION_LZW;
+		}
+		if ("Deflate".equals(type) || "ZLib".equals(type)) {
+			return TiledTiffEncoder.COMPRESSION_DEFLATE;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the Deflate level for the compression quality, as the TIFF image writer does.
+	 */
+	private static int getDeflateLevel(final ImageWriteParam params) {
+		if (params.getCompressionMode() == ImageWriteParam.MODE_EXPLICIT
+				&& params.getCompressionType() != null) {
+			return (int) (1 + 8 * params.getCompressionQuality());
+		}
+		return Deflater.DEFAULT_COMPRESSION;
+	}
+
+	/**
+	 * Converts the fields of the TIFF image metadata for the {@link TiledTiffEncoder}.
+	 */
+	private static List<TiledTiffEncoder.Field> toFields(final IIOMetadata metadata)
+			throws IOException {
+		final List<TiledTiffEncoder.Field> fields = new ArrayList<TiledTiffEncoder.Field>();
+		if (!(metadata instanceof TIFFImageMetadata)) {
+			return fields;
+		}
+		for (TIFFField field : ((TIFFImageMetadata) metadata).getRootIFD().getTIFFFields()) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(bytes);
+			final int count = field.getCount();
+			final int type = field.getType();
+			for (int i = 0; i < count; i++) {
+				switch (type) {
+				case TiledTiffEncoder.TYPE_ASCII:
+					out.write(field.getAsString(i).getBytes("US-ASCII"));
+					out.writeByte(0);
+					break;
+				case TiledTiffEncoder.TYPE_BYTE:
+				case TiledTiffEncoder.TYPE_SBYTE:
+				case TiledTiffEncoder.TYPE_UNDEFINED:
+					out.writeByte(field.getAsInt(i));
+					break;
+				case TiledTiffEncoder.TYPE_SHORT:
+				case TiledTiffEncoder.TYPE_SSHORT:
+					out.writeShort(field.getAsInt(i));
+					break;
+				case TiledTiffEncoder.TYPE_LONG:
+				case TiledTiffEncoder.TYPE_SLONG:
+					out.writeInt((int) field.getAsLong(i));
+					break;
+				case TiledTiffEncoder.TYPE_RATIONAL:
+					final long[] rational = field.getAsRational(i);
+					out.writeInt((int) rational[0]);
+					out.writeInt((int) rational[1]);
+					break;
+				case TiledTiffEncoder.TYPE_SRATIONAL:
+					final int[] srational = field.getAsSRational(i);
+					out.writeInt(srational[0]);
+					out.writeInt(srational[1]);
+					break;
+				case TiledTiffEncoder.TYPE_FLOAT:
+					out.writeFloat(field.getAsFloat(i));
+					break;
+				case TiledTiffEncoder.TYPE_DOUBLE:
+					out.writeDouble(field.getAsDouble(i));
+					break;
+				default:
+					// pointers to other directories can't be copied
+					bytes.reset();
+				}
+			}
+			if (bytes.size() > 0) {
+				final long tiffCount = type == TiledTiffEncoder.TYPE_ASCII ? bytes.size() : count;
+				fields.add(new TiledTiffEncoder.Field(field.getTagNumber(), type, tiffCount, bytes.toByteArray()));
+			}
+		}
+		return fields;
+	}
+
 	/**
 	 * Creates image metadata which complies to the GeoTIFFWritingUtilities
 	 * specification for the given image writer, image type and
@@ -0,0 +1,165 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An {@link javax.imageio.stream.ImageInputStream} over a {@link FileChannel} serving the
+ * byte ranges loaded in advance from memory.
+ *
+ * <p>
+ * The tiles of a read are loaded with a few large reads, or memory mapped, before decoding:
+ * the decoder then finds them in memory while the rest of the file, such as the headers, is
+ * read from the channel through a small buffer. Reads use absolute positions so that many
+ * streams can share the same channel.
+ *
+ * @source $URL$
+ */
+final class RangeImageInputStream extends ImageInputStreamImpl {
+
+    /** Size of the buffer for the bytes outside of the loaded ranges. */
+    private static final int BUFFER_SIZE = 8192;
+
+    private FileChannel channel;
+
+    /** Position in the file of the loaded ranges, sorted. */
+    private long[] starts;
+
+    /** The loaded ranges, private views positioned by this stream. */
+    private ByteBuffer[] ranges;
+
+    /** Buffer for the bytes read from the channel. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Position in the file of the buffer. */
+    private long bufferStart = -1;
+
+    private final byte[] single = new byte[1];
+
+    /**
+     * Creates a stream.
+     *
+     * @param channel the file channel, it is not closed with the stream.
+     * @param starts the positions of the ranges in the file, sorted.
+     * @param ranges the bytes of the ranges.
+     */
+    RangeImageInputStream(final FileChannel channel, final long[] starts, final ByteBuffer[] ranges) {
+        setRanges(channel, starts, ranges);
+    }
+
+    /**
+     * Replaces the channel and the loaded ranges, so that a reader keeps its stream, and the
+     * image directories it parsed, from a read to the next.
+     *
+     * @param channel the file channel, it is not closed with the stream.
+     * @param starts the positions of the ranges in the file, sorted.
+     * @param ranges the bytes of the ranges.
+     */
+    void setRanges(final FileChannel channel, final long[] starts, final ByteBuffer[] ranges) {
+        this.channel = channel;
+        this.starts = starts;
+        this.ranges = new ByteBuffer[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            this.ranges[i] = ranges[i].duplicate();
+        }
+    }
+
+    /**
+     * Replaces the channel, keeping the loaded ranges.
+     */
+    void setChannel(final FileChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        final int n;
+        final ByteBuffer range = findRange(streamPos);
+        if (range != null) {
+            n = Math.min(len, range.remaining());
+            range.get(b, off, n);
+        } else if (len >= BUFFER_SIZE) {
+            // large reads skip the buffer
+            n = channel.read(ByteBuffer.wrap(b, off, len), streamPos);
+        } else {
+            if (bufferStart < 0 || streamPos < bufferStart || streamPos >= bufferStart + buffer.limit()) {
+                buffer.clear();
+                if (channel.read(buffer, streamPos) <= 0) {
+                    bufferStart = -1;
+                    return -1;
+                }
+                buffer.flip();
+                bufferStart = streamPos;
+            }
+            buffer.position((int) (streamPos - bufferStart));
+            n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+        }
+        if (n <= 0) {
+            return -1;
+        }
+        streamPos += n;
+        return n;
+    }
+
+    /**
+     * Returns the range holding the byte at the specified position, positioned on it, or
+     * {@code null} if it has not been loaded.
+     */
+    private ByteBuffer findRange(final long position) {
+        int i = Arrays.binarySearch(starts, position);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        if (i < 0) {
+            return null;
+        }
+        final ByteBuffer range = ranges[i];
+        final long offset = position - starts[i];
+        if (offset >= range.capacity()) {
+            return null;
+        }
+        range.limit(range.capacity());
+        range.position((int) offset);
+        return range;
+    }
+
+    @Override
+    public long length() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,697 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import it.geosolutions.imageio.plugins.tiff.BaselineTIFFTagSet;
+import it.geosolutions.imageio.plugins.tiff.TIFFField;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageMetadata;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+
+import org.geotools.data.DataSourceException;
+import org.geotools.resources.NIOUtilities;
+
+/**
+ * Reads windows of tiled GeoTIFF files by decoding only the tiles they touch.
+ *
+ * <p>
+ * The tile layout of each image of the file is parsed once. A read then computes the tiles
+ * intersecting the requested region, loads their bytes with a few large reads by coalescing
+ * the ranges that are close in the file, memory mapping them when possible, and decodes the
+ * tiles in parallel. Reading a small window of a huge file hence costs a handful of tile
+ * reads rather than the setup of a deferred ImageRead chain over the whole image. The readers
+ * decoding the tiles are kept between reads, so that the image directories are parsed once.
+ *
+ * @source $URL$
+ */
+final class TileReadPlanner {
+
+    /** Logger for the {@link TileReadPlanner} class. */
+    private final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(TileReadPlanner.class.toString());
+
+    /** Ranges closer than this in the file are read together. */
+    static final long COALESCE_GAP = 64 * 1024;
+
+    /** Reads touching more tiles than this are left to the deferred ImageRead path. */
+    static final int MAX_TILES = 256;
+
+    /** Ranges smaller than this are copied in memory rather than mapped. */
+    private static final int MIN_MAPPED_SIZE = 256 * 1024;
+
+    /** Executor for the files not provided with one through the hints. */
+    private static ExecutorService defaultExecutor;
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            final Thread thread = new Thread(r, "GeoTiffTileDecoder");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * The tile layout of an image of the file.
+     */
+    static final class TileLayout {
+
+        final int width;
+
+        final int height;
+
+        final int tileWidth;
+
+        final int tileHeight;
+
+        final int tilesAcross;
+
+        final int tilesDown;
+
+        /** Number of planes, the samples of each band are in separate tiles for planar images. */
+        final int planes;
+
+        final long[] offsets;
+
+        final long[] byteCounts;
+
+        TileLayout(final int width, final int height, final int tileWidth, final int tileHeight,
+                final int planes, final long[] offsets, final long[] byteCounts) {
+            this.width = width;
+            this.height = height;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.tilesAcross = (width + tileWidth - 1) / tileWidth;
+            this.tilesDown = (height + tileHeight - 1) / tileHeight;
+            this.planes = planes;
+            this.offsets = offsets;
+            this.byteCounts = byteCounts;
+        }
+
+        /**
+         * Returns the region made of the tiles intersecting the provided one, clipped to the
+         * image, or {@code null} if the region is outside of the image.
+         */
+        Rectangle alignToTiles(final Rectangle region) {
+            final Rectangle clipped = region.intersection(new Rectangle(0, 0, width, height));
+            if (clipped.isEmpty()) {
+                return null;
+            }
+            final int minX = clipped.x / tileWidth * tileWidth;
+            final int minY = clipped.y / tileHeight * tileHeight;
+            final int maxX = Math.min(width, (clipped.x + clipped.width + tileWidth - 1) / tileWidth * tileWidth);
+            final int maxY = Math.min(height, (clipped.y + clipped.height + tileHeight - 1) / tileHeight * tileHeight);
+            return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+        }
+
+        /** Returns the number of tiles of a region aligned on tiles, for a single plane. */
+        int countTiles(final Rectangle region) {
+            return ((region.width + tileWidth - 1) / tileWidth) * ((region.height + tileHeight - 1) / tileHeight);
+        }
+
+        /** Returns the bounds of a tile. */
+        Rectangle getTileBounds(final int col, final int row) {
+            return new Rectangle(col * tileWidth, row * tileHeight, tileWidth, tileHeight);
+        }
+    }
+
+    /**
+     * A part of the result decoded from a tile.
+     */
+    private static final class Piece {
+
+        final int x;
+
+        final int y;
+
+        final BufferedImage image;
+
+        Piece(final int x, final int y, final BufferedImage image) {
+            this.x = x;
+            this.y = y;
+            this.image = image;
+        }
+    }
+
+    /**
+     * A reader with its stream. The reader keeps the image directory it parsed as long as it
+     * reads the same image, so it is reused from a read to the next.
+     */
+    private static final class PooledReader {
+
+        final ImageReader reader;
+
+        final RangeImageInputStream stream;
+
+        PooledReader(final ImageReader reader, final RangeImageInputStream stream) {
+            this.reader = reader;
+            this.stream = stream;
+        }
+
+        void dispose() {
+            reader.dispose();
+            try {
+                stream.close();
+            } catch (IOException e) {
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+            }
+        }
+    }
+
+    /** Marker for the images which are not tiled. */
+    private static final TileLayout NOT_TILED = new TileLayout(0, 0, 1, 1, 1, null, null);
+
+    private final File file;
+
+    private final TIFFImageReaderSpi readerSpi;
+
+    private final ExecutorService executor;
+
+    private final Map<Integer, TileLayout> layouts = new HashMap<Integer, TileLayout>();
+
+    /** The idle readers, by image index. */
+    private final Map<Integer, List<PooledReader>> idleReaders = new HashMap<Integer, List<PooledReader>>();
+
+    /** Set once disposed, the readers are then no longer pooled. */
+    private boolean disposed;
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    /**
+     * Creates a planner.
+     *
+     * @param file the GeoTIFF file.
+     * @param readerSpi the SPI of the readers decoding the tiles.
+     * @param executor the executor decoding the tiles, or {@code null} for a shared one.
+     */
+    TileReadPlanner(final File file, final TIFFImageReaderSpi readerSpi, final ExecutorService executor) {
+        this.file = file;
+        this.readerSpi = readerSpi;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the channel shared by the reads, opening it again if it has been closed: a thread
+     * interrupted while reading a channel closes it for all of them.
+     */
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    if (LOGGER.isLoggable(Level.FINE))
+                        LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+                }
+            }
+            raf = new RandomAccessFile(file, "r");
+            channel = raf.getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * Returns the tile layout of an image, or {@code null} if it is not tiled.
+     */
+    TileLayout getLayout(final int imageIndex) throws IOException {
+        synchronized (layouts) {
+            TileLayout layout = layouts.get(imageIndex);
+            if (layout == null) {
+                layout = parseLayout(imageIndex);
+                layouts.put(imageIndex, layout != null ? layout : NOT_TILED);
+            }
+            return layout != NOT_TILED ? layout : null;
+        }
+    }
+
+    private TileLayout parseLayout(final int imageIndex) throws IOException {
+        final PooledReader pooled = borrowReader(imageIndex, new long[0], new ByteBuffer[0]);
+        final ImageReader reader = pooled.reader;
+        boolean reusable = false;
+        try {
+            if (!reader.isImageTiled(imageIndex)) {
+                return null;
+            }
+            final IIOMetadata metadata = reader.getImageMetadata(imageIndex);
+            if (!(metadata instanceof TIFFImageMetadata)) {
+                return null;
+            }
+            final TIFFImageMetadata tiffMetadata = (TIFFImageMetadata) metadata;
+            final TIFFField offsets = tiffMetadata.getTIFFField(BaselineTIFFTagSet.TAG_TILE_OFFSETS);
+            final TIFFField byteCounts = tiffMetadata.getTIFFField(BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS);
+            if (offsets == null || byteCounts == null) {
+                return null;
+            }
+            int planes = 1;
+            final TIFFField planar = tiffMetadata.getTIFFField(BaselineTIFFTagSet.TAG_PLANAR_CONFIGURATION);
+            if (planar != null && planar.getAsInt(0) == BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR) {
+                final TIFFField samples = tiffMetadata.getTIFFField(BaselineTIFFTagSet.TAG_SAMPLES_PER_PIXEL);
+                planes = samples != null ? samples.getAsInt(0) : 1;
+            }
+            final int count = offsets.getCount();
+            final long[] tileOffsets = new long[count];
+            final long[] tileByteCounts = new long[count];
+            for (int i = 0; i < count; i++) {
+                tileOffsets[i] = offsets.getAsLong(i);
+                tileByteCounts[i] = i < byteCounts.getCount() ? byteCounts.getAsLong(i) : 0;
+            }
+            final TileLayout layout = new TileLayout(reader.getWidth(imageIndex), reader.getHeight(imageIndex),
+                    reader.getTileWidth(imageIndex), reader.getTileHeight(imageIndex), planes, tileOffsets,
+                    tileByteCounts);
+            if (count != layout.tilesAcross * layout.tilesDown * planes) {
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.fine("Unexpected number of tiles in image " + imageIndex + " of " + file);
+                return null;
+            }
+            reusable = true;
+            return layout;
+        } finally {
+            // the reader keeps the parsed directory for the reads of this image
+            returnReader(imageIndex, pooled, reusable);
+        }
+    }
+
+    /**
+     * Returns a reader for an image, reusing an idle one if any.
+     *
+     * @param imageIndex the image the reader will read.
+     * @param starts the positions of the loaded ranges in the file, sorted.
+     * @param buffers the bytes of the ranges.
+     */
+    private PooledReader borrowReader(final int imageIndex, final long[] starts, final ByteBuffer[] buffers)
+            throws IOException {
+        PooledReader pooled = null;
+        synchronized (idleReaders) {
+            final List<PooledReader> readers = idleReaders.get(imageIndex);
+            if (readers != null && !readers.isEmpty()) {
+                pooled = readers.remove(readers.size() - 1);
+            }
+        }
+        final FileChannel channel = getChannel();
+        if (pooled != null) {
+            pooled.stream.setRanges(channel, starts, buffers);
+            return pooled;
+        }
+        final RangeImageInputStream stream = new RangeImageInputStream(channel, starts, buffers);
+        final ImageReader reader = readerSpi.createReaderInstance();
+        reader.setInput(stream);
+        return new PooledReader(reader, stream);
+    }
+
+    /**
+     * Gives back a reader, which is disposed rather than kept if it failed or if there are
+     * enough idle readers for the image already.
+     */
+    private void returnReader(final int imageIndex, final PooledReader pooled, final boolean reusable) {
+        // the ranges may be unmapped once the read is done
+        pooled.stream.setRanges(null, new long[0], new ByteBuffer[0]);
+        synchronized (idleReaders) {
+            if (reusable && !disposed) {
+                List<PooledReader> readers = idleReaders.get(imageIndex);
+                if (readers == null) {
+                    readers = new ArrayList<PooledReader>();
+                    idleReaders.put(imageIndex, readers);
+                }
+                if (readers.size() < Runtime.getRuntime().availableProcessors()) {
+                    readers.add(pooled);
+                    return;
+                }
+            }
+        }
+        pooled.dispose();
+    }
+
+    /**
+     * Plans the read of a region of an image.
+     *
+     * @param imageIndex the image.
+     * @param region the requested region, in the pixels of the image.
+     * @return the region to read, aligned on tiles, or {@code null} if reading it tile by tile
+     *         is not worth it: the image is not tiled, the region covers too many tiles or the
+     *         whole image.
+     */
+    Rectangle plan(final int imageIndex, final Rectangle region) throws IOException {
+        final TileLayout layout = getLayout(imageIndex);
+        if (layout == null) {
+            return null;
+        }
+        final Rectangle aligned = layout.alignToTiles(region);
+        if (aligned == null || layout.countTiles(aligned) > MAX_TILES
+                || (aligned.width == layout.width && aligned.height == layout.height)) {
+            return null;
+        }
+        return aligned;
+    }
+
+    /**
+     * Reads a region of an image planned with {@link #plan(int, Rectangle)}.
+     *
+     * @param imageIndex the image.
+     * @param region the region, aligned on tiles.
+     * @param xSubsampling the subsampling along the columns.
+     * @param ySubsampling the subsampling along the rows.
+     * @return the image of the region, with the first pixel of the region at the origin.
+     */
+    BufferedImage read(final int imageIndex, final Rectangle region, final int xSubsampling,
+            final int ySubsampling) throws IOException {
+        final TileLayout layout = getLayout(imageIndex);
+        if (layout == null) {
+            throw new IllegalArgumentException("Image " + imageIndex + " is not tiled");
+        }
+
+        // the pieces to decode, each from a tile
+        final List<Integer> tiles = new ArrayList<Integer>();
+        final List<ImageReadParam> params = new ArrayList<ImageReadParam>();
+        final List<Rectangle> destinations = new ArrayList<Rectangle>();
+        final int minCol = region.x / layout.tileWidth;
+        final int minRow = region.y / layout.tileHeight;
+        final int maxCol = (region.x + region.width - 1) / layout.tileWidth;
+        final int maxRow = (region.y + region.height - 1) / layout.tileHeight;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                final Rectangle tile = layout.getTileBounds(col, row).intersection(region);
+                // first sampled pixel in the tile
+                final int dx = (tile.x - region.x + xSubsampling - 1) / xSubsampling;
+                final int dy = (tile.y - region.y + ySubsampling - 1) / ySubsampling;
+                final int sx = region.x + dx * xSubsampling;
+                final int sy = region.y + dy * ySubsampling;
+                if (sx >= tile.x + tile.width || sy >= tile.y + tile.height) {
+                    continue;
+                }
+                final ImageReadParam param = new ImageReadParam();
+                param.setSourceRegion(new Rectangle(sx, sy, tile.x + tile.width - sx, tile.y + tile.height - sy));
+                param.setSourceSubsampling(xSubsampling, ySubsampling, 0, 0);
+                params.add(param);
+                destinations.add(new Rectangle(dx, dy, 0, 0));
+                for (int plane = 0; plane < layout.planes; plane++) {
+                    tiles.add(plane * layout.tilesAcross * layout.tilesDown + row * layout.tilesAcross + col);
+                }
+            }
+        }
+        if (params.isEmpty()) {
+            throw new IllegalArgumentException("No pixel to read in " + region);
+        }
+
+        // load the bytes of the tiles
+        final List<long[]> ranges = coalesce(layout, tiles);
+        final long[] starts = new long[ranges.size()];
+        final ByteBuffer[] buffers = new ByteBuffer[ranges.size()];
+        final List<Piece> pieces = new ArrayList<Piece>(params.size());
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = ranges.get(i)[0];
+                buffers[i] = load(ranges.get(i)[0], ranges.get(i)[1]);
+            }
+            decode(imageIndex, params, destinations, starts, buffers, pieces);
+        } finally {
+            release(buffers);
+        }
+
+        // mosaic the pieces
+        final BufferedImage sample = pieces.get(0).image;
+        final ColorModel cm = sample.getColorModel();
+        final WritableRaster raster = sample.getRaster().createCompatibleWritableRaster(
+                (region.width + xSubsampling - 1) / xSubsampling,
+                (region.height + ySubsampling - 1) / ySubsampling);
+        for (Piece piece : pieces) {
+            raster.setRect(piece.x, piece.y, piece.image.getRaster());
+        }
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Decodes the pieces, spreading them over the threads.
+     */
+    private void decode(final int imageIndex, final List<ImageReadParam> params,
+            final List<Rectangle> destinations, final long[] starts, final ByteBuffer[] buffers,
+            final List<Piece> pieces) throws IOException {
+        final int threads = Math.min(params.size(), Runtime.getRuntime().availableProcessors());
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final List<Callable<List<Piece>>> tasks = new ArrayList<Callable<List<Piece>>>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            tasks.add(new Callable<List<Piece>>() {
+                public List<Piece> call() throws Exception {
+                    final List<Piece> decoded = new ArrayList<Piece>();
+                    final PooledReader pooled = borrowReader(imageIndex, starts, buffers);
+                    boolean reusable = false;
+                    try {
+                        for (int i = first; i < params.size() && !aborted.get(); i += threads) {
+                            final Rectangle destination = destinations.get(i);
+                            decoded.add(new Piece(destination.x, destination.y, decode(pooled, imageIndex, params.get(i))));
+                        }
+                        reusable = true;
+                    } finally {
+                        returnReader(imageIndex, pooled, reusable);
+                    }
+                    return decoded;
+                }
+            });
+        }
+        if (threads == 1) {
+            try {
+                pieces.addAll(tasks.get(0).call());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new DataSourceException(e);
+            }
+            return;
+        }
+        final ExecutorService service = executor != null ? executor : getDefaultExecutor();
+        final List<Future<List<Piece>>> futures = new ArrayList<Future<List<Piece>>>(threads);
+        for (Callable<List<Piece>> task : tasks) {
+            futures.add(service.submit(task));
+        }
+        boolean done = false;
+        try {
+            for (Future<List<Piece>> future : futures) {
+                pieces.addAll(future.get());
+            }
+            done = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new DataSourceException(e.getCause());
+        } finally {
+            if (!done) {
+                // the tasks are not interrupted, which would close the shared channel, but told
+                // to stop, and waited for since they read the ranges released by the caller
+                aborted.set(true);
+                awaitTermination(futures);
+            }
+        }
+    }
+
+    /**
+     * Decodes a piece, reading it again if the channel has been closed by the interruption of
+     * another thread.
+     */
+    private BufferedImage decode(final PooledReader pooled, final int imageIndex, final ImageReadParam param)
+            throws IOException {
+        try {
+            return pooled.reader.read(imageIndex, param);
+        } catch (IOException e) {
+            if (!isClosedChannel(e) || Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            pooled.stream.setChannel(getChannel());
+            return pooled.reader.read(imageIndex, param);
+        }
+    }
+
+    private static boolean isClosedChannel(Throwable e) {
+        for (; e != null; e = e.getCause()) {
+            if (e instanceof ClosedChannelException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the tasks to complete, whatever their outcome.
+     */
+    private static void awaitTermination(final List<? extends Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Unmaps the mapped ranges, rather than leaving them mapped until garbage collected.
+     */
+    private static void release(final ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer instanceof MappedByteBuffer) {
+                NIOUtilities.clean(buffer, true);
+            }
+        }
+    }
+
+    /**
+     * Returns the byte ranges holding the specified tiles, merging the ranges separated by less
+     * than {@link #COALESCE_GAP}.
+     *
+     * @return the ranges as {start, length} pairs, sorted.
+     */
+    static List<long[]> coalesce(final TileLayout layout, final List<Integer> tiles) {
+        final List<long[]> tileRanges = new ArrayList<long[]>(tiles.size());
+        for (int tile : tiles) {
+            if (layout.byteCounts[tile] > 0) {
+                tileRanges.add(new long[] { layout.offsets[tile], layout.offsets[tile] + layout.byteCounts[tile] });
+            }
+        }
+        final long[][] sorted = tileRanges.toArray(new long[tileRanges.size()][]);
+        Arrays.sort(sorted, new Comparator<long[]>() {
+            public int compare(long[] o1, long[] o2) {
+                return o1[0] < o2[0] ? -1 : (o1[0] == o2[0] ? 0 : 1);
+            }
+        });
+        final List<long[]> ranges = new ArrayList<long[]>();
+        long[] last = null;
+        for (long[] range : sorted) {
+            if (last != null && range[0] - last[1] <= COALESCE_GAP
+                    && range[1] - last[0] <= Integer.MAX_VALUE) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                last = new long[] { range[0], range[1] };
+                ranges.add(last);
+            }
+        }
+        for (long[] range : ranges) {
+            range[1] -= range[0];
+        }
+        return ranges;
+    }
+
+    /**
+     * Loads a range of the file, memory mapping it when large enough.
+     */
+    private ByteBuffer load(final long start, final long length) throws IOException {
+        try {
+            return load(getChannel(), start, length);
+        } catch (ClosedChannelException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            // closed by the interruption of another thread reading the channel
+            return load(getChannel(), start, length);
+        }
+    }
+
+    private ByteBuffer load(final FileChannel channel, final long start, final long length) throws IOException {
+        if (length >= MIN_MAPPED_SIZE) {
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            } catch (IOException e) {
+                // some file systems can't map, fall back on a plain read
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.log(Level.FINE, "Unable to map " + file, e);
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.slice();
+    }
+
+    /**
+     * Disposes the readers and closes the file.
+     */
+    synchronized void dispose() {
+        final List<PooledReader> readers = new ArrayList<PooledReader>();
+        synchronized (idleReaders) {
+            disposed = true;
+            for (List<PooledReader> idle : idleReaders.values()) {
+                readers.addAll(idle);
+            }
+            idleReaders.clear();
+        }
+        for (PooledReader pooled : readers) {
+            pooled.dispose();
+        }
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+            }
+            raf = null;
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,885 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Deflater;
+
+import javax.imageio.stream.ImageOutputStream;
+
+import org.geotools.gce.geotiff.GeoTiffWriteParams.OverviewFilter;
+import org.opengis.util.ProgressListener;
+
+/**
+ * Writes a {@link RenderedImage} as a tiled TIFF, compressing the tiles in parallel and
+ * appending reduced resolution images in the same pass.
+ *
+ * <p>
+ * The tiles are encoded by a pool of threads and written in order by the calling thread, with a
+ * bounded number of tiles in flight. Each tile is also reduced by two to feed the row of tiles
+ * of the next overview being built, which is encoded as soon as it is complete: at most a row
+ * of tiles per level is kept in memory, the image is never materialized. The image file
+ * directories are written at the end of the file, the first one being the full resolution
+ * image and the following ones the overviews, flagged as reduced resolution.
+ *
+ * <p>
+ * Only images whose samples are all 8, 16, 32 or 64 bits in a {@link ComponentSampleModel}
+ * are supported, see {@link #isSupported(RenderedImage)}, and the compression is either none,
+ * LZW or Deflate.
+ *
+ * @source $URL$
+ */
+final class TiledTiffEncoder {
+
+    /** TIFF compressions. */
+    static final int COMPRESSION_NONE = 1;
+
+    static final int COMPRESSION_LZW = 5;
+
+    static final int COMPRESSION_DEFLATE = 8;
+
+    /** TIFF field types. */
+    static final int TYPE_BYTE = 1;
+
+    static final int TYPE_ASCII = 2;
+
+    static final int TYPE_SHORT = 3;
+
+    static final int TYPE_LONG = 4;
+
+    static final int TYPE_RATIONAL = 5;
+
+    static final int TYPE_SBYTE = 6;
+
+    static final int TYPE_UNDEFINED = 7;
+
+    static final int TYPE_SSHORT = 8;
+
+    static final int TYPE_SLONG = 9;
+
+    static final int TYPE_SRATIONAL = 10;
+
+    static final int TYPE_FLOAT = 11;
+
+    static final int TYPE_DOUBLE = 12;
+
+    static final int TYPE_LONG8 = 16;
+
+    /** The tags of the fields describing the image layout, written by the encoder itself. */
+    static final int[] LAYOUT_TAGS = { 254, 255, 256, 257, 258, 259, 262, 273, 277, 278, 279,
+            284, 317, 320, 322, 323, 324, 325, 338, 339, 340, 341 };
+
+    /** Number of tiles in flight per encoding thread. */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    /**
+     * A TIFF field, its value already encoded in big endian order.
+     */
+    static final class Field implements Comparable<Field> {
+
+        final int tag;
+
+        final int type;
+
+        final long count;
+
+        final byte[] value;
+
+        Field(final int tag, final int type, final long count, final byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+
+        static Field shorts(final int tag, final int... values) {
+            final ByteBuffer buffer = ByteBuffer.allocate(values.length * 2);
+            for (int value : values) {
+                buffer.putShort((short) value);
+            }
+            return new Field(tag, TYPE_SHORT, values.length, buffer.array());
+        }
+
+        static Field longs(final int tag, final boolean bigTiff, final long... values) {
+            final ByteBuffer buffer = ByteBuffer.allocate(values.length * (bigTiff ? 8 : 4));
+            for (long value : values) {
+                if (bigTiff) {
+                    buffer.putLong(value);
+                } else {
+                    buffer.putInt((int) value);
+                }
+            }
+            return new Field(tag, bigTiff ? TYPE_LONG8 : TYPE_LONG, values.length, buffer.array());
+        }
+
+        public int compareTo(Field o) {
+            return tag < o.tag ? -1 : (tag == o.tag ? 0 : 1);
+        }
+    }
+
+    /**
+     * An image to encode, the full resolution image or an overview.
+     */
+    private static final class Level {
+
+        final int width;
+
+        final int height;
+
+        final int tilesAcross;
+
+        final int tilesDown;
+
+        final long[] offsets;
+
+        final long[] byteCounts;
+
+        /** The row of tiles of this level being filled from the level above, if any. */
+        WritableRaster row;
+
+        Level(final int width, final int height, final int tileWidth, final int tileHeight) {
+            this.width = width;
+            this.height = height;
+            this.tilesAcross = (width + tileWidth - 1) / tileWidth;
+            this.tilesDown = (height + tileHeight - 1) / tileHeight;
+            this.offsets = new long[tilesAcross * tilesDown];
+            this.byteCounts = new long[tilesAcross * tilesDown];
+        }
+    }
+
+    /**
+     * An encoded tile, with its reduction for the next level.
+     */
+    private static final class EncodedTile {
+
+        final int level;
+
+        final int col;
+
+        final int row;
+
+        final byte[] data;
+
+        final Raster reduced;
+
+        EncodedTile(final int level, final int col, final int row, final byte[] data, final Raster reduced) {
+            this.level = level;
+            this.col = col;
+            this.row = row;
+            this.data = data;
+            this.reduced = reduced;
+        }
+    }
+
+    private final RenderedImage image;
+
+    private final int tileWidth;
+
+    private final int tileHeight;
+
+    private final int compression;
+
+    private final int deflateLevel;
+
+    private final OverviewFilter filter;
+
+    private final double noData;
+
+    private final boolean bigTiff;
+
+    private final int numBands;
+
+    private final int dataType;
+
+    private final int bytesPerSample;
+
+    private final List<Level> levels = new ArrayList<Level>();
+
+    /**
+     * Creates an encoder.
+     *
+     * @param image the image to encode, see {@link #isSupported(RenderedImage)}.
+     * @param tileWidth the tile width, a multiple of 16.
+     * @param tileHeight the tile height, a multiple of 16.
+     * @param compression one of the {@code COMPRESSION_*} constants.
+     * @param deflateLevel the {@link Deflater} level for the Deflate compression.
+     * @param overviews the maximum number of overviews, they stop once fitting in a tile.
+     * @param filter how the overviews are computed.
+     * @param noData the value of the missing samples, ignored by the averages, or NaN.
+     * @param forceBigTiff whether to write a BigTIFF even if the image fits in a TIFF.
+     */
+    TiledTiffEncoder(final RenderedImage image, final int tileWidth, final int tileHeight,
+            final int compression, final int deflateLevel, final int overviews,
+            final OverviewFilter filter, final double noData, final boolean forceBigTiff) {
+        if (tileWidth % 16 != 0 || tileHeight % 16 != 0 || tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("The tile size must be a multiple of 16: " + tileWidth + "x" + tileHeight);
+        }
+        this.image = image;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.compression = compression;
+        this.deflateLevel = deflateLevel;
+        // averaging palette indices makes no sense
+        this.filter = image.getColorModel() instanceof IndexColorModel ? OverviewFilter.NEAREST : filter;
+        this.noData = noData;
+        final SampleModel sm = image.getSampleModel();
+        this.numBands = sm.getNumBands();
+        this.dataType = sm.getDataType();
+        this.bytesPerSample = DataBuffer.getDataTypeSize(dataType) / 8;
+
+        int width = image.getWidth(), height = image.getHeight();
+        levels.add(new Level(width, height, tileWidth, tileHeight));
+        for (int i = 0; i < overviews && (width > tileWidth || height > tileHeight); i++) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            levels.add(new Level(width, height, tileWidth, tileHeight));
+        }
+
+        // the classic TIFF offsets are limited to 4GB
+        long size = 0;
+        for (Level level : levels) {
+            size += (long) level.tilesAcross * level.tilesDown * tileWidth * tileHeight * numBands * bytesPerSample;
+        }
+        this.bigTiff = forceBigTiff || size + size / 10 >= 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns whether the encoder can write the specified image.
+     */
+    static boolean isSupported(final RenderedImage image) {
+        final SampleModel sm = image.getSampleModel();
+        if (!(sm instanceof ComponentSampleModel)) {
+            return false;
+        }
+        switch (sm.getDataType()) {
+        case DataBuffer.TYPE_BYTE:
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+        case DataBuffer.TYPE_INT:
+        case DataBuffer.TYPE_FLOAT:
+        case DataBuffer.TYPE_DOUBLE:
+            break;
+        default:
+            return false;
+        }
+        final int size = DataBuffer.getDataTypeSize(sm.getDataType());
+        for (int sampleSize : sm.getSampleSize()) {
+            if (sampleSize != size) {
+                return false;
+            }
+        }
+        final ColorModel cm = image.getColorModel();
+        return !(cm instanceof IndexColorModel) || sm.getNumBands() == 1;
+    }
+
+    /** Returns the number of images written, the full resolution one and the overviews. */
+    int getNumImages() {
+        return levels.size();
+    }
+
+    boolean isBigTiff() {
+        return bigTiff;
+    }
+
+    /**
+     * Writes the image.
+     *
+     * @param out the stream, positioned where the TIFF starts.
+     * @param fields the additional fields of the full resolution image, such as the GeoTIFF
+     *        ones, the layout fields are ignored.
+     * @param threads the number of encoding threads.
+     * @param listener the listener to notify of the progress, may be {@code null}.
+     * @return {@code false} if the listener canceled the write.
+     */
+    boolean write(final ImageOutputStream out, final List<Field> fields, final int threads,
+            final ProgressListener listener) throws IOException {
+        out.setByteOrder(ByteOrder.BIG_ENDIAN);
+        final long start = out.getStreamPosition();
+        out.writeByte('M');
+        out.writeByte('M');
+        if (bigTiff) {
+            out.writeShort(43);
+            out.writeShort(8);
+            out.writeShort(0);
+            out.writeLong(0);
+        } else {
+            out.writeShort(42);
+            out.writeInt(0);
+        }
+
+        long total = 0;
+        for (Level level : levels) {
+            total += level.offsets.length;
+        }
+        if (listener != null) {
+            listener.started();
+        }
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        final LinkedList<Future<EncodedTile>> pending = new LinkedList<Future<EncodedTile>>();
+        try {
+            final Level first = levels.get(0);
+            final int maxPending = Math.max(1, threads) * MAX_PENDING_PER_THREAD;
+            long written = 0;
+            for (int row = 0; row < first.tilesDown; row++) {
+                for (int col = 0; col < first.tilesAcross; col++) {
+                    while (pending.size() >= maxPending) {
+                        writeNext(out, start, pending, executor);
+                        written++;
+                    }
+                    if (listener != null) {
+                        if (listener.isCanceled()) {
+                            return false;
+                        }
+                        listener.progress(100f * written / total);
+                    }
+                    final Rectangle bounds = new Rectangle(col * tileWidth, row * tileHeight, tileWidth, tileHeight)
+                            .intersection(new Rectangle(0, 0, first.width, first.height));
+                    final Callable<Raster> source = new Callable<Raster>() {
+                        public Raster call() {
+                            return image.getData(new Rectangle(image.getMinX() + bounds.x, image.getMinY()
+                                    + bounds.y, bounds.width, bounds.height));
+                        }
+                    };
+                    pending.add(submit(executor, new TileTask(0, col, row, source)));
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeNext(out, start, pending, executor);
+                written++;
+                if (listener != null) {
+                    if (listener.isCanceled()) {
+                        return false;
+                    }
+                    listener.progress(100f * written / total);
+                }
+            }
+        } finally {
+            for (Future<EncodedTile> future : pending) {
+                future.cancel(true);
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        writeDirectories(out, start, fields);
+        if (listener != null) {
+            listener.complete();
+        }
+        return true;
+    }
+
+    private static Future<EncodedTile> submit(final ExecutorService executor, final Callable<EncodedTile> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        // no threads, run the task right away
+        final FutureTask<EncodedTile> future = new FutureTask<EncodedTile>(task);
+        future.run();
+        return future;
+    }
+
+    /**
+     * Writes the oldest pending tile, scheduling the tiles of the next level it completes.
+     */
+    private void writeNext(final ImageOutputStream out, final long start,
+            final LinkedList<Future<EncodedTile>> pending, final ExecutorService executor) throws IOException {
+        final EncodedTile tile;
+        try {
+            tile = pending.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding the tiles");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            final IOException ioe = new IOException(cause.getLocalizedMessage());
+            ioe.initCause(cause);
+            throw ioe;
+        }
+
+        final Level level = levels.get(tile.level);
+        final int index = tile.row * level.tilesAcross + tile.col;
+        final long offset = out.getStreamPosition() - start;
+        if (!bigTiff && offset + tile.data.length > 0xFFFFFFFFL) {
+            throw new IOException("The image does not fit in a TIFF file, a BigTIFF must be written");
+        }
+        level.offsets[index] = offset;
+        level.byteCounts[index] = tile.data.length;
+        out.write(tile.data);
+
+        // feed the next level
+        if (tile.reduced == null) {
+            return;
+        }
+        final Level next = levels.get(tile.level + 1);
+        if (next.row == null) {
+            next.row = Raster.createWritableRaster(image.getSampleModel().createCompatibleSampleModel(
+                    next.width, tileHeight), null);
+        }
+        next.row.setRect(tile.col * tileWidth / 2, (tile.row % 2) * tileHeight / 2, tile.reduced);
+        if (tile.col == level.tilesAcross - 1 && (tile.row % 2 == 1 || tile.row == level.tilesDown - 1)) {
+            // a row of tiles of the next level is complete
+            final WritableRaster completed = next.row;
+            next.row = null;
+            final int nextRow = tile.row / 2;
+            final int height = Math.min(tileHeight, next.height - nextRow * tileHeight);
+            for (int col = 0; col < next.tilesAcross; col++) {
+                final int x = col * tileWidth;
+                final int width = Math.min(tileWidth, next.width - x);
+                final Callable<Raster> source = new Callable<Raster>() {
+                    public Raster call() {
+                        return completed.createChild(x, 0, width, height, 0, 0, null);
+                    }
+                };
+                pending.add(submit(executor, new TileTask(tile.level + 1, col, nextRow, source)));
+            }
+        }
+    }
+
+    /**
+     * Fetches, encodes and reduces a tile.
+     */
+    private final class TileTask implements Callable<EncodedTile> {
+
+        private final int level;
+
+        private final int col;
+
+        private final int row;
+
+        private final Callable<Raster> source;
+
+        TileTask(final int level, final int col, final int row, final Callable<Raster> source) {
+            this.level = level;
+            this.col = col;
+            this.row = row;
+            this.source = source;
+        }
+
+        public EncodedTile call() throws Exception {
+            final Raster data = source.call();
+            final int width = data.getWidth();
+            final int height = data.getHeight();
+            final int minX = data.getMinX();
+            final int minY = data.getMinY();
+
+            // tiles are always complete, the ones on the borders are padded
+            final WritableRaster tile = Raster.createWritableRaster(image.getSampleModel()
+                    .createCompatibleSampleModel(tileWidth, tileHeight), null);
+            tile.setRect(-minX, -minY, data);
+            final byte[] encoded = compress(toBytes(tile));
+            final Raster reduced = level + 1 < levels.size() ? reduce(tile, width, height) : null;
+            return new EncodedTile(level, col, row, encoded, reduced);
+        }
+    }
+
+    /**
+     * Returns the samples of a tile, pixel interleaved in big endian order.
+     */
+    private byte[] toBytes(final Raster tile) {
+        final int width = tile.getWidth();
+        final ByteBuffer buffer = ByteBuffer.allocate(tileWidth * tileHeight * numBands * bytesPerSample);
+        switch (dataType) {
+        case DataBuffer.TYPE_FLOAT: {
+            float[] samples = null;
+            for (int y = 0; y < tileHeight; y++) {
+                samples = tile.getPixels(0, y, width, 1, samples);
+                for (float sample : samples) {
+                    buffer.putFloat(sample);
+                }
+            }
+            break;
+        }
+        case DataBuffer.TYPE_DOUBLE: {
+            double[] samples = null;
+            for (int y = 0; y < tileHeight; y++) {
+                samples = tile.getPixels(0, y, width, 1, samples);
+                for (double sample : samples) {
+                    buffer.putDouble(sample);
+                }
+            }
+            break;
+        }
+        default: {
+            int[] samples = null;
+            for (int y = 0; y < tileHeight; y++) {
+                samples = tile.getPixels(0, y, width, 1, samples);
+                for (int sample : samples) {
+                    switch (bytesPerSample) {
+                    case 1:
+                        buffer.put((byte) sample);
+                        break;
+                    case 2:
+                        buffer.putShort((short) sample);
+                        break;
+                    default:
+                        buffer.putInt(sample);
+                    }
+                }
+            }
+        }
+        }
+        return buffer.array();
+    }
+
+    private byte[] compress(final byte[] data) {
+        switch (compression) {
+        case COMPRESSION_LZW:
+            return lzw(data);
+        case COMPRESSION_DEFLATE: {
+            final Deflater deflater = new Deflater(deflateLevel);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                final byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+        default:
+            return data;
+        }
+    }
+
+    /**
+     * Reduces the valid part of a tile by two in both directions.
+     */
+    private Raster reduce(final Raster tile, final int width, final int height) {
+        final int reducedWidth = (width + 1) / 2;
+        final int reducedHeight = (height + 1) / 2;
+        final WritableRaster reduced = tile.createCompatibleWritableRaster(reducedWidth, reducedHeight);
+        final double[] row0 = new double[width * numBands];
+        final double[] row1 = new double[width * numBands];
+        final double[] result = new double[reducedWidth * numBands];
+        final boolean floating = dataType == DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE;
+        for (int y = 0; y < reducedHeight; y++) {
+            tile.getPixels(0, 2 * y, width, 1, row0);
+            final boolean single = 2 * y + 1 >= height;
+            if (!single) {
+                tile.getPixels(0, 2 * y + 1, width, 1, row1);
+            }
+            for (int x = 0; x < reducedWidth; x++) {
+                for (int b = 0; b < numBands; b++) {
+                    final int i = (2 * x) * numBands + b;
+                    if (filter == OverviewFilter.NEAREST) {
+                        result[x * numBands + b] = row0[i];
+                        continue;
+                    }
+                    // average of the valid samples of the 2x2 block
+                    double sum = 0;
+                    int count = 0;
+                    for (int k = 0; k < 4; k++) {
+                        final boolean right = (k & 1) != 0;
+                        final boolean bottom = (k & 2) != 0;
+                        if ((right && 2 * x + 1 >= width) || (bottom && single)) {
+                            continue;
+                        }
+                        final double value = (bottom ? row1 : row0)[i + (right ? numBands : 0)];
+                        if (Double.isNaN(value) || value == noData) {
+                            continue;
+                        }
+                        sum += value;
+                        count++;
+                    }
+                    if (count == 0) {
+                        result[x * numBands + b] = row0[i];
+                    } else {
+                        result[x * numBands + b] = floating ? sum / count : Math.floor(sum / count + 0.5);
+                    }
+                }
+            }
+            reduced.setPixels(0, y, reducedWidth, 1, result);
+        }
+        return reduced;
+    }
+
+    /**
+     * Compresses data with the TIFF flavour of LZW.
+     */
+    static byte[] lzw(final byte[] data) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        final int clearCode = 256, endOfInformation = 257;
+        // open addressing table of the strings, keyed by prefix code and next byte
+        final int tableSize = 9973;
+        final int[] keys = new int[tableSize];
+        final int[] codes = new int[tableSize];
+        Arrays.fill(keys, -1);
+
+        int bitBuffer = 0, bitCount = 0;
+        int codeLength = 9, nextCode = 258, limit = 510;
+        // clear code first
+        bitBuffer = clearCode;
+        bitCount = codeLength;
+        int prefix = -1;
+        for (int i = 0; i < data.length; i++) {
+            final int c = data[i] & 0xFF;
+            if (prefix < 0) {
+                prefix = c;
+                continue;
+            }
+            final int key = (prefix << 8) | c;
+            int slot = (key * 31 + c) % tableSize;
+            if (slot < 0) {
+                slot += tableSize;
+            }
+            while (keys[slot] != -1 && keys[slot] != key) {
+                slot = slot + 1 == tableSize ? 0 : slot + 1;
+            }
+            if (keys[slot] == key) {
+                prefix = codes[slot];
+                continue;
+            }
+            // emit the prefix and add the new string
+            bitBuffer = (bitBuffer << codeLength) | prefix;
+            bitCount += codeLength;
+            while (bitCount >= 8) {
+                out.write(bitBuffer >>> (bitCount - 8));
+                bitCount -= 8;
+            }
+            keys[slot] = key;
+            codes[slot] = nextCode;
+            if (nextCode++ > limit) {
+                if (codeLength == 12) {
+                    bitBuffer = (bitBuffer << codeLength) | clearCode;
+                    bitCount += codeLength;
+                    while (bitCount >= 8) {
+                        out.write(bitBuffer >>> (bitCount - 8));
+                        bitCount -= 8;
+                    }
+                    Arrays.fill(keys, -1);
+                    nextCode = 258;
+                    codeLength = 9;
+                } else {
+                    codeLength++;
+                }
+                limit = (1 << codeLength) - 2;
+            }
+            prefix = c;
+        }
+        if (prefix >= 0) {
+            bitBuffer = (bitBuffer << codeLength) | prefix;
+            bitCount += codeLength;
+            while (bitCount >= 8) {
+                out.write(bitBuffer >>> (bitCount - 8));
+                bitCount -= 8;
+            }
+        }
+        bitBuffer = (bitBuffer << codeLength) | endOfInformation;
+        bitCount += codeLength;
+        while (bitCount >= 8) {
+            out.write(bitBuffer >>> (bitCount - 8));
+            bitCount -= 8;
+        }
+        if (bitCount > 0) {
+            out.write(bitBuffer << (8 - bitCount));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the image file directories of all the levels at the end of the stream and links
+     * the header to the first one.
+     */
+    private void writeDirectories(final ImageOutputStream out, final long start, final List<Field> extraFields)
+            throws IOException {
+        long position = out.getStreamPosition();
+        if ((position - start) % 2 != 0) {
+            out.writeByte(0);
+            position++;
+        }
+        final long firstDirectory = position - start;
+        for (int i = 0; i < levels.size(); i++) {
+            final List<Field> fields = createFields(levels.get(i), i == 0);
+            if (i == 0) {
+                for (Field field : extraFields) {
+                    if (Arrays.binarySearch(LAYOUT_TAGS, field.tag) < 0) {
+                        fields.add(field);
+                    }
+                }
+            }
+            final boolean last = i == levels.size() - 1;
+            writeDirectory(out, start, fields, last);
+        }
+        final long end = out.getStreamPosition();
+        out.seek(start + (bigTiff ? 8 : 4));
+        if (bigTiff) {
+            out.writeLong(firstDirectory);
+        } else {
+            out.writeInt((int) firstDirectory);
+        }
+        out.seek(end);
+    }
+
+    private List<Field> createFields(final Level level, final boolean fullResolution) {
+        final List<Field> fields = new ArrayList<Field>();
+        // reduced resolution image
+        fields.add(Field.longs(254, false, fullResolution ? 0 : 1));
+        fields.add(Field.longs(256, false, level.width));
+        fields.add(Field.longs(257, false, level.height));
+        final int[] bits = new int[numBands];
+        final int[] formats = new int[numBands];
+        final int format = dataType == DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE ? 3
+                : (dataType == DataBuffer.TYPE_SHORT || dataType == DataBuffer.TYPE_INT ? 2 : 1);
+        Arrays.fill(bits, bytesPerSample * 8);
+        Arrays.fill(formats, format);
+        fields.add(Field.shorts(258, bits));
+        fields.add(Field.shorts(259, compression));
+
+        // photometric interpretation
+        final ColorModel cm = image.getColorModel();
+        int extraSamples = numBands;
+        int alpha = 0;
+        if (cm instanceof IndexColorModel) {
+            fields.add(Field.shorts(262, 3));
+            final IndexColorModel icm = (IndexColorModel) cm;
+            final int entries = 1 << (bytesPerSample * 8);
+            final int[] colorMap = new int[3 * entries];
+            for (int i = 0; i < entries && i < icm.getMapSize(); i++) {
+                colorMap[i] = icm.getRed(i) * 257;
+                colorMap[entries + i] = icm.getGreen(i) * 257;
+                colorMap[2 * entries + i] = icm.getBlue(i) * 257;
+            }
+            fields.add(Field.shorts(320, colorMap));
+            extraSamples = 0;
+        } else if (cm != null && cm.getColorSpace().getNumComponents() == 3 && numBands >= 3) {
+            fields.add(Field.shorts(262, 2));
+            extraSamples = numBands - 3;
+        } else {
+            fields.add(Field.shorts(262, 1));
+            extraSamples = numBands - 1;
+        }
+        if (cm != null && cm.hasAlpha() && !(cm instanceof IndexColorModel)) {
+            alpha = cm.isAlphaPremultiplied() ? 1 : 2;
+        }
+        fields.add(Field.shorts(277, numBands));
+        fields.add(Field.shorts(284, 1));
+        fields.add(Field.shorts(322, tileWidth));
+        fields.add(Field.shorts(323, tileHeight));
+        fields.add(Field.longs(324, bigTiff, level.offsets));
+        fields.add(Field.longs(325, bigTiff, level.byteCounts));
+        if (extraSamples > 0) {
+            final int[] extra = new int[extraSamples];
+            extra[extraSamples - 1] = alpha;
+            fields.add(Field.shorts(338, extra));
+        }
+        fields.add(Field.shorts(339, formats));
+        return fields;
+    }
+
+    /**
+     * Writes a directory at the current position, followed by the values not fitting in its
+     * entries.
+     */
+    private void writeDirectory(final ImageOutputStream out, final long start, final List<Field> fields,
+            final boolean last) throws IOException {
+        Collections.sort(fields);
+        final int entrySize = bigTiff ? 20 : 12;
+        final int inlineSize = bigTiff ? 8 : 4;
+        final long directory = out.getStreamPosition() - start;
+        final long directorySize = (bigTiff ? 8 : 2) + (long) fields.size() * entrySize + (bigTiff ? 8 : 4);
+
+        // the values not fitting in the entries follow the directory
+        long valuePosition = directory + directorySize;
+        final long[] valueOffsets = new long[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            if (field.value.length > inlineSize) {
+                valueOffsets[i] = valuePosition;
+                valuePosition += field.value.length + (field.value.length % 2);
+            }
+        }
+        if (!bigTiff && valuePosition > 0xFFFFFFFFL) {
+            throw new IOException("The image does not fit in a TIFF file, a BigTIFF must be written");
+        }
+
+        if (bigTiff) {
+            out.writeLong(fields.size());
+        } else {
+            out.writeShort(fields.size());
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            out.writeShort(field.tag);
+            out.writeShort(field.type);
+            if (bigTiff) {
+                out.writeLong(field.count);
+            } else {
+                out.writeInt((int) field.count);
+            }
+            if (field.value.length > inlineSize) {
+                if (bigTiff) {
+                    out.writeLong(valueOffsets[i]);
+                } else {
+                    out.writeInt((int) valueOffsets[i]);
+                }
+            } else {
+                out.write(field.value);
+                for (int j = field.value.length; j < inlineSize; j++) {
+                    out.writeByte(0);
+                }
+            }
+        }
+        final long next = last ? 0 : valuePosition;
+        if (bigTiff) {
+            out.writeLong(next);
+        } else {
+            out.writeInt((int) next);
+        }
+        for (Field field : fields) {
+            if (field.value.length > inlineSize) {
+                out.write(field.value);
+                if (field.value.length % 2 != 0) {
+                    out.writeByte(0);
+                }
+            }
+        }
+    }
+}
@@ -20,7 +20,10 @@ package org.geotools.gce.geotiff;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.util.logging.Logger;
@@ -30,15 +33,19 @@ import javax.media.jai.PlanarImage;
 import junit.framework.Assert;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
 import org.geotools.coverage.grid.io.imageio.IIOMetadataDumper;
 import org.geotools.data.DataSourceException;
 import org.geotools.factory.Hints;
+import org.geotools.geometry.Envelope2D;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultEngineeringCRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.test.TestData;
 import org.junit.Test;
 import org.opengis.parameter.GeneralParameterValue;
@@ -361,6 +368,79 @@ public class GeoTiffReaderTest extends Assert {
         
     }
 
+    @Test
+    public void testTiledWindowRead() throws Exception {
+        // a tiled geotiff, 0.1 degrees per pixel
+        final BufferedImage image = new BufferedImage(512, 512, BufferedImage.TYPE_BYTE_GRAY);
+        final WritableRaster raster = image.getRaster();
+        for (int y = 0; y < 512; y++) {
+            for (int x = 0; x < 512; x++) {
+                raster.setSample(x, y, 0, (x ^ y) & 0xFF);
+            }
+        }
+        final GeneralEnvelope envelope = new GeneralEnvelope(new double[] { 0, 0 }, new double[] { 51.2, 51.2 });
+        envelope.setCoordinateReferenceSystem(DefaultGeographicCRS.WGS84);
+        final GridCoverage2D source = new GridCoverageFactory().create("tiled", image, envelope);
+        final File file = new File(TestData.file(GeoTiffReaderTest.class, "."), "tiled.tif");
+        final GeoTiffWriteParams wp = new GeoTiffWriteParams();
+        wp.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
+        wp.setTiling(64, 64);
+        final ParameterValue<GeoToolsWriteParams> value = GeoTiffFormat.GEOTOOLS_WRITE_PARAMS.createValue();
+        value.setValue(wp);
+        final GeoTiffWriter writer = new GeoTiffWriter(file);
+        writer.write(source, new GeneralParameterValue[] { value });
+        writer.dispose();
+
+        final GeoTiffReader reader = new GeoTiffReader(file);
+        try {
+            // a 10x10 window at full resolution, only the tile holding it is read
+            final GeneralEnvelope window = new GeneralEnvelope(new double[] { 10.05, 20.05 },
+                    new double[] { 11.05, 21.05 });
+            window.setCoordinateReferenceSystem(DefaultGeographicCRS.WGS84);
+            final ParameterValue<GridGeometry2D> gg = AbstractGridFormat.READ_GRIDGEOMETRY2D.createValue();
+            gg.setValue(new GridGeometry2D(new GridEnvelope2D(0, 0, 10, 10), window));
+            final GridCoverage2D coverage = reader.read(new GeneralParameterValue[] { gg });
+            final RenderedImage read = coverage.getRenderedImage();
+            assertEquals(64, read.getWidth());
+            assertEquals(64, read.getHeight());
+            final Envelope2D bounds = coverage.getEnvelope2D();
+            assertEquals(6.4, bounds.getMinX(), 1E-6);
+            assertEquals(12.8, bounds.getMaxX(), 1E-6);
+            assertEquals(19.2, bounds.getMinY(), 1E-6);
+            assertEquals(25.6, bounds.getMaxY(), 1E-6);
+            final Raster data = read.getData();
+            for (int y = 0; y < 64; y++) {
+                for (int x = 0; x < 64; x++) {
+                    assertEquals(((x + 64) ^ (y + 256)) & 0xFF,
+                            data.getSample(read.getMinX() + x, read.getMinY() + y, 0));
+                }
+            }
+            coverage.dispose(true);
+
+            // a read interrupted while reading the file closes its channel, which is then reopened
+            Thread.currentThread().interrupt();
+            try {
+                reader.read(new GeneralParameterValue[] { gg }).dispose(true);
+            } catch (Exception e) {
+                // the interrupted read may fail
+            } finally {
+                Thread.interrupted();
+            }
+            final GridCoverage2D again = reader.read(new GeneralParameterValue[] { gg });
+            final RenderedImage image2 = again.getRenderedImage();
+            assertEquals((64 ^ 256) & 0xFF, image2.getData().getSample(image2.getMinX(), image2.getMinY(), 0));
+            again.dispose(true);
+
+            // the whole image still goes through the deferred read
+            final GridCoverage2D whole = reader.read(null);
+            assertEquals(512, whole.getRenderedImage().getWidth());
+            whole.dispose(true);
+        } finally {
+            reader.dispose();
+            file.delete();
+        }
+    }
+
     class GeoTiffReaderTester extends GeoTiffReader {
         public GeoTiffReaderTester(Object input) throws DataSourceException {
             super(input);
@@ -17,8 +17,11 @@
 package org.geotools.gce.geotiff;
 
 import it.geosolutions.imageio.plugins.tiff.BaselineTIFFTagSet;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
 
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.FileInputStream;
@@ -26,11 +29,15 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.logging.Logger;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.media.jai.PlanarImage;
 
 import junit.framework.Assert;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
@@ -43,6 +50,7 @@ import org.geotools.factory.Hints;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.image.io.GridCoverageWriterProgressAdapter;
 import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.operation.matrix.XAffineTransform;
 import org.geotools.test.TestData;
 import org.junit.Ignore;
@@ -587,5 +595,71 @@ public class GeoTiffWriterTest extends Assert {
             i++;
         }
     }
-    
+
+    @Test
+    public void testWriteTiledWithOverviews() throws Exception {
+        // a 600x500 image, 0.1 degrees per pixel
+        final BufferedImage image = new BufferedImage(600, 500, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < 500; y++) {
+            for (int x = 0; x < 600; x++) {
+                image.setRGB(x, y, ((x & 0xFF) << 16) | ((y & 0xFF) << 8) | ((x ^ y) & 0xFF));
+            }
+        }
+        final GeneralEnvelope envelope = new GeneralEnvelope(new double[] { 0, 0 }, new double[] { 60, 50 });
+        envelope.setCoordinateReferenceSystem(DefaultGeographicCRS.WGS84);
+        final GridCoverage2D coverage = new GridCoverageFactory().create("overviews", image, envelope);
+
+        final File output = new File(TestData.file(GeoTiffReaderTest.class, "."), "overviews.tif");
+        final GeoTiffWriteParams params = new GeoTiffWriteParams();
+        params.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
+        params.setTiling(128, 128);
+        params.setCompressionMode(GeoToolsWriteParams.MODE_EXPLICIT);
+        params.setCompressionType("LZW");
+        params.setOverviews(5);
+        params.setOverviewFilter(GeoTiffWriteParams.OverviewFilter.AVERAGE);
+        params.setEncodingThreads(4);
+        final ParameterValue<GeoToolsWriteParams> value = GeoTiffFormat.GEOTOOLS_WRITE_PARAMS.createValue();
+        value.setValue(params);
+        final GeoTiffWriter writer = new GeoTiffWriter(output);
+        writer.write(coverage, new GeneralParameterValue[] { value });
+        writer.dispose();
+
+        try {
+            // the overviews stop once fitting in a tile: 300x250, 150x125 and 75x63
+            final ImageReader tiffReader = new TIFFImageReaderSpi().createReaderInstance();
+            final ImageInputStream stream = ImageIO.createImageInputStream(output);
+            try {
+                tiffReader.setInput(stream);
+                assertEquals(4, tiffReader.getNumImages(true));
+                assertTrue(tiffReader.isImageTiled(1));
+                assertEquals(300, tiffReader.getWidth(1));
+                assertEquals(250, tiffReader.getHeight(1));
+                assertEquals(75, tiffReader.getWidth(3));
+                assertEquals(63, tiffReader.getHeight(3));
+            } finally {
+                tiffReader.dispose();
+                stream.close();
+            }
+
+            // georeferencing and pixels are preserved
+            final GeoTiffReader reader = new GeoTiffReader(output);
+            final GridCoverage2D read = reader.read(null);
+            assertTrue(CRS.equalsIgnoreMetadata(DefaultGeographicCRS.WGS84, read.getCoordinateReferenceSystem()));
+            assertEquals(0, read.getEnvelope().getMinimum(0), 1E-6);
+            assertEquals(50, read.getEnvelope().getMaximum(1), 1E-6);
+            final Raster expected = image.getData();
+            final Raster actual = read.getRenderedImage().getData();
+            for (int y = 0; y < 500; y += 7) {
+                for (int x = 0; x < 600; x += 3) {
+                    for (int b = 0; b < 3; b++) {
+                        assertEquals(expected.getSample(x, y, b), actual.getSample(x, y, b));
+                    }
+                }
+            }
+            read.dispose(true);
+            reader.dispose();
+        } finally {
+            output.delete();
+        }
+    }
 }
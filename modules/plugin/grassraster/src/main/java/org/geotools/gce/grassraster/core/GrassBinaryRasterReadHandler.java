@@ -25,16 +25,19 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReadParam;
@@ -76,6 +79,30 @@ import org.opengis.util.ProgressListener;
  */
 public class GrassBinaryRasterReadHandler {
 
+    /**
+     * the minimum number of cells of a read for its rows to be read in parallel.
+     */
+    private static final long MIN_PARALLEL_CELLS = 64 * 1024;
+
+    /**
+     * the executor reading the rows in parallel.
+     */
+    private static ExecutorService executor;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory(){
+                        public Thread newThread( Runnable r ) {
+                            final Thread thread = new Thread(r, "GrassRasterReader");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+
     /**
      * The flag that defines whether to abort or not.
      */
@@ -86,11 +113,6 @@ public class GrassBinaryRasterReadHandler {
      */
     private ImageInputStream imageIS = null;
 
-    /**
-     * {@linkplain ImageInputStream} used to read the input data null bitmap.
-     */
-    private ImageInputStream imageNullFileIS = null;
-
     /**
      * the value used to represent non existing data for in the raster.
      */
@@ -148,8 +170,10 @@ public class GrassBinaryRasterReadHandler {
      */
     private long[] addressesOfRows;
 
-    private int rowCacheRow = -1;
-    private int firstDataRow = -1;
+    /**
+     * the random access reader of the rows of the map.
+     */
+    private GrassRowReader rowReader;
 
     private int rasterMapWidth;
 
@@ -293,117 +317,174 @@ public class GrassBinaryRasterReadHandler {
             throw new IOException("Raster type not supported."); //$NON-NLS-1$
         }
 
-        /* Allocate the space for the map data. */
-        int activeRows = activeReadRegion.getRows();
-        int activeCols = activeReadRegion.getCols();
-        int bufferSize = activeRows * activeCols * numberOfBytesPerValue;
-        ByteBuffer rasterByteBuffer = ByteBuffer.allocate(bufferSize);
-
-        /* Byte array that will hold a complete null row */
-        byte[] nullRow = null;
-        /* The rowDataArray holds the unpacked row data */
-        byte[] rowDataCache = new byte[activeCols * numberOfBytesPerValue];
-        rowCacheRow = -1;
-        firstDataRow = -1;
-        int rowindex = -1;
+        /* Map the columns of the data window on the columns of the map file. */
+        final int activeRows = activeReadRegion.getRows();
+        final int activeCols = activeReadRegion.getCols();
+        final int filecols = nativeRasterRegion.getCols();
+        final double activeewres = activeReadRegion.getWEResolution();
+        final double activewest = activeReadRegion.getWest();
+        final double filewest = nativeRasterRegion.getWest();
+        final double fileewres = nativeRasterRegion.getWEResolution();
+        final int[] fileColumns = new int[activeCols];
+        int firstFileCol = Integer.MAX_VALUE;
+        int lastFileCol = -1;
+        for( int col = 0; col < activeCols; col++ ) {
+            double x = (((activewest + (col * activeewres)) - filewest) / fileewres);
+            x = Math.round(x);
+            if (x < 0 || x >= filecols) {
+                fileColumns[col] = -1;
+            } else {
+                fileColumns[col] = (int) x;
+                firstFileCol = Math.min(firstFileCol, (int) x);
+                lastFileCol = Math.max(lastFileCol, (int) x);
+            }
+        }
+        final int startCol = firstFileCol;
+        final int endCol = lastFileCol + 1;
+
         /* Get a local reference to speed things up */
-        int filerows = nativeRasterRegion.getRows();
-        double filenorth = nativeRasterRegion.getNorth();
-        double filensres = nativeRasterRegion.getNSResolution();
-        double datanorth = activeReadRegion.getNorth();
-        double datansres = activeReadRegion.getNSResolution();
+        final int filerows = nativeRasterRegion.getRows();
+        final double filenorth = nativeRasterRegion.getNorth();
+        final double filensres = nativeRasterRegion.getNSResolution();
+        final double datanorth = activeReadRegion.getNorth();
+        final double datansres = activeReadRegion.getNSResolution();
+
+        /*
+         * Read bands of rows in parallel, each row of the map file being decoded
+         * only for the columns needed.
+         */
+        final int bands = (long) activeRows * activeCols < MIN_PARALLEL_CELLS ? 1 : Math.min(
+                activeRows, 4 * Runtime.getRuntime().availableProcessors());
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(bands);
+        for( int i = 0; i < bands; i++ ) {
+            final int firstRow = (int) ((long) activeRows * i / bands);
+            final int lastRow = (int) ((long) activeRows * (i + 1) / bands);
+            tasks.add(new Callable<Object>(){
+                public Object call() throws IOException, DataFormatException {
+                    for( int row = firstRow; row < lastRow; row++ ) {
+                        /*
+                         * Calculate the map file row for the current data window row.
+                         */
+                        double filerow = (filenorth - (datanorth - (row * datansres))) / filensres;
+                        filerow = Math.floor(filerow);
+                        GrassRowReader.Row rowData = null;
+                        if (filerow >= 0 && filerow < filerows && endCol > 0) {
+                            rowData = rowReader.getRow((int) filerow, startCol, endCol);
+                        }
+                        for( int col = 0; col < activeCols; col++ ) {
+                            setSample(raster, col, row, rowData, fileColumns[col]);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
         monitor.started();
         monitor.setTask(new SimpleInternationalString("Read raster map: "
                 + readerGrassEnv.getMapName()));
-        float progress = 0f;
-        for( double row = 0; row < activeRows; row++ ) {
-
-            /*
-             * Calculate the map file row for the current data window row.
-             */
-            double filerow = (filenorth - (datanorth - (row * datansres))) / filensres;
-            filerow = Math.floor(filerow);
-            if (filerow < 0 || filerow >= filerows) {
-                /*
-                 * If no data has been read yet, then increment first data row
-                 * counter
-                 */
-                if (firstDataRow == -1)
-                    rowindex++;
-                /*
-                 * Write a null row to the raster buffer. To speed things up the
-                 * first time this is called it instantiates the buffer and
-                 * fills it with null values that are reused the other times.
-                 */
-                if (nullRow == null)
-                    nullRow = initNullRow(activeCols);
-                rasterByteBuffer.put(nullRow);
-            } else {
-                if (firstDataRow == -1)
-                    firstDataRow = rowindex + 1;
-                /* Read row and put in raster buffer */
-                if (filerow == rowCacheRow) {
-                    rasterByteBuffer.put(rowDataCache);
-                } else {
-                    readRasterRow((int) filerow, rowDataCache, activeReadRegion);
-                    rowCacheRow = (int) filerow;
-                    rasterByteBuffer.put(rowDataCache);
+        if (bands == 1) {
+            try {
+                tasks.get(0).call();
+            } catch (IOException e) {
+                throw e;
+            } catch (DataFormatException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e.getLocalizedMessage());
+            }
+        } else {
+            final List<Future<Object>> futures = new ArrayList<Future<Object>>(bands);
+            for( Callable<Object> task : tasks ) {
+                futures.add(getExecutor().submit(task));
+            }
+            try {
+                for( int i = 0; i < bands; i++ ) {
+                    futures.get(i).get();
+                    monitor.progress(100f * (i + 1) / bands);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e.getLocalizedMessage());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                } else if (e.getCause() instanceof DataFormatException) {
+                    throw (DataFormatException) e.getCause();
+                }
+                throw new IOException(e.getCause().getLocalizedMessage());
+            } finally {
+                for( Future<Object> future : futures ) {
+                    future.cancel(true);
                 }
             }
-            progress = (float) (progress + 100f * row / activeRows);
-            monitor.progress(progress);
         }
         monitor.complete();
 
-        // prepare for reading
-        rasterByteBuffer.rewind();
-
-        rowCacheRow = -1;
-        nullRow = null;
+        return raster;
+    }
 
-        /*
-         * create the raster object from the read data.
-         */
-        if (numberOfBytesPerValue == 8) {
-            if (!castDoubleToFloating) {
-                for( int y = 0; y < activeRows; y++ ) {
-                    for( int x = 0; x < activeCols; x++ ) {
-                        double value = rasterByteBuffer.getDouble();
-                        // if (!Double.isNaN(value)) {
-                        // System.out.println(y + "/" + x + "/" + value);
-                        // }
-                        raster.setSample(x, y, 0, value);
-                    }
-                    // System.out.println();
-                }
-            } else {
-                for( int y = 0; y < activeRows; y++ ) {
-                    for( int x = 0; x < activeCols; x++ ) {
-                        float value = (float) rasterByteBuffer.getDouble();
-                        raster.setSample(x, y, 0, value);
+    /**
+     * Sets a cell of the read raster from a decoded row of the map file.
+     * 
+     * @param raster
+     *            the read raster.
+     * @param x
+     *            the column of the raster.
+     * @param y
+     *            the row of the raster.
+     * @param rowData
+     *            the decoded row of the map file, or <code>null</code> if the
+     *            row is outside of the file region.
+     * @param filecol
+     *            the column of the map file, or -1 if it is outside of the file
+     *            region.
+     */
+    private void setSample( WritableRaster raster, int x, int y, GrassRowReader.Row rowData,
+            int filecol ) {
+        final boolean novalue = rowData == null || filecol < 0 || rowData.isNull(filecol);
+        if (readerMapType > -1) {
+            int value = Integer.MAX_VALUE;
+            if (!novalue) {
+                int cell = rowData.values.getInt((filecol - rowData.start) * 4);
+                /* File is an integer map file with 0 = novalue */
+                if (cell != 0 || !isOldIntegerMap) {
+                    /* If map is a reclass then get the reclassed value */
+                    if (reclassTable != null) {
+                        cell = ((Integer) reclassTable.elementAt(cell)).intValue();
                     }
+                    value = cell;
                 }
             }
-        } else if (numberOfBytesPerValue == 4 && readerMapType < 0) {
-            for( int y = 0; y < activeRows; y++ ) {
-                for( int x = 0; x < activeCols; x++ ) {
-                    float value = rasterByteBuffer.getFloat();
-                    raster.setSample(x, y, 0, value);
+            if (value == Integer.MAX_VALUE) {
+                value = noData.intValue();
+            }
+            raster.setSample(x, y, 0, value);
+        } else if (readerMapType == -1) {
+            /* Floating point map with float values. */
+            float value = Float.NaN;
+            if (!novalue) {
+                value = rowData.values.getFloat((filecol - rowData.start) * 4);
+                if (reclassTable != null) {
+                    value = ((Integer) reclassTable.elementAt((int) value)).floatValue();
                 }
             }
-        } else if (readerMapType > -1) {
-            for( int y = 0; y < activeRows; y++ ) {
-                for( int x = 0; x < activeCols; x++ ) {
-                    int value = rasterByteBuffer.getInt();
-                    if (value == Integer.MAX_VALUE) {
-                        value = noData.intValue();
-                    }
-                    raster.setSample(x, y, 0, value);
+            raster.setSample(x, y, 0, value);
+        } else {
+            /* Floating point map with double values. */
+            double value = Double.NaN;
+            if (!novalue) {
+                value = rowData.values.getDouble((filecol - rowData.start) * 8);
+                if (reclassTable != null) {
+                    value = ((Integer) reclassTable.elementAt((int) value)).doubleValue();
                 }
             }
+            if (castDoubleToFloating) {
+                raster.setSample(x, y, 0, (float) value);
+            } else {
+                raster.setSample(x, y, 0, value);
+            }
         }
-
-        return raster;
     }
 
     /**
@@ -586,16 +667,7 @@ public class GrassBinaryRasterReadHandler {
                     /* Instantiate cell file object. */
                     imageIS = ImageIO.createImageInputStream(readerGrassEnv.getCELL());
                     /* Check if null file exists. */
-                    imageNullFileIS = null;
-                    if (readerGrassEnv.getCELLMISC_NULL().exists()) {
-                        imageNullFileIS = ImageIO.createImageInputStream(readerGrassEnv
-                                .getCELLMISC_NULL());
-                        if (imageNullFileIS == null) {
-                            isOldIntegerMap = false;
-                        } else {
-                            isOldIntegerMap = true;
-                        }
-                    }
+                    isOldIntegerMap = readerGrassEnv.getCELLMISC_NULL().exists();
                 } else if (readerMapType < 0) {
                     /*
                      * Read contents of 'cell_misc/name/f_format' file from the
@@ -638,13 +710,8 @@ public class GrassBinaryRasterReadHandler {
                                 + readerGrassEnv.getCELLMISC_FORMAT().getAbsolutePath());
                     }
                     isOldIntegerMap = false;
-                    /* Instantiate cell file and null file objects */
+                    /* Instantiate cell file object, the null file is read by the row reader */
                     imageIS = ImageIO.createImageInputStream(readerGrassEnv.getFCELL());
-                    imageNullFileIS = null;
-                    if (readerGrassEnv.getCELLMISC_NULL().exists()) {
-                        imageNullFileIS = ImageIO.createImageInputStream(readerGrassEnv
-                                .getCELLMISC_NULL());
-                    }
                 }
             } else {
                 throw new IOException("The cellhead file seems to be corrupted: "
@@ -666,6 +733,10 @@ public class GrassBinaryRasterReadHandler {
              * parse the header
              */
             parseHeader();
+            rowReader = new GrassRowReader(readerMapType < 0 ? readerGrassEnv.getFCELL()
+                    : readerGrassEnv.getCELL(), readerGrassEnv.getCELLMISC_NULL().exists()
+                    ? readerGrassEnv.getCELLMISC_NULL() : null, addressesOfRows,
+                    nativeRasterRegion.getCols(), readerMapType, numberOfBytesPerValue, compressed);
         } catch (Exception e) {
             throw new IOException(e.getLocalizedMessage());
         }
@@ -719,469 +790,6 @@ public class GrassBinaryRasterReadHandler {
         }
     }
 
-    /**
-     * reads a row of data from the file into a byte array.
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param currentfilerow
-     *            the current row to be extracted from the file
-     * @param rowDataCache
-     *            the byte array to store the unpacked row data
-     * @param activeReadRegion
-     *            the region defining the portion of raster to be read
-     * @return boolean TRUE for success, FALSE for failure.
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private boolean readRasterRow( int currentfilerow, byte[] rowDataCache,
-            JGrassRegion activeReadRegion ) throws IOException, DataFormatException {
-        ByteBuffer rowBuffer = ByteBuffer.wrap(rowDataCache);
-        /*
-         * Read the correct approximated row from the file. The row contents as
-         * saved in a cache for along with the row number. If the row requested
-         * is the row in the cache then we do not need to read from the file.
-         */
-        /* Data window geographic boundaries */
-        double activeewres = activeReadRegion.getWEResolution();
-        // double activeewres2 = activeewres / 2;
-        double activewest = activeReadRegion.getWest();
-
-        /* Map file geographic limits */
-        double filewest = nativeRasterRegion.getWest();
-        double fileewres = nativeRasterRegion.getWEResolution();
-
-        // System.out.println("currentfilerow="+currentfilerow+",
-        // fileWindow.getRows()="+fileWindow.getRows());
-
-        /* Reset row cache and read new row data */
-        ByteBuffer rowCache = ByteBuffer.allocate(nativeRasterRegion.getCols()
-                * ((readerMapType == -2) ? 8 : 4));
-        // rowCache.rewind();
-        getMapRow(currentfilerow, rowCache);
-        // rowCacheRow = currentfilerow;
-
-        // if the northing is inside the file boundaries, calculate the values
-        // for (double col = activewest; col < activeeast; col += activeewres)
-        for( double col = 0; col < activeReadRegion.getCols(); col++ ) {
-            /*
-             * Calculate the column value of the data to be extracted from the
-             * row
-             */
-            double x = (((activewest + (col * activeewres)) - filewest) / fileewres);
-            x = Math.round(x);
-            if (x < 0 || x >= nativeRasterRegion.getCols()) {
-                /*
-                 * Depending on the map type we store a different 'NO VALUE'
-                 * value.
-                 */
-                if (readerMapType > 0) {
-                    rowBuffer.putInt(Integer.MAX_VALUE);
-                } else if (readerMapType == -1) {
-                    rowBuffer.putFloat(Float.NaN);
-                } else if (readerMapType == -2) {
-                    rowBuffer.putDouble(Double.NaN);
-                }
-            } else if (readNullValueAtRowCol(currentfilerow, (int) x)) {
-                /*
-                 * Depending on the map type we store a different 'NO VALUE'
-                 * value.
-                 */
-                if (readerMapType > 0) {
-                    rowBuffer.putInt(Integer.MAX_VALUE);
-                } else if (readerMapType == -1) {
-                    rowBuffer.putFloat(Float.NaN);
-                } else if (readerMapType == -2) {
-                    rowBuffer.putDouble(Double.NaN);
-                }
-            } else {
-                rowCache.position((int) x * numberOfBytesPerValue);
-                if (readerMapType > 0) {
-                    /* Integers */
-                    int cell = rowCache.getInt();
-                    /* File is an integer map file with 0 = novalue */
-                    if (cell == 0 && isOldIntegerMap) {
-                        rowBuffer.putInt(Integer.MAX_VALUE);
-                    } else {
-                        /* If map is a reclass then get the reclassed value */
-                        if (reclassTable != null) {
-                            cell = ((Integer) reclassTable.elementAt(cell)).intValue();
-                        }
-                        rowBuffer.putInt(cell);
-                    }
-                } else if (readerMapType == -1) {
-                    /* Floating point map with float values. */
-                    float cell = rowCache.getFloat();
-                    if (reclassTable != null) {
-                        cell = ((Integer) reclassTable.elementAt((int) cell)).floatValue();
-                    }
-                    rowBuffer.putFloat(cell);
-                } else if (readerMapType == -2) {
-                    /* Floating point map with double values. */
-                    double cell = rowCache.getDouble();
-                    if (reclassTable != null) {
-                        cell = ((Integer) reclassTable.elementAt((int) cell)).doubleValue();
-                    }
-                    rowBuffer.putDouble(cell);
-                }
-            }
-        }
-
-        return true;
-    }
-
-    /**
-     * creates a null row.
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param activeCols
-     *            the numer of columns for the row.
-     * @return the null row in its byte representation.
-     */
-    private byte[] initNullRow( int activeCols ) {
-        int len = activeCols * numberOfBytesPerValue;
-        byte[] nrow = new byte[len];
-
-        if (readerMapType > 0) {
-            ByteBuffer src = ByteBuffer.allocate(4);
-            src.putInt(Integer.MAX_VALUE);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 4 )
-                System.arraycopy(arr, 0, nrow, i, 4);
-        } else if (readerMapType == -1) {
-            ByteBuffer src = ByteBuffer.allocate(4);
-            src.putFloat(Float.NaN);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 4 )
-                System.arraycopy(arr, 0, nrow, i, 4);
-        } else if (readerMapType == -2) {
-            ByteBuffer src = ByteBuffer.allocate(8);
-            src.putDouble(Double.NaN);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 8 )
-                System.arraycopy(arr, 0, nrow, i, 8);
-        }
-
-        return nrow;
-    }
-
-    /**
-     * read a row of the map from the active region.
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param currentrow
-     *            the index of the row to read.
-     * @param rowdata
-     *            the buffer to hold the read row.
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void getMapRow( int currentrow, ByteBuffer rowdata ) throws IOException,
-            DataFormatException {
-        if (compressed) {
-            /* Compressed maps */
-            if (readerMapType == -2) {
-                /* Compressed double map */
-                readCompressedFPRowByNumber(rowdata, currentrow);
-            } else if (readerMapType == -1) {
-                /* Compressed floating point map */
-                readCompressedFPRowByNumber(rowdata, currentrow);
-            } else if (readerMapType > 0) {
-                /* Compressed integer map */
-                readCompressedIntegerRowByNumber(rowdata, currentrow);
-            }
-        } else {
-            if (readerMapType < 0) {
-                /* Uncompressed floating point map */
-                readUncompressedFPRowByNumber(rowdata, currentrow);
-            } else if (readerMapType > 0) {
-                /* Uncompressed integer map */
-                readUncompressedIntegerRowByNumber(rowdata, currentrow);
-            }
-        }
-        return;
-    }
-
-    /**
-     * read a row of data from a compressed floating point map.
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param rowdata
-     *            the buffer to hold the read row.
-     * @param currentrow
-     *            the index of the row to read.
-     * @throws DataFormatException
-     * @throws IOException
-     */
-    private void readCompressedFPRowByNumber( ByteBuffer rowdata, int currentrow )
-            throws DataFormatException, IOException {
-        // System.out.println("row: " + (currentrow+1) + " position: " + addressesOfRows[currentrow
-        // + 1]);
-
-        int offset = (int) (addressesOfRows[currentrow + 1] - addressesOfRows[currentrow]);
-        /*
-         * The fact that the file is compressed does not mean that the row is
-         * compressed. If the first byte is 0 (49), then the row is compressed,
-         * otherwise (first byte = 48) the row has to be read in simple XDR
-         * uncompressed format.
-         */
-        byte[] tmp = new byte[offset - 1];
-        imageIS.seek(addressesOfRows[currentrow]);
-        int firstbyte = (imageIS.read() & 0xff);
-        if (firstbyte == 49) {
-            /* The row is compressed. */
-            // thefile.seek((long) adrows[rn] + 1);
-            imageIS.read(tmp, 0, offset - 1);
-            Inflater decompresser = new Inflater();
-            decompresser.setInput(tmp, 0, tmp.length);
-            decompresser.inflate(rowdata.array());
-            decompresser.end();
-        } else if (firstbyte == 48) {
-            imageIS.read(rowdata.array(), 0, offset - 1);
-        }
-    }
-
-    /**
-     * read a row of data from an uncompressed floating point map.
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param rowdata
-     *            the buffer to hold the read row.
-     * @param currentrow
-     *            the index of the row to read.
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void readUncompressedFPRowByNumber( ByteBuffer rowdata, int currentrow )
-            throws IOException, DataFormatException {
-        int datanumber = nativeRasterRegion.getCols() * numberOfBytesPerValue;
-        imageIS.seek((currentrow * (long) datanumber));
-        imageIS.read(rowdata.array());
-    }
-
-    /**
-     * read a row of data from a compressed integer point map.
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param rowdata
-     *            the buffer to hold the read row.
-     * @param currentrow
-     *            the index of the row to read.
-     * @throws IOException
-     */
-    private void readCompressedIntegerRowByNumber( ByteBuffer rowdata, int currentrow )
-            throws IOException, DataFormatException {
-        int offset = (int) (addressesOfRows[currentrow + 1] - addressesOfRows[currentrow]);
-
-        imageIS.seek(addressesOfRows[currentrow]);
-        /*
-         * Read how many bytes the values are ex 1 => if encoded: 1 byte for the
-         * value and one byte for the count = 2 2 => if encoded: 2 bytes for the
-         * value and one byte for the count = 3 etc... etc
-         */
-        int bytespervalue = (imageIS.read() & 0xff);
-        ByteBuffer cell = ByteBuffer.allocate(bytespervalue);
-        int cellValue = 0;
-
-        /* Create the buffer in which read the compressed row */
-        byte[] tmp = new byte[offset - 1];
-        imageIS.read(tmp);
-        ByteBuffer tmpBuffer = ByteBuffer.wrap(tmp);
-        tmpBuffer.order(ByteOrder.nativeOrder());
-
-        /*
-         * Create the buffer in which read the decompressed row. The final
-         * decompressed row will always contain 4-byte integer values
-         */
-        if ((offset - 1) == (bytespervalue * nativeRasterRegion.getCols())) {
-            /* There is no compression in this row */
-            for( int i = 0; i < offset - 1; i = i + bytespervalue ) {
-                /* Read the value */
-                tmpBuffer.get(cell.array());
-
-                /*
-                 * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects
-                 * 4 byte integers we need to pad them with 0's. The order of
-                 * the padding is determined by the ByteOrder of the buffer.
-                 */
-                if (bytespervalue == 1) {
-                    cellValue = (cell.get(0) & 0xff);
-                } else if (bytespervalue == 2) {
-                    cellValue = cell.getShort(0);
-                } else if (bytespervalue == 4) {
-                    cellValue = cell.getInt(0);
-                }
-                // if (logger.isDebugEnabled()) logger.debug("tmpint=" + tmpint
-                // );
-                rowdata.putInt(cellValue);
-            }
-        } else {
-            /*
-             * If the row is compressed, then the values appear in pairs (like
-             * couples a party). The couple is composed of the count and the
-             * value value (WARNING: this can be more than one byte). Therefore,
-             * knowing the length of the compressed row we can calculate the
-             * number of couples.
-             */
-            int couples = (offset - 1) / (1 + bytespervalue);
-
-            for( int i = 0; i < couples; i++ ) {
-                /* Read the count of values */
-                int count = (tmpBuffer.get() & 0xff);
-
-                /* Read the value */
-                tmpBuffer.get(cell.array());
-
-                /*
-                 * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects
-                 * 4 byte integers we need to pad them with 0's. The order of
-                 * the padding is determined by the ByteOrder of the buffer.
-                 */
-                if (bytespervalue == 1) {
-                    cellValue = (cell.get(0) & 0xff);
-                } else if (bytespervalue == 2) {
-                    cellValue = cell.getShort(0);
-                } else if (bytespervalue == 4) {
-                    cellValue = cell.getInt(0);
-                }
-                /*
-                 * Now write the cell value the required number of times to the
-                 * raster row data buffer.
-                 */
-                for( int j = 0; j < count; j++ ) {
-                    // // if (logger.isDebugEnabled()) logger.debug(" " +
-                    // tmpint);
-                    rowdata.putInt(cellValue);
-                }
-            }
-        }
-    }
-
-    /**
-     * read a row of data from an uncompressed integer map.
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param rowdata
-     *            the buffer to hold the read row.
-     * @param currentrow
-     *            the index of the row to read.
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void readUncompressedIntegerRowByNumber( ByteBuffer rowdata, int currentrow )
-            throws IOException, DataFormatException {
-        int cellValue = 0;
-        ByteBuffer cell = ByteBuffer.allocate(readerMapType);
-
-        /* The number of bytes that are inside a row in the file. */
-        int filerowsize = nativeRasterRegion.getCols() * readerMapType;
-
-        /* Position the file pointer to read the row */
-        imageIS.seek((currentrow * (long) filerowsize));
-
-        /* Read the row of data from the file */
-        ByteBuffer tmpBuffer = ByteBuffer.allocate(filerowsize);
-        imageIS.read(tmpBuffer.array());
-
-        /*
-         * Transform the readerMapType-size-values to a standard 4 bytes integer
-         * value
-         */
-        while( tmpBuffer.hasRemaining() ) {
-            // read the value
-            tmpBuffer.get(cell.array());
-
-            /*
-             * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects 4
-             * byte integers we need to pad them with 0's. The order of the
-             * padding is determined by the ByteOrder of the buffer.
-             */
-            if (readerMapType == 1) {
-                cellValue = (cell.get(0) & 0xff);
-            } else if (readerMapType == 2) {
-                cellValue = cell.getShort(0);
-            } else if (readerMapType == 4) {
-                cellValue = cell.getInt(0);
-            }
-            rowdata.putInt(cellValue);
-        }
-    }
-
-    /**
-     * read the null value from the null file (if it exists).
-     * 
-     * <p>
-     * Return the information about the particular cell (true if it is novalue,
-     * false if it is not a novalue.
-     * </p>
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param currentfilerow
-     *            index of the row.
-     * @param currentfilecol
-     *            index of the column.
-     * @return true if it is a novalue.
-     */
-    private boolean readNullValueAtRowCol( int currentfilerow, int currentfilecol )
-            throws IOException {
-        /*
-         * If the null file doesn't exist and the map is an integer, than it is
-         * an old integer-map format, where the novalues are the cells that
-         * contain the values 0
-         */
-        if (imageNullFileIS != null) {
-            long byteperrow = (long) Math.ceil(nativeRasterRegion.getCols() / 8.0); // in the
-            // null
-            // map of
-            // cell_misc
-            long currentByte = (long) Math.ceil((currentfilecol + 1) / 8.0); // in
-            // the
-            // null
-            // map
-
-            // currentfilerow starts from 0, so it is the row before the one we
-            // need
-            long byteToRead = (byteperrow * currentfilerow) + currentByte;
-
-            imageNullFileIS.seek(byteToRead - 1);
-
-            int bitposition = (currentfilecol) % 8;
-
-            byte[] thetmp = new byte[1];
-            thetmp[0] = imageNullFileIS.readByte();
-            BitSet tmp = fromByteArray(thetmp);
-
-            boolean theBit = tmp.get(7 - bitposition);
-            return theBit;
-
-        }
-        return false;
-
-    }
-
     /**
      * Getter for nativeRasterRegion.
      * 
@@ -1275,29 +883,11 @@ public class GrassBinaryRasterReadHandler {
     public void close() throws IOException {
         if (imageIS != null) {
             imageIS.close();
-            imageNullFileIS.close();
         }
-    }
-
-    /**
-     * Creates a {@link BitSet} from an array of bytes.
-     * 
-     * <p>
-     * <b>INFO:</b> this is a reader method.
-     * </p>
-     * 
-     * @param bytes
-     *            the array of bytes to convert.
-     * @return the bitset
-     */
-    private BitSet fromByteArray( byte[] bytes ) {
-        BitSet bits = new BitSet();
-        for( int i = 0; i < bytes.length * 8; i++ ) {
-            if ((bytes[bytes.length - i / 8 - 1] & (1 << (i % 8))) > 0) {
-                bits.set(i);
-            }
+        if (rowReader != null) {
+            rowReader.close();
+            rowReader = null;
         }
-        return bits;
     }
 
     /**
@@ -0,0 +1,382 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.grassraster.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to the rows of a grass raster file.
+ *
+ * <p>
+ * Rows are located through the row addresses of the file header and only the requested
+ * columns are decompressed: the deflated and run length encoded rows are decoded up to the
+ * last requested column, the uncompressed ones are read for the requested columns only.
+ * Reads use absolute positions, so that a reader can be used by many threads at once.
+ * </p>
+ *
+ * <p>
+ * The decoded rows are kept in a least recently used cache shared by all the readers and
+ * bounded by {@link #CACHE_SIZE}, so that overlapping requests on the same map, such as
+ * neighbouring tiles, do not decode the same rows again. The rows are keyed by the path, the
+ * length and the modification time of the data file, and the modification time of the null
+ * file, so that a rewritten map is decoded again.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class GrassRowReader {
+
+    /** Maximum size in bytes of the decoded rows kept in memory. */
+    static final long CACHE_SIZE = 32 * 1024 * 1024;
+
+    /** The rows decoded recently, in access order. */
+    private static final LinkedHashMap<RowKey, Row> CACHE = new LinkedHashMap<RowKey, Row>(
+            64, 0.75f, true);
+
+    /** Size in bytes of the rows in {@link #CACHE}. */
+    private static long cachedBytes;
+
+    /**
+     * A decoded row, for a range of columns.
+     */
+    static final class Row {
+
+        /** First decoded column. */
+        final int start;
+
+        /** Column after the last decoded one. */
+        final int end;
+
+        /**
+         * The decoded values from {@link #start}, as big endian integers for the integer
+         * maps, floats or doubles for the floating point maps. Shared between threads, it
+         * must be read with absolute positions.
+         */
+        final ByteBuffer values;
+
+        /** The null bitmap of the whole row, or {@code null} if the map has no null file. */
+        final byte[] nulls;
+
+        Row( int start, int end, ByteBuffer values, byte[] nulls ) {
+            this.start = start;
+            this.end = end;
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        /**
+         * Tells whether a column is flagged as null in the null file.
+         */
+        boolean isNull( int col ) {
+            return nulls != null && (nulls[col >> 3] & (0x80 >>> (col & 7))) != 0;
+        }
+
+        int size() {
+            return values.capacity() + (nulls != null ? nulls.length : 0);
+        }
+    }
+
+    /**
+     * Key of a row in the cache.
+     */
+    private static final class RowKey {
+        final String path;
+
+        final long lastModified;
+
+        final long length;
+
+        /** Last modification of the null file, 0 if there is none. */
+        final long nullLastModified;
+
+        final int row;
+
+        RowKey( String path, long lastModified, long length, long nullLastModified, int row ) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.nullLastModified = nullLastModified;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if (!(obj instanceof RowKey)) {
+                return false;
+            }
+            final RowKey other = (RowKey) obj;
+            return row == other.row && lastModified == other.lastModified
+                    && length == other.length && nullLastModified == other.nullLastModified
+                    && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return (((path.hashCode() * 31 + (int) (lastModified ^ (lastModified >>> 32))) * 31 + (int) length)
+                    * 31 + (int) (nullLastModified ^ (nullLastModified >>> 32))) * 31 + row;
+        }
+    }
+
+    private final String path;
+
+    private final long lastModified;
+
+    private final long length;
+
+    private final long nullLastModified;
+
+    private final FileChannel data;
+
+    private final FileChannel nullData;
+
+    private final long[] addressesOfRows;
+
+    private final int cols;
+
+    private final int readerMapType;
+
+    private final int numberOfBytesPerValue;
+
+    private final boolean compressed;
+
+    /**
+     * Opens the files of a map.
+     *
+     * @param dataFile the file of the raw raster data.
+     * @param nullFile the null file, or {@code null} if the map has none.
+     * @param addressesOfRows the addresses of the rows in the data file, for compressed maps.
+     * @param cols the number of columns of the map.
+     * @param readerMapType the type of the map, see {@link GrassBinaryRasterReadHandler}.
+     * @param numberOfBytesPerValue the number of bytes of the decoded values.
+     * @param compressed whether the rows are compressed.
+     * @throws IOException
+     */
+    GrassRowReader( File dataFile, File nullFile, long[] addressesOfRows, int cols,
+            int readerMapType, int numberOfBytesPerValue, boolean compressed ) throws IOException {
+        this.path = dataFile.getAbsolutePath();
+        this.lastModified = dataFile.lastModified();
+        this.length = dataFile.length();
+        this.nullLastModified = nullFile != null ? nullFile.lastModified() : 0;
+        this.addressesOfRows = addressesOfRows;
+        this.cols = cols;
+        this.readerMapType = readerMapType;
+        this.numberOfBytesPerValue = numberOfBytesPerValue;
+        this.compressed = compressed;
+        data = new RandomAccessFile(dataFile, "r").getChannel();
+        nullData = nullFile != null ? new RandomAccessFile(nullFile, "r").getChannel() : null;
+    }
+
+    /**
+     * Returns a row, decoded at least for the specified columns.
+     *
+     * @param row the row of the map.
+     * @param start the first column needed.
+     * @param end the column after the last one needed.
+     * @return the decoded row.
+     * @throws IOException
+     * @throws DataFormatException if a deflated row cannot be inflated.
+     */
+    Row getRow( int row, int start, int end ) throws IOException, DataFormatException {
+        final RowKey key = new RowKey(path, lastModified, length, nullLastModified, row);
+        final Row cached;
+        synchronized (CACHE) {
+            cached = CACHE.get(key);
+        }
+        if (cached != null && cached.start <= start && cached.end >= end) {
+            return cached;
+        }
+
+        // extend the cached columns rather than replacing them
+        if (cached != null) {
+            start = Math.min(start, cached.start);
+            end = Math.max(end, cached.end);
+        }
+        final Row decoded = decode(row, start, end);
+        synchronized (CACHE) {
+            final Row previous = CACHE.put(key, decoded);
+            if (previous != null) {
+                cachedBytes -= previous.size();
+            }
+            cachedBytes += decoded.size();
+            final Iterator<Map.Entry<RowKey, Row>> eldest = CACHE.entrySet().iterator();
+            while (cachedBytes > CACHE_SIZE && eldest.hasNext()) {
+                final Row evicted = eldest.next().getValue();
+                if (evicted != decoded) {
+                    cachedBytes -= evicted.size();
+                    eldest.remove();
+                }
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Closes the files, the cached rows remain available to the other readers.
+     */
+    void close() throws IOException {
+        data.close();
+        if (nullData != null) {
+            nullData.close();
+        }
+    }
+
+    /**
+     * Decodes a row for the specified columns.
+     */
+    private Row decode( int row, int start, int end ) throws IOException, DataFormatException {
+        ByteBuffer values;
+        if (!compressed) {
+            // fixed size rows, only the requested columns are read
+            final int fileBytes = readerMapType > 0 ? readerMapType : numberOfBytesPerValue;
+            final ByteBuffer raw = read(data, (row * (long) cols + start) * fileBytes, (end - start)
+                    * fileBytes);
+            values = readerMapType > 0 ? expandIntegers(raw, fileBytes, end - start) : raw;
+        } else {
+            // the compressed rows are decoded from the first column
+            start = 0;
+            final long address = addressesOfRows[row];
+            final int length = (int) (addressesOfRows[row + 1] - address);
+            final ByteBuffer raw = read(data, address, length);
+            final int first = raw.get(0) & 0xff;
+            if (readerMapType < 0) {
+                values = decodeFloatingRow(raw, first, end);
+            } else {
+                values = decodeIntegerRow(raw, first, end);
+            }
+        }
+
+        byte[] nulls = null;
+        if (nullData != null) {
+            final int bytesPerRow = (cols + 7) / 8;
+            nulls = read(nullData, row * (long) bytesPerRow, bytesPerRow).array();
+        }
+        return new Row(start, end, values, nulls);
+    }
+
+    /**
+     * Decodes a row of a compressed floating point map, which can be deflated or not
+     * according to its first byte.
+     */
+    private ByteBuffer decodeFloatingRow( ByteBuffer raw, int first, int end )
+            throws DataFormatException, IOException {
+        final byte[] values = new byte[end * numberOfBytesPerValue];
+        if (first == 49) {
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(raw.array(), 1, raw.capacity() - 1);
+                int done = 0;
+                while (done < values.length) {
+                    final int n = inflater.inflate(values, done, values.length - done);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new DataFormatException("Truncated row");
+                    }
+                    done += n;
+                }
+            } finally {
+                inflater.end();
+            }
+        } else if (first == 48) {
+            System.arraycopy(raw.array(), 1, values, 0,
+                    Math.min(values.length, raw.capacity() - 1));
+        }
+        return ByteBuffer.wrap(values);
+    }
+
+    /**
+     * Decodes a row of a compressed integer map, which is run length encoded unless its size
+     * is the one of the plain values.
+     */
+    private ByteBuffer decodeIntegerRow( ByteBuffer raw, int bytesPerValue, int end ) {
+        final ByteBuffer values = ByteBuffer.allocate(end * 4);
+        raw.position(1);
+        if (raw.capacity() - 1 == bytesPerValue * cols) {
+            for( int i = 0; i < end; i++ ) {
+                values.putInt(readInteger(raw, bytesPerValue));
+            }
+        } else {
+            while( values.hasRemaining() && raw.remaining() >= bytesPerValue + 1 ) {
+                int count = raw.get() & 0xff;
+                final int value = readInteger(raw, bytesPerValue);
+                while( count-- > 0 && values.hasRemaining() ) {
+                    values.putInt(value);
+                }
+            }
+        }
+        values.clear();
+        return values;
+    }
+
+    /**
+     * Converts the 1, 2 or 4 bytes integers of an uncompressed row into 4 bytes integers.
+     */
+    private static ByteBuffer expandIntegers( ByteBuffer raw, int bytesPerValue, int count ) {
+        if (bytesPerValue == 4) {
+            return raw;
+        }
+        final ByteBuffer values = ByteBuffer.allocate(count * 4);
+        for( int i = 0; i < count; i++ ) {
+            values.putInt(readInteger(raw, bytesPerValue));
+        }
+        values.clear();
+        return values;
+    }
+
+    /**
+     * Reads an integer of 1 (unsigned), 2 (signed) or 4 bytes.
+     */
+    private static int readInteger( ByteBuffer buffer, int bytesPerValue ) {
+        switch( bytesPerValue ) {
+        case 1:
+            return buffer.get() & 0xff;
+        case 2:
+            return buffer.getShort();
+        case 4:
+            return buffer.getInt();
+        default:
+            int value = 0;
+            for( int i = 0; i < bytesPerValue; i++ ) {
+                value = (value << 8) | (buffer.get() & 0xff);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Reads bytes of the data or null file.
+     */
+    private static ByteBuffer read( FileChannel channel, long position, int length )
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while( buffer.hasRemaining() ) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+}
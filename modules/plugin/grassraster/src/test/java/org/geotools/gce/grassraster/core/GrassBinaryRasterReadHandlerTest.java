@@ -0,0 +1,315 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.grassraster.core;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.imageio.ImageReadParam;
+import javax.media.jai.RasterFactory;
+
+import junit.framework.TestCase;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.data.DataUtilities;
+import org.geotools.gce.grassraster.GrassCoverageWriter;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+
+/**
+ * Tests the window reads of {@link GrassBinaryRasterReadHandler} against the full reads, and
+ * the decoding of the rows by {@link GrassRowReader}.
+ *
+ * @source $URL$
+ */
+public class GrassBinaryRasterReadHandlerTest extends TestCase {
+
+    private static final double[][] PIT = new double[][]{
+            {800.0, 900.0, 1000.0, 1000.0, 1200.0, 1250.0, 1300.0, 1350.0, 1450.0, 1500.0},
+            {600.0, 650.0, 750.0, 850.0, 860.0, 900.0, 1000.0, 1200.0, 1250.0, 1500.0},
+            {500.0, 550.0, 700.0, 750.0, 800.0, 850.0, 900.0, 1000.0, 1100.0, 1500.0},
+            {400.0, 410.0, 650.0, 700.0, 750.0, 800.0, 850.0, 800.0, 800.0, 1500.0},
+            {450.0, 550.0, 430.0, 500.0, 600.0, 700.0, 800.0, 800.0, 800.0, 1500.0},
+            {500.0, 600.0, 700.0, 750.0, 760.0, 770.0, 850.0, 1000.0, 1150.0, 1500.0},
+            {600.0, 700.0, 750.0, 800.0, 780.0, 790.0, 1000.0, 1100.0, 1250.0, 1500.0},
+            {800.0, 910.0, 980.0, 1001.0, 1150.0, 1200.0, 1250.0, 1300.0, 1450.0, 1500.0}};
+
+    /** A compressed double map without null cells. */
+    private File pitFile;
+
+    /** A compressed double map with a null cell at column 1 of row 1. */
+    private File testFile;
+
+    protected void setUp() throws Exception {
+        pitFile = DataUtilities.urlToFile(getClass().getClassLoader().getResource(
+                "testlocation/test/cell/pit"));
+        testFile = DataUtilities.urlToFile(getClass().getClassLoader().getResource(
+                "gbovest/testcase/cell/test"));
+    }
+
+    public void testFullRead() throws Exception {
+        Raster raster = read(pitFile, null);
+        assertEquals(10, raster.getWidth());
+        assertEquals(8, raster.getHeight());
+        assertEquals(DataBuffer.TYPE_DOUBLE, raster.getDataBuffer().getDataType());
+        for( int y = 0; y < PIT.length; y++ ) {
+            for( int x = 0; x < PIT[y].length; x++ ) {
+                assertEquals(x + " " + y, PIT[y][x], raster.getSampleDouble(x, y, 0), 0);
+            }
+        }
+    }
+
+    public void testWindowReads() throws Exception {
+        checkWindows(pitFile);
+        checkWindows(testFile);
+    }
+
+    public void testNullCells() throws Exception {
+        Raster full = read(testFile, null);
+        int nulls = 0;
+        for( int y = 0; y < full.getHeight(); y++ ) {
+            for( int x = 0; x < full.getWidth(); x++ ) {
+                if (Double.isNaN(full.getSampleDouble(x, y, 0))) {
+                    nulls++;
+                }
+            }
+        }
+        assertEquals(1, nulls);
+        assertTrue(Double.isNaN(full.getSampleDouble(1, 1, 0)));
+
+        // the null cell at the corner of a window
+        Raster window = read(testFile, new Rectangle(1, 1, 4, 3));
+        assertTrue(Double.isNaN(window.getSampleDouble(0, 0, 0)));
+        assertFalse(Double.isNaN(window.getSampleDouble(1, 0, 0)));
+        assertFalse(Double.isNaN(window.getSampleDouble(0, 1, 0)));
+    }
+
+    /**
+     * Reads a map larger than the threshold above which the rows are read in parallel.
+     */
+    public void testParallelRead() throws Exception {
+        // 76800 cells, above the 64K cells read by a single thread
+        final int cols = 320;
+        final int rows = 240;
+        WritableRaster source = RasterFactory.createBandedRaster(DataBuffer.TYPE_DOUBLE, cols,
+                rows, 1, null);
+        for( int y = 0; y < rows; y++ ) {
+            for( int x = 0; x < cols; x++ ) {
+                double value = (x + 3 * y) % 11 == 0 ? Double.NaN : x * 1000.0 + y + 0.5;
+                source.setSample(x, y, 0, value);
+            }
+        }
+        ReferencedEnvelope envelope = new ReferencedEnvelope(1640650.0, 1640650.0 + cols * 30.0,
+                5139780.0, 5139780.0 + rows * 30.0, CRS.decode("EPSG:3004"));
+        GridCoverage2D coverage = new GridCoverageFactory().create("parallel", source, envelope);
+        File mapFile = new File(pitFile.getParentFile(), "parallel");
+        new GrassCoverageWriter(mapFile).write(coverage, null);
+
+        Raster full = read(mapFile, null);
+        assertEquals(cols, full.getWidth());
+        assertEquals(rows, full.getHeight());
+        checkEqual(source, 0, 0, full);
+
+        // a window above the threshold as well
+        Rectangle large = new Rectangle(7, 5, 300, 230);
+        checkEqual(full, large.x, large.y, read(mapFile, large));
+
+        // and one below it
+        Rectangle small = new Rectangle(150, 100, 100, 50);
+        checkEqual(full, small.x, small.y, read(mapFile, small));
+    }
+
+    /**
+     * Tests the decoding of the rows, without the header parsing of the read handler.
+     */
+    public void testRowReader() throws Exception {
+        // copies of the maps, so that their rows are not cached by the other tests
+        File dir = File.createTempFile("grassrows", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        try {
+            File pitData = copy(new File(pitFile.getParentFile().getParentFile(), "fcell/pit"),
+                    new File(dir, "pit"));
+            GrassRowReader reader = new GrassRowReader(pitData, null, readAddresses(pitData, 8),
+                    10, -2, 8, true);
+            try {
+                GrassRowReader.Row row = reader.getRow(3, 2, 5);
+                assertTrue(row.start <= 2);
+                assertTrue(row.end >= 5);
+                for( int col = 2; col < 5; col++ ) {
+                    assertEquals(PIT[3][col], row.values.getDouble((col - row.start) * 8), 0);
+                    assertFalse(row.isNull(col));
+                }
+
+                // the cached row is extended to the requested columns
+                GrassRowReader.Row whole = reader.getRow(3, 0, 10);
+                assertEquals(0, whole.start);
+                assertEquals(10, whole.end);
+                for( int col = 0; col < 10; col++ ) {
+                    assertEquals(PIT[3][col], whole.values.getDouble(col * 8), 0);
+                }
+                assertSame(whole, reader.getRow(3, 4, 8));
+            } finally {
+                reader.close();
+            }
+
+            File testDir = testFile.getParentFile().getParentFile();
+            File testData = copy(new File(testDir, "fcell/test"), new File(dir, "test"));
+            File testNulls = copy(new File(testDir, "cell_misc/test/null"), new File(dir,
+                    "test_null"));
+            reader = new GrassRowReader(testData, testNulls, readAddresses(testData, 8), 10, -2,
+                    8, true);
+            try {
+                GrassRowReader.Row row = reader.getRow(1, 0, 10);
+                assertTrue(row.isNull(1));
+                for( int col = 0; col < 10; col++ ) {
+                    if (col != 1) {
+                        assertFalse(row.isNull(col));
+                    }
+                }
+                assertFalse(reader.getRow(0, 0, 10).isNull(1));
+            } finally {
+                reader.close();
+            }
+
+            // the rows cached for a previous version of the null file are not reused
+            GrassRowReader.Row cached;
+            reader = new GrassRowReader(testData, testNulls, readAddresses(testData, 8), 10, -2,
+                    8, true);
+            try {
+                cached = reader.getRow(1, 0, 10);
+                assertSame(cached, reader.getRow(1, 0, 10));
+            } finally {
+                reader.close();
+            }
+            assertTrue(testNulls.setLastModified(testNulls.lastModified() + 10000));
+            reader = new GrassRowReader(testData, testNulls, readAddresses(testData, 8), 10, -2,
+                    8, true);
+            try {
+                assertNotSame(cached, reader.getRow(1, 0, 10));
+            } finally {
+                reader.close();
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            for( int i = 0; i < files.length; i++ ) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Compares all the windows of a map with its full read.
+     */
+    private void checkWindows( File file ) throws Exception {
+        Raster full = read(file, null);
+        final int width = full.getWidth();
+        final int height = full.getHeight();
+        for( int y = 0; y < height; y++ ) {
+            for( int x = 0; x < width; x++ ) {
+                for( int h = 1; y + h <= height; h += 3 ) {
+                    for( int w = 1; x + w <= width; w += 3 ) {
+                        Rectangle window = new Rectangle(x, y, w, h);
+                        checkEqual(full, x, y, read(file, window));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a raster equals a part of another one, starting at the given offsets.
+     */
+    private static void checkEqual( Raster expected, int xOffset, int yOffset, Raster actual ) {
+        for( int y = 0; y < actual.getHeight(); y++ ) {
+            for( int x = 0; x < actual.getWidth(); x++ ) {
+                double expectedValue = expected.getSampleDouble(x + xOffset, y + yOffset, 0);
+                double value = actual.getSampleDouble(x, y, 0);
+                if (Double.isNaN(expectedValue)) {
+                    assertTrue(x + " " + y, Double.isNaN(value));
+                } else {
+                    assertEquals(x + " " + y, expectedValue, value, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a map, entirely if the window is <code>null</code>.
+     */
+    private static WritableRaster read( File file, Rectangle window ) throws Exception {
+        GrassBinaryRasterReadHandler handler = new GrassBinaryRasterReadHandler(file);
+        try {
+            handler.parseHeaderAndAccessoryFiles();
+            ImageReadParam param = null;
+            if (window != null) {
+                param = new ImageReadParam();
+                param.setSourceRegion(window);
+            }
+            return handler.readRaster(param);
+        } finally {
+            handler.close();
+        }
+    }
+
+    /**
+     * Reads the row addresses from the header of a compressed map.
+     */
+    private static long[] readAddresses( File file, int rows ) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            assertEquals(4, in.read());
+            long[] addresses = new long[rows + 1];
+            for( int i = 0; i <= rows; i++ ) {
+                addresses[i] = in.readInt();
+            }
+            return addresses;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File copy( File source, File destination ) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(destination);
+            try {
+                byte[] buffer = new byte[8192];
+                int n;
+                while( (n = in.read(buffer)) > 0 ) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return destination;
+    }
+}
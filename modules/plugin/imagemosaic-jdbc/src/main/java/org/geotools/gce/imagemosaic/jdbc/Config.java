@@ -44,6 +44,9 @@ import org.xml.sax.InputSource;
  * @source $URL$
  */
 public class Config {
+    /** Default size in megabytes of the cache of the decoded tiles */
+    static final Integer DEFAULT_TILE_CACHE_SIZE = 64;
+
     static private Map<String, Config> ConfigMap = new Hashtable<String, Config>(); // Hashtable
 
     // is
@@ -122,6 +125,10 @@ public class Config {
     
     private String jdbcAccessClassName;
 
+    private Integer tileCacheSize;
+
+    private Boolean prefetchTiles;
+
 
     protected Config() {
     }
@@ -167,6 +174,19 @@ public class Config {
         String s = map.getNamedItem("interpolation").getNodeValue();
         result.interpolation = new Integer(s);
 
+        result.tileCacheSize = DEFAULT_TILE_CACHE_SIZE;
+        result.prefetchTiles = Boolean.FALSE;
+        tmp = dom.getElementsByTagName("tileCache").item(0);
+        if (tmp != null) {
+            map = tmp.getAttributes();
+            Node attr = map.getNamedItem("size");
+            if (attr != null)
+                result.tileCacheSize = new Integer(attr.getNodeValue());
+            attr = map.getNamedItem("prefetch");
+            if (attr != null)
+                result.prefetchTiles = new Boolean(attr.getNodeValue());
+        }
+
         // db mapping
         result.spatialExtension = SpatialExtension.fromString(readNameString(dom
                 .getDocumentElement(), "spatialExtension"));
@@ -437,6 +457,22 @@ public class Config {
         return verifyCardinality;
     }
 
+    /**
+     * @return the size in megabytes of the cache of the decoded tiles, 0 if
+     *         the tiles are not cached
+     */
+    public Integer getTileCacheSize() {
+        return tileCacheSize;
+    }
+
+    /**
+     * @return true if the tiles around a request are decoded into the tile
+     *         cache, for the following requests of a pan
+     */
+    public Boolean getPrefetchTiles() {
+        return prefetchTiles;
+    }
+
     public String getDriverClassName() {
         return driverClassName;
     }
@@ -0,0 +1,157 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.jdbc;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of decoded tiles, bounded by the memory used by
+ * the tile images.
+ * <p>
+ * Tiles are identified by their pyramid level, given by its spatial and tile
+ * tables, and by their location. The images are the full decoded tiles, the
+ * clipping to a request is done on the cached image, which is never modified.
+ *
+ * @source $URL$
+ */
+final class DecodedTileCache {
+
+	/**
+	 * Key of a tile in the cache.
+	 */
+	private static final class TileKey {
+		private final String spatialTable;
+
+		private final String tileTable;
+
+		private final String location;
+
+		TileKey(ImageLevelInfo levelInfo, String location) {
+			this.spatialTable = levelInfo.getSpatialTableName();
+			this.tileTable = levelInfo.getTileTableName();
+			this.location = location;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return location.equals(other.location)
+					&& equals(spatialTable, other.spatialTable)
+					&& equals(tileTable, other.tileTable);
+		}
+
+		private static boolean equals(String s1, String s2) {
+			return s1 == null ? s2 == null : s1.equals(s2);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = location.hashCode();
+			hash = hash * 31
+					+ (spatialTable == null ? 0 : spatialTable.hashCode());
+			return hash * 31 + (tileTable == null ? 0 : tileTable.hashCode());
+		}
+	}
+
+	/** The tiles, in access order. */
+	private final LinkedHashMap<TileKey, BufferedImage> tiles = new LinkedHashMap<TileKey, BufferedImage>(
+			64, 0.75f, true);
+
+	private final long maxSize;
+
+	private long size;
+
+	/**
+	 * @param maxSize
+	 *            the maximum size in bytes of the cached images
+	 */
+	DecodedTileCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param levelInfo
+	 *            the level of the tile
+	 * @param location
+	 *            the tile name
+	 * @return the decoded tile, or <code>null</code> if it is not cached
+	 */
+	synchronized BufferedImage get(ImageLevelInfo levelInfo, String location) {
+		if (location == null) {
+			return null;
+		}
+		return tiles.get(new TileKey(levelInfo, location));
+	}
+
+	/**
+	 * Caches a decoded tile, evicting the least recently used tiles if the
+	 * cache is full. Tiles larger than the whole cache are not cached.
+	 *
+	 * @param levelInfo
+	 *            the level of the tile
+	 * @param location
+	 *            the tile name
+	 * @param image
+	 *            the decoded tile
+	 */
+	synchronized void put(ImageLevelInfo levelInfo, String location,
+			BufferedImage image) {
+		long imageSize = sizeOf(image);
+		if (location == null || imageSize > maxSize) {
+			return;
+		}
+		BufferedImage previous = tiles.put(new TileKey(levelInfo, location),
+				image);
+		if (previous != null) {
+			size -= sizeOf(previous);
+		}
+		size += imageSize;
+
+		Iterator<Map.Entry<TileKey, BufferedImage>> eldest = tiles.entrySet()
+				.iterator();
+		while (size > maxSize && eldest.hasNext()) {
+			BufferedImage evicted = eldest.next().getValue();
+			if (evicted != image) {
+				size -= sizeOf(evicted);
+				eldest.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of cached tiles
+	 */
+	synchronized int getTileCount() {
+		return tiles.size();
+	}
+
+	/**
+	 * @return the size in bytes of the data of an image
+	 */
+	static long sizeOf(BufferedImage image) {
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return (long) buffer.getSize() * buffer.getNumBanks()
+				* DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+}
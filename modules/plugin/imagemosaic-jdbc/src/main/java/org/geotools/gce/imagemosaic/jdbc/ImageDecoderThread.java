@@ -65,6 +65,12 @@ public class ImageDecoderThread extends AbstractThread {
 
 	private GeneralEnvelope tileEnvelope;
 
+	/** The tile already decoded, or <code>null</code> */
+	private BufferedImage image;
+
+	/** The cache of the decoded tiles, or <code>null</code> */
+	private DecodedTileCache tileCache;
+
 	/**
 	 * @param bytes
 	 *            the image bytes
@@ -95,30 +101,77 @@ public class ImageDecoderThread extends AbstractThread {
 		this.tileEnvelope = tileEnvelope;
 	}
 
+	/**
+	 * Creates a decoder using a cache of the decoded tiles.
+	 * 
+	 * @param bytes
+	 *            the image bytes, <code>null</code> if the tile is cached
+	 * @param image
+	 *            the cached tile, <code>null</code> if the tile has to be
+	 *            decoded
+	 * @param location
+	 *            the tile name
+	 * @param tileEnvelope
+	 *            the georeferencing information for the tile
+	 * @param pixelDimension
+	 *            the pixel dimension required
+	 * @param requestEnvelope
+	 *            the requested envelope
+	 * @param levelInfo
+	 *            the proper levelInfo
+	 * @param tileQueue
+	 *            the queue where to put the result, <code>null</code> if the
+	 *            tile is only decoded into the cache
+	 * @param config
+	 *            the reader config
+	 * @param tileCache
+	 *            the cache where to put the decoded tile, or
+	 *            <code>null</code>
+	 */
+	ImageDecoderThread(byte[] bytes, BufferedImage image, String location,
+			GeneralEnvelope tileEnvelope, Rectangle pixelDimension,
+			GeneralEnvelope requestEnvelope, ImageLevelInfo levelInfo,
+			LinkedBlockingQueue<TileQueueElement> tileQueue, Config config,
+			DecodedTileCache tileCache) {
+		this(bytes, location, tileEnvelope, pixelDimension, requestEnvelope,
+				levelInfo, tileQueue, config);
+		this.image = image;
+		this.tileCache = tileCache;
+	}
+
 	/**
 	 * @see java.lang.Thread#run()
 	 */
 	@Override
 	public void run() {
-		if ((imageBytes == null) || (imageBytes.length == 0)) { // nothing to do
+		if (image == null && ((imageBytes == null) || (imageBytes.length == 0))) { // nothing to do
 			return;
 		}
 
 		try {
 
-			BufferedImage bufferedImage = null;
+			BufferedImage bufferedImage = image;
 
-			boolean triedFromStream = false;
-			if (levelInfo.getCanImageIOReadFromInputStream()) {
-				bufferedImage = ImageIO.read(new ByteArrayInputStream(
-						imageBytes));
-				triedFromStream = true;
-			}
 			if (bufferedImage == null) {
-				if (triedFromStream)
-					LOGGER.warning("Could not read " + location
-							+ " from stream, switch to JAI");
-				bufferedImage = readImage2(imageBytes);
+				boolean triedFromStream = false;
+				if (levelInfo.getCanImageIOReadFromInputStream()) {
+					bufferedImage = ImageIO.read(new ByteArrayInputStream(
+							imageBytes));
+					triedFromStream = true;
+				}
+				if (bufferedImage == null) {
+					if (triedFromStream)
+						LOGGER.warning("Could not read " + location
+								+ " from stream, switch to JAI");
+					bufferedImage = readImage2(imageBytes);
+				}
+				if (tileCache != null && bufferedImage != null) {
+					tileCache.put(levelInfo, location, bufferedImage);
+				}
+			}
+
+			if (tileQueue == null) { // prefetched into the cache
+				return;
 			}
 
 			if (requestEnvelope.contains(tileEnvelope, true) == false) {
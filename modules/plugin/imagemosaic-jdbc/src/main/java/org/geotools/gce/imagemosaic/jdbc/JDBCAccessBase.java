@@ -32,10 +32,15 @@ import java.util.Date;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -80,6 +85,21 @@ abstract class JDBCAccessBase implements JDBCAccess {
 
 	protected DataSource dataSource = null;
 
+	/** Number of tiles waiting in the decoder pool, per decoding thread */
+	private static final int PENDING_TILES_PER_THREAD = 2;
+
+	/** Prefetched margin around a request, relative to the request size */
+	private static final double PREFETCH_MARGIN = 0.5;
+
+	/** The decoder pool shared by all the mosaics */
+	private static ExecutorService decoderPool;
+
+	/** The decoded tiles of this mosaic, <code>null</code> if disabled */
+	private final DecodedTileCache tileCache;
+
+	/** Runs the prefetch of the latest request */
+	private ExecutorService prefetchExecutor;
+
 	/**
 	 * Constructor
 	 * 
@@ -92,6 +112,9 @@ abstract class JDBCAccessBase implements JDBCAccess {
 		this.config = config;
 		this.dataSource = DataSourceFinder.getDataSource(config
 				.getDataSourceParams());
+		int cacheSize = config.getTileCacheSize().intValue();
+		this.tileCache = cacheSize > 0 ? new DecodedTileCache(
+				cacheSize * 1024L * 1024L) : null;
 	}
 
 	/**
@@ -559,96 +582,200 @@ abstract class JDBCAccessBase implements JDBCAccess {
 			LinkedBlockingQueue<TileQueueElement> tileQueue,
 			GridCoverageFactory coverageFactory) throws IOException {
 		Date start = new Date();
+		int tileCount;
+
+		try {
+			tileCount = decodeTiles(requestEnvelope, pixelDimension,
+					requestEnvelope, levelInfo, tileQueue);
+		} finally {
+			// write end marker, also on failure to release the composer
+			tileQueue.add(TileQueueElement.ENDELEMENT);
+		}
+
+		if (LOGGER.isLoggable(Level.INFO))
+			LOGGER
+					.info("Getting and decoding  " + tileCount
+							+ " Tiles needs "
+							+ ((new Date()).getTime() - start.getTime())
+							+ " millisecs");
+
+		if (tileCache != null && config.getPrefetchTiles().booleanValue()) {
+			prefetchTiles(pixelDimension, requestEnvelope, levelInfo);
+		}
+	}
+
+	/**
+	 * Reads the tiles intersecting an envelope and decodes them with the
+	 * shared decoder pool, waiting for the decoders to finish.
+	 * 
+	 * Tiles found in the tile cache are not read from the database.
+	 * 
+	 * @param queryEnvelope
+	 *            the envelope of the tiles to read
+	 * @param pixelDimension
+	 *            the pixel dimension required
+	 * @param requestEnvelope
+	 *            the requested envelope
+	 * @param levelInfo
+	 *            the proper levelInfo
+	 * @param tileQueue
+	 *            the queue where to put the tiles, <code>null</code> to
+	 *            decode the tiles not cached into the cache only
+	 * @return the number of tiles decoded or taken from the cache
+	 * @throws IOException
+	 */
+	private int decodeTiles(GeneralEnvelope queryEnvelope,
+			Rectangle pixelDimension, GeneralEnvelope requestEnvelope,
+			ImageLevelInfo levelInfo,
+			LinkedBlockingQueue<TileQueueElement> tileQueue)
+			throws IOException {
 		Connection con = null;
-		List<ImageDecoderThread> threads = new ArrayList<ImageDecoderThread>();
-		ExecutorService pool =  getExecutorServivicePool ();
-		
+		List<Future<?>> decoders = new ArrayList<Future<?>>();
+		ExecutorService pool = getDecoderPool();
 
 		String statementString = getGridSelectStatement(levelInfo);
 
 		try {
-			con = dataSource.getConnection();
+			try {
+				con = dataSource.getConnection();
 
-			PreparedStatement s = con.prepareStatement(statementString);
-			setGridSelectParams(s, requestEnvelope, levelInfo);
+				PreparedStatement s = con.prepareStatement(statementString);
+				setGridSelectParams(s, queryEnvelope, levelInfo);
 
-			ResultSet r = s.executeQuery();
+				ResultSet r = s.executeQuery();
 
-			while (r.next()) {
-				byte[] tileBytes = getTileBytes(r);
-				Envelope env = getEnvelopeFromResultSet(r);
-				String location = r.getString(config
-						.getKeyAttributeNameInSpatialTable());
+				while (r.next()) {
+					String location = r.getString(config
+							.getKeyAttributeNameInSpatialTable());
+					BufferedImage image = tileCache == null ? null
+							: tileCache.get(levelInfo, location);
+					if (image != null && tileQueue == null) {
+						continue; // already prefetched
+					}
+					Envelope env = getEnvelopeFromResultSet(r);
+					byte[] tileBytes = image == null ? getTileBytes(r) : null;
+
+					Rectangle2D tmp = new Rectangle2D.Double(env.getMinX(), env
+							.getMinY(), env.getWidth(), env.getHeight());
+					GeneralEnvelope tileGeneralEnvelope = new GeneralEnvelope(
+							tmp);
+					tileGeneralEnvelope
+							.setCoordinateReferenceSystem(requestEnvelope
+									.getCoordinateReferenceSystem());
+
+					// the pool queue is bounded, when it is full the tile is
+					// decoded by this thread, which stops reading blobs
+					decoders.add(pool.submit(new ImageDecoderThread(tileBytes,
+							image, location, tileGeneralEnvelope,
+							pixelDimension, requestEnvelope, levelInfo,
+							tileQueue, config, tileCache)));
+				}
 
-				Rectangle2D tmp = new Rectangle2D.Double(env.getMinX(), env
-						.getMinY(), env.getWidth(), env.getHeight());
-				GeneralEnvelope tileGeneralEnvelope = new GeneralEnvelope(tmp);
-				tileGeneralEnvelope
-						.setCoordinateReferenceSystem(requestEnvelope
-								.getCoordinateReferenceSystem());
+				r.close();
+				s.close();
 
-				ImageDecoderThread thread = new ImageDecoderThread(tileBytes,
-						location, tileGeneralEnvelope, pixelDimension,
-						requestEnvelope, levelInfo, tileQueue, config);
-//				thread.start();
-				threads.add(thread);
-				pool.execute(thread);
+				con.close();
+			} catch (SQLException e) {
+				try {
+					if (con != null)
+						con.close();
+				} catch (SQLException e1) {
+				}
 
+				LOGGER.log(Level.SEVERE, e.getMessage(), e);
+				throw new IOException(e);
 			}
+		} finally {
+			// wait for the decoders of this request, the decoding errors are
+			// logged by the decoders
+			for (Future<?> decoder : decoders) {
+				try {
+					decoder.get();
+				} catch (ExecutionException e) {
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e.getLocalizedMessage());
+				}
+			}
+		}
 
-			;
-			r.close();
-			s.close();
-
-			// if (con.getAutoCommit() == false) {
-			// con.commit();
-			// }
+		return decoders.size();
+	}
 
-			con.close();
-		} catch (SQLException e) {
-			try {
-				// if (con.getAutoCommit() == false) {
-				// con.rollback();
-				// }
+	/**
+	 * Decodes into the tile cache the tiles around a request, in the
+	 * background, so that the following requests of a pan find them in the
+	 * cache. Only the prefetch of the latest request is kept waiting.
+	 */
+	private void prefetchTiles(final Rectangle pixelDimension,
+			final GeneralEnvelope requestEnvelope,
+			final ImageLevelInfo levelInfo) {
+		final GeneralEnvelope prefetchEnvelope = new GeneralEnvelope(
+				requestEnvelope);
+		for (int i = 0; i < 2; i++) {
+			double margin = requestEnvelope.getSpan(i) * PREFETCH_MARGIN;
+			prefetchEnvelope.setRange(i, requestEnvelope.getMinimum(i)
+					- margin, requestEnvelope.getMaximum(i) + margin);
+		}
 
-				con.close();
-			} catch (SQLException e1) {
+		getPrefetchExecutor().execute(new Runnable() {
+			public void run() {
+				try {
+					decodeTiles(prefetchEnvelope, pixelDimension,
+							prefetchEnvelope, levelInfo, null);
+				} catch (IOException e) {
+					LOGGER.log(Level.FINE, "Tile prefetch failed", e);
+				}
 			}
+		});
+	}
 
-			LOGGER.log(Level.SEVERE, e.getMessage(), e);
-			throw new IOException(e);
+	private synchronized ExecutorService getPrefetchExecutor() {
+		if (prefetchExecutor == null) {
+			prefetchExecutor = new ThreadPoolExecutor(1, 1, 0L,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1),
+					new DaemonThreadFactory("ImageMosaicJDBC prefetch"),
+					new ThreadPoolExecutor.DiscardOldestPolicy());
 		}
+		return prefetchExecutor;
+	}
 
-		if (LOGGER.isLoggable(Level.INFO))
-			LOGGER
-					.info("Getting " + threads.size() + " Tiles needs "
-							+ ((new Date()).getTime() - start.getTime())
-							+ " millisecs");
+	/**
+	 * Returns the pool decoding the tiles of all the mosaics. Its queue is
+	 * bounded and the tiles submitted to a full pool are decoded by the
+	 * submitting thread, so that a large request does not hold all its tiles
+	 * in memory before decoding them.
+	 * 
+	 * @return the shared decoder pool
+	 */
+	static synchronized ExecutorService getDecoderPool() {
+		if (decoderPool == null) {
+			int threads = Runtime.getRuntime().availableProcessors();
+			decoderPool = new ThreadPoolExecutor(threads, threads, 0L,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+							PENDING_TILES_PER_THREAD * threads),
+					new DaemonThreadFactory("ImageMosaicJDBC decoder"),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return decoderPool;
+	}
 
-		// wait for all threads dto finish and write end marker
-		pool.shutdown();
-		try {
-		    pool.awaitTermination(3600, TimeUnit.SECONDS); // wait for one hour 
-                  } catch (InterruptedException e) {
-                           throw new RuntimeException(e.getLocalizedMessage());
-                }
-		
-//		for (AbstractThread thread : threads) {
-//			try {
-//				thread.join();
-//			} catch (InterruptedException e) {
-//				throw new RuntimeException(e.getLocalizedMessage());
-//			}
-//		}
-
-		tileQueue.add(TileQueueElement.ENDELEMENT);
+	/**
+	 * Creates named daemon threads, which do not prevent the jvm from exiting.
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String name;
 
-		if (LOGGER.isLoggable(Level.INFO))
-			LOGGER
-					.info("Getting and decoding  " + threads.size()
-							+ " Tiles needs "
-							+ ((new Date()).getTime() - start.getTime())
-							+ " millisecs");
+		private final AtomicInteger count = new AtomicInteger();
+
+		DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
 	}
 
 	/**
@@ -819,10 +946,4 @@ abstract class JDBCAccessBase implements JDBCAccess {
 
 		return result;
 	}
-	
-       public ExecutorService getExecutorServivicePool () {
-           int availableProcessors = Runtime.getRuntime().availableProcessors();
-           LOGGER.info("Using "+ availableProcessors + " CPU(s)");
-           return Executors.newFixedThreadPool(availableProcessors);
-       }
 }
@@ -0,0 +1,80 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.jdbc;
+
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+/**
+ * Testing {@link DecodedTileCache} class.
+ *
+ * @source $URL$
+ */
+public class DecodedTileCacheTest extends TestCase {
+
+	private static ImageLevelInfo level(String spatialTable, String tileTable) {
+		ImageLevelInfo levelInfo = new ImageLevelInfo();
+		levelInfo.setSpatialTableName(spatialTable);
+		levelInfo.setTileTableName(tileTable);
+		return levelInfo;
+	}
+
+	public void testLevels() {
+		DecodedTileCache cache = new DecodedTileCache(1024 * 1024);
+		ImageLevelInfo level0 = level("SPATIAL_0", "TILES_0");
+		ImageLevelInfo level1 = level("SPATIAL_1", "TILES_1");
+		BufferedImage image = new BufferedImage(16, 16,
+				BufferedImage.TYPE_INT_RGB);
+
+		cache.put(level0, "tile", image);
+		assertSame(image, cache.get(level("SPATIAL_0", "TILES_0"), "tile"));
+		assertNull(cache.get(level1, "tile"));
+		assertNull(cache.get(level0, "other"));
+		assertNull(cache.get(level0, null));
+	}
+
+	public void testEviction() {
+		// room for 3 tiles of 32 x 32 x 4 bytes
+		DecodedTileCache cache = new DecodedTileCache(3 * 32 * 32 * 4);
+		ImageLevelInfo level = level("SPATIAL", "TILES");
+		BufferedImage[] images = new BufferedImage[4];
+		for (int i = 0; i < images.length; i++) {
+			images[i] = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+			assertEquals(32 * 32 * 4, DecodedTileCache.sizeOf(images[i]));
+		}
+
+		cache.put(level, "0", images[0]);
+		cache.put(level, "1", images[1]);
+		cache.put(level, "2", images[2]);
+		// tile 0 becomes the most recently used one
+		assertSame(images[0], cache.get(level, "0"));
+
+		cache.put(level, "3", images[3]);
+		assertEquals(3, cache.getTileCount());
+		assertNull(cache.get(level, "1"));
+		assertSame(images[0], cache.get(level, "0"));
+		assertSame(images[2], cache.get(level, "2"));
+		assertSame(images[3], cache.get(level, "3"));
+
+		// a tile larger than the cache is not cached
+		cache.put(level, "4", new BufferedImage(64, 64,
+				BufferedImage.TYPE_INT_ARGB));
+		assertNull(cache.get(level, "4"));
+		assertEquals(3, cache.getTileCount());
+	}
+}
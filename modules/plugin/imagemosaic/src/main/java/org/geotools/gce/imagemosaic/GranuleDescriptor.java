@@ -615,6 +615,13 @@ public class GranuleDescriptor {
 
 		ImageInputStream inStream=null;
 		ImageReader reader=null;
+		// borrowed readers go back to the pool unless they failed, the ones handed to a deferred
+		// read go back once the read is disposed
+		final GranuleReaderPool pool = request.rasterManager != null ? request.rasterManager.readerPool : null;
+		GranuleReaderPool.PooledReader pooled = null;
+		PooledImageReader deferred = null;
+		boolean discard = false;
+		boolean handedOver = false;
 		try {
 			//
 			//get info about the raster we have to read
@@ -622,19 +629,29 @@ public class GranuleDescriptor {
 			
 			// get a stream
 		        assert cachedStreamSPI!=null:"no cachedStreamSPI available!";
-                        inStream = cachedStreamSPI.createInputStreamInstance(granuleUrl, ImageIO.getUseCache(), ImageIO.getCacheDirectory());
-			if(inStream==null)
+			if (pool != null) {
+			        pooled = pool.borrow(granuleUrl, cachedStreamSPI, cachedReaderSPI);
+			        if (pooled != null) {
+			            inStream = pooled.stream;
+			            reader = pooled.reader;
+			            if (cachedReaderSPI == null)
+			                cachedReaderSPI = reader.getOriginatingProvider();
+			        }
+			} else {
+                            inStream = cachedStreamSPI.createInputStreamInstance(granuleUrl, ImageIO.getUseCache(), ImageIO.getCacheDirectory());
+			    if(inStream==null)
 				return null;
 			
 	
-			// get a reader and try to cache the relevant SPI
-			if(cachedReaderSPI==null){
+			    // get a reader and try to cache the relevant SPI
+			    if(cachedReaderSPI==null){
 				reader = ImageIOExt.getImageioReader(inStream);
 				if(reader!=null)
 					cachedReaderSPI=reader.getOriginatingProvider();
-			}
-			else
+			    }
+			    else
 				reader=cachedReaderSPI.createReaderInstance();
+			}
 			if(reader==null) {
 				if (LOGGER.isLoggable(java.util.logging.Level.WARNING)){
 					LOGGER.warning(new StringBuilder("Unable to get s reader for granuleDescriptor ").append(this.toString())
@@ -643,7 +660,8 @@ public class GranuleDescriptor {
 				return null;
 			}
 			// set input
-			reader.setInput(inStream);
+			if (pooled == null)
+				reader.setInput(inStream);
 			
 			// Checking for heterogeneous granules
 			if (request.isHeterogeneousGranules()){
@@ -720,9 +738,16 @@ public class GranuleDescriptor {
 			final RenderedImage raster;
 			try {
 				// read
-				raster= request.getReadType().read(readParameters,imageIndex, granuleUrl, selectedlevel.rasterDimensions,reader, hints,false);
+				if (pooled != null && request.getReadType() == ReadType.JAI_IMAGEREAD) {
+				        deferred = new PooledImageReader(pool, pooled);
+				}
+				raster= request.getReadType().read(readParameters,imageIndex, granuleUrl, selectedlevel.rasterDimensions,
+				        deferred != null ? deferred : reader, hints,false);
+				handedOver = deferred != null && raster != null;
+				discard = raster == null;
 				
 			} catch (Throwable e) {
+				discard = true;
 				if (LOGGER.isLoggable(java.util.logging.Level.FINE)){
 					LOGGER.log(java.util.logging.Level.FINE,
 					        "Unable to load raster for granuleDescriptor "
@@ -895,32 +920,52 @@ public class GranuleDescriptor {
 			}
 		
 		} catch (IllegalStateException e) {
+			discard = true;
 			if (LOGGER.isLoggable(java.util.logging.Level.WARNING)) {
 				LOGGER.log(java.util.logging.Level.WARNING, new StringBuilder("Unable to load raster for granuleDescriptor ")
 				.append(this.toString()).append(" with request ").append(request.toString()).append(" Resulting in no granule loaded: Empty result").toString(), e);
 			}
 			return null;
 		} catch (org.opengis.referencing.operation.NoninvertibleTransformException e) {
+                    discard = true;
                     if (LOGGER.isLoggable(java.util.logging.Level.WARNING)) {
                         LOGGER.log(java.util.logging.Level.WARNING, new StringBuilder("Unable to load raster for granuleDescriptor ")
                         .append(this.toString()).append(" with request ").append(request.toString()).append(" Resulting in no granule loaded: Empty result").toString(), e);
                     }
 			return null;
 		} catch (TransformException e) {
+                    discard = true;
                     if (LOGGER.isLoggable(java.util.logging.Level.WARNING)) {
                         LOGGER.log(java.util.logging.Level.WARNING, new StringBuilder("Unable to load raster for granuleDescriptor ")
                         .append(this.toString()).append(" with request ").append(request.toString()).append(" Resulting in no granule loaded: Empty result").toString(), e);
                     }
 			return null;
 
+                } catch (IOException e) {
+                    discard = true;
+                    throw e;
+                } catch (RuntimeException e) {
+                    discard = true;
+                    throw e;
                 } finally {
-                    try {
-                        if (request.getReadType() != ReadType.JAI_IMAGEREAD && inStream != null) {
-                            inStream.close();
+                    if (pooled != null) {
+                        if (handedOver || (deferred != null && !deferred.release())) {
+                            // the deferred read gives the reader back once disposed, or the
+                            // failed read disposed it already
+                        } else if (discard) {
+                            pool.discard(pooled);
+                        } else {
+                            pool.giveBack(pooled);
                         }
-                    } finally {
-                        if (request.getReadType() != ReadType.JAI_IMAGEREAD && reader != null) {
-                            reader.dispose();
+                    } else {
+                        try {
+                            if (request.getReadType() != ReadType.JAI_IMAGEREAD && inStream != null) {
+                                inStream.close();
+                            }
+                        } finally {
+                            if (request.getReadType() != ReadType.JAI_IMAGEREAD && reader != null) {
+                                reader.dispose();
+                            }
                         }
                     }
                 }
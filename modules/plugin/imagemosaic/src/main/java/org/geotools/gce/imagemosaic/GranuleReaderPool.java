@@ -0,0 +1,356 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.ImageInputStreamSpi;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+import org.geotools.image.io.ImageIOExt;
+
+/**
+ * A bounded pool of {@link ImageReader}s, with their input stream already set, for the
+ * granules of a mosaic.
+ *
+ * <p>
+ * Opening a granule means creating a stream, looking for a reader and parsing the headers
+ * (e.g. the TIFF directories) again. For mosaics made of many small granules this dominates
+ * the cost of a tile request, hence readers are given back to the pool once a
+ * {@link ReadType#DIRECT_READ direct read} completed and reused by the next request hitting
+ * the same granule. Readers handed to a {@link ReadType#JAI_IMAGEREAD deferred read} are
+ * owned by the resulting image until it is disposed: they are handed through a
+ * {@link PooledImageReader} which gives them back at that time, and count as open streams
+ * meanwhile.
+ *
+ * <p>
+ * The pool keeps at most {@link #getMaxOpen()} streams open: when the limit is reached the
+ * least recently used idle readers are closed. Readers idle for more than
+ * {@link #getIdleTimeout()} milliseconds are closed as well, by a background timer checking
+ * the pool every half idle timeout, so that the streams of a mosaic no more requested get
+ * closed too. A borrowed reader is never
+ * shared, a granule may have several readers when it is read concurrently.
+ *
+ * <p>
+ * Pools are shared among the {@link ImageMosaicReader}s opened on the same mosaic, see
+ * {@link #acquire(URL)} and {@link #release()}.
+ *
+ * @source $URL$
+ */
+class GranuleReaderPool {
+
+    /** Logger. */
+    private final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(GranuleReaderPool.class);
+
+    /** Default maximum number of open streams per mosaic. */
+    final static int DEFAULT_MAX_OPEN = Integer.getInteger("org.geotools.imagemosaic.reader.pool.maxopen", 64);
+
+    /** Default time in milliseconds after which an idle reader is closed. */
+    final static long DEFAULT_IDLE_TIMEOUT = Long.getLong("org.geotools.imagemosaic.reader.pool.idletimeout", 60000L);
+
+    /** Minimum delay in milliseconds between two checks for idle readers. */
+    private final static long MIN_EVICTION_PERIOD = 1000L;
+
+    /** The timer closing the idle readers of all the pools. */
+    private final static Timer EVICTOR = new Timer("GT image mosaic reader pool evictor", true);
+
+    /** The pools shared among the readers of the same mosaic, keyed by mosaic location. */
+    private final static Map<String, GranuleReaderPool> POOLS = new HashMap<String, GranuleReaderPool>();
+
+    /**
+     * A reader with its input stream, as borrowed from the pool.
+     */
+    static final class PooledReader {
+
+        final String key;
+
+        final ImageInputStream stream;
+
+        final ImageReader reader;
+
+        long lastUsed;
+
+        PooledReader(final String key, final ImageInputStream stream, final ImageReader reader) {
+            this.key = key;
+            this.stream = stream;
+            this.reader = reader;
+        }
+
+        void close() {
+            try {
+                stream.close();
+            } catch (Throwable e) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** The location of the mosaic, or {@code null} for a private pool. */
+    private final String location;
+
+    private final int maxOpen;
+
+    private final long idleTimeout;
+
+    /** The idle readers, least recently used first. */
+    private final LinkedList<PooledReader> idle = new LinkedList<PooledReader>();
+
+    /** Number of open streams, idle or borrowed, including the deferred reads. */
+    private int open;
+
+    /** Number of {@link RasterManager}s using this pool. */
+    private int users;
+
+    private boolean closed;
+
+    /** The periodic check for idle readers, or {@code null} if there is no idle timeout. */
+    private final TimerTask eviction;
+
+    GranuleReaderPool(final int maxOpen, final long idleTimeout) {
+        this(null, maxOpen, idleTimeout);
+    }
+
+    private GranuleReaderPool(final String location, final int maxOpen, final long idleTimeout) {
+        if (maxOpen <= 0) {
+            throw new IllegalArgumentException("The maximum number of open readers must be positive");
+        }
+        this.location = location;
+        this.maxOpen = maxOpen;
+        this.idleTimeout = idleTimeout;
+        if (idleTimeout > 0) {
+            eviction = new TimerTask() {
+                @Override
+                public void run() {
+                    evictIdle();
+                }
+            };
+            final long period = Math.max(idleTimeout / 2, MIN_EVICTION_PERIOD);
+            EVICTOR.schedule(eviction, period, period);
+        } else {
+            eviction = null;
+        }
+    }
+
+    /**
+     * Returns the pool shared by the readers of the mosaic at the specified location, creating
+     * it if needed. Every call must be balanced by a call to {@link #release()}.
+     *
+     * @param mosaicLocation the location of the mosaic, may be {@code null} in which case a
+     *        private pool is returned.
+     */
+    static GranuleReaderPool acquire(final URL mosaicLocation) {
+        if (mosaicLocation == null) {
+            final GranuleReaderPool pool = new GranuleReaderPool(DEFAULT_MAX_OPEN, DEFAULT_IDLE_TIMEOUT);
+            pool.users = 1;
+            return pool;
+        }
+        // do not use URL as a key, its equals method may resolve host names
+        final String key = mosaicLocation.toExternalForm();
+        synchronized (POOLS) {
+            GranuleReaderPool pool = POOLS.get(key);
+            if (pool == null) {
+                pool = new GranuleReaderPool(key, DEFAULT_MAX_OPEN, DEFAULT_IDLE_TIMEOUT);
+                POOLS.put(key, pool);
+            }
+            synchronized (pool) {
+                pool.users++;
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Releases this pool on behalf of a user. The idle readers are closed when the last user
+     * releases it, readers still borrowed are closed when given back.
+     */
+    void release() {
+        synchronized (POOLS) {
+            synchronized (this) {
+                if (--users > 0) {
+                    return;
+                }
+                if (location != null) {
+                    POOLS.remove(location);
+                }
+            }
+        }
+        close();
+    }
+
+    /**
+     * Borrows a reader for the specified granule, reusing an idle one when available.
+     *
+     * @param granuleUrl the granule to read.
+     * @param streamSPI the {@link ImageInputStreamSpi} to use to open the granule.
+     * @param readerSPI the {@link ImageReaderSpi} to use to decode the granule, or {@code null}
+     *        to look for a suitable one.
+     * @return a reader with its input set, or {@code null} if the granule can't be opened.
+     * @throws IOException in case the stream can't be created.
+     */
+    PooledReader borrow(final URL granuleUrl, final ImageInputStreamSpi streamSPI,
+            final ImageReaderSpi readerSPI) throws IOException {
+        final String key = granuleUrl.toExternalForm();
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            evictIdle(now);
+            // most recently used first, it is the most likely to be in the OS cache
+            for (final Iterator<PooledReader> it = idle.descendingIterator(); it.hasNext();) {
+                final PooledReader candidate = it.next();
+                if (candidate.key.equals(key)) {
+                    it.remove();
+                    return candidate;
+                }
+            }
+        }
+
+        // open a new one outside the lock
+        final ImageInputStream stream = streamSPI.createInputStreamInstance(granuleUrl,
+                ImageIO.getUseCache(), ImageIO.getCacheDirectory());
+        if (stream == null) {
+            return null;
+        }
+        ImageReader reader = null;
+        try {
+            reader = readerSPI != null ? readerSPI.createReaderInstance() : ImageIOExt.getImageioReader(stream);
+        } finally {
+            if (reader == null) {
+                stream.close();
+            }
+        }
+        if (reader == null) {
+            return null;
+        }
+        reader.setInput(stream);
+
+        final PooledReader pooled = new PooledReader(key, stream, reader);
+        synchronized (this) {
+            open++;
+            trim();
+        }
+        return pooled;
+    }
+
+    /**
+     * Gives back a reader which has been used successfully, making it available for the
+     * next requests on the same granule.
+     */
+    void giveBack(final PooledReader pooled) {
+        synchronized (this) {
+            if (!closed) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.addLast(pooled);
+                trim();
+                return;
+            }
+            open--;
+        }
+        pooled.close();
+    }
+
+    /**
+     * Closes a borrowed reader instead of giving it back, e.g. after a failure.
+     */
+    void discard(final PooledReader pooled) {
+        synchronized (this) {
+            open--;
+        }
+        pooled.close();
+    }
+
+    /**
+     * Closes all the idle readers and stops pooling.
+     */
+    void close() {
+        final PooledReader[] toClose;
+        if (eviction != null) {
+            eviction.cancel();
+        }
+        synchronized (this) {
+            closed = true;
+            toClose = idle.toArray(new PooledReader[idle.size()]);
+            idle.clear();
+            open -= toClose.length;
+        }
+        for (PooledReader pooled : toClose) {
+            pooled.close();
+        }
+    }
+
+    /**
+     * Closes the least recently used idle readers while too many streams are open. Borrowed
+     * readers are not accounted for eviction, thus the limit may be exceeded temporarily
+     * under heavy concurrency rather than blocking the loading threads.
+     */
+    private void trim() {
+        assert Thread.holdsLock(this);
+        while (open > maxOpen && !idle.isEmpty()) {
+            idle.removeFirst().close();
+            open--;
+        }
+    }
+
+    /**
+     * Closes the readers idle for too long, called periodically.
+     */
+    void evictIdle() {
+        evictIdle(System.currentTimeMillis());
+    }
+
+    /**
+     * Closes the readers idle for too long at the specified time, in milliseconds.
+     */
+    synchronized void evictIdle(final long now) {
+        while (!idle.isEmpty() && now - idle.getFirst().lastUsed > idleTimeout) {
+            idle.removeFirst().close();
+            open--;
+        }
+    }
+
+    /** Returns the number of open streams, idle or borrowed, including the deferred reads. */
+    synchronized int getOpenCount() {
+        return open;
+    }
+
+    /** Returns the number of idle readers. */
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    int getMaxOpen() {
+        return maxOpen;
+    }
+
+    long getIdleTimeout() {
+        return idleTimeout;
+    }
+}
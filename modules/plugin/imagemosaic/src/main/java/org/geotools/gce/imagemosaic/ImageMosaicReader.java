@@ -32,6 +32,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TimeZone;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
@@ -923,8 +924,8 @@ public final class ImageMosaicReader extends AbstractGridCoverage2DReader implem
         final UniqueVisitor visitor= new UniqueVisitor(attribute);
         rasterManager.granuleCatalog.computeAggregateFunction(query, visitor);
         
-        // check result
-        final Set result = manualSort?
+        // check result, the visitor may have been filled from an unsorted dimension index
+        final Set result = manualSort || !(visitor.getUnique() instanceof SortedSet) ?
                 new TreeSet(visitor.getUnique()):
                 visitor.getUnique();
         return result;
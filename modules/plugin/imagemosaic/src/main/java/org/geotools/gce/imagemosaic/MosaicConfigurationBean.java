@@ -123,6 +123,9 @@ public class MosaicConfigurationBean {
 	/** we want to use caching for our index.*/
 	private boolean caching = Utils.DEFAULT_CONFIGURATION_CACHING;
 
+	/** we want to keep a packed spatial index of the granules on disk.*/
+	private boolean persistentIndex;
+
    /** <code>true</code> if we need to manage footprint if available.  */
     private boolean footprintManagement;
 
@@ -187,6 +190,12 @@ public class MosaicConfigurationBean {
 	public void setCaching(final boolean caching) {
 		this.caching = caching;
 	}
+	public boolean isPersistentIndex() {
+		return persistentIndex;
+	}
+	public void setPersistentIndex(final boolean persistentIndex) {
+		this.persistentIndex = persistentIndex;
+	}
 
         public void setFootprintManagement(final boolean footprintManagement) {
                 this.footprintManagement = footprintManagement;
@@ -0,0 +1,330 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.event.IIOReadWarningListener;
+import javax.imageio.metadata.IIOMetadata;
+
+import org.geotools.gce.imagemosaic.GranuleReaderPool.PooledReader;
+
+/**
+ * An {@link ImageReader} delegating to a reader borrowed from a {@link GranuleReaderPool}, handed
+ * to a {@link ReadType#JAI_IMAGEREAD deferred read}.
+ *
+ * <p>
+ * The deferred read owns its reader until the ImageRead operation is disposed, which disposes
+ * the reader: this reader gives the pooled one back to the pool instead, so that the next
+ * requests on the same granule reuse it. {@link #reset()} does not touch the pooled reader for
+ * the same reason.
+ *
+ * @source $URL$
+ */
+class PooledImageReader extends ImageReader {
+
+    private final GranuleReaderPool pool;
+
+    private final PooledReader pooled;
+
+    private final ImageReader delegate;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    PooledImageReader(final GranuleReaderPool pool, final PooledReader pooled) {
+        super(pooled.reader.getOriginatingProvider());
+        this.pool = pool;
+        this.pooled = pooled;
+        this.delegate = pooled.reader;
+    }
+
+    /**
+     * Takes the pooled reader back from this reader, which must not be used anymore.
+     *
+     * @return {@code false} if the pooled reader has already been taken back.
+     */
+    boolean release() {
+        return released.compareAndSet(false, true);
+    }
+
+    /**
+     * Gives the pooled reader back to the pool, as the deferred read is over.
+     */
+    @Override
+    public void dispose() {
+        if (!release()) {
+            return;
+        }
+        if (delegate.getInput() != pooled.stream) {
+            delegate.setInput(pooled.stream);
+        }
+        delegate.removeAllIIOReadProgressListeners();
+        delegate.removeAllIIOReadUpdateListeners();
+        delegate.removeAllIIOReadWarningListeners();
+        pool.giveBack(pooled);
+    }
+
+    @Override
+    public void reset() {
+        // the pooled reader keeps its input for the next requests
+    }
+
+    @Override
+    public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
+        delegate.setInput(input, seekForwardOnly, ignoreMetadata);
+    }
+
+    @Override
+    public Object getInput() {
+        return delegate.getInput();
+    }
+
+    @Override
+    public boolean isSeekForwardOnly() {
+        return delegate.isSeekForwardOnly();
+    }
+
+    @Override
+    public boolean isIgnoringMetadata() {
+        return delegate.isIgnoringMetadata();
+    }
+
+    @Override
+    public int getMinIndex() {
+        return delegate.getMinIndex();
+    }
+
+    @Override
+    public String getFormatName() throws IOException {
+        return delegate.getFormatName();
+    }
+
+    @Override
+    public int getNumImages(boolean allowSearch) throws IOException {
+        return delegate.getNumImages(allowSearch);
+    }
+
+    @Override
+    public int getWidth(int imageIndex) throws IOException {
+        return delegate.getWidth(imageIndex);
+    }
+
+    @Override
+    public int getHeight(int imageIndex) throws IOException {
+        return delegate.getHeight(imageIndex);
+    }
+
+    @Override
+    public boolean isRandomAccessEasy(int imageIndex) throws IOException {
+        return delegate.isRandomAccessEasy(imageIndex);
+    }
+
+    @Override
+    public float getAspectRatio(int imageIndex) throws IOException {
+        return delegate.getAspectRatio(imageIndex);
+    }
+
+    @Override
+    public ImageTypeSpecifier getRawImageType(int imageIndex) throws IOException {
+        return delegate.getRawImageType(imageIndex);
+    }
+
+    @Override
+    public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) throws IOException {
+        return delegate.getImageTypes(imageIndex);
+    }
+
+    @Override
+    public ImageReadParam getDefaultReadParam() {
+        return delegate.getDefaultReadParam();
+    }
+
+    @Override
+    public IIOMetadata getStreamMetadata() throws IOException {
+        return delegate.getStreamMetadata();
+    }
+
+    @Override
+    public IIOMetadata getStreamMetadata(String formatName, Set<String> nodeNames)
+            throws IOException {
+        return delegate.getStreamMetadata(formatName, nodeNames);
+    }
+
+    @Override
+    public IIOMetadata getImageMetadata(int imageIndex) throws IOException {
+        return delegate.getImageMetadata(imageIndex);
+    }
+
+    @Override
+    public IIOMetadata getImageMetadata(int imageIndex, String formatName, Set<String> nodeNames)
+            throws IOException {
+        return delegate.getImageMetadata(imageIndex, formatName, nodeNames);
+    }
+
+    @Override
+    public BufferedImage read(int imageIndex, ImageReadParam param) throws IOException {
+        return delegate.read(imageIndex, param);
+    }
+
+    @Override
+    public IIOImage readAll(int imageIndex, ImageReadParam param) throws IOException {
+        return delegate.readAll(imageIndex, param);
+    }
+
+    @Override
+    public RenderedImage readAsRenderedImage(int imageIndex, ImageReadParam param)
+            throws IOException {
+        return delegate.readAsRenderedImage(imageIndex, param);
+    }
+
+    @Override
+    public boolean canReadRaster() {
+        return delegate.canReadRaster();
+    }
+
+    @Override
+    public Raster readRaster(int imageIndex, ImageReadParam param) throws IOException {
+        return delegate.readRaster(imageIndex, param);
+    }
+
+    @Override
+    public boolean isImageTiled(int imageIndex) throws IOException {
+        return delegate.isImageTiled(imageIndex);
+    }
+
+    @Override
+    public int getTileWidth(int imageIndex) throws IOException {
+        return delegate.getTileWidth(imageIndex);
+    }
+
+    @Override
+    public int getTileHeight(int imageIndex) throws IOException {
+        return delegate.getTileHeight(imageIndex);
+    }
+
+    @Override
+    public int getTileGridXOffset(int imageIndex) throws IOException {
+        return delegate.getTileGridXOffset(imageIndex);
+    }
+
+    @Override
+    public int getTileGridYOffset(int imageIndex) throws IOException {
+        return delegate.getTileGridYOffset(imageIndex);
+    }
+
+    @Override
+    public BufferedImage readTile(int imageIndex, int tileX, int tileY) throws IOException {
+        return delegate.readTile(imageIndex, tileX, tileY);
+    }
+
+    @Override
+    public Raster readTileRaster(int imageIndex, int tileX, int tileY) throws IOException {
+        return delegate.readTileRaster(imageIndex, tileX, tileY);
+    }
+
+    @Override
+    public boolean readerSupportsThumbnails() {
+        return delegate.readerSupportsThumbnails();
+    }
+
+    @Override
+    public boolean hasThumbnails(int imageIndex) throws IOException {
+        return delegate.hasThumbnails(imageIndex);
+    }
+
+    @Override
+    public int getNumThumbnails(int imageIndex) throws IOException {
+        return delegate.getNumThumbnails(imageIndex);
+    }
+
+    @Override
+    public int getThumbnailWidth(int imageIndex, int thumbnailIndex) throws IOException {
+        return delegate.getThumbnailWidth(imageIndex, thumbnailIndex);
+    }
+
+    @Override
+    public int getThumbnailHeight(int imageIndex, int thumbnailIndex) throws IOException {
+        return delegate.getThumbnailHeight(imageIndex, thumbnailIndex);
+    }
+
+    @Override
+    public BufferedImage readThumbnail(int imageIndex, int thumbnailIndex) throws IOException {
+        return delegate.readThumbnail(imageIndex, thumbnailIndex);
+    }
+
+    @Override
+    public void abort() {
+        delegate.abort();
+    }
+
+    @Override
+    public void addIIOReadProgressListener(IIOReadProgressListener listener) {
+        delegate.addIIOReadProgressListener(listener);
+    }
+
+    @Override
+    public void removeIIOReadProgressListener(IIOReadProgressListener listener) {
+        delegate.removeIIOReadProgressListener(listener);
+    }
+
+    @Override
+    public void removeAllIIOReadProgressListeners() {
+        delegate.removeAllIIOReadProgressListeners();
+    }
+
+    @Override
+    public void addIIOReadUpdateListener(IIOReadUpdateListener listener) {
+        delegate.addIIOReadUpdateListener(listener);
+    }
+
+    @Override
+    public void removeIIOReadUpdateListener(IIOReadUpdateListener listener) {
+        delegate.removeIIOReadUpdateListener(listener);
+    }
+
+    @Override
+    public void removeAllIIOReadUpdateListeners() {
+        delegate.removeAllIIOReadUpdateListeners();
+    }
+
+    @Override
+    public void addIIOReadWarningListener(IIOReadWarningListener listener) {
+        delegate.addIIOReadWarningListener(listener);
+    }
+
+    @Override
+    public void removeIIOReadWarningListener(IIOReadWarningListener listener) {
+        delegate.removeIIOReadWarningListener(listener);
+    }
+
+    @Override
+    public void removeAllIIOReadWarningListeners() {
+        delegate.removeAllIIOReadWarningListeners();
+    }
+}
@@ -192,6 +192,9 @@ class RasterManager {
 	
 	ImageLayout defaultImageLayout;
 
+	/** The readers of the granules, shared with the other readers of the same mosaic. */
+	final GranuleReaderPool readerPool;
+
 	public RasterManager(final ImageMosaicReader reader) throws DataSourceException {
 		
 		Utilities.ensureNonNull("ImageMosaicReader", reader);
@@ -236,6 +239,8 @@ class RasterManager {
         
         // load defaultSM and defaultCM by using the sample_image if it was provided
         loadSampleImage();        
+
+        readerPool = GranuleReaderPool.acquire(parent.sourceURL);
 		
 	}
 
@@ -352,7 +357,9 @@ class RasterManager {
 	    } catch (Exception e) {
                 if(LOGGER.isLoggable(Level.FINE))
                     LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
-            } 
+            } finally {
+                readerPool.release();
+            }
 	}
 
 	/**
@@ -137,6 +137,7 @@ public class Utils {
         public static final String TIME_ATTRIBUTE = "TimeAttribute";
         public static final String ELEVATION_ATTRIBUTE = "ElevationAttribute";
         public final static String CACHING= "Caching";
+        public final static String PERSISTENT_INDEX = "PersistentIndex";
         
         //Indexer Properties specific properties
         public  static final String RECURSIVE = "Recursive";
@@ -144,6 +145,8 @@ public class Utils {
         public static final String SCHEMA = "Schema";
         public static final String RESOLUTION_LEVELS = "ResolutionLevels";
         public static final String PROPERTY_COLLECTORS = "PropertyCollectors";
+        public static final String HARVESTING_THREADS = "HarvestingThreads";
+        public static final String RESUME = "Resume";
     }
         /**
 	 * Logger.
@@ -379,6 +382,13 @@ public class Utils {
 			}
 		}
 
+		//
+		// persistent index
+		//
+		if (properties.containsKey(Prop.PERSISTENT_INDEX)) {
+			retValue.setPersistentIndex(Boolean.valueOf(properties.getProperty(Prop.PERSISTENT_INDEX).trim()));
+		}
+
 		//
 		// name is not optional
 		//
@@ -852,6 +862,16 @@ public class Utils {
 	
 	public static final boolean DEFAULT_CONFIGURATION_CACHING = false;
 
+	/**
+	 * Default number of threads harvesting granules while building a catalog.
+	 */
+	public static final int DEFAULT_HARVESTING_THREADS = 1;
+
+	/**
+	 * Default behavior with respect to resuming a previous catalog build.
+	 */
+	public static final boolean DEFAULT_RESUME_BEHAVIOR = false;
+
             public static Map<String, Serializable> createDataStoreParamsFromPropertiesFile(
 			Properties properties, DataStoreFactorySpi spi) throws IOException {
 		// get the params
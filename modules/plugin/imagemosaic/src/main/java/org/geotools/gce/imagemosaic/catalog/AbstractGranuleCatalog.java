@@ -100,4 +100,8 @@ public class AbstractGranuleCatalog implements GranuleCatalog {
         throw new UnsupportedOperationException("This Catalog does not support removing granules");        
     }
 
+    public int removeGranules(Query query, Transaction transaction) {
+        throw new UnsupportedOperationException("This Catalog does not support removing granules");
+    }
+
 }
@@ -0,0 +1,390 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.geometry.BoundingBox;
+
+/**
+ * A sorted index of the values of a dimension attribute, such as time or elevation, of the
+ * granules of a mosaic.
+ *
+ * <p>
+ * The granules whose value lies in a range are found with two binary searches, which for
+ * time series is much more selective than the spatial index: a request for a single instant
+ * hits a handful of granules out of years of them. The filter is still to be evaluated on the
+ * selected granules, {@link #extractRanges(Filter, String)} only returns a superset of the
+ * matching values. The sorted values also give the domain of the dimension without scanning
+ * the granules.
+ *
+ * <p>
+ * Values are {@link Date}s or {@link Number}s, granules with a {@code null} value are not
+ * indexed since no comparison can match them.
+ *
+ * @param <T> the type of the indexed granules.
+ * @source $URL$
+ */
+final class DimensionIndex<T> {
+
+    private final String attribute;
+
+    /** The keys of the values, sorted. */
+    private final double[] keys;
+
+    /** The values, in the order of the keys. */
+    private final Object[] values;
+
+    /** The granules, in the order of the keys. */
+    private final Object[] items;
+
+    /**
+     * Creates an index.
+     *
+     * @param attribute the indexed attribute.
+     * @param items the granules.
+     * @param values the values of the attribute for the granules, in the same order.
+     */
+    DimensionIndex(final String attribute, final List<T> items, final List<?> values) {
+        if (items.size() != values.size()) {
+            throw new IllegalArgumentException("The number of values does not match the number of granules");
+        }
+        this.attribute = attribute;
+        final int count = items.size();
+        final double[] allKeys = new double[count];
+        final List<Integer> order = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            allKeys[i] = toKey(values.get(i));
+            if (!Double.isNaN(allKeys[i])) {
+                order.add(i);
+            }
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(allKeys[o1], allKeys[o2]);
+            }
+        });
+        final int size = order.size();
+        keys = new double[size];
+        this.values = new Object[size];
+        this.items = new Object[size];
+        for (int i = 0; i < size; i++) {
+            final int j = order.get(i);
+            keys[i] = allKeys[j];
+            this.values[i] = values.get(j);
+            this.items[i] = items.get(j);
+        }
+    }
+
+    /**
+     * Returns the key of a value, {@link Double#NaN} if it can't be indexed.
+     */
+    static double toKey(final Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.NaN;
+    }
+
+    String getAttribute() {
+        return attribute;
+    }
+
+    /** Returns the number of indexed granules. */
+    int size() {
+        return keys.length;
+    }
+
+    /** Returns the first position whose key is not lower than the specified one. */
+    private int lowerBound(final double key) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Returns the first position whose key is greater than the specified one. */
+    private int upperBound(final double key) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of granules whose value lies in one of the ranges.
+     *
+     * @param ranges disjoint ranges as returned by {@link #extractRanges(Filter, String)}.
+     */
+    int count(final List<double[]> ranges) {
+        int count = 0;
+        for (double[] range : ranges) {
+            count += upperBound(range[1]) - lowerBound(range[0]);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the granules whose value lies in one of the ranges, sorted by value.
+     *
+     * @param ranges disjoint ranges as returned by {@link #extractRanges(Filter, String)}.
+     */
+    @SuppressWarnings("unchecked")
+    List<T> select(final List<double[]> ranges) {
+        final List<T> selected = new ArrayList<T>();
+        for (double[] range : ranges) {
+            final int end = upperBound(range[1]);
+            for (int i = lowerBound(range[0]); i < end; i++) {
+                selected.add((T) items[i]);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Returns the distinct values, sorted.
+     */
+    List<Object> distinctValues() {
+        final List<Object> distinct = new ArrayList<Object>();
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                distinct.add(values[i]);
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Selects the granules possibly matching a filter using the most selective of the provided
+     * indexes.
+     *
+     * @param filter the filter.
+     * @param maxCount the index is used only if it selects less granules than this, typically
+     *        the number expected from the spatial index.
+     * @param first an index, may be {@code null}.
+     * @param second an other index, may be {@code null}.
+     * @return the selected granules, or {@code null} if no index is worth using for this filter.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<T> select(final Filter filter, final int maxCount, final DimensionIndex<T> first,
+            final DimensionIndex<T> second) {
+        DimensionIndex<T> best = null;
+        List<double[]> bestRanges = null;
+        int bestCount = maxCount;
+        for (DimensionIndex<T> index : Arrays.asList(first, second)) {
+            if (index == null) {
+                continue;
+            }
+            final List<double[]> ranges = extractRanges(filter, index.attribute);
+            if (ranges != null) {
+                final int count = index.count(ranges);
+                if (count < bestCount) {
+                    best = index;
+                    bestRanges = ranges;
+                    bestCount = count;
+                }
+            }
+        }
+        return best != null ? best.select(bestRanges) : null;
+    }
+
+    /**
+     * Estimates the number of granules the spatial index would return for a bounding box,
+     * assuming they are evenly spread over the bounds of the mosaic.
+     */
+    static int estimateSpatialHits(final int size, final BoundingBox bbox, final BoundingBox bounds) {
+        final double area = bounds.getWidth() * bounds.getHeight();
+        if (bbox == null || !(area > 0)) {
+            return size;
+        }
+        final double width = Math.min(bbox.getMaxX(), bounds.getMaxX()) - Math.max(bbox.getMinX(), bounds.getMinX());
+        final double height = Math.min(bbox.getMaxY(), bounds.getMaxY()) - Math.max(bbox.getMinY(), bounds.getMinY());
+        if (width < 0 || height < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, Math.ceil(size * (width * height) / area));
+    }
+
+    /**
+     * Returns the ranges of values of an attribute the features matching a filter must lie in.
+     * The ranges are inclusive, hence a superset of the matching values is returned for strict
+     * comparisons.
+     *
+     * @param filter the filter.
+     * @param attribute the attribute.
+     * @return disjoint ranges sorted by value, or {@code null} if the filter doesn't constrain
+     *         the attribute in a way we understand.
+     */
+    static List<double[]> extractRanges(final Filter filter, final String attribute) {
+        if (filter == Filter.EXCLUDE) {
+            return Collections.emptyList();
+        }
+        if (filter instanceof And) {
+            List<double[]> result = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                final List<double[]> ranges = extractRanges(child, attribute);
+                if (ranges != null) {
+                    result = result == null ? ranges : intersect(result, ranges);
+                }
+            }
+            return result;
+        }
+        if (filter instanceof Or) {
+            final List<double[]> result = new ArrayList<double[]>();
+            for (Filter child : ((Or) filter).getChildren()) {
+                final List<double[]> ranges = extractRanges(child, attribute);
+                if (ranges == null) {
+                    // this branch may match any value
+                    return null;
+                }
+                result.addAll(ranges);
+            }
+            return union(result);
+        }
+        if (filter instanceof PropertyIsBetween) {
+            final PropertyIsBetween between = (PropertyIsBetween) filter;
+            if (!isAttribute(between.getExpression(), attribute)) {
+                return null;
+            }
+            final double min = toKey(between.getLowerBoundary());
+            final double max = toKey(between.getUpperBoundary());
+            if (Double.isNaN(min) || Double.isNaN(max)) {
+                return null;
+            }
+            return ranges(min, max);
+        }
+        if (filter instanceof BinaryComparisonOperator) {
+            final BinaryComparisonOperator comparison = (BinaryComparisonOperator) filter;
+            final boolean reversed;
+            final double value;
+            if (isAttribute(comparison.getExpression1(), attribute)) {
+                reversed = false;
+                value = toKey(comparison.getExpression2());
+            } else if (isAttribute(comparison.getExpression2(), attribute)) {
+                reversed = true;
+                value = toKey(comparison.getExpression1());
+            } else {
+                return null;
+            }
+            if (Double.isNaN(value)) {
+                return null;
+            }
+            if (filter instanceof PropertyIsEqualTo) {
+                return ranges(value, value);
+            }
+            final boolean lower = filter instanceof PropertyIsLessThan || filter instanceof PropertyIsLessThanOrEqualTo;
+            final boolean greater = filter instanceof PropertyIsGreaterThan || filter instanceof PropertyIsGreaterThanOrEqualTo;
+            if ((lower && !reversed) || (greater && reversed)) {
+                return ranges(Double.NEGATIVE_INFINITY, value);
+            }
+            if ((greater && !reversed) || (lower && reversed)) {
+                return ranges(value, Double.POSITIVE_INFINITY);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAttribute(final Expression expression, final String attribute) {
+        return expression instanceof PropertyName
+                && attribute.equals(((PropertyName) expression).getPropertyName());
+    }
+
+    private static double toKey(final Expression expression) {
+        return expression instanceof Literal ? toKey(((Literal) expression).getValue()) : Double.NaN;
+    }
+
+    private static List<double[]> ranges(final double min, final double max) {
+        final List<double[]> ranges = new ArrayList<double[]>(1);
+        if (min <= max) {
+            ranges.add(new double[] { min, max });
+        }
+        return ranges;
+    }
+
+    /** Merges overlapping ranges. */
+    private static List<double[]> union(final List<double[]> ranges) {
+        Collections.sort(ranges, new Comparator<double[]>() {
+            public int compare(double[] o1, double[] o2) {
+                return Double.compare(o1[0], o2[0]);
+            }
+        });
+        final List<double[]> result = new ArrayList<double[]>(ranges.size());
+        double[] last = null;
+        for (double[] range : ranges) {
+            if (last != null && range[0] <= last[1]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                last = new double[] { range[0], range[1] };
+                result.add(last);
+            }
+        }
+        return result;
+    }
+
+    /** Intersects two sets of disjoint sorted ranges. */
+    private static List<double[]> intersect(final List<double[]> a, final List<double[]> b) {
+        final List<double[]> result = new ArrayList<double[]>();
+        int i = 0, j = 0;
+        while (i < a.size() && j < b.size()) {
+            final double[] ra = a.get(i), rb = b.get(j);
+            final double min = Math.max(ra[0], rb[0]);
+            final double max = Math.min(ra[1], rb[1]);
+            if (min <= max) {
+                result.add(new double[] { min, max });
+            }
+            if (ra[1] < rb[1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+}
@@ -63,6 +63,7 @@ import org.geotools.util.DefaultProgressListener;
 import org.geotools.util.SoftValueHashMap;
 import org.geotools.util.Utilities;
 import org.opengis.feature.Feature;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
@@ -340,7 +341,12 @@ class GTDataStoreGranuleCatalog extends AbstractGranuleCatalog {
 	}
 
 	public int removeGranules(final Query query) {
+		return removeGranules(query, Transaction.AUTO_COMMIT);
+	}
+
+	public int removeGranules(final Query query, final Transaction transaction) {
 		Utilities.ensureNonNull("query",query);
+		Utilities.ensureNonNull("transaction",transaction);
 		final Lock lock=rwLock.writeLock();
 		try{
 			lock.lock();
@@ -351,6 +357,7 @@ class GTDataStoreGranuleCatalog extends AbstractGranuleCatalog {
 			try{
 				// create a writer that appends this features
 				fs = (SimpleFeatureStore) tileIndexStore.getFeatureSource(typeName);
+				fs.setTransaction(transaction);
 				final int retVal=fs.getCount(query);
 				fs.removeFeatures(query.getFilter());
 				
@@ -490,27 +497,7 @@ class GTDataStoreGranuleCatalog extends AbstractGranuleCatalog {
 			    public void visit( Feature feature ) {
 			        if(feature instanceof SimpleFeature)
 			        {
-			        	final SimpleFeature sf= (SimpleFeature) feature;
-			        	final GranuleDescriptor granule;
-			        	synchronized (granuleDescriptorsCache) {
-			        	    String granuleLocation = (String) sf.getAttribute(locationAttribute);
-                                            if(granuleDescriptorsCache.containsKey(granuleLocation)){
-                                                granule=granuleDescriptorsCache.get(granuleLocation);
-                                            } else{
-                                                // create the granule descriptor
-                                                granule= new GranuleDescriptor(
-                                                                sf,
-                                                                suggestedSPI,
-                                                                pathType,
-                                                                locationAttribute,
-                                                                parentLocation,
-                                                                heterogeneous);
-                                                granuleDescriptorsCache.put(granuleLocation, granule);
-                                            }
-  
-			        	    
-			        	    
-                                        }
+			        	final GranuleDescriptor granule = getGranule((SimpleFeature) feature);
 			        	visitor.visit(granule, null);
 			        	
 			        	// check if something bad occurred
@@ -536,6 +523,69 @@ class GTDataStoreGranuleCatalog extends AbstractGranuleCatalog {
 		}
 	}
 
+	/**
+	 * Returns the descriptor of the granule described by the provided feature, creating it
+	 * if it is not cached.
+	 */
+	GranuleDescriptor getGranule(final SimpleFeature sf) {
+	    synchronized (granuleDescriptorsCache) {
+	        final String granuleLocation = (String) sf.getAttribute(locationAttribute);
+	        GranuleDescriptor granule = granuleDescriptorsCache.get(granuleLocation);
+	        if (granule == null) {
+	            // create the granule descriptor
+	            granule = new GranuleDescriptor(
+	                    sf,
+	                    suggestedSPI,
+	                    pathType,
+	                    locationAttribute,
+	                    parentLocation,
+	                    heterogeneous);
+	            granuleDescriptorsCache.put(granuleLocation, granule);
+	        }
+	        return granule;
+	    }
+	}
+
+	/**
+	 * Returns the cached descriptor of the granule at the provided location, or {@code null}
+	 * if it has not been created yet or has been garbage collected.
+	 */
+	GranuleDescriptor getCachedGranule(final String granuleLocation) {
+	    synchronized (granuleDescriptorsCache) {
+	        return granuleDescriptorsCache.get(granuleLocation);
+	    }
+	}
+
+	/**
+	 * Visits the features of the index matching the provided query, without creating the
+	 * granule descriptors.
+	 */
+	void visitFeatures(final Query q, final FeatureVisitor visitor) throws IOException {
+		Utilities.ensureNonNull("query",q);
+		final Lock lock=rwLock.readLock();
+		try{
+			lock.lock();
+			checkStore();
+			final Query query = new Query(q);
+			query.setTypeName(typeName);
+			tileIndexStore.getFeatureSource(typeName).getFeatures(query).accepts(visitor, null);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	String getLocationAttribute() {
+	    return locationAttribute;
+	}
+
+	String getGeometryPropertyName() {
+	    return geometryPropertyName;
+	}
+
+	String getTypeName() {
+	    return typeName;
+	}
+
 	public List<GranuleDescriptor> getGranules(final Query q) throws IOException {
 	    // create a list to return and reuse the visitor enabled method
 	    final List<GranuleDescriptor> returnValue= new ArrayList<GranuleDescriptor>();
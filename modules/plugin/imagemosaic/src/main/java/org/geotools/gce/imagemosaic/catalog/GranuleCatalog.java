@@ -83,6 +83,15 @@ public interface GranuleCatalog {
 	
 	public int removeGranules(final Query query);
 
+	/**
+	 * Removes the granules matching the provided {@link Query} within a {@link Transaction},
+	 * so that they are removed along with the granules added in the same transaction.
+	 * 
+	 * @return the number of removed granules, -1 if they could not be removed.
+	 * @since 8.0
+	 */
+	public int removeGranules(final Query query, final Transaction transaction);
+
 	public BoundingBox getBounds();
 	
 	public void computeAggregateFunction(final Query q,final FeatureCalc function) throws IOException;
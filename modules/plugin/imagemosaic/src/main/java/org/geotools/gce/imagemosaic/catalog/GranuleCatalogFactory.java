@@ -62,7 +62,8 @@ public abstract class GranuleCatalogFactory {
 		//TODO @todo this is a temporary hack before we have an even stupid SPI mechanism here
 	    final GranuleCatalog catalogue= new GTDataStoreGranuleCatalog(params,create,spi);
 	    if (caching) {
-		    return new STRTreeGranuleCatalog(catalogue);
+		    return new STRTreeGranuleCatalog(catalogue, (String) params.get("TimeAttribute"),
+		            (String) params.get("ElevationAttribute"));
 	    }
 	    return  catalogue;
 	}
@@ -88,11 +89,19 @@ public abstract class GranuleCatalogFactory {
 			params.put("LocationAttribute",configuration.getLocationAttribute());
 			params.put("SuggestedSPI",configuration.getSuggestedSPI());
 			params.put("Heterogeneous", configuration.isHeterogeneous());
+			params.put("TimeAttribute", configuration.getTimeAttribute());
+			params.put("ElevationAttribute", configuration.getElevationAttribute());
 			File parentDirectory=DataUtilities.urlToFile(sourceURL);
 			if(parentDirectory.isFile())
 				parentDirectory=parentDirectory.getParentFile();
 			params.put("ParentLocation", DataUtilities.fileToURL(parentDirectory).toString());
 			
+			// packed spatial index on disk, next to the shapefile
+			if (configuration.isPersistentIndex()) {
+			        final File indexFile = new File(FilenameUtils.removeExtension(sourceFile.getAbsolutePath())
+			                + "." + PackedRTreeGranuleCatalog.EXTENSION);
+			        return new PackedRTreeGranuleCatalog(params, Utils.SHAPE_SPI, indexFile, sourceFile);
+			}
 			return configuration.isCaching()?new STRTreeGranuleCatalog(params,Utils.SHAPE_SPI):new GTDataStoreGranuleCatalog(params,false,Utils.SHAPE_SPI);
 		}
 		else
@@ -123,6 +132,8 @@ public abstract class GranuleCatalogFactory {
 				params.put("LocationAttribute",configuration.getLocationAttribute());
 				params.put("SuggestedSPI",configuration.getSuggestedSPI());
 				params.put("Heterogeneous", configuration.isHeterogeneous());
+				params.put("TimeAttribute", configuration.getTimeAttribute());
+				params.put("ElevationAttribute", configuration.getElevationAttribute());
 				if(sourceURL!=null){
 					File parentDirectory=DataUtilities.urlToFile(sourceURL);
 					if(parentDirectory.isFile())
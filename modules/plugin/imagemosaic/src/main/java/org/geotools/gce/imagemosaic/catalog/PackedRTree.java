@@ -0,0 +1,578 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A packed R-tree of granule records stored in a file and memory mapped when opened, so that
+ * it can be queried right away without loading the whole index in memory.
+ *
+ * <p>
+ * Each record holds the envelope of a granule, its time and elevation (if any) and its
+ * location. The file is made of:
+ * <ul>
+ * <li>a header;</li>
+ * <li>the packed records, sorted with the Sort-Tile-Recursive algorithm so that consecutive
+ * groups of {@link #getNodeCapacity() node capacity} records are spatially close;</li>
+ * <li>the envelopes of the nodes, level by level, up to the root;</li>
+ * <li>the locations of the packed records;</li>
+ * <li>the records appended since the tree has been packed, each one followed by its
+ * location.</li>
+ * </ul>
+ * Appended records are scanned linearly and removed records are flagged in place, the tree
+ * should be {@linkplain #repack() repacked} once {@link #needsRepack()} returns {@code true}.
+ *
+ * <p>
+ * Queries can run concurrently, updates need exclusive access.
+ *
+ * @source $URL$
+ */
+final class PackedRTree {
+
+    /** Time of the records which have none. */
+    static final long NO_TIME = Long.MIN_VALUE;
+
+    static final int DEFAULT_NODE_CAPACITY = 16;
+
+    private static final int MAGIC = 0x47524958; // GRIX
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int RECORD_SIZE = 64;
+
+    private static final int NODE_SIZE = 32;
+
+    /** Offsets of the header fields. */
+    private static final int APPENDED_COUNT = 16, DELETED_COUNT = 20;
+
+    /** Offsets of the record fields following the envelope. */
+    private static final int TIME = 32, ELEVATION = 40, LOCATION = 48, FLAGS = 56;
+
+    private static final int DELETED = 1;
+
+    /** Minimum number of updates before repacking. */
+    private static final int REPACK_THRESHOLD = 64;
+
+    /**
+     * A granule record.
+     */
+    static final class Entry {
+
+        final double minX, minY, maxX, maxY;
+
+        /** Time in milliseconds, {@link PackedRTree#NO_TIME} if none. */
+        final long time;
+
+        /** Elevation, {@link Double#NaN} if none. */
+        final double elevation;
+
+        final String location;
+
+        Entry(final double minX, final double minY, final double maxX, final double maxY,
+                final long time, final double elevation, final String location) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.time = time;
+            this.elevation = elevation;
+            this.location = location;
+        }
+
+        @Override
+        public String toString() {
+            return location + " [" + minX + ',' + minY + ',' + maxX + ',' + maxY + "] time:"
+                    + (time == NO_TIME ? "none" : String.valueOf(time)) + " elevation:" + elevation;
+        }
+    }
+
+    private static final Comparator<Entry> BY_X = new Comparator<Entry>() {
+        public int compare(Entry e1, Entry e2) {
+            return Double.compare(e1.minX + e1.maxX, e2.minX + e2.maxX);
+        }
+    };
+
+    private static final Comparator<Entry> BY_Y = new Comparator<Entry>() {
+        public int compare(Entry e1, Entry e2) {
+            return Double.compare(e1.minY + e1.maxY, e2.minY + e2.maxY);
+        }
+    };
+
+    private final File file;
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private final int nodeCapacity;
+
+    private final int packedCount;
+
+    private int appendedCount;
+
+    private int deletedCount;
+
+    /** Offset of the first node of each level, level 0 being the records. */
+    private final long[] levelOffsets;
+
+    /** Number of nodes of each level, level 0 being the records. */
+    private final int[] levelCounts;
+
+    /** Offsets of the appended records. */
+    private long[] appended;
+
+    /** End of the file, where the next records are appended. */
+    private long end;
+
+    /** Offsets of the records of each location, built on the first removal. */
+    private Map<String, List<Long>> locations;
+
+    /** Whether repacking failed, in which case it is not attempted again on this index. */
+    private boolean repackFailed;
+
+    private PackedRTree(final File file) throws IOException {
+        this.file = file;
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            channel = raf.getChannel();
+            map();
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a granule index: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported granule index version " + buffer.getInt(4) + ": " + file);
+            }
+            nodeCapacity = buffer.getInt(8);
+            packedCount = buffer.getInt(12);
+            appendedCount = buffer.getInt(APPENDED_COUNT);
+            deletedCount = buffer.getInt(DELETED_COUNT);
+            final long appendOffset = buffer.getLong(24);
+
+            // the node levels follow the records
+            final List<Integer> counts = new ArrayList<Integer>();
+            counts.add(packedCount);
+            for (int count = packedCount; count > 1;) {
+                count = (count + nodeCapacity - 1) / nodeCapacity;
+                counts.add(count);
+            }
+            levelCounts = new int[counts.size()];
+            levelOffsets = new long[counts.size()];
+            long offset = HEADER_SIZE;
+            for (int i = 0; i < levelCounts.length; i++) {
+                levelCounts[i] = counts.get(i);
+                levelOffsets[i] = offset;
+                offset += (long) levelCounts[i] * (i == 0 ? RECORD_SIZE : NODE_SIZE);
+            }
+
+            // scan the appended records
+            appended = new long[Math.max(appendedCount, 16)];
+            long position = appendOffset;
+            for (int i = 0; i < appendedCount; i++) {
+                appended[i] = position;
+                position += RECORD_SIZE + 4 + buffer.getInt((int) (position + RECORD_SIZE));
+            }
+            if (position > buffer.limit()) {
+                throw new IOException("Truncated granule index: " + file);
+            }
+            end = position;
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing index.
+     */
+    static PackedRTree open(final File file) throws IOException {
+        return new PackedRTree(file);
+    }
+
+    /**
+     * Writes a new index made of the specified records and opens it.
+     */
+    static PackedRTree create(final File file, final Collection<Entry> entries, final int nodeCapacity)
+            throws IOException {
+        write(file, entries, nodeCapacity);
+        return open(file);
+    }
+
+    private static void write(final File file, final Collection<Entry> entries, final int nodeCapacity)
+            throws IOException {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("The node capacity must be at least 2");
+        }
+        // Sort-Tile-Recursive packing: vertical slices sorted along x, each one sorted along y
+        final List<Entry> sorted = new ArrayList<Entry>(entries);
+        final int n = sorted.size();
+        final int leaves = (n + nodeCapacity - 1) / nodeCapacity;
+        final int sliceSize = (int) Math.ceil(Math.sqrt(leaves)) * nodeCapacity;
+        Collections.sort(sorted, BY_X);
+        for (int i = 0; i < n; i += sliceSize) {
+            Collections.sort(sorted.subList(i, Math.min(i + sliceSize, n)), BY_Y);
+        }
+
+        // node envelopes, level by level
+        final List<double[]> levels = new ArrayList<double[]>();
+        double[] boxes = new double[n * 4];
+        for (int i = 0; i < n; i++) {
+            final Entry e = sorted.get(i);
+            boxes[4 * i] = e.minX;
+            boxes[4 * i + 1] = e.minY;
+            boxes[4 * i + 2] = e.maxX;
+            boxes[4 * i + 3] = e.maxY;
+        }
+        for (int count = n; count > 1;) {
+            final int parents = (count + nodeCapacity - 1) / nodeCapacity;
+            final double[] parentBoxes = new double[parents * 4];
+            for (int p = 0; p < parents; p++) {
+                double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for (int c = p * nodeCapacity, last = Math.min(c + nodeCapacity, count); c < last; c++) {
+                    minX = Math.min(minX, boxes[4 * c]);
+                    minY = Math.min(minY, boxes[4 * c + 1]);
+                    maxX = Math.max(maxX, boxes[4 * c + 2]);
+                    maxY = Math.max(maxY, boxes[4 * c + 3]);
+                }
+                parentBoxes[4 * p] = minX;
+                parentBoxes[4 * p + 1] = minY;
+                parentBoxes[4 * p + 2] = maxX;
+                parentBoxes[4 * p + 3] = maxY;
+            }
+            levels.add(parentBoxes);
+            boxes = parentBoxes;
+            count = parents;
+        }
+
+        // locations
+        final byte[][] names = new byte[n][];
+        long heapOffset = HEADER_SIZE + (long) n * RECORD_SIZE;
+        for (double[] level : levels) {
+            heapOffset += level.length / 4 * NODE_SIZE;
+        }
+        long appendOffset = heapOffset;
+        for (int i = 0; i < n; i++) {
+            names[i] = sorted.get(i).location.getBytes("UTF-8");
+            appendOffset += 4 + names[i].length;
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeCapacity);
+            out.writeInt(n);
+            out.writeInt(0); // appended
+            out.writeInt(0); // deleted
+            out.writeLong(appendOffset);
+            out.write(new byte[HEADER_SIZE - 32]);
+            long location = heapOffset;
+            for (int i = 0; i < n; i++) {
+                final Entry e = sorted.get(i);
+                out.writeDouble(e.minX);
+                out.writeDouble(e.minY);
+                out.writeDouble(e.maxX);
+                out.writeDouble(e.maxY);
+                out.writeLong(e.time);
+                out.writeDouble(e.elevation);
+                out.writeLong(location);
+                out.writeInt(0); // flags
+                out.writeInt(0);
+                location += 4 + names[i].length;
+            }
+            for (double[] level : levels) {
+                for (double value : level) {
+                    out.writeDouble(value);
+                }
+            }
+            for (byte[] name : names) {
+                out.writeInt(name.length);
+                out.write(name);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void map() throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    /**
+     * Returns the live records intersecting the specified envelope.
+     */
+    List<Entry> query(final double minX, final double minY, final double maxX, final double maxY) {
+        final List<Entry> result = new ArrayList<Entry>();
+        final MappedByteBuffer buffer = this.buffer;
+        if (packedCount > 0) {
+            search(buffer, levelCounts.length - 1, 0, minX, minY, maxX, maxY, result);
+        }
+        for (int i = 0; i < appendedCount; i++) {
+            final int offset = (int) appended[i];
+            if (intersects(buffer, offset, minX, minY, maxX, maxY)
+                    && (buffer.getInt(offset + FLAGS) & DELETED) == 0) {
+                result.add(read(buffer, offset));
+            }
+        }
+        return result;
+    }
+
+    private void search(final MappedByteBuffer buffer, final int level, final int node,
+            final double minX, final double minY, final double maxX, final double maxY,
+            final List<Entry> result) {
+        if (level == 0) {
+            final int offset = (int) (levelOffsets[0] + (long) node * RECORD_SIZE);
+            if (intersects(buffer, offset, minX, minY, maxX, maxY)
+                    && (buffer.getInt(offset + FLAGS) & DELETED) == 0) {
+                result.add(read(buffer, offset));
+            }
+            return;
+        }
+        if (!intersects(buffer, (int) (levelOffsets[level] + (long) node * NODE_SIZE), minX, minY, maxX, maxY)) {
+            return;
+        }
+        for (int c = node * nodeCapacity, last = Math.min(c + nodeCapacity, levelCounts[level - 1]); c < last; c++) {
+            search(buffer, level - 1, c, minX, minY, maxX, maxY, result);
+        }
+    }
+
+    private static boolean intersects(final ByteBuffer buffer, final int offset,
+            final double minX, final double minY, final double maxX, final double maxY) {
+        return buffer.getDouble(offset) <= maxX && buffer.getDouble(offset + 16) >= minX
+                && buffer.getDouble(offset + 8) <= maxY && buffer.getDouble(offset + 24) >= minY;
+    }
+
+    private static Entry read(final ByteBuffer buffer, final int offset) {
+        return new Entry(buffer.getDouble(offset), buffer.getDouble(offset + 8),
+                buffer.getDouble(offset + 16), buffer.getDouble(offset + 24),
+                buffer.getLong(offset + TIME), buffer.getDouble(offset + ELEVATION),
+                readLocation(buffer, offset));
+    }
+
+    private static String readLocation(final ByteBuffer buffer, final int offset) {
+        final int position = (int) buffer.getLong(offset + LOCATION);
+        final byte[] bytes = new byte[buffer.getInt(position)];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e); // UTF-8 is always supported
+        }
+    }
+
+    /**
+     * Returns all the live records.
+     */
+    List<Entry> entries() {
+        return query(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Appends the specified records at the end of the file.
+     */
+    void append(final Collection<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long position = end;
+        int count = appendedCount;
+        for (Entry e : entries) {
+            final byte[] name = e.location.getBytes("UTF-8");
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE + 4 + name.length);
+            record.putDouble(e.minX).putDouble(e.minY).putDouble(e.maxX).putDouble(e.maxY);
+            record.putLong(e.time).putDouble(e.elevation).putLong(position + RECORD_SIZE);
+            record.putInt(0).putInt(0);
+            record.putInt(name.length).put(name);
+            record.flip();
+            write(record, position);
+            if (count == appended.length) {
+                appended = Arrays.copyOf(appended, count * 2);
+            }
+            appended[count++] = position;
+            if (locations != null) {
+                addLocation(e.location, position);
+            }
+            position += RECORD_SIZE + 4 + name.length;
+        }
+        end = position;
+        appendedCount = count;
+        writeInt(appendedCount, APPENDED_COUNT);
+        map();
+    }
+
+    /**
+     * Flags the records of the specified locations as removed.
+     *
+     * @return the number of removed records.
+     */
+    int remove(final Collection<String> toRemove) throws IOException {
+        if (locations == null) {
+            locations = new HashMap<String, List<Long>>();
+            for (int i = 0; i < packedCount; i++) {
+                final int offset = (int) (levelOffsets[0] + (long) i * RECORD_SIZE);
+                if ((buffer.getInt(offset + FLAGS) & DELETED) == 0) {
+                    addLocation(readLocation(buffer, offset), offset);
+                }
+            }
+            for (int i = 0; i < appendedCount; i++) {
+                final int offset = (int) appended[i];
+                if ((buffer.getInt(offset + FLAGS) & DELETED) == 0) {
+                    addLocation(readLocation(buffer, offset), offset);
+                }
+            }
+        }
+        int removed = 0;
+        for (String location : toRemove) {
+            final List<Long> offsets = locations.remove(location);
+            if (offsets != null) {
+                for (Long offset : offsets) {
+                    writeInt(DELETED, offset + FLAGS);
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            deletedCount += removed;
+            writeInt(deletedCount, DELETED_COUNT);
+            map();
+        }
+        return removed;
+    }
+
+    private void addLocation(final String location, final long offset) {
+        List<Long> offsets = locations.get(location);
+        if (offsets == null) {
+            offsets = new ArrayList<Long>(1);
+            locations.put(location, offsets);
+        }
+        offsets.add(offset);
+    }
+
+    private void writeInt(final int value, final long position) throws IOException {
+        final ByteBuffer b = ByteBuffer.allocate(4);
+        b.putInt(value).flip();
+        write(b, position);
+    }
+
+    private void write(final ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            position += channel.write(b, position);
+        }
+    }
+
+    /**
+     * Returns {@code true} if enough records have been appended or removed since the tree
+     * has been packed to make queries noticeably slower.
+     */
+    boolean needsRepack() {
+        return !repackFailed
+                && appendedCount + deletedCount > Math.max(REPACK_THRESHOLD, packedCount / 4);
+    }
+
+    /**
+     * Packs the live records in a temporary file which is then renamed over this one, and opens
+     * it. This index stays open until the packed one is, and it is closed only if repacking
+     * succeeded, the returned index must be used instead. If repacking fails this index stays
+     * usable and unchanged.
+     * <p>
+     * The file is replaced by a rename, atomic and allowed while this index maps the file on
+     * POSIX systems. Windows does not replace a file in use, in that case the packed file is
+     * dropped and repacking is not attempted again on this index.
+     */
+    PackedRTree repack() throws IOException {
+        final List<Entry> entries = entries();
+        final File tmp = new File(file.getPath() + ".tmp");
+        final PackedRTree packed;
+        try {
+            write(tmp, entries, nodeCapacity);
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to replace the granule index " + file
+                        + ", the file is probably in use");
+            }
+            // this index still maps the file it was opened on
+            packed = open(file);
+        } catch (IOException e) {
+            repackFailed = true;
+            tmp.delete();
+            throw e;
+        } catch (RuntimeException e) {
+            repackFailed = true;
+            tmp.delete();
+            throw e;
+        }
+        close();
+        return packed;
+    }
+
+    /**
+     * Returns the number of live records.
+     */
+    int size() {
+        return packedCount + appendedCount - deletedCount;
+    }
+
+    int getNodeCapacity() {
+        return nodeCapacity;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    void close() throws IOException {
+        buffer = null;
+        locations = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            channel = null;
+            if (raf != null) {
+                raf.close();
+            }
+            raf = null;
+        }
+    }
+}
@@ -0,0 +1,653 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataStoreFactorySpi;
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.data.Transaction;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.gce.imagemosaic.GranuleDescriptor;
+import org.geotools.gce.imagemosaic.catalog.GTDataStoreGranuleCatalog.BBOXFilterExtractor;
+import org.geotools.gce.imagemosaic.catalog.PackedRTree.Entry;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.Utilities;
+import org.opengis.feature.Feature;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.geometry.BoundingBox;
+
+/**
+ * A {@link GranuleCatalog} keeping a packed R-tree of the granules in a file next to the
+ * index, as an alternative to the {@link STRTreeGranuleCatalog} which loads every granule
+ * to build its tree in memory on first use and again on any change.
+ *
+ * <p>
+ * The file is memory mapped when the catalog is created, hence spatial queries are answered
+ * right away and only the granules they hit are loaded, through the wrapped catalog. Added and
+ * removed granules update the file incrementally, which is repacked once enough of them piled
+ * up. The changes made within a transaction are applied to the file when it is committed, and
+ * discarded when it is rolled back. The file is rebuilt from the wrapped catalog when it is missing, unreadable or older
+ * than the index it describes.
+ *
+ * <p>
+ * The records also hold the time and elevation of the granules, if the mosaic has such
+ * attributes. On first need they are sorted into {@link DimensionIndex}es, used instead of the
+ * spatial index for the queries they make more selective and to list the domains.
+ *
+ * @source $URL$
+ */
+class PackedRTreeGranuleCatalog extends AbstractGranuleCatalog {
+
+    /** Logger. */
+    final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(PackedRTreeGranuleCatalog.class);
+
+    /** Extension of the index file. */
+    static final String EXTENSION = "grx";
+
+    private GTDataStoreGranuleCatalog wrappedCatalogue;
+
+    private PackedRTree index;
+
+    private final String timeAttribute;
+
+    private final String elevationAttribute;
+
+    /** The time and elevation indexes, built from the records on first use. */
+    private volatile List<DimensionIndex<Entry>> dimensionIndexes;
+
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock(true);
+
+    /**
+     * The changes to the index made within a transaction, applied in order on commit.
+     */
+    private final class IndexState implements Transaction.State {
+
+        /** The changes, either the {@link Entry} list to append or the location set to remove. */
+        private final List<Object> changes = new ArrayList<Object>();
+
+        public void setTransaction(final Transaction transaction) {
+            if (transaction == null) {
+                synchronized (changes) {
+                    changes.clear();
+                }
+            }
+        }
+
+        public void addAuthorization(final String authID) throws IOException {
+            // nothing to do
+        }
+
+        void add(final Object change) {
+            synchronized (changes) {
+                changes.add(change);
+            }
+        }
+
+        public void commit() throws IOException {
+            final List<Object> committed;
+            synchronized (changes) {
+                committed = new ArrayList<Object>(changes);
+                changes.clear();
+            }
+            if (!committed.isEmpty()) {
+                applyChanges(committed);
+            }
+        }
+
+        public void rollback() throws IOException {
+            synchronized (changes) {
+                changes.clear();
+            }
+        }
+    }
+
+    /**
+     * Creates the catalog.
+     *
+     * @param params the parameters of the wrapped {@link GTDataStoreGranuleCatalog}, including
+     *        the optional {@code TimeAttribute} and {@code ElevationAttribute} ones.
+     * @param spi the factory of the index store.
+     * @param indexFile the packed R-tree file.
+     * @param sourceFile the file of the index store, used to detect changes made without this
+     *        catalog. May be {@code null}.
+     */
+    public PackedRTreeGranuleCatalog(final Map<String, Serializable> params, final DataStoreFactorySpi spi,
+            final File indexFile, final File sourceFile) {
+        Utilities.ensureNonNull("indexFile", indexFile);
+        this.timeAttribute = (String) params.get("TimeAttribute");
+        this.elevationAttribute = (String) params.get("ElevationAttribute");
+        wrappedCatalogue = new GTDataStoreGranuleCatalog(params, false, spi);
+        try {
+            if (indexFile.exists() && (sourceFile == null || indexFile.lastModified() >= sourceFile.lastModified())) {
+                try {
+                    index = PackedRTree.open(indexFile);
+                } catch (IOException e) {
+                    if (LOGGER.isLoggable(Level.WARNING))
+                        LOGGER.log(Level.WARNING, "Rebuilding the unreadable granule index " + indexFile, e);
+                }
+            }
+            if (index == null) {
+                index = PackedRTree.create(indexFile, loadEntries(Query.ALL), PackedRTree.DEFAULT_NODE_CAPACITY);
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.fine("Created the granule index " + indexFile + " with " + index.size() + " granules");
+            }
+        } catch (IOException e) {
+            wrappedCatalogue.dispose();
+            wrappedCatalogue = null;
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Reads the records of the features matching the provided query from the wrapped catalog.
+     */
+    private List<Entry> loadEntries(final Query query) throws IOException {
+        final List<Entry> entries = new ArrayList<Entry>();
+        wrappedCatalogue.visitFeatures(query, new FeatureVisitor() {
+            public void visit(Feature feature) {
+                if (feature instanceof SimpleFeature) {
+                    entries.add(toEntry((SimpleFeature) feature));
+                }
+            }
+        });
+        return entries;
+    }
+
+    private Entry toEntry(final SimpleFeature feature) {
+        final BoundingBox bounds = feature.getBounds();
+        long time = PackedRTree.NO_TIME;
+        if (timeAttribute != null) {
+            final Object value = feature.getAttribute(timeAttribute);
+            if (value instanceof Date) {
+                time = ((Date) value).getTime();
+            }
+        }
+        double elevation = Double.NaN;
+        if (elevationAttribute != null) {
+            final Object value = feature.getAttribute(elevationAttribute);
+            if (value instanceof Number) {
+                elevation = ((Number) value).doubleValue();
+            }
+        }
+        return new Entry(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), time,
+                elevation, (String) feature.getAttribute(wrappedCatalogue.getLocationAttribute()));
+    }
+
+    /**
+     * Returns the descriptors of the provided records, loading from the wrapped catalog the
+     * ones which are not cached in a single query.
+     * <p>
+     * We need to arrive here with at least a read lock!
+     */
+    private List<GranuleDescriptor> resolve(final List<Entry> entries) throws IOException {
+        final GranuleDescriptor[] granules = new GranuleDescriptor[entries.size()];
+        final Map<String, Integer> missing = new HashMap<String, Integer>();
+        ReferencedEnvelope missingBBox = null;
+        for (int i = 0; i < granules.length; i++) {
+            final Entry entry = entries.get(i);
+            granules[i] = wrappedCatalogue.getCachedGranule(entry.location);
+            if (granules[i] == null) {
+                missing.put(entry.location, i);
+                if (missingBBox == null) {
+                    missingBBox = new ReferencedEnvelope(entry.minX, entry.maxX, entry.minY, entry.maxY,
+                            wrappedCatalogue.getBounds().getCoordinateReferenceSystem());
+                } else {
+                    missingBBox.expandToInclude(entry.minX, entry.minY);
+                    missingBBox.expandToInclude(entry.maxX, entry.maxY);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            final String locationAttribute = wrappedCatalogue.getLocationAttribute();
+            final Query query = new Query(wrappedCatalogue.getTypeName(), GTDataStoreGranuleCatalog.ff.bbox(
+                    GTDataStoreGranuleCatalog.ff.property(wrappedCatalogue.getGeometryPropertyName()), missingBBox));
+            wrappedCatalogue.visitFeatures(query, new FeatureVisitor() {
+                public void visit(Feature feature) {
+                    if (feature instanceof SimpleFeature) {
+                        final SimpleFeature sf = (SimpleFeature) feature;
+                        final Integer i = missing.get((String) sf.getAttribute(locationAttribute));
+                        if (i != null) {
+                            granules[i] = wrappedCatalogue.getGranule(sf);
+                        }
+                    }
+                }
+            });
+        }
+        final List<GranuleDescriptor> result = new ArrayList<GranuleDescriptor>(granules.length);
+        for (GranuleDescriptor granule : granules) {
+            // the index may list granules removed without this catalog in the meantime
+            if (granule != null) {
+                result.add(granule);
+            }
+        }
+        return result;
+    }
+
+    private List<Entry> query(final BoundingBox envelope) {
+        return index.query(envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY());
+    }
+
+    /**
+     * Returns the records possibly matching the filter within the provided bbox, using the
+     * most selective index.
+     * <p>
+     * We need to arrive here with at least a read lock!
+     */
+    private List<Entry> query(final Filter filter, final BoundingBox bbox) {
+        if (timeAttribute == null && elevationAttribute == null) {
+            return query(bbox);
+        }
+        final List<DimensionIndex<Entry>> dimensions = getDimensionIndexes();
+        final List<Entry> selected = DimensionIndex.select(filter,
+                DimensionIndex.estimateSpatialHits(index.size(), bbox, wrappedCatalogue.getBounds()),
+                dimensions.get(0), dimensions.get(1));
+        if (selected == null) {
+            return query(bbox);
+        }
+        // combine with the bbox
+        final List<Entry> entries = new ArrayList<Entry>(selected.size());
+        for (Entry entry : selected) {
+            if (entry.minX <= bbox.getMaxX() && entry.maxX >= bbox.getMinX() && entry.minY <= bbox.getMaxY()
+                    && entry.maxY >= bbox.getMinY()) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the time and elevation indexes, either of them being {@code null} if the mosaic
+     * has no such attribute, building them from the records if needed.
+     * <p>
+     * We need to arrive here with at least a read lock!
+     */
+    @SuppressWarnings("unchecked")
+    private List<DimensionIndex<Entry>> getDimensionIndexes() {
+        List<DimensionIndex<Entry>> dimensions = dimensionIndexes;
+        if (dimensions == null) {
+            synchronized (this) {
+                dimensions = dimensionIndexes;
+                if (dimensions == null) {
+                    final List<Entry> entries = index.entries();
+                    final List<Object> times = new ArrayList<Object>(entries.size());
+                    final List<Object> elevations = new ArrayList<Object>(entries.size());
+                    for (Entry entry : entries) {
+                        times.add(entry.time != PackedRTree.NO_TIME ? new Date(entry.time) : null);
+                        elevations.add(Double.isNaN(entry.elevation) ? null : Double.valueOf(entry.elevation));
+                    }
+                    dimensions = Arrays.asList(
+                            timeAttribute != null ? new DimensionIndex<Entry>(timeAttribute, entries, times) : null,
+                            elevationAttribute != null ? new DimensionIndex<Entry>(elevationAttribute, entries, elevations) : null);
+                    dimensionIndexes = dimensions;
+                }
+            }
+        }
+        return dimensions;
+    }
+
+    /**
+     * If the underlying store has been disposed we throw an {@link IllegalStateException}.
+     */
+    private void checkStore() throws IllegalStateException {
+        if (wrappedCatalogue == null)
+            throw new IllegalStateException("The underlying store has already been disposed!");
+    }
+
+    public List<GranuleDescriptor> getGranules(final BoundingBox envelope) throws IOException {
+        Utilities.ensureNonNull("envelope", envelope);
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            return resolve(query(envelope));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void getGranules(final BoundingBox envelope, final GranuleCatalogVisitor visitor) throws IOException {
+        Utilities.ensureNonNull("visitor", visitor);
+        for (GranuleDescriptor granule : getGranules(envelope)) {
+            visitor.visit(granule, null);
+        }
+    }
+
+    public Collection<GranuleDescriptor> getGranules() throws IOException {
+        return getGranules(getBounds());
+    }
+
+    public List<GranuleDescriptor> getGranules(final Query q) throws IOException {
+        final List<GranuleDescriptor> returnValue = new ArrayList<GranuleDescriptor>();
+        getGranules(q, new GranuleCatalogVisitor() {
+            public void visit(GranuleDescriptor granule, Object o) {
+                returnValue.add(granule);
+            }
+        });
+        return returnValue;
+    }
+
+    public void getGranules(final Query q, final GranuleCatalogVisitor visitor) throws IOException {
+        Utilities.ensureNonNull("q", q);
+        Utilities.ensureNonNull("visitor", visitor);
+        final List<GranuleDescriptor> granules;
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+
+            // use the bbox of the query, if any, to search the index
+            final Filter filter = q.getFilter();
+            final BBOXFilterExtractor bboxExtractor = new BBOXFilterExtractor();
+            filter.accept(bboxExtractor, null);
+            final BoundingBox bbox = bboxExtractor.getBBox() != null ? bboxExtractor.getBBox()
+                    : wrappedCatalogue.getBounds();
+            granules = resolve(query(filter, bbox));
+        } finally {
+            lock.unlock();
+        }
+
+        // the remaining filters are evaluated on the granule features
+        final Filter filter = q.getFilter();
+        final int maxGranules = q.getMaxFeatures();
+        int numGranules = 0;
+        for (GranuleDescriptor granule : granules) {
+            if (maxGranules > 0 && numGranules >= maxGranules)
+                break;
+            final SimpleFeature originator = granule.getOriginator();
+            if (originator != null && filter.evaluate(originator)) {
+                visitor.visit(granule, null);
+                numGranules++;
+            }
+        }
+    }
+
+    public void addGranule(final SimpleFeature granule, final Transaction transaction) throws IOException {
+        addGranules(Collections.singleton(granule), transaction);
+    }
+
+    public void addGranules(final Collection<SimpleFeature> granules, final Transaction transaction)
+            throws IOException {
+        Utilities.ensureNonNull("granules", granules);
+        final Lock lock = rwLock.writeLock();
+        try {
+            lock.lock();
+            checkStore();
+            wrappedCatalogue.addGranules(granules, transaction);
+
+            final List<Entry> entries = new ArrayList<Entry>(granules.size());
+            for (SimpleFeature granule : granules) {
+                entries.add(toEntry(granule));
+            }
+            if (transaction == Transaction.AUTO_COMMIT) {
+                applyChange(entries);
+            } else {
+                getState(transaction).add(entries);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int removeGranules(final Query query) {
+        return removeGranules(query, Transaction.AUTO_COMMIT);
+    }
+
+    public int removeGranules(final Query query, final Transaction transaction) {
+        Utilities.ensureNonNull("query", query);
+        Utilities.ensureNonNull("transaction", transaction);
+        final Lock lock = rwLock.writeLock();
+        try {
+            lock.lock();
+            checkStore();
+            final Set<String> locations = new HashSet<String>();
+            for (Entry entry : loadEntries(query)) {
+                locations.add(entry.location);
+            }
+            final int retVal = wrappedCatalogue.removeGranules(query, transaction);
+            if (retVal > 0) {
+                if (transaction == Transaction.AUTO_COMMIT) {
+                    applyChange(locations);
+                } else {
+                    getState(transaction).add(locations);
+                }
+            }
+            return retVal;
+        } catch (IOException e) {
+            if (LOGGER.isLoggable(Level.SEVERE))
+                LOGGER.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the pending index changes of a transaction, creating them if needed.
+     */
+    private IndexState getState(final Transaction transaction) {
+        synchronized (transaction) {
+            IndexState state = (IndexState) transaction.getState(this);
+            if (state == null) {
+                state = new IndexState();
+                transaction.putState(this, state);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Applies the changes committed by a transaction.
+     */
+    private void applyChanges(final List<Object> changes) throws IOException {
+        final Lock lock = rwLock.writeLock();
+        try {
+            lock.lock();
+            if (index == null) {
+                // disposed in the meantime, the index will be rebuilt from the store
+                return;
+            }
+            for (Object change : changes) {
+                applyChange(change);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the provided entries to the index, or removes the provided locations from it.
+     * <p>
+     * We need to arrive here with the write lock!
+     */
+    @SuppressWarnings("unchecked")
+    private void applyChange(final Object change) throws IOException {
+        if (change instanceof Set) {
+            index.remove((Set<String>) change);
+        } else {
+            index.append((List<Entry>) change);
+        }
+        dimensionIndexes = null;
+        checkRepack();
+    }
+
+    /**
+     * Repacks the index if needed. If repacking fails the current index is kept, it is still
+     * up to date, only slower to query.
+     * <p>
+     * We need to arrive here with the write lock!
+     */
+    private void checkRepack() {
+        if (index.needsRepack()) {
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine("Repacking the granule index " + index.getFile());
+            try {
+                index = index.repack();
+            } catch (IOException e) {
+                if (LOGGER.isLoggable(Level.WARNING))
+                    LOGGER.log(Level.WARNING, "Unable to repack the granule index " + index.getFile(), e);
+            }
+        }
+    }
+
+    public void dispose() {
+        final Lock l = rwLock.writeLock();
+        try {
+            l.lock();
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    if (LOGGER.isLoggable(Level.FINE))
+                        LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+                }
+            }
+            if (wrappedCatalogue != null) {
+                try {
+                    wrappedCatalogue.dispose();
+                } catch (Exception e) {
+                    if (LOGGER.isLoggable(Level.FINE))
+                        LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+                }
+            }
+        } finally {
+            wrappedCatalogue = null;
+            index = null;
+            dimensionIndexes = null;
+            l.unlock();
+        }
+    }
+
+    public BoundingBox getBounds() {
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            return wrappedCatalogue.getBounds();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public SimpleFeatureType getType() throws IOException {
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            return wrappedCatalogue.getType();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void createType(String namespace, String typeName, String typeSpec) throws IOException,
+            SchemaException {
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            wrappedCatalogue.createType(namespace, typeName, typeSpec);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void createType(SimpleFeatureType featureType) throws IOException {
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            wrappedCatalogue.createType(featureType);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void createType(String identification, String typeSpec) throws SchemaException, IOException {
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            wrappedCatalogue.createType(identification, typeSpec);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void computeAggregateFunction(Query query, FeatureCalc function) throws IOException {
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+
+            // the domain of a dimension is given by its index
+            if (function instanceof UniqueVisitor && Filter.INCLUDE.equals(query.getFilter())
+                    && (timeAttribute != null || elevationAttribute != null)) {
+                final Expression expression = ((UniqueVisitor) function).getExpression();
+                if (expression instanceof PropertyName) {
+                    final String name = ((PropertyName) expression).getPropertyName();
+                    final List<DimensionIndex<Entry>> dimensions = getDimensionIndexes();
+                    final DimensionIndex<Entry> dimension = name.equals(timeAttribute) ? dimensions.get(0)
+                            : name.equals(elevationAttribute) ? dimensions.get(1) : null;
+                    if (dimension != null) {
+                        ((UniqueVisitor) function).setValue(dimension.distinctValues());
+                        return;
+                    }
+                }
+            }
+            wrappedCatalogue.computeAggregateFunction(query, function);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public QueryCapabilities getQueryCapabilities() {
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            return wrappedCatalogue.getQueryCapabilities();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.gce.imagemosaic.GranuleDescriptor;
 import org.geotools.gce.imagemosaic.ImageMosaicReader;
 import org.geotools.gce.imagemosaic.catalog.GTDataStoreGranuleCatalog.BBOXFilterExtractor;
@@ -44,6 +45,8 @@ import org.geotools.util.Utilities;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.geometry.BoundingBox;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -61,6 +64,11 @@ import com.vividsolutions.jts.index.strtree.STRtree;
  * caching and keep the index in memory as much as possible, hence we came up
  * with this index.
  * 
+ * <p>
+ * When the mosaic has time or elevation attributes, sorted {@link DimensionIndex}es are
+ * built as well, and used instead of the spatial one for the queries they make more
+ * selective.
+ * 
  * @author Simone Giannecchini, S.A.S.
  * @author Stefan Alfons Krueger (alfonx), Wikisquare.de : Support for jar:file:foo.jar/bar.properties URLs
  * @since 2.5
@@ -129,9 +137,14 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 	}
 
 	private GranuleCatalog wrappedCatalogue;
+
+	private final String timeAttribute;
+
+	private final String elevationAttribute;
 	
 	public STRTreeGranuleCatalog(final Map<String,Serializable> params, DataStoreFactorySpi spi) {
-	        this(new GTDataStoreGranuleCatalog(params,false,spi));
+	        this(new GTDataStoreGranuleCatalog(params,false,spi),
+	                (String) params.get("TimeAttribute"), (String) params.get("ElevationAttribute"));
 	}
 	
 
@@ -146,13 +159,32 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
      * @param catalogue the {@link GranuleCatalog} to be wrapped.
      */
     public STRTreeGranuleCatalog(GranuleCatalog catalogue) {
+        this(catalogue, null, null);
+    }
+
+    /**
+     * Constructor which expects a catalogue as well as the dimension attributes to index.
+     * 
+     * @param catalogue the {@link GranuleCatalog} to be wrapped.
+     * @param timeAttribute the time attribute, may be <code>null</code>.
+     * @param elevationAttribute the elevation attribute, may be <code>null</code>.
+     */
+    public STRTreeGranuleCatalog(GranuleCatalog catalogue, String timeAttribute, String elevationAttribute) {
         Utilities.ensureNonNull("catalogue", catalogue);
         this.wrappedCatalogue = catalogue;
+        this.timeAttribute = timeAttribute;
+        this.elevationAttribute = elevationAttribute;
     }
 
         /** The {@link STRtree} index. */
 	private STRtree index;
 
+	/** The time index, <code>null</code> if the mosaic has no time. */
+	private DimensionIndex<GranuleDescriptor> timeIndex;
+
+	/** The elevation index, <code>null</code> if the mosaic has no elevation. */
+	private DimensionIndex<GranuleDescriptor> elevationIndex;
+
 	private final ReadWriteLock rwLock= new ReentrantReadWriteLock(true);
 
 	/**
@@ -218,12 +250,21 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 			// TODO make it configurable as far the index is involved
 			STRtree tree = new STRtree();
 			long size=0;
+			final List<GranuleDescriptor> granules = new ArrayList<GranuleDescriptor>();
+			final List<Object> times = new ArrayList<Object>();
+			final List<Object> elevations = new ArrayList<Object>();
 			while (it.hasNext()) {
 				final GranuleDescriptor granule = it.next();
 				final ReferencedEnvelope env=ReferencedEnvelope.reference(granule.getGranuleBBOX());
 				final Geometry g = (Geometry)FeatureUtilities.getPolygon(
 						new Rectangle2D.Double(env.getMinX(),env.getMinY(),env.getWidth(),env.getHeight()),0);
 				tree.insert(g.getEnvelopeInternal(), granule);
+
+				// collect the dimensions
+				final SimpleFeature originator = granule.getOriginator();
+				granules.add(granule);
+				times.add(timeAttribute != null && originator != null ? originator.getAttribute(timeAttribute) : null);
+				elevations.add(elevationAttribute != null && originator != null ? originator.getAttribute(elevationAttribute) : null);
 			}
 			
 			// force index construction --> STRTrees are built on first call to
@@ -232,6 +273,8 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 			
 			// save the soft reference
 			index=tree;
+			timeIndex = timeAttribute != null ? new DimensionIndex<GranuleDescriptor>(timeAttribute, granules, times) : null;
+			elevationIndex = elevationAttribute != null ? new DimensionIndex<GranuleDescriptor>(elevationAttribute, granules, elevations) : null;
 		}
 		catch (Throwable e) {
 			throw new  IllegalArgumentException(e);
@@ -295,6 +338,8 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 		}finally{
 			wrappedCatalogue=null;
 			index= null;
+			timeIndex= null;
+			elevationIndex= null;
 			l.unlock();
 		
 		}
@@ -317,9 +362,9 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 			
 			// load what we need to load
 			checkIndex(lock);
-			final List<GranuleDescriptor> features= index.query(requestedBBox);
 			if(q.equals(Query.ALL))
-				return features;
+				return index.query(requestedBBox);
+			final List<GranuleDescriptor> features= query(filter, requestedBBox);
 			
 			final List<GranuleDescriptor> retVal= new ArrayList<GranuleDescriptor>();
 			final int maxGranules= q.getMaxFeatures();
@@ -339,6 +384,43 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 		}	
 	}
 
+	/**
+	 * Returns the granules possibly matching the filter within the provided bbox, using the
+	 * most selective index.
+	 * <p>
+	 * We need to arrive here with at least a read lock!
+	 */
+	@SuppressWarnings("unchecked")
+	private List<GranuleDescriptor> query(final Filter filter, final ReferencedEnvelope requestedBBox) {
+		final List<GranuleDescriptor> selected = selectByDimension(filter, requestedBBox);
+		return selected != null ? selected : index.query(requestedBBox);
+	}
+
+	/**
+	 * Returns the granules possibly matching the filter within the provided bbox using the
+	 * dimension indexes, or <code>null</code> if the spatial index is expected to be more
+	 * selective.
+	 * <p>
+	 * We need to arrive here with at least a read lock!
+	 */
+	private List<GranuleDescriptor> selectByDimension(final Filter filter, final ReferencedEnvelope requestedBBox) {
+		if (timeIndex == null && elevationIndex == null)
+			return null;
+		final int size = index.size();
+		final List<GranuleDescriptor> selected = DimensionIndex.select(filter,
+				DimensionIndex.estimateSpatialHits(size, requestedBBox, wrappedCatalogue.getBounds()),
+				timeIndex, elevationIndex);
+		if (selected == null)
+			return null;
+		// combine with the bbox
+		final List<GranuleDescriptor> retVal = new ArrayList<GranuleDescriptor>(selected.size());
+		for (GranuleDescriptor granule : selected) {
+			if (requestedBBox.intersects(ReferencedEnvelope.reference(granule.getGranuleBBOX())))
+				retVal.add(granule);
+		}
+		return retVal;
+	}
+
 	private ReferencedEnvelope extractAndCombineBBox(Filter filter) {
 		// TODO extract eventual bbox from query here
 		final BBOXFilterExtractor bboxExtractor = new GTDataStoreGranuleCatalog.BBOXFilterExtractor();
@@ -376,7 +458,13 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 			
 			// get filter and check bbox
 			checkIndex(lock);
-                        index.query(requestedBBox,new JTSIndexVisitorAdapter(visitor,q));
+			final JTSIndexVisitorAdapter adapter = new JTSIndexVisitorAdapter(visitor,q);
+			final List<GranuleDescriptor> selected = selectByDimension(filter, requestedBBox);
+			if (selected != null) {
+				for (GranuleDescriptor granule : selected)
+					adapter.visitItem(granule);
+			} else
+                        index.query(requestedBBox,adapter);
 			
 		}finally{
 			lock.unlock();
@@ -420,6 +508,22 @@ class STRTreeGranuleCatalog extends AbstractGranuleCatalog {
 		try{
 			lock.lock();
 			checkStore();
+			
+			// the domain of a dimension is given by its index
+			if (function instanceof UniqueVisitor && Filter.INCLUDE.equals(query.getFilter())
+					&& (timeAttribute != null || elevationAttribute != null)) {
+				final Expression expression = ((UniqueVisitor) function).getExpression();
+				if (expression instanceof PropertyName) {
+					checkIndex(lock);
+					final String name = ((PropertyName) expression).getPropertyName();
+					final DimensionIndex<GranuleDescriptor> dimension = name.equals(timeAttribute) ? timeIndex
+							: name.equals(elevationAttribute) ? elevationIndex : null;
+					if (dimension != null) {
+						((UniqueVisitor) function).setValue(dimension.distinctValues());
+						return;
+					}
+				}
+			}
 			wrappedCatalogue.computeAggregateFunction(query, function);
 		}finally{
 			lock.unlock();
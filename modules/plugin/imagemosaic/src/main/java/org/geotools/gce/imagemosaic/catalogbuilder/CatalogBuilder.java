@@ -38,13 +38,20 @@ import java.util.Date;
 import java.util.EventListener;
 import java.util.EventObject;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,8 +81,10 @@ import org.geotools.coverage.grid.io.UnknownFormat;
 import org.geotools.data.DataStoreFactorySpi;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.DefaultTransaction;
+import org.geotools.data.Query;
 import org.geotools.data.shapefile.ShapefileDataStoreFactory;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.gce.image.WorldImageFormat;
 import org.geotools.gce.imagemosaic.MosaicConfigurationBean;
 import org.geotools.gce.imagemosaic.Utils;
@@ -90,9 +99,11 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.image.io.ImageIOExt;
 import org.geotools.referencing.CRS;
 import org.geotools.resources.coverage.CoverageUtilities;
+import org.geotools.resources.coverage.FeatureUtilities;
 import org.geotools.util.Utilities;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory2;
 import org.opengis.geometry.Envelope;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.datum.PixelInCell;
@@ -117,6 +128,15 @@ public class CatalogBuilder implements Runnable {
 
     final private static double RESOLUTION_TOLERANCE_FACTOR = 1E-2;
 
+    /** Maximum number of granules waiting to be written, per harvesting thread. */
+    final private static int MAX_PENDING_PER_THREAD = 4;
+
+    /** Number of granules after which the catalog is committed when resuming is enabled. */
+    final private static int COMMIT_INTERVAL = 1000;
+
+    /** Minimum time in milliseconds between two {@link ThroughputEvent}s. */
+    final private static long THROUGHPUT_REPORT_INTERVAL = 5000;
+
 	/** Default Logger * */
 	final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(CatalogBuilder.class);
 	
@@ -192,6 +212,96 @@ public class CatalogBuilder implements Runnable {
 
 	}
 
+
+	/**
+	 * Event periodically launched while harvesting, reporting how many granules
+	 * have been processed so far and at which rate.
+	 */
+	static public final class ThroughputEvent extends ProcessingEvent {
+
+		private static final long serialVersionUID = -3467180251476325283L;
+
+		private final int processedFiles;
+
+		private final long elapsedTime;
+
+		public ThroughputEvent(Object source, String message, double percentage,
+				int processedFiles, long elapsedTime) {
+			super(source, message, percentage);
+			this.processedFiles = processedFiles;
+			this.elapsedTime = elapsedTime;
+		}
+
+		/**
+		 * @return the number of granules processed so far.
+		 */
+		public int getProcessedFiles() {
+			return processedFiles;
+		}
+
+		/**
+		 * @return the time elapsed since harvesting started, in milliseconds.
+		 */
+		public long getElapsedTime() {
+			return elapsedTime;
+		}
+
+		/**
+		 * @return the number of granules processed per second.
+		 */
+		public double getThroughput() {
+			return elapsedTime > 0 ? processedFiles * 1000.0 / elapsedTime : 0;
+		}
+
+	}
+
+	/**
+	 * What has been collected about a granule by {@code harvest}, to be written
+	 * into the catalog.
+	 */
+	final static class HarvestedGranule {
+
+		final File file;
+
+		final String location;
+
+		/** Index of the file in the walking order. */
+		final int index;
+
+		/** Already indexed, harvested only to initialize the mosaic configuration. */
+		final boolean indexed;
+
+		/** Already indexed but modified since, the old feature is to be replaced. */
+		final boolean update;
+
+		GeneralEnvelope envelope;
+
+		CoordinateReferenceSystem crs;
+
+		ColorModel colorModel;
+
+		SampleModel sampleModel;
+
+		int numberOfLevels;
+
+		double[][] resolutionLevels;
+
+		SimpleFeature feature;
+
+		/** Reason for skipping this granule, if any. */
+		String skipMessage;
+
+		Exception exception;
+
+		HarvestedGranule(final File file, final String location, final int index,
+				final boolean indexed, final boolean update) {
+			this.file = file;
+			this.location = location;
+			this.index = index;
+			this.indexed = indexed;
+			this.update = update;
+		}
+	}
 	
 	/**
 	 * Private Class which simply fires the events using a copy of the listeners
@@ -271,6 +381,19 @@ public class CatalogBuilder implements Runnable {
 
 		private DefaultTransaction transaction;
                 private volatile boolean canceled;
+
+		/** Threads harvesting the granules, {@code null} when harvesting sequentially. */
+		private ExecutorService harvesters;
+
+		/** The granules being harvested, in the walking order. */
+		private final LinkedList<Future<HarvestedGranule>> pending = new LinkedList<Future<HarvestedGranule>>();
+
+		/** Number of granules added since the last commit. */
+		private int uncommitted;
+
+		private long startTime;
+
+		private long lastReport;
 		
 		@Override
 		protected void handleCancelled(File startDirectory, Collection results,
@@ -311,15 +434,64 @@ public class CatalogBuilder implements Runnable {
 		
 			// replacing chars on input path
 			String validFileName;
+			final String location;
 			try {
 				validFileName = fileBeingProcessed.getCanonicalPath();
 				validFileName=FilenameUtils.normalize(validFileName);
+				location = prepareLocation(fileBeingProcessed);
 			} catch (IOException e1) {
 				fireException(e1);
 				return;
 			}
 			validFileName=FilenameUtils.getName(validFileName);
+
+			//
+			// resuming, skip the granules already indexed unless they have been modified since
+			//
+			boolean indexed = false;
+			boolean update = false;
+			if (indexedLocations != null && indexedLocations.contains(location)) {
+				if (fileBeingProcessed.lastModified() > indexTimestamp) {
+					update = true;
+				} else if (numberOfProcessedFiles > 0) {
+					fireEvent(Level.FINE, "Skipped file " + fileBeingProcessed + " since it is already indexed", ((fileIndex * 100.0) / numFiles));
+					return;
+				} else {
+					// still needed to initialize the mosaic configuration
+					indexed = true;
+				}
+			}
+
 			fireEvent(Level.INFO,"Now indexing file "+validFileName, ((fileIndex * 100.0) / numFiles));
+			final HarvestedGranule granule = new HarvestedGranule(fileBeingProcessed, location, fileIndex, indexed, update);
+			if (harvesters == null || indexSchema == null) {
+				// sequential harvesting, or the schema has to be built out of this granule first
+				harvest(granule);
+				write(granule);
+			} else {
+				pending.add(harvesters.submit(new Callable<HarvestedGranule>() {
+					public HarvestedGranule call() {
+						harvest(granule);
+						return granule;
+					}
+				}));
+				// write what is ready, waiting for the oldest granule if too many are pending
+				drain(pending.size() > MAX_PENDING_PER_THREAD * runConfiguration.getHarvestingThreads() ? 1 : 0);
+			}
+			
+			super.handleFile(fileBeingProcessed, depth, results);
+		}
+
+		/**
+		 * Opens a granule and collects everything needed to index it: envelope, CRS, color
+		 * and sample models, resolution levels and the feature to add to the catalog.
+		 * 
+		 * <p>
+		 * This may run on a harvesting thread, hence it does not touch the catalog nor the
+		 * mosaic configuration, failures are recorded in the granule for the writer to report.
+		 */
+		private void harvest(final HarvestedGranule granule) {
+			final File fileBeingProcessed = granule.file;
 			ImageInputStream inStream=null;
 			ImageReader imageioReader = null;
 			AbstractGridCoverage2DReader coverageReader=null;
@@ -329,28 +501,31 @@ public class CatalogBuilder implements Runnable {
 				// Getting an ImageIO reader for this coverage.
 				//
 			        // try to use cache
-			        if(cachedStreamSPI!=null ){
-			            inStream=cachedStreamSPI.createInputStreamInstance(fileBeingProcessed);
+			        ImageInputStreamSpi streamSPI = cachedStreamSPI;
+			        if(streamSPI!=null ){
+			            inStream=streamSPI.createInputStreamInstance(fileBeingProcessed);
 			        } 
 			        if(inStream==null ){
 			            // failed, look for a new SPI
-			            cachedStreamSPI= ImageIOExt.getImageInputStreamSPI(fileBeingProcessed);
-			            if(cachedStreamSPI!=null){
-			                inStream=cachedStreamSPI.createInputStreamInstance(fileBeingProcessed);
+			            streamSPI= ImageIOExt.getImageInputStreamSPI(fileBeingProcessed);
+			            if(streamSPI!=null){
+			                cachedStreamSPI=streamSPI;
+			                inStream=streamSPI.createInputStreamInstance(fileBeingProcessed);
 			            }
 			            
 			        } 
     				if(inStream==null) {
     				    // failed again
-    					fireEvent(Level.INFO,fileBeingProcessed+" has been skipped since we could not get a stream for it", ((fileIndex * 100.0) / numFiles));
+    					granule.skipMessage=fileBeingProcessed+" has been skipped since we could not get a stream for it";
     					return;
     				}
 				inStream.mark();
 				
 				
 				cachedReaderSPITest: {
+					final ImageReaderSpi readerSPI = cachedReaderSPI;
 					// there is no cached reader spi, let's look for one
-					if(cachedReaderSPI==null){
+					if(readerSPI==null){
 						final Iterator<ImageReader> it = ImageIO.getImageReaders(inStream);
 						if (it.hasNext()) {
 							imageioReader = it.next();
@@ -364,21 +539,21 @@ public class CatalogBuilder implements Runnable {
 						}
 					} else {
 						// we have a cached SPI, let's try to use it
-						if(!cachedReaderSPI.canDecodeInput(inStream)){				
+						if(!readerSPI.canDecodeInput(inStream)){				
 							// the SPI is no good for this input
 							cachedReaderSPI=null;
 							//take me to the SPI search
 							break cachedReaderSPITest;
 						}
 						// the spi is good
-						imageioReader=cachedReaderSPI.createReaderInstance();
+						imageioReader=readerSPI.createReaderInstance();
 						imageioReader.setInput(inStream);
 					}
 				}
 				// did we found a reader
 				if (imageioReader == null) {
 					// send a message
-					fireEvent(Level.INFO,new StringBuilder("Skipped file ").append(fileBeingProcessed).append(":No ImageIO reader	s availaible.").toString(), ((fileIndex * 99.0) / numFiles));
+					granule.skipMessage=new StringBuilder("Skipped file ").append(fileBeingProcessed).append(":No ImageIO reader	s availaible.").toString();
 					return;
 				}
 
@@ -387,62 +562,32 @@ public class CatalogBuilder implements Runnable {
 				// STEP 2
 				// Getting a coverage reader for this coverage.
 				//
-				final AbstractGridFormat format;
-				if(cachedFormat == null) {
+				AbstractGridFormat format=cachedFormat;
+				if(format == null) {
 					format= (AbstractGridFormat) GridFormatFinder.findFormat(fileBeingProcessed);
 				} else {
-					if(cachedFormat.accepts(fileBeingProcessed)) {
-						format=cachedFormat;
-					} else {
+					if(!format.accepts(fileBeingProcessed)) {
 						format=new UnknownFormat();
 					}
 				}
 				if ((format instanceof UnknownFormat)||format == null) {
-					fireEvent(Level.INFO,new StringBuilder("Skipped file ").append(fileBeingProcessed).append(": File format is not supported.").toString(), ((fileIndex * 99.0) / numFiles));
+					granule.skipMessage=new StringBuilder("Skipped file ").append(fileBeingProcessed).append(": File format is not supported.").toString();
 					return;
 				}
 				cachedFormat=format;
 				coverageReader = (AbstractGridCoverage2DReader) format.getReader(fileBeingProcessed,runConfiguration.getHints());
-				GeneralEnvelope envelope = (GeneralEnvelope) coverageReader.getOriginalEnvelope();
-				CoordinateReferenceSystem actualCRS = coverageReader.getCrs();
+				granule.envelope = (GeneralEnvelope) coverageReader.getOriginalEnvelope();
+				granule.crs = coverageReader.getCrs();
 
 				//
 				// STEP 3
-				// Get the type specifier for this image and the check that the
-				// image has the correct sample model and color model.
-				// If this is the first cycle of the loop we initialize everything.
+				// Get the type specifier for this image as well as the
+				// information about resolution, to be checked by the writer.
 				//
 				final ImageTypeSpecifier its = ((ImageTypeSpecifier) imageioReader.getImageTypes(0).next());
-				if (numberOfProcessedFiles==0) {
-					
-					//
-					// at the first step we initialize everything that we will
-					// reuse afterwards starting with color models, sample
-					// models, crs, etc....
-					//
-					
-					defaultCM = its.getColorModel();
-					defaultSM = its.getSampleModel();
-					if (defaultCM instanceof IndexColorModel) {
-						IndexColorModel icm = (IndexColorModel) defaultCM;
-						int numBands = defaultCM.getNumColorComponents();
-						defaultPalette = new byte[3][icm.getMapSize()];
-						icm.getReds(defaultPalette[0]);
-						icm.getGreens(defaultPalette[0]);
-						icm.getBlues(defaultPalette[0]);
-						if (numBands == 4)
-							icm.getAlphas(defaultPalette[0]);
-
-					}
-					defaultCRS = actualCRS;
-
-					
-					//
-					// getting information about resolution
-					//
-					
-
-
+				granule.colorModel = its.getColorModel();
+				granule.sampleModel = its.getSampleModel();
+				if (indexSchema == null) {
 					// get the dimension of the hr image and build the model
 					// as well as computing the resolution
 					// 
@@ -465,134 +610,47 @@ public class CatalogBuilder implements Runnable {
 					//let's check if we got something now
 					if(inStream==null) {
 						//skip file
-						fireEvent(Level.INFO,fileBeingProcessed+" has been skipped since we could not get a stream for it", ((fileIndex * 100.0) / numFiles));
+						granule.skipMessage=fileBeingProcessed+" has been skipped since we could not get a stream for it";
 						return;
 					}
 					imageioReader.setInput(inStream);
-					int numberOfLevels = imageioReader.getNumImages(true);
-					double[][] resolutionLevels = new double[2][numberOfLevels];
-					setupResolutions(resolutionLevels, numberOfLevels, coverageReader, imageioReader, null);
-					mosaicConfiguration.setLevelsNum(numberOfLevels);
-					mosaicConfiguration.setLevels(resolutionLevels);
+				}
+				granule.numberOfLevels = imageioReader.getNumImages(true);
+				granule.resolutionLevels = new double[2][granule.numberOfLevels];
+				setupResolutions(granule.resolutionLevels, granule.numberOfLevels, coverageReader, imageioReader);
 
-					
-					//
-					// creating the schema
-					//
-					
-					final String schemaDef= runConfiguration.getSchema();
-					if(schemaDef!=null){
-						// get the schema
-						try{
-							indexSchema=DataUtilities.createType(mosaicConfiguration.getName(), runConfiguration.getSchema());
-							//override the crs in case the provided one was wrong or absent
-							indexSchema=DataUtilities.createSubType(indexSchema, DataUtilities.attributeNames(indexSchema), actualCRS);
-						}
-						catch (Throwable e) {
-							if(LOGGER.isLoggable(Level.FINE))
-								LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
-							indexSchema=null;
-						}
-					}
-					if(indexSchema==null){
-						final SimpleFeatureTypeBuilder featureBuilder = new SimpleFeatureTypeBuilder();
-						featureBuilder.setName(runConfiguration.getIndexName());
-						featureBuilder.setNamespaceURI("http://www.geo-solutions.it/");
-						featureBuilder.add(runConfiguration.getLocationAttribute(), String.class);
-						featureBuilder.add("the_geom", Polygon.class,actualCRS);
-						featureBuilder.setDefaultGeometry("the_geom");
-						if(runConfiguration.getTimeAttribute()!=null)
-							featureBuilder.add(runConfiguration.getTimeAttribute(), Date.class);
-						indexSchema = featureBuilder.buildFeatureType();
-					}
-					// create the schema for the new shape file
-					catalog.createType(indexSchema);
-					
-				} else {
-				    if (!mosaicConfiguration.isHeterogeneous()){
-				        // //
-				        //
-				        // There is no need to check resolutions if the mosaic
-				        // has been already marked as heterogeneous
-				        //
-				        // //
-				        int numberOfLevels = imageioReader.getNumImages(true);
-                                        if (numberOfLevels != mosaicConfiguration.getLevelsNum()) {
-                                            mosaicConfiguration.setHeterogeneous(true);
-                                            if (numberOfLevels > mosaicConfiguration.getLevelsNum()){
-                                                final double[][] resolutionLevels = new double[2][numberOfLevels];
-                                                setupResolutions(resolutionLevels, numberOfLevels, coverageReader, imageioReader, null);
-                                                mosaicConfiguration.setLevelsNum(numberOfLevels);
-                                                mosaicConfiguration.setLevels(resolutionLevels);
-                                            }
-                                        } else {
-                                            final double[][] mosaicLevels = mosaicConfiguration.getLevels();
-                                            final double[][] resolutionLevels = new double[2][numberOfLevels];
-                                            final boolean homogeneousLevels = setupResolutions(resolutionLevels, numberOfLevels, coverageReader, imageioReader, mosaicLevels);
-                                            if (!homogeneousLevels){
-                                                mosaicConfiguration.setHeterogeneous(true);
-                                            }
-                                        }
-				    }
-				    
-				    
-					// ////////////////////////////////////////////////////////
-					// 
-					// comparing ColorModel
-					// comparing SampeModel
-					// comparing CRSs
-					// ////////////////////////////////////////////////////////
-					ColorModel actualCM = its.getColorModel();
-					if((fileIndex > 0 ? !(CRS.equalsIgnoreMetadata(defaultCRS, actualCRS)) : false)){
-						fireEvent(
-								Level.INFO,
-								new StringBuilder("Skipping image ").append(fileBeingProcessed).append(" because CRSs do not match.").toString(),
-								(((fileIndex + 1) * 99.0) / numFiles));
-						return;
-					}
-					
-					if(checkColorModels(defaultCM, defaultPalette,actualCM)){
-						fireEvent(
-								Level.INFO,
-								new StringBuilder("Skipping image ").append(fileBeingProcessed).append(" because color models do not match.").toString(),
-								(((fileIndex + 1) * 99.0) / numFiles));
-						return;
-					}							
+				if (indexSchema == null) {
+					// only happens on the walking thread, for the first granule
+					createSchema(granule.crs);
+				}
+				if (granule.indexed) {
+					return;
 				}
 
 				// ////////////////////////////////////////////////////////
 				//
 				// STEP 4
 				//
-				// create and store features
+				// create the feature
 				//
 				// ////////////////////////////////////////////////////////
 				final SimpleFeature feature = DataUtilities.template(indexSchema);
-				feature.setAttribute(indexSchema.getGeometryDescriptor().getLocalName(), geomFactory.toGeometry(new ReferencedEnvelope((Envelope) envelope)));
-				feature.setAttribute(runConfiguration.getLocationAttribute(), prepareLocation(fileBeingProcessed));
+				feature.setAttribute(indexSchema.getGeometryDescriptor().getLocalName(), geomFactory.toGeometry(new ReferencedEnvelope((Envelope) granule.envelope)));
+				feature.setAttribute(runConfiguration.getLocationAttribute(), granule.location);
 				
-				// collect and dump properties
-				if(propertiesCollectors!=null&&propertiesCollectors.size()>0)
-					for(PropertiesCollector pc: propertiesCollectors)
+				// collect and dump properties, each thread has its own collectors
+				final List<PropertiesCollector> collectors = propertiesCollectors.get();
+				if(collectors!=null&&collectors.size()>0)
+					for(PropertiesCollector pc: collectors)
 					{
 						pc.collect(fileBeingProcessed).collect(coverageReader).collect(imageioReader).setProperties(feature);
 						pc.reset();
 					}
-
-				catalog.addGranule(feature,transaction);
-
-				// fire event
-				fireEvent(Level.FINE,"Done with file "+fileBeingProcessed, (((fileIndex + 1) * 99.0) / numFiles));
-			
-
-				// advance files
-				numberOfProcessedFiles++;
+				granule.feature = feature;
 			} catch (IOException e) {
-				fireException(e);
-				return;
+				granule.exception = e;
 			} catch (ArrayIndexOutOfBoundsException e) {
-				fireException(e);
-				return;
+				granule.exception = e;
 			} 
 			finally{
 				// ////////////////////////////////////////////////////////
@@ -630,9 +688,202 @@ public class CatalogBuilder implements Runnable {
 						LOGGER.log(Level.FINEST,e.getLocalizedMessage(),e);					
 				}
 			}
+		}
+
+		/**
+		 * Creates the schema of the index out of the first granule.
+		 */
+		private void createSchema(final CoordinateReferenceSystem actualCRS) throws IOException {
+			final String schemaDef= runConfiguration.getSchema();
+			if(schemaDef!=null){
+				// get the schema
+				try{
+					indexSchema=DataUtilities.createType(mosaicConfiguration.getName(), runConfiguration.getSchema());
+					//override the crs in case the provided one was wrong or absent
+					indexSchema=DataUtilities.createSubType(indexSchema, DataUtilities.attributeNames(indexSchema), actualCRS);
+				}
+				catch (Throwable e) {
+					if(LOGGER.isLoggable(Level.FINE))
+						LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
+					indexSchema=null;
+				}
+			}
+			if(indexSchema==null){
+				final SimpleFeatureTypeBuilder featureBuilder = new SimpleFeatureTypeBuilder();
+				featureBuilder.setName(runConfiguration.getIndexName());
+				featureBuilder.setNamespaceURI("http://www.geo-solutions.it/");
+				featureBuilder.add(runConfiguration.getLocationAttribute(), String.class);
+				featureBuilder.add("the_geom", Polygon.class,actualCRS);
+				featureBuilder.setDefaultGeometry("the_geom");
+				if(runConfiguration.getTimeAttribute()!=null)
+					featureBuilder.add(runConfiguration.getTimeAttribute(), Date.class);
+				indexSchema = featureBuilder.buildFeatureType();
+			}
+			// create the schema for the new shape file
+			catalog.createType(indexSchema);
+		}
+
+		/**
+		 * Checks a harvested granule against the mosaic configuration and adds it to the
+		 * catalog. This is the only place writing the catalog, always from the walking thread
+		 * and in the walking order.
+		 */
+		private void write(final HarvestedGranule granule) throws IOException {
+			if (granule.exception != null) {
+				fireException(granule.exception);
+				return;
+			}
+			if (granule.skipMessage != null) {
+				fireEvent(Level.INFO, granule.skipMessage, ((granule.index * 99.0) / numFiles));
+				return;
+			}
+			final File fileBeingProcessed = granule.file;
+			if (numberOfProcessedFiles==0) {
+				
+				//
+				// at the first step we initialize everything that we will
+				// reuse afterwards starting with color models, sample
+				// models, crs, etc....
+				//
+				
+				defaultCM = granule.colorModel;
+				defaultSM = granule.sampleModel;
+				if (defaultCM instanceof IndexColorModel) {
+					IndexColorModel icm = (IndexColorModel) defaultCM;
+					int numBands = defaultCM.getNumColorComponents();
+					defaultPalette = new byte[3][icm.getMapSize()];
+					icm.getReds(defaultPalette[0]);
+					icm.getGreens(defaultPalette[0]);
+					icm.getBlues(defaultPalette[0]);
+					if (numBands == 4)
+						icm.getAlphas(defaultPalette[0]);
+
+				}
+				defaultCRS = granule.crs;
+				mosaicConfiguration.setLevelsNum(granule.numberOfLevels);
+				mosaicConfiguration.setLevels(granule.resolutionLevels);
+				
+			} else {
+				if (granule.indexed) {
+					// only harvested to initialize the mosaic configuration
+					return;
+				}
+			    if (!mosaicConfiguration.isHeterogeneous()){
+			        // //
+			        //
+			        // There is no need to check resolutions if the mosaic
+			        // has been already marked as heterogeneous
+			        //
+			        // //
+			        final int numberOfLevels = granule.numberOfLevels;
+                                if (numberOfLevels != mosaicConfiguration.getLevelsNum()) {
+                                    mosaicConfiguration.setHeterogeneous(true);
+                                    if (numberOfLevels > mosaicConfiguration.getLevelsNum()){
+                                        mosaicConfiguration.setLevelsNum(numberOfLevels);
+                                        mosaicConfiguration.setLevels(granule.resolutionLevels);
+                                    }
+                                } else {
+                                    final double[][] mosaicLevels = mosaicConfiguration.getLevels();
+                                    final boolean homogeneousLevels = compareResolutions(granule.resolutionLevels, numberOfLevels, mosaicLevels);
+                                    if (!homogeneousLevels){
+                                        mosaicConfiguration.setHeterogeneous(true);
+                                    }
+                                }
+			    }
+			    
+			    
+				// ////////////////////////////////////////////////////////
+				// 
+				// comparing ColorModel
+				// comparing SampeModel
+				// comparing CRSs
+				// ////////////////////////////////////////////////////////
+				ColorModel actualCM = granule.colorModel;
+				if(!CRS.equalsIgnoreMetadata(defaultCRS, granule.crs)){
+					fireEvent(
+							Level.INFO,
+							new StringBuilder("Skipping image ").append(fileBeingProcessed).append(" because CRSs do not match.").toString(),
+							(((granule.index + 1) * 99.0) / numFiles));
+					return;
+				}
+				
+				if(checkColorModels(defaultCM, defaultPalette,actualCM)){
+					fireEvent(
+							Level.INFO,
+							new StringBuilder("Skipping image ").append(fileBeingProcessed).append(" because color models do not match.").toString(),
+							(((granule.index + 1) * 99.0) / numFiles));
+					return;
+				}							
+			}
+
+			// ////////////////////////////////////////////////////////
+			//
+			// store the feature, replacing the outdated one if any
+			//
+			// ////////////////////////////////////////////////////////
+			if (!granule.indexed) {
+				if (granule.update) {
+					final FilterFactory2 ff = FeatureUtilities.DEFAULT_FILTER_FACTORY;
+					catalog.removeGranules(new Query(indexSchema.getTypeName(), ff.equals(
+							ff.property(runConfiguration.getLocationAttribute()), ff.literal(granule.location))), transaction);
+				}
+				catalog.addGranule(granule.feature,transaction);
+
+				// commit regularly so that an interrupted build can be resumed
+				if (runConfiguration.isResume() && ++uncommitted >= COMMIT_INTERVAL) {
+					transaction.commit();
+					uncommitted = 0;
+				}
+			}
+
+			// fire event
+			fireEvent(Level.FINE,"Done with file "+fileBeingProcessed, (((granule.index + 1) * 99.0) / numFiles));
 		
-			
-			super.handleFile(fileBeingProcessed, depth, results);
+
+			// advance files
+			numberOfProcessedFiles++;
+			reportThroughput(false);
+		}
+
+		/**
+		 * Writes the harvested granules in the walking order.
+		 * 
+		 * @param wait the number of granules to wait for, all the pending ones if negative,
+		 *        only the ones already harvested if zero.
+		 */
+		private void drain(int wait) throws IOException {
+			while (!pending.isEmpty() && (wait != 0 || pending.getFirst().isDone())) {
+				final HarvestedGranule granule;
+				try {
+					granule = pending.removeFirst().get();
+				} catch (InterruptedException e) {
+					final IOException ioe = new IOException("Interrupted while harvesting granules");
+					throw (IOException) ioe.initCause(e);
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					final IOException ioe = new IOException();
+					throw (IOException) ioe.initCause(cause);
+				}
+				write(granule);
+				if (wait > 0)
+					wait--;
+			}
+		}
+
+		/**
+		 * Notifies the harvesting throughput, at most every {@link #THROUGHPUT_REPORT_INTERVAL}
+		 * milliseconds unless this is the final report.
+		 */
+		private void reportThroughput(final boolean last) {
+			final long now = System.currentTimeMillis();
+			if (!last && now - lastReport < THROUGHPUT_REPORT_INTERVAL)
+				return;
+			lastReport = now;
+			fireThroughput(numberOfProcessedFiles, now - startTime, last ? 100 : ((fileIndex * 99.0) / numFiles));
 		}
 
         private String prepareLocation(final File fileBeingProcessed) throws IOException {
@@ -673,6 +924,10 @@ public class CatalogBuilder implements Runnable {
 			this.transaction= new DefaultTransaction("MosaicCreationTransaction"+System.nanoTime());
                         indexingPreamble();
 
+                        final int harvestingThreads = runConfiguration.getHarvestingThreads();
+                        if (harvestingThreads > 1)
+                            harvesters = Executors.newFixedThreadPool(harvestingThreads);
+                        startTime = lastReport = System.currentTimeMillis();
                         try {
                             // start walking directories
                             for(String indexingDirectory:indexingDirectories){
@@ -682,6 +937,9 @@ public class CatalogBuilder implements Runnable {
                                 if(canceled)
                                     break;
                             }
+                            // write the granules still being harvested
+                            if(!canceled)
+                                drain(-1);
                          // did we cancel?
                             if(canceled)
                                 transaction.rollback();
@@ -691,7 +949,10 @@ public class CatalogBuilder implements Runnable {
                             LOGGER.log(Level.WARNING, "Failure occurred while collecting the granules", e);
                             transaction.rollback();
                         } finally {
+                            if (harvesters != null)
+                                harvesters.shutdownNow();
                             transaction.close();
+                            reportThroughput(true);
                             
                             try{
                                 indexingPostamble(!canceled);
@@ -890,11 +1151,12 @@ public class CatalogBuilder implements Runnable {
 
 	private CatalogBuilderConfiguration runConfiguration;
 
-	private ImageReaderSpi cachedReaderSPI;
+	private volatile ImageReaderSpi cachedReaderSPI;
 
-	private ImageInputStreamSpi cachedStreamSPI;
+	private volatile ImageInputStreamSpi cachedStreamSPI;
 	
-	private List<PropertiesCollector> propertiesCollectors;
+	/** The collectors are not thread safe, each harvesting thread gets its own. */
+	private ThreadLocal<List<PropertiesCollector>> propertiesCollectors;
 
 	private SampleModel defaultSM;
 
@@ -902,7 +1164,13 @@ public class CatalogBuilder implements Runnable {
 
     private SimpleFeatureType indexSchema;
 
-    private AbstractGridFormat cachedFormat;
+    private volatile AbstractGridFormat cachedFormat;
+
+    /** Locations of the granules found in the index when resuming, {@code null} otherwise. */
+    private Set<String> indexedLocations;
+
+    /** Granules modified after this time are indexed again when resuming. */
+    private long indexTimestamp;
 	
 	/* (non-Javadoc)
 	 * @see org.geotools.gce.imagemosaic.JMXIndexBuilderMBean#run()
@@ -1086,6 +1354,15 @@ public class CatalogBuilder implements Runnable {
                         
                         if (props.containsKey(Prop.CACHING))
                                 configuration.setCaching(Boolean.valueOf(props.getProperty(Prop.CACHING)));
+
+                        // harvesting threads
+                        if (props.containsKey(Prop.HARVESTING_THREADS))
+                                configuration.setHarvestingThreads(Integer.valueOf(props
+                                                .getProperty(Prop.HARVESTING_THREADS).trim()));
+
+                        // resume
+                        if (props.containsKey(Prop.RESUME))
+                                configuration.setResume(Boolean.valueOf(props.getProperty(Prop.RESUME)));
                 }
 
 		
@@ -1128,6 +1405,7 @@ public class CatalogBuilder implements Runnable {
 		defaultPalette=null;
 		fileIndex=0;
 		numberOfProcessedFiles=0;
+		indexedLocations=null;
 		
 		// clear directories
 		runConfiguration=null;
@@ -1161,6 +1439,32 @@ public class CatalogBuilder implements Runnable {
 		}
 	}
 
+	/**
+	 * Firing a {@link ThroughputEvent} to listeners.
+	 * 
+	 * @param processedFiles
+	 *            The number of granules processed so far.
+	 * @param elapsedTime
+	 *            The time elapsed since harvesting started, in milliseconds.
+	 * @param percentage
+	 *            The percentage for the process.
+	 */
+	private void fireThroughput(final int processedFiles, final long elapsedTime, final double percentage) {
+		synchronized (notificationListeners) {
+			final double throughput = elapsedTime > 0 ? processedFiles * 1000.0 / elapsedTime : 0;
+			final String message = new StringBuilder("Harvested ").append(processedFiles)
+					.append(" granules in ").append(elapsedTime / 1000.0).append(" s (")
+					.append((float) throughput).append(" granules/s)").toString();
+			if (LOGGER.isLoggable(Level.INFO)) {
+				LOGGER.info(message);
+			}
+			final ThroughputEvent evt = new ThroughputEvent(this, message, percentage, processedFiles, elapsedTime);
+			ProgressEventDispatchThreadEventLauncher eventLauncher = new ProgressEventDispatchThreadEventLauncher();
+			eventLauncher.setEvent(evt, this.notificationListeners.toArray());
+			sendEvent(eventLauncher);
+		}
+	}
+
 	/**
 	 * Firing an exception event to listeners in order to inform them that
 	 * processing broke and we can no longer proceed. This is a convenience
@@ -1262,10 +1566,14 @@ public class CatalogBuilder implements Runnable {
 		//
 		final PrecisionModel precMod = new PrecisionModel(PrecisionModel.FLOATING);
 		geomFactory = new GeometryFactory(precMod);
+		indexSchema = null;
+		indexedLocations = null;
 		
 		//
-		// create the index
+		// create the index, keeping the existing one when resuming
 		//
+		final boolean resume = runConfiguration.isResume();
+		boolean existing = false;
 		// do we have a datastore.properties file?
 		final File parent=new File(runConfiguration.getRootMosaicDirectory());
 		final File datastoreProperties= new File(parent,"datastore.properties");
@@ -1281,7 +1589,19 @@ public class CatalogBuilder implements Runnable {
 				// create a datastore as instructed
 				final DataStoreFactorySpi spi = (DataStoreFactorySpi) Class.forName(SPIClass).newInstance();
 				final Map<String, Serializable> params = Utils.createDataStoreParamsFromPropertiesFile(properties,spi);
-				catalog=GranuleCatalogFactory.createGranuleCatalog(params,false,true, spi);
+				if (resume) {
+					try {
+						catalog=GranuleCatalogFactory.createGranuleCatalog(params,false,false, spi);
+						existing = true;
+						// no way to tell when the store was last updated
+						indexTimestamp = Long.MAX_VALUE;
+					} catch (IllegalArgumentException e) {
+						if(LOGGER.isLoggable(Level.FINE))
+							LOGGER.log(Level.FINE,"Unable to open the existing index, creating a new one",e);
+					}
+				}
+				if (!existing)
+					catalog=GranuleCatalogFactory.createGranuleCatalog(params,false,true, spi);
 			} catch (ClassNotFoundException e) {
 				final IOException ioe = new IOException();
 				throw (IOException) ioe.initCause(e);
@@ -1295,15 +1615,21 @@ public class CatalogBuilder implements Runnable {
 		} else {
 			
 			// we do not have a datastore properties file therefore we continue with a shapefile datastore
-			final URL file= new File(parent ,runConfiguration.getIndexName() + ".shp").toURI().toURL();
+			final File indexFile = new File(parent ,runConfiguration.getIndexName() + ".shp");
+			final URL file= indexFile.toURI().toURL();
 			final Map<String, Serializable> params = new HashMap<String, Serializable>();			 
 			params.put(ShapefileDataStoreFactory.URLP.key,file);
 			if(file.getProtocol().equalsIgnoreCase("file"))
 				params.put(ShapefileDataStoreFactory.CREATE_SPATIAL_INDEX.key, Boolean.TRUE);
 			params.put(ShapefileDataStoreFactory.MEMORY_MAPPED.key, Boolean.TRUE);
 			params.put(ShapefileDataStoreFactory.DBFTIMEZONE.key, TimeZone.getTimeZone("UTC"));
-			catalog= GranuleCatalogFactory.createGranuleCatalog(params,false,true, Utils.SHAPE_SPI);
+			existing = resume && indexFile.exists();
+			if (existing)
+				indexTimestamp = indexFile.lastModified();
+			catalog= GranuleCatalogFactory.createGranuleCatalog(params,false,!existing, Utils.SHAPE_SPI);
 		}
+		if (existing)
+			loadIndexedLocations();
 	
 		//
 		// creating a mosaic runConfiguration bean to store the properties file elements			
@@ -1326,11 +1652,31 @@ public class CatalogBuilder implements Runnable {
 		//
 		// load property collectors
 		//
-		loadPropertyCollectors();
+		propertiesCollectors = new ThreadLocal<List<PropertiesCollector>>() {
+			@Override
+			protected List<PropertiesCollector> initialValue() {
+				return createPropertyCollectors();
+			}
+		};
 			
 	}
 
-	private void loadPropertyCollectors() {
+	/**
+	 * Collects the locations of the granules already in the index, as well as its schema.
+	 */
+	private void loadIndexedLocations() throws IOException {
+		indexSchema = catalog.getType();
+		if (indexSchema == null)
+			return;
+		final UniqueVisitor visitor = new UniqueVisitor(runConfiguration.getLocationAttribute());
+		catalog.computeAggregateFunction(new Query(indexSchema.getTypeName()), visitor);
+		indexedLocations = new HashSet<String>();
+		for (Object location : visitor.getUnique())
+			indexedLocations.add(String.valueOf(location));
+		fireEvent(Level.INFO, "Resuming, " + indexedLocations.size() + " granules are already indexed", 0);
+	}
+
+	private List<PropertiesCollector> createPropertyCollectors() {
 		// load property collectors
 		final String pcConfig = runConfiguration.getPropertyCollectors();
 		if (pcConfig != null && pcConfig.length()>0){
@@ -1399,8 +1745,9 @@ public class CatalogBuilder implements Runnable {
 				}
 				
 			}
-			this.propertiesCollectors=pcs;
+			return pcs;
 		}
+		return null;
 	}
 
 	private void indexingPostamble(final boolean success) throws IOException {
@@ -1548,34 +1895,44 @@ public class CatalogBuilder implements Runnable {
 	 * @param numberOfLevels
 	 * @param coverageReader
 	 * @param imageioReader
-	 * @param compareLevels optional resolutionLevels to be compared.
-	 * @return 
 	 * @throws IndexOutOfBoundsException
 	 * @throws IOException
 	 */
-	private static boolean setupResolutions(
+	private static void setupResolutions(
                 final double[][] resolutionLevels, 
                 final int numberOfLevels, 
                 final AbstractGridCoverage2DReader coverageReader, 
-                final ImageReader imageioReader,
-                final double[][] compareLevels
+                final ImageReader imageioReader
                 ) throws IndexOutOfBoundsException, IOException {
             double[] res = CoverageUtilities.getResolution((AffineTransform) coverageReader.getOriginalGridToWorld(PixelInCell.CELL_CORNER));
             resolutionLevels[0][0] = res[0];
             resolutionLevels[1][0] = res[1];
-            final boolean checkLevels = compareLevels != null;
 
             // resolutions levels are computed using the raster space scale factors
             if (numberOfLevels >= 1) {
                 for (int k = 0; k < numberOfLevels; k++) {
                     resolutionLevels[0][k] = resolutionLevels[0][0]*coverageReader.getOriginalGridRange().getSpan(0)/(1.0*imageioReader.getWidth(k));
                     resolutionLevels[1][k] = resolutionLevels[1][0]*coverageReader.getOriginalGridRange().getSpan(1)/(1.0*imageioReader.getHeight(k));
-                    if (checkLevels)  {
-                        if (Math.abs(resolutionLevels[0][k] - compareLevels[0][k]) > RESOLUTION_TOLERANCE_FACTOR * compareLevels[0][k] ||
-                            Math.abs(resolutionLevels[1][k] - compareLevels[1][k]) > RESOLUTION_TOLERANCE_FACTOR * compareLevels[1][k]){
-                            return false;
-                        }
-                    }
+                }
+            }
+        }
+
+	/**
+	 * 
+	 * @param resolutionLevels
+	 * @param numberOfLevels
+	 * @param compareLevels resolutionLevels to be compared.
+	 * @return <code>true</code> if the resolutions are the same, within the tolerance.
+	 */
+	private static boolean compareResolutions(
+                final double[][] resolutionLevels, 
+                final int numberOfLevels, 
+                final double[][] compareLevels
+                ) {
+            for (int k = 0; k < numberOfLevels; k++) {
+                if (Math.abs(resolutionLevels[0][k] - compareLevels[0][k]) > RESOLUTION_TOLERANCE_FACTOR * compareLevels[0][k] ||
+                    Math.abs(resolutionLevels[1][k] - compareLevels[1][k]) > RESOLUTION_TOLERANCE_FACTOR * compareLevels[1][k]){
+                    return false;
                 }
             }
             return true;
@@ -59,6 +59,18 @@ public class CatalogBuilderConfiguration {
 
 	private boolean footprintManagement = Utils.DEFAULT_FOOTPRINT_MANAGEMENT;
 
+	/**
+	 * Number of threads opening the granules, the catalog is always written by
+	 * a single thread in the walking order.
+	 */
+	private int harvestingThreads = Utils.DEFAULT_HARVESTING_THREADS;
+
+	/**
+	 * Whether to keep an existing index, skipping the granules it already
+	 * contains unless they have been modified since.
+	 */
+	private boolean resume = Utils.DEFAULT_RESUME_BEHAVIOR;
+
 	@Option(description = "Root directory where to place the index file", mandatory = true, name = "rootDirectory")
 	private String rootMosaicDirectory;
 
@@ -185,6 +197,22 @@ public class CatalogBuilderConfiguration {
 		this.footprintManagement = footprintManagement;
 	}
 
+	public int getHarvestingThreads() {
+		return harvestingThreads;
+	}
+
+	public void setHarvestingThreads(int harvestingThreads) {
+		this.harvestingThreads = harvestingThreads;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
 	public String getElevationAttribute() {
 		return elevationAttribute;
 	}
@@ -273,6 +301,10 @@ public class CatalogBuilderConfiguration {
 			return false;
 		if (this.footprintManagement != that.footprintManagement)
 			return false;
+		if (this.harvestingThreads != that.harvestingThreads)
+			return false;
+		if (this.resume != that.resume)
+			return false;
 		if (!(this.indexName == null && that.indexName == null)
 				&& !this.indexName.equals(that.indexName))
 			return false;
@@ -296,6 +328,8 @@ public class CatalogBuilderConfiguration {
 		seed = Utilities.hash(recursive, seed);
 		seed = Utilities.hash(caching, seed);
 		seed = Utilities.hash(footprintManagement, seed);
+		seed = Utilities.hash(harvestingThreads, seed);
+		seed = Utilities.hash(resume, seed);
 		seed = Utilities.hash(locationAttribute, seed);
 		seed = Utilities.hash(indexName, seed);
 		seed = Utilities.hash(wildcard, seed);
@@ -315,6 +349,9 @@ public class CatalogBuilderConfiguration {
 		builder.append("recursive:\t\t\t").append(recursive).append("\n");
 		builder.append("footprintManagement:\t\t\t")
 				.append(footprintManagement).append("\n");
+		builder.append("harvestingThreads:\t\t\t").append(harvestingThreads)
+				.append("\n");
+		builder.append("resume:\t\t\t").append(resume).append("\n");
 		builder.append("locationAttribute:\t\t\t").append(locationAttribute)
 				.append("\n");
 		builder.append("rootMosaicDirectory:\t\t\t")
@@ -333,6 +370,10 @@ public class CatalogBuilderConfiguration {
 			directories.add(Utils.checkDirectory(dir,false));
 		indexingDirectories = directories;
 
+		if (harvestingThreads <= 0)
+			throw new IllegalStateException(
+					"The number of harvesting threads must be positive");
+
 		if (indexName == null || indexName.length() == 0)
 			throw new IllegalStateException("Index name cannot be empty");
 
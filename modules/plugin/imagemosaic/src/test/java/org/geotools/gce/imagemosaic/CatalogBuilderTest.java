@@ -19,6 +19,7 @@ package org.geotools.gce.imagemosaic;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -29,7 +30,9 @@ import java.util.Properties;
 
 import javax.media.jai.PlanarImage;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
@@ -39,6 +42,7 @@ import org.geotools.gce.imagemosaic.catalogbuilder.CatalogBuilder;
 import org.geotools.gce.imagemosaic.catalogbuilder.CatalogBuilder.ExceptionEvent;
 import org.geotools.gce.imagemosaic.catalogbuilder.CatalogBuilder.ProcessingEvent;
 import org.geotools.gce.imagemosaic.catalogbuilder.CatalogBuilder.ProcessingEventListener;
+import org.geotools.gce.imagemosaic.catalogbuilder.CatalogBuilder.ThroughputEvent;
 import org.geotools.gce.imagemosaic.catalogbuilder.CatalogBuilderConfiguration;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.test.TestData;
@@ -87,6 +91,24 @@ public class CatalogBuilderTest extends Assert {
 		
 	}
 
+	private final class ThroughputListener extends ProcessingEventListener{
+
+		private ThroughputEvent last;
+
+		@Override
+		public void exceptionOccurred(ExceptionEvent event) {
+			throw new RuntimeException(event.getException());
+			
+		}
+
+		@Override
+		public void getNotification(ProcessingEvent event) {
+			if (event instanceof ThroughputEvent)
+				last = (ThroughputEvent) event;
+		}
+		
+	}
+
 	@Test
 	public void catalogBuilderConfiguration() throws Exception{
 		// create a stub configuration
@@ -345,4 +367,75 @@ public class CatalogBuilderTest extends Assert {
 		}
 	    }
 	}
+
+    @Test
+    public void buildCatalogInParallel() throws Exception {
+        if (hostnameDefined){
+            final File rgb = TestData.file(this, "/rgb");
+            final File directory = new File(rgb.getParentFile(), "harvesting");
+            FileUtils.copyDirectory(rgb, directory, new SuffixFileFilter(new String[] { "png", "pgw" }));
+            ImageMosaicReader reader = null;
+            try {
+                // sequential build as a reference
+                final CatalogBuilderConfiguration c1 = new CatalogBuilderConfiguration();
+                c1.setIndexName("sequential");
+                c1.setLocationAttribute("location");
+                c1.setRootMosaicDirectory(directory.toString());
+                c1.setIndexingDirectories(Arrays.asList(directory.toString()));
+                ThroughputListener listener = new ThroughputListener();
+                CatalogBuilder builder = new CatalogBuilder(c1);
+                builder.addProcessingEventListener(listener);
+                builder.run();
+                assertNotNull(listener.last);
+                final int granules = listener.last.getProcessedFiles();
+                assertTrue(granules > 0);
+
+                // parallel build, resumable
+                final CatalogBuilderConfiguration c2 = new CatalogBuilderConfiguration(c1);
+                c2.setIndexName("parallel");
+                c2.setHarvestingThreads(4);
+                c2.setResume(true);
+                listener = new ThroughputListener();
+                builder = new CatalogBuilder(c2);
+                builder.addProcessingEventListener(listener);
+                builder.run();
+                assertEquals(granules, listener.last.getProcessedFiles());
+                assertEquals(100, listener.last.getPercentage(), 0);
+
+                final File mosaic = new File(directory, "parallel.shp");
+                reader = new ImageMosaicReader(mosaic);
+                assertEquals(granules, reader.rasterManager.granuleCatalog.getGranules().size());
+                reader.dispose();
+                reader = null;
+
+                // resuming, the granules already indexed are skipped
+                listener = new ThroughputListener();
+                builder = new CatalogBuilder(c2);
+                builder.addProcessingEventListener(listener);
+                builder.run();
+                assertTrue(listener.last.getProcessedFiles() < granules);
+
+                reader = new ImageMosaicReader(mosaic);
+                assertEquals(granules, reader.rasterManager.granuleCatalog.getGranules().size());
+                reader.dispose();
+                reader = null;
+
+                // resuming, a modified granule replaces its outdated record
+                final File modified = directory.listFiles((FileFilter) new SuffixFileFilter("png"))[0];
+                assertTrue(modified.setLastModified(System.currentTimeMillis() + 60000));
+                listener = new ThroughputListener();
+                builder = new CatalogBuilder(c2);
+                builder.addProcessingEventListener(listener);
+                builder.run();
+
+                reader = new ImageMosaicReader(mosaic);
+                assertEquals(granules, reader.rasterManager.granuleCatalog.getGranules().size());
+            } finally {
+                if (reader != null) {
+                    reader.dispose();
+                }
+                FileUtils.deleteQuietly(directory);
+            }
+        }
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import java.net.URL;
+
+import javax.imageio.spi.ImageInputStreamSpi;
+
+import org.geotools.gce.imagemosaic.GranuleReaderPool.PooledReader;
+import org.geotools.image.io.ImageIOExt;
+import org.geotools.test.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testing {@link GranuleReaderPool} class.
+ *
+ * @source $URL$
+ */
+public class GranuleReaderPoolTest extends Assert {
+
+    @Test
+    public void testReuseAndEviction() throws Exception {
+        final URL first = TestData.url(this, "/rgb/global_mosaic_12.png");
+        final URL second = TestData.url(this, "/rgb/global_mosaic_13.png");
+        final ImageInputStreamSpi streamSPI = ImageIOExt.getImageInputStreamSPI(first, true);
+        final GranuleReaderPool pool = new GranuleReaderPool(1, 60000L);
+
+        final PooledReader reader = pool.borrow(first, streamSPI, null);
+        assertNotNull(reader);
+        assertEquals(1, reader.reader.getNumImages(true));
+        // a concurrent request gets its own reader
+        final PooledReader concurrent = pool.borrow(first, streamSPI, null);
+        assertNotSame(reader, concurrent);
+        assertEquals(2, pool.getOpenCount());
+        pool.giveBack(reader);
+        // over the limit, the idle reader is closed
+        pool.giveBack(concurrent);
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(1, pool.getIdleCount());
+
+        // the same granule reuses the idle reader, with the headers already parsed
+        final PooledReader reused = pool.borrow(first, streamSPI, null);
+        assertSame(concurrent, reused);
+        assertEquals(0, pool.getIdleCount());
+        pool.giveBack(reused);
+
+        // an other granule evicts it
+        final PooledReader other = pool.borrow(second, streamSPI, null);
+        assertNotSame(reused, other);
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(0, pool.getIdleCount());
+        pool.discard(other);
+        assertEquals(0, pool.getOpenCount());
+        pool.close();
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        final URL granule = TestData.url(this, "/rgb/global_mosaic_12.png");
+        final ImageInputStreamSpi streamSPI = ImageIOExt.getImageInputStreamSPI(granule, true);
+        final GranuleReaderPool pool = new GranuleReaderPool(10, 0L);
+        final PooledReader reader = pool.borrow(granule, streamSPI, null);
+        pool.giveBack(reader);
+        Thread.sleep(10);
+        assertNotSame(reader, pool.borrow(granule, streamSPI, null));
+        assertEquals(1, pool.getOpenCount());
+        pool.close();
+    }
+
+    @Test
+    public void testTimedEviction() throws Exception {
+        final URL granule = TestData.url(this, "/rgb/global_mosaic_12.png");
+        final ImageInputStreamSpi streamSPI = ImageIOExt.getImageInputStreamSPI(granule, true);
+        final GranuleReaderPool pool = new GranuleReaderPool(10, 60000L);
+        pool.giveBack(pool.borrow(granule, streamSPI, null));
+        assertEquals(1, pool.getOpenCount());
+        // the periodic check keeps the readers used recently
+        pool.evictIdle(System.currentTimeMillis());
+        assertEquals(1, pool.getIdleCount());
+        // and closes the ones idle for longer than the timeout, without any further borrowing
+        pool.evictIdle(System.currentTimeMillis() + 60001L);
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getOpenCount());
+        pool.close();
+    }
+
+    @Test
+    public void testDeferredRead() throws Exception {
+        final URL granule = TestData.url(this, "/rgb/global_mosaic_12.png");
+        final ImageInputStreamSpi streamSPI = ImageIOExt.getImageInputStreamSPI(granule, true);
+        final GranuleReaderPool pool = new GranuleReaderPool(10, 60000L);
+        final PooledReader pooled = pool.borrow(granule, streamSPI, null);
+        final PooledImageReader deferred = new PooledImageReader(pool, pooled);
+        assertSame(pooled.stream, deferred.getInput());
+        assertEquals(pooled.reader.getWidth(0), deferred.getWidth(0));
+        // owned by the deferred read, but still open
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(0, pool.getIdleCount());
+
+        // the ImageRead operation resets and disposes its reader, which goes back to the pool
+        deferred.reset();
+        deferred.dispose();
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(1, pool.getIdleCount());
+        deferred.dispose();
+        assertEquals(1, pool.getIdleCount());
+        final PooledReader reused = pool.borrow(granule, streamSPI, null);
+        assertSame(pooled, reused);
+        assertSame(pooled.stream, reused.reader.getInput());
+        pool.giveBack(reused);
+        pool.close();
+    }
+
+    @Test
+    public void testSharedPerMosaic() throws Exception {
+        final URL mosaic = TestData.url(this, "rgb");
+        final GranuleReaderPool pool = GranuleReaderPool.acquire(mosaic);
+        assertSame(pool, GranuleReaderPool.acquire(mosaic));
+        pool.release();
+        assertSame(pool, GranuleReaderPool.acquire(mosaic));
+        pool.release();
+        pool.release();
+        // released by all its users, a new pool is created
+        final GranuleReaderPool other = GranuleReaderPool.acquire(mosaic);
+        assertNotSame(pool, other);
+        other.release();
+        assertNotSame(GranuleReaderPool.acquire(null), GranuleReaderPool.acquire(null));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+/**
+ * Testing {@link DimensionIndex} class.
+ *
+ * @source $URL$
+ */
+public class DimensionIndexTest extends Assert {
+
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
+    /**
+     * Ten granules per day over a hundred days, in reverse order, plus one without time.
+     */
+    private static DimensionIndex<String> timeIndex() {
+        final List<String> granules = new ArrayList<String>();
+        final List<Date> times = new ArrayList<Date>();
+        for (int day = 99; day >= 0; day--) {
+            for (int i = 0; i < 10; i++) {
+                granules.add(day + "_" + i);
+                times.add(new Date(day * 86400000L));
+            }
+        }
+        granules.add("untimed");
+        times.add(null);
+        return new DimensionIndex<String>("time", granules, times);
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        final DimensionIndex<String> index = timeIndex();
+        assertEquals(1000, index.size());
+
+        Filter filter = FF.equals(FF.property("time"), FF.literal(new Date(5 * 86400000L)));
+        List<double[]> ranges = DimensionIndex.extractRanges(filter, "time");
+        assertEquals(10, index.count(ranges));
+        for (String granule : index.select(ranges)) {
+            assertTrue(granule.startsWith("5_"));
+        }
+
+        // a time range, with the operands in both orders
+        filter = FF.and(FF.greaterOrEqual(FF.property("time"), FF.literal(new Date(10 * 86400000L))),
+                FF.greaterOrEqual(FF.literal(new Date(11 * 86400000L)), FF.property("time")));
+        ranges = DimensionIndex.extractRanges(filter, "time");
+        assertEquals(20, index.count(ranges));
+
+        // a list of times
+        filter = FF.or(Arrays.asList(
+                (Filter) FF.equals(FF.property("time"), FF.literal(new Date(1 * 86400000L))),
+                FF.between(FF.property("time"), FF.literal(new Date(50 * 86400000L)),
+                        FF.literal(new Date(52 * 86400000L)))));
+        ranges = DimensionIndex.extractRanges(filter, "time");
+        assertEquals(40, index.count(ranges));
+        assertEquals(40, index.select(ranges).size());
+
+        // nothing can match
+        ranges = DimensionIndex.extractRanges(Filter.EXCLUDE, "time");
+        assertEquals(0, index.count(ranges));
+    }
+
+    @Test
+    public void testUnconstrained() throws Exception {
+        assertNull(DimensionIndex.extractRanges(Filter.INCLUDE, "time"));
+        assertNull(DimensionIndex.extractRanges(
+                FF.equals(FF.property("elevation"), FF.literal(10)), "time"));
+        // one of the branches does not restrict the time
+        final Filter filter = FF.or(
+                FF.equals(FF.property("time"), FF.literal(new Date(0))),
+                FF.equals(FF.property("elevation"), FF.literal(10)));
+        assertNull(DimensionIndex.extractRanges(filter, "time"));
+
+        final DimensionIndex<String> index = timeIndex();
+        assertNull(DimensionIndex.select(filter, Integer.MAX_VALUE, index, null));
+        // the index is not used when the spatial index is expected to be more selective
+        final Filter instant = FF.equals(FF.property("time"), FF.literal(new Date(0)));
+        assertNull(DimensionIndex.select(instant, 5, index, null));
+        assertEquals(10, DimensionIndex.select(instant, 100, null, index).size());
+    }
+
+    @Test
+    public void testDistinctValues() throws Exception {
+        final List<Object> values = timeIndex().distinctValues();
+        assertEquals(100, values.size());
+        assertEquals(new Date(0), values.get(0));
+        assertEquals(new Date(99 * 86400000L), values.get(99));
+    }
+}
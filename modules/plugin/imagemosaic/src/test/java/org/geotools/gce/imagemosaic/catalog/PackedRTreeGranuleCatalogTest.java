@@ -0,0 +1,181 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.gce.imagemosaic.PathType;
+import org.geotools.gce.imagemosaic.Utils;
+import org.geotools.gce.imagemosaic.catalog.PackedRTree.Entry;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+
+/**
+ * Testing the transactional updates of the {@link PackedRTreeGranuleCatalog} index.
+ *
+ * @source $URL$
+ */
+public class PackedRTreeGranuleCatalogTest extends Assert {
+
+    private File dir;
+
+    private File shapeFile;
+
+    private File indexFile;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("granules", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        shapeFile = new File(dir, "granules.shp");
+        indexFile = new File(dir, "granules." + PackedRTreeGranuleCatalog.EXTENSION);
+
+        // an index with a single granule
+        final ShapefileDataStore store = new ShapefileDataStore(DataUtilities.fileToURL(shapeFile));
+        try {
+            store.createSchema(DataUtilities.createType("granules", "the_geom:Polygon,location:String"));
+            final FeatureWriter<SimpleFeatureType, SimpleFeature> writer = store.getFeatureWriterAppend(
+                    "granules", Transaction.AUTO_COMMIT);
+            try {
+                final SimpleFeature feature = writer.next();
+                feature.setAttributes(granule(store.getSchema(), 0, "a.tif").getAttributes());
+                writer.write();
+            } finally {
+                writer.close();
+            }
+        } finally {
+            store.dispose();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final File[] files = dir.listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static SimpleFeature granule(final SimpleFeatureType type, final int x, final String location) {
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        builder.set("the_geom", JTS.toGeometry(new ReferencedEnvelope(x, x + 1, 0, 1, null)));
+        builder.set("location", location);
+        return builder.buildFeature(null);
+    }
+
+    private PackedRTreeGranuleCatalog open() {
+        final Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(ShapefileDataStoreFactory.URLP.key, DataUtilities.fileToURL(shapeFile));
+        params.put("PathType", PathType.ABSOLUTE);
+        params.put("LocationAttribute", "location");
+        params.put("ParentLocation", DataUtilities.fileToURL(dir).toString());
+        return new PackedRTreeGranuleCatalog(params, Utils.SHAPE_SPI, indexFile, shapeFile);
+    }
+
+    /**
+     * Returns the locations recorded in the index file.
+     */
+    private Set<String> indexedLocations() throws Exception {
+        final PackedRTree tree = PackedRTree.open(indexFile);
+        try {
+            final Set<String> locations = new HashSet<String>();
+            for (Entry entry : tree.entries()) {
+                locations.add(entry.location);
+            }
+            return locations;
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testTransactions() throws Exception {
+        final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        PackedRTreeGranuleCatalog catalog = open();
+        try {
+            final SimpleFeatureType type = catalog.getType();
+
+            // a rolled back addition leaves the index untouched
+            final Transaction rolledBack = new DefaultTransaction();
+            try {
+                catalog.addGranule(granule(type, 1, "b.tif"), rolledBack);
+                rolledBack.rollback();
+            } finally {
+                rolledBack.close();
+            }
+
+            // the changes of a transaction are applied on commit only, in order
+            final Transaction committed = new DefaultTransaction();
+            try {
+                catalog.removeGranules(new Query("granules", ff.equals(ff.property("location"),
+                        ff.literal("a.tif"))), committed);
+                catalog.addGranule(granule(type, 2, "c.tif"), committed);
+                catalog.addGranule(granule(type, 0, "a.tif"), committed);
+                committed.commit();
+            } finally {
+                committed.close();
+            }
+        } finally {
+            catalog.dispose();
+        }
+        final Set<String> expected = new HashSet<String>();
+        expected.add("a.tif");
+        expected.add("c.tif");
+        assertEquals(expected, indexedLocations());
+    }
+
+    @Test
+    public void testUncommitted() throws Exception {
+        PackedRTreeGranuleCatalog catalog = open();
+        try {
+            final Transaction transaction = new DefaultTransaction();
+            try {
+                catalog.addGranule(granule(catalog.getType(), 1, "b.tif"), transaction);
+            } finally {
+                // closing without commit discards the changes
+                transaction.close();
+            }
+        } finally {
+            catalog.dispose();
+        }
+        assertEquals(Collections.singleton("a.tif"), indexedLocations());
+    }
+}
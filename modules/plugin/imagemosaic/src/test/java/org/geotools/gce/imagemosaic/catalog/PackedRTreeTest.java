@@ -0,0 +1,196 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.gce.imagemosaic.catalog.PackedRTree.Entry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing {@link PackedRTree} class.
+ *
+ * @source $URL$
+ */
+public class PackedRTreeTest extends Assert {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("granules", "." + PackedRTreeGranuleCatalog.EXTENSION);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    /**
+     * A grid of unit granules, one hour apart.
+     */
+    private static List<Entry> grid(final int width, final int height, final String prefix) {
+        final List<Entry> entries = new ArrayList<Entry>();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                entries.add(new Entry(x, y, x + 1, y + 1, 3600000L * entries.size(), y * 10,
+                        prefix + "_" + x + "_" + y + ".tif"));
+            }
+        }
+        return entries;
+    }
+
+    private static Set<String> query(final PackedRTree tree, final double minX, final double minY,
+            final double maxX, final double maxY) {
+        final Set<String> locations = new HashSet<String>();
+        for (Entry e : tree.query(minX, minY, maxX, maxY)) {
+            assertTrue("Duplicated " + e, locations.add(e.location));
+        }
+        return locations;
+    }
+
+    /**
+     * Compares the tree queries with a linear scan.
+     */
+    private static void assertQueries(final PackedRTree tree, final List<Entry> expected) {
+        final double[][] windows = { { 0.5, 0.5, 2.5, 1.5 }, { 10.2, 20.7, 10.3, 20.8 },
+                { -5, -5, -1, -1 }, { 0, 0, 100, 100 }, { 30, 0, 30, 60 } };
+        for (double[] w : windows) {
+            final Set<String> locations = new HashSet<String>();
+            for (Entry e : expected) {
+                if (e.minX <= w[2] && e.maxX >= w[0] && e.minY <= w[3] && e.maxY >= w[1]) {
+                    locations.add(e.location);
+                }
+            }
+            assertEquals(locations, query(tree, w[0], w[1], w[2], w[3]));
+        }
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        final List<Entry> entries = grid(50, 60, "g");
+        final PackedRTree tree = PackedRTree.create(file, entries, 8);
+        try {
+            assertEquals(3000, tree.size());
+            assertQueries(tree, entries);
+            final List<Entry> hits = tree.query(10.2, 20.2, 10.8, 20.8);
+            assertEquals(1, hits.size());
+            final Entry hit = hits.get(0);
+            assertEquals("g_10_20.tif", hit.location);
+            assertEquals(3600000L * (20 * 50 + 10), hit.time);
+            assertEquals(200, hit.elevation, 0);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        PackedRTree tree = PackedRTree.create(file, Collections.<Entry> emptyList(),
+                PackedRTree.DEFAULT_NODE_CAPACITY);
+        assertEquals(0, tree.size());
+        assertTrue(tree.entries().isEmpty());
+        tree.append(Arrays.asList(new Entry(0, 0, 1, 1, PackedRTree.NO_TIME, Double.NaN, "a.tif")));
+        assertEquals(Collections.singleton("a.tif"), query(tree, 0, 0, 2, 2));
+        tree.close();
+    }
+
+    @Test
+    public void testUpdates() throws Exception {
+        final List<Entry> expected = grid(20, 20, "g");
+        PackedRTree tree = PackedRTree.create(file, expected, 4);
+        try {
+            // append, remove packed and appended granules
+            final List<Entry> added = grid(5, 5, "added");
+            tree.append(added);
+            expected.addAll(added);
+            assertEquals(425, tree.size());
+            assertQueries(tree, expected);
+
+            assertEquals(2, tree.remove(Arrays.asList("g_1_1.tif", "added_0_0.tif", "unknown.tif")));
+            for (int i = expected.size() - 1; i >= 0; i--) {
+                final String location = expected.get(i).location;
+                if (location.equals("g_1_1.tif") || location.equals("added_0_0.tif")) {
+                    expected.remove(i);
+                }
+            }
+            assertEquals(423, tree.size());
+            assertQueries(tree, expected);
+            assertFalse(tree.needsRepack());
+
+            // the updates are persisted
+            tree.close();
+            tree = PackedRTree.open(file);
+            assertEquals(423, tree.size());
+            assertQueries(tree, expected);
+
+            tree.append(grid(10, 10, "more"));
+            expected.addAll(grid(10, 10, "more"));
+            assertTrue(tree.needsRepack());
+            tree = tree.repack();
+            assertFalse(tree.needsRepack());
+            assertEquals(523, tree.size());
+            assertQueries(tree, expected);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testRepackFailure() throws Exception {
+        final List<Entry> expected = grid(20, 20, "g");
+        PackedRTree tree = PackedRTree.create(file, expected, 4);
+        // a directory in the way of the temporary file
+        final File tmp = new File(file.getPath() + ".tmp");
+        assertTrue(tmp.mkdir());
+        try {
+            tree.append(grid(11, 11, "more"));
+            expected.addAll(grid(11, 11, "more"));
+            assertTrue(tree.needsRepack());
+            try {
+                tree.repack();
+                fail("The temporary file can't be written");
+            } catch (java.io.IOException e) {
+                // expected
+            }
+            // the index is still usable, and does not try again
+            assertEquals(521, tree.size());
+            assertQueries(tree, expected);
+            assertFalse(tree.needsRepack());
+            tree.close();
+            tree = PackedRTree.open(file);
+            assertQueries(tree, expected);
+        } finally {
+            tree.close();
+            tmp.delete();
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testNotAnIndex() throws Exception {
+        PackedRTree.open(file);
+    }
+}
@@ -24,9 +24,7 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.nio.channels.Channels;
-import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -141,7 +139,12 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 	 * Cache of {@link ImageMosaicReader} objects for the different levels.
 	 * 
 	 */    
-	private ConcurrentHashMap<Integer, ImageMosaicReader> readers =new ConcurrentHashMap<Integer, ImageMosaicReader>();
+	private final LevelReaderCache readers = new LevelReaderCache(LevelReaderCache.DEFAULT_MAX_OPEN, LevelReaderCache.DEFAULT_IDLE_TIMEOUT) {
+		@Override
+		ImageMosaicReader createReader(int level) throws IOException {
+			return createLevelReader(level);
+		}
+	};
 
 	/**
 	 * Constructor for an {@link ImagePyramidReader}.
@@ -473,54 +476,25 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 			imageChoice = setReadParams(overviewPolicy, readP,requestedEnvelope, dim);
 		
 		//
-		// Check to have the needed reader in memory
-		// 
-		
-                // light check to see if this reader had been disposed, not synching for performance. 
-                if (readers == null) {
-                    throw new IllegalStateException("This ImagePyramidReader has already been disposed");
-                }
-		
-                ImageMosaicReader reader = readers.get(imageChoice);
-                if (reader == null) {
-        
-                    //
-                    // we must create the underlying mosaic 
-                    //
-                    final String levelDirName = levelsDirs[imageChoice.intValue()];
-                    final URL parentUrl = DataUtilities.getParentUrl(sourceURL);
-                    // look for a shapefile first
-                    final String extension = new StringBuilder(levelDirName).append("/").append(coverageName).append(".shp").toString();
-                    final URL shpFileUrl = DataUtilities.extendURL(parentUrl, extension);
-                    if (shpFileUrl.getProtocol() != null
-                            && shpFileUrl.getProtocol().equalsIgnoreCase("file")
-                            && !DataUtilities.urlToFile(shpFileUrl).exists())
-                        reader = new ImageMosaicReader(DataUtilities.extendURL(parentUrl, levelDirName), hints);
-                    else
-                        reader = new ImageMosaicReader(shpFileUrl, hints);
-                    final ImageMosaicReader putByOtherThreadJustNow =readers.putIfAbsent(imageChoice, reader);
-                    if(putByOtherThreadJustNow!=null){
-                        // some other thread just did inserted this
-                        try{
-                            reader.dispose();
-                        } catch (Exception e) {
-                            if(LOGGER.isLoggable(Level.FINE)){
-                                LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
-                            }
-                        }
-                        
-                        //use the other one
-                        reader=putByOtherThreadJustNow;
-                    }
-        
-		}
-
-	
-		//
-		// Abusing of the created ImageMosaicreader for getting a
-		// gridcoverage2d, then rename it
+		// Get the needed reader, opening it if needed. Requests on the same
+		// level wait for the first one to open it, the other levels are not
+		// blocked.
 		//
-		GridCoverage2D mosaicCoverage = reader.read(params);
+		final LevelReaderCache.LevelReader level = readers.acquire(imageChoice);
+		boolean failed = true;
+		final GridCoverage2D mosaicCoverage;
+		try {
+			final ImageMosaicReader reader = level.getReader();
+			failed = false;
+
+			//
+			// Abusing of the created ImageMosaicreader for getting a
+			// gridcoverage2d, then rename it
+			//
+			mosaicCoverage = reader.read(params);
+		} finally {
+			readers.release(level, failed);
+		}
 		if(mosaicCoverage != null) {
 		    return new GridCoverage2D(coverageName, mosaicCoverage);
 		} else {
@@ -529,15 +503,75 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 		}
 	}
 
+	/**
+	 * Creates the {@link ImageMosaicReader} of a level.
+	 * 
+	 * @param level
+	 *            the level, 0 being the highest resolution.
+	 * @return the reader of the level.
+	 * @throws IOException
+	 */
+	private ImageMosaicReader createLevelReader(int level) throws IOException {
+		final String levelDirName = levelsDirs[level];
+		final URL parentUrl = DataUtilities.getParentUrl(sourceURL);
+		// look for a shapefile first
+		final String extension = new StringBuilder(levelDirName).append("/").append(coverageName).append(".shp").toString();
+		final URL shpFileUrl = DataUtilities.extendURL(parentUrl, extension);
+		if (shpFileUrl.getProtocol() != null
+				&& shpFileUrl.getProtocol().equalsIgnoreCase("file")
+				&& !DataUtilities.urlToFile(shpFileUrl).exists())
+			return new ImageMosaicReader(DataUtilities.extendURL(parentUrl, levelDirName), hints);
+		else
+			return new ImageMosaicReader(shpFileUrl, hints);
+	}
+
+	/**
+	 * Opens the readers of some levels ahead of the requests, so that the
+	 * first requests hitting them do not pay for their initialization. Levels
+	 * already open are left untouched, and like any other level they are
+	 * disposed once unused for a while.
+	 * 
+	 * @param levels
+	 *            the levels to open, 0 being the highest resolution.
+	 * @throws IOException
+	 *             if a level cannot be opened.
+	 * @since 8.0
+	 */
+	public void warmUp(int... levels) throws IOException {
+		for (int index : levels) {
+			if (index < 0 || index > numOverviews) {
+				throw new IllegalArgumentException("Invalid level " + index
+						+ ", this pyramid has " + (numOverviews + 1) + " levels");
+			}
+			final LevelReaderCache.LevelReader level = readers.acquire(index);
+			boolean failed = true;
+			try {
+				level.getReader();
+				failed = false;
+			} finally {
+				readers.release(level, failed);
+			}
+		}
+	}
+
+	/**
+	 * Returns the usage statistics of the level readers, useful to size the
+	 * level cache.
+	 * 
+	 * @return the statistics since the creation of this reader.
+	 * @since 8.0
+	 */
+	public LevelReaderStatistics getLevelReaderStatistics() {
+		return readers.getStatistics();
+	}
+
 	/**
 	 * @see org.opengis.coverage.grid.GridCoverageReader#dispose()
 	 */
 	@Override
 	public synchronized void dispose() {
 		super.dispose();
-		for(Entry<Integer, ImageMosaicReader> element:readers.entrySet())
-		    element.getValue().dispose();
-		readers.clear();
+		readers.close();
 	}
 	
 	/**
@@ -0,0 +1,311 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagepyramid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataSourceException;
+import org.geotools.gce.imagemosaic.ImageMosaicReader;
+
+/**
+ * The {@link ImageMosaicReader}s opened on the levels of a pyramid.
+ *
+ * <p>
+ * Opening a level means parsing its mosaic index, hence a level is initialized once by the
+ * first request hitting it: concurrent requests on the same level wait for that
+ * initialization, while requests on the other levels proceed.
+ *
+ * <p>
+ * At most {@link #getMaxOpen()} levels are kept open, when the limit is reached the least
+ * recently used unused levels are disposed. Levels unused for more than
+ * {@link #getIdleTimeout()} milliseconds are disposed as well. A level being read is never
+ * disposed, it is disposed once released instead.
+ *
+ * @source $URL$
+ */
+abstract class LevelReaderCache {
+
+    /** Logger. */
+    private final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(LevelReaderCache.class);
+
+    /** Default maximum number of open levels per pyramid. */
+    final static int DEFAULT_MAX_OPEN = Integer.getInteger("org.geotools.imagepyramid.levels.maxopen", 32);
+
+    /** Default time in milliseconds after which an unused level is disposed. */
+    final static long DEFAULT_IDLE_TIMEOUT = Long.getLong("org.geotools.imagepyramid.levels.idletimeout", 600000L);
+
+    /**
+     * A level of the pyramid, as acquired from the cache.
+     */
+    final class LevelReader {
+
+        final int level;
+
+        private final FutureTask<ImageMosaicReader> initialization;
+
+        /** Number of requests using this level. */
+        private int users;
+
+        private long lastUsed;
+
+        /** Whether this level left the cache, to be disposed by its last user. */
+        private boolean removed;
+
+        LevelReader(final int level) {
+            this.level = level;
+            this.initialization = new FutureTask<ImageMosaicReader>(new Callable<ImageMosaicReader>() {
+                public ImageMosaicReader call() throws Exception {
+                    final long start = System.nanoTime();
+                    final ImageMosaicReader reader = createReader(level);
+                    initialized(System.nanoTime() - start);
+                    return reader;
+                }
+            });
+        }
+
+        /**
+         * Returns the reader of this level, initializing it if this is the first user.
+         */
+        ImageMosaicReader getReader() throws IOException {
+            initialization.run();
+            try {
+                return initialization.get();
+            } catch (InterruptedException e) {
+                throw new DataSourceException("Interrupted while opening level " + level, e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new DataSourceException("Unable to open level " + level, cause);
+            }
+        }
+
+        private boolean isOpen() {
+            return initialization.isDone();
+        }
+
+        private void dispose() {
+            if (!initialization.isDone()) {
+                return;
+            }
+            try {
+                initialization.get().dispose();
+            } catch (Throwable e) {
+                // also the levels failing to initialize end up here
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+                }
+            }
+        }
+    }
+
+    private final int maxOpen;
+
+    private final long idleTimeout;
+
+    /** The levels, least recently used first. */
+    private final LinkedHashMap<Integer, LevelReader> levels = new LinkedHashMap<Integer, LevelReader>(16, 0.75f, true);
+
+    private boolean closed;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long initializations;
+
+    private long initializationTime;
+
+    LevelReaderCache(final int maxOpen, final long idleTimeout) {
+        if (maxOpen <= 0) {
+            throw new IllegalArgumentException("The maximum number of open levels must be positive");
+        }
+        this.maxOpen = maxOpen;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Creates the reader of a level, called once per level until it is disposed.
+     *
+     * @param level the level, 0 being the highest resolution.
+     */
+    abstract ImageMosaicReader createReader(int level) throws IOException;
+
+    /**
+     * Acquires a level, every call must be balanced by a call to
+     * {@link #release(LevelReader, boolean)}. The reader is initialized by
+     * {@link LevelReader#getReader()}, outside of any lock.
+     *
+     * @param level the level, 0 being the highest resolution.
+     * @throws IllegalStateException if this cache has been disposed.
+     */
+    LevelReader acquire(final int level) {
+        final List<LevelReader> toDispose = new ArrayList<LevelReader>();
+        final LevelReader acquired;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("This ImagePyramidReader has already been disposed");
+            }
+            evictIdle(System.currentTimeMillis(), toDispose);
+            LevelReader reader = levels.get(level);
+            if (reader == null) {
+                misses++;
+                reader = new LevelReader(level);
+                reader.users++;
+                levels.put(level, reader);
+                trim(toDispose);
+            } else {
+                hits++;
+                reader.users++;
+            }
+            acquired = reader;
+        }
+        dispose(toDispose);
+        return acquired;
+    }
+
+    /**
+     * Releases a level acquired through {@link #acquire(int)}.
+     *
+     * @param failed whether the level failed to initialize, in which case it is removed from
+     *        the cache so that the next request tries again.
+     */
+    void release(final LevelReader reader, final boolean failed) {
+        final List<LevelReader> toDispose = new ArrayList<LevelReader>();
+        synchronized (this) {
+            reader.users--;
+            reader.lastUsed = System.currentTimeMillis();
+            if (failed && !reader.removed) {
+                levels.remove(reader.level);
+                reader.removed = true;
+            }
+            if (reader.removed) {
+                if (reader.users == 0) {
+                    toDispose.add(reader);
+                }
+            } else {
+                trim(toDispose);
+            }
+        }
+        dispose(toDispose);
+    }
+
+    /**
+     * Disposes all the levels, the levels being read are disposed once released.
+     */
+    void close() {
+        final List<LevelReader> toDispose = new ArrayList<LevelReader>();
+        synchronized (this) {
+            closed = true;
+            for (LevelReader reader : levels.values()) {
+                reader.removed = true;
+                if (reader.users == 0) {
+                    toDispose.add(reader);
+                }
+            }
+            levels.clear();
+        }
+        dispose(toDispose);
+    }
+
+    /**
+     * Returns the statistics of this cache since its creation.
+     */
+    synchronized LevelReaderStatistics getStatistics() {
+        int open = 0;
+        for (LevelReader reader : levels.values()) {
+            if (reader.isOpen()) {
+                open++;
+            }
+        }
+        return new LevelReaderStatistics(hits, misses, evictions, initializations,
+                initializationTime / 1000000L, open);
+    }
+
+    private synchronized void initialized(final long nanos) {
+        initializations++;
+        initializationTime += nanos;
+    }
+
+    /**
+     * Removes the least recently used unused levels while too many levels are cached. The
+     * levels being read are not accounted for eviction, thus the limit may be exceeded
+     * temporarily under heavy concurrency rather than blocking the requests.
+     */
+    private void trim(final List<LevelReader> toDispose) {
+        assert Thread.holdsLock(this);
+        final Iterator<LevelReader> it = levels.values().iterator();
+        int size = levels.size();
+        while (size > maxOpen && it.hasNext()) {
+            final LevelReader reader = it.next();
+            if (reader.users == 0) {
+                it.remove();
+                evict(reader, toDispose);
+                size--;
+            }
+        }
+    }
+
+    private void evictIdle(final long now, final List<LevelReader> toDispose) {
+        assert Thread.holdsLock(this);
+        for (final Iterator<LevelReader> it = levels.values().iterator(); it.hasNext();) {
+            final LevelReader reader = it.next();
+            if (reader.users == 0 && now - reader.lastUsed > idleTimeout) {
+                it.remove();
+                evict(reader, toDispose);
+            }
+        }
+    }
+
+    private void evict(final LevelReader reader, final List<LevelReader> toDispose) {
+        reader.removed = true;
+        evictions++;
+        toDispose.add(reader);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Disposing the reader of level " + reader.level);
+        }
+    }
+
+    private static void dispose(final List<LevelReader> readers) {
+        for (LevelReader reader : readers) {
+            reader.dispose();
+        }
+    }
+
+    int getMaxOpen() {
+        return maxOpen;
+    }
+
+    long getIdleTimeout() {
+        return idleTimeout;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagepyramid;
+
+/**
+ * A snapshot of the usage of the level readers of an {@link ImagePyramidReader}, useful to
+ * size the level cache through the <code>org.geotools.imagepyramid.levels.maxopen</code> and
+ * <code>org.geotools.imagepyramid.levels.idletimeout</code> system properties.
+ *
+ * @since 8.0
+ *
+ * @source $URL$
+ */
+public final class LevelReaderStatistics {
+
+    private final long hits;
+
+    private final long misses;
+
+    private final long evictions;
+
+    private final long initializations;
+
+    private final long initializationTime;
+
+    private final int openLevels;
+
+    LevelReaderStatistics(final long hits, final long misses, final long evictions,
+            final long initializations, final long initializationTime, final int openLevels) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.initializations = initializations;
+        this.initializationTime = initializationTime;
+        this.openLevels = openLevels;
+    }
+
+    /**
+     * Returns the number of requests served by a level reader already open.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests which had to open their level reader.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the ratio of the requests served by a level reader already open, between 0
+     * and 1.
+     */
+    public double getHitRate() {
+        final long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Returns the number of level readers disposed because unused or because too many levels
+     * were open.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of level readers successfully opened.
+     */
+    public long getInitializations() {
+        return initializations;
+    }
+
+    /**
+     * Returns the total time in milliseconds spent opening level readers.
+     */
+    public long getInitializationTime() {
+        return initializationTime;
+    }
+
+    /**
+     * Returns the average time in milliseconds spent opening a level reader.
+     */
+    public double getAverageInitializationTime() {
+        return initializations == 0 ? 0 : (double) initializationTime / initializations;
+    }
+
+    /**
+     * Returns the number of level readers currently open.
+     */
+    public int getOpenLevels() {
+        return openLevels;
+    }
+
+    @Override
+    public String toString() {
+        return "LevelReaderStatistics[hits=" + hits + ", misses=" + misses + ", hitRate="
+                + getHitRate() + ", evictions=" + evictions + ", initializations="
+                + initializations + ", averageInitializationTime="
+                + getAverageInitializationTime() + "ms, openLevels=" + openLevels + "]";
+    }
+}
@@ -370,6 +370,50 @@ public class ImagePyramidReaderTest extends Assert {
 
 	}
 	
+	/**
+	 * Tests the warm up and the statistics of the level readers.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLevelReaderCache() throws IOException {
+		final URL testFile = TestData.getResource(this, TEST_FILE);
+		assertNotNull(testFile);
+		final ImagePyramidReader reader = new ImagePyramidReader(testFile,
+				new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER, Boolean.FALSE));
+		try {
+			LevelReaderStatistics stats = reader.getLevelReaderStatistics();
+			assertEquals(0, stats.getOpenLevels());
+			assertEquals(0, stats.getHitRate(), 0);
+
+			// open the highest resolution level ahead of the requests
+			reader.warmUp(0);
+			stats = reader.getLevelReaderStatistics();
+			assertEquals(1, stats.getOpenLevels());
+			assertEquals(1, stats.getInitializations());
+			assertEquals(1, stats.getMisses());
+
+			// the whole coverage is read from the highest resolution level
+			final GridCoverage2D coverage = reader.read(new GeneralParameterValue[0]);
+			assertNotNull(coverage);
+			stats = reader.getLevelReaderStatistics();
+			assertEquals(1, stats.getHits());
+			assertEquals(1, stats.getInitializations());
+			assertEquals(0.5, stats.getHitRate(), 0);
+
+			try {
+				// the test pyramid has 4 levels
+				reader.warmUp(4);
+				fail("The level does not exist");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			reader.dispose();
+		}
+		assertEquals(0, reader.getLevelReaderStatistics().getOpenLevels());
+	}
+
 	/**
 	 * This is related to http://jira.codehaus.org/browse/GEOS-4081 and happens only if the requested
 	 * envelope is overlapping with the pyramid envelope for way less than a pixel